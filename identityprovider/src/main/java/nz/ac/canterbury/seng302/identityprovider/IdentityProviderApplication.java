@@ -1,11 +1,15 @@
 package nz.ac.canterbury.seng302.identityprovider;
 
 import nz.ac.canterbury.seng302.identityprovider.demodata.DataInitialisationManager;
+import nz.ac.canterbury.seng302.identityprovider.service.UserIndexService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
 
 /**
  * The main IdP application class using springboot.
@@ -17,12 +21,27 @@ public class IdentityProviderApplication {
     @Autowired
     DataInitialisationManager dataInitialiser;
 
+    /** The in memory index of users, built once the initial users exist */
+    @Autowired
+    UserIndexService userIndexService;
+
+    /** Gives access to the environment variables */
+    @Autowired
+    Environment env;
+
     /**
-     * Initialises test data when the boolean variables are true
+     * Initialises test data when the boolean variables are true, then builds the user index. The index is left unbuilt
+     * when the userIndexEnabled property is false, as it is only kept up to date with changes made by this instance,
+     * so users are paged from the database instead. Runs before the other startup listeners, so they find the initial
+     * users and the built index.
      */
     @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
     public void setup() {
         dataInitialiser.initialiseData();
+        if (Boolean.parseBoolean(env.getProperty("userIndexEnabled", "true"))) {
+            userIndexService.rebuild();
+        }
     }
 
 
@@ -0,0 +1,147 @@
+package nz.ac.canterbury.seng302.identityprovider.authentication;
+
+import nz.ac.canterbury.seng302.identityprovider.service.DigestUtil;
+import nz.ac.canterbury.seng302.shared.identityprovider.AuthState;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the AuthState built for each valid session token, so a browser making many requests with the same token
+ * only has it parsed and its signature verified once.
+ *
+ * Tokens are keyed by their SHA-256 digest rather than stored, and each entry is only served until the token's
+ * expiry, after which the token must be validated again (and so rejected). The cache holds at most maxSize tokens,
+ * evicting expired tokens and then the least recently used token when it is full.
+ */
+public class AuthStateCache {
+
+    /** How often a full cache is searched for expired tokens, rather than searching on every insert. */
+    private static final long SWEEP_INTERVAL_MILLIS = 60_000;
+
+    /** The most tokens that are cached at once. */
+    private final int maxSize;
+
+    /** Gives the current time in milliseconds, so tests can control when tokens expire. */
+    private final LongSupplier clock;
+
+    /** The cached auth states by token digest, in least recently used order. Guarded by synchronizing on the map. */
+    private final LinkedHashMap<String, CachedAuthState> authStates = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The earliest time a full cache will next be searched for expired tokens. Guarded by authStates. */
+    private long nextSweepAt = 0;
+
+
+    /**
+     * An auth state built from a valid token.
+     *
+     * @param authState The auth state to send for the token
+     * @param expiresAt The time the token expires, in milliseconds since the epoch
+     */
+    private record CachedAuthState(AuthState authState, long expiresAt) {}
+
+
+    /**
+     * Creates an empty cache holding at most the given number of tokens.
+     *
+     * @param maxSize The most tokens that are cached at once
+     */
+    public AuthStateCache(int maxSize) {
+        this(maxSize, System::currentTimeMillis);
+    }
+
+
+    /**
+     * Creates an empty cache holding at most the given number of tokens, using the given clock to expire them.
+     *
+     * @param maxSize The most tokens that are cached at once
+     * @param clock Gives the current time in milliseconds since the epoch
+     */
+    AuthStateCache(int maxSize, LongSupplier clock) {
+        this.maxSize = maxSize;
+        this.clock = clock;
+    }
+
+
+    /**
+     * Gets the cached auth state of a token, if the token has been cached and hasn't expired.
+     *
+     * @param token The session token
+     * @return The token's auth state, or null if it isn't cached
+     */
+    public AuthState get(String token) {
+        String digest = digest(token);
+        synchronized (authStates) {
+            CachedAuthState cached = authStates.get(digest);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.expiresAt() <= clock.getAsLong()) {
+                authStates.remove(digest);
+                return null;
+            }
+            return cached.authState();
+        }
+    }
+
+
+    /**
+     * Caches the auth state of a valid token until the token expires.
+     *
+     * @param token The session token
+     * @param authState The auth state built from the token
+     * @param expiresAt The time the token expires, in milliseconds since the epoch
+     */
+    public void put(String token, AuthState authState, long expiresAt) {
+        if (maxSize <= 0 || expiresAt <= clock.getAsLong()) {
+            return;
+        }
+        String digest = digest(token);
+        synchronized (authStates) {
+            authStates.put(digest, new CachedAuthState(authState, expiresAt));
+            if (authStates.size() > maxSize) {
+                evict();
+            }
+        }
+    }
+
+
+    /**
+     * Removes every expired token, if the cache hasn't been searched for them recently, and then the least recently
+     * used tokens until the cache is back to its maximum size. Must be called holding the lock on authStates.
+     */
+    private void evict() {
+        long now = clock.getAsLong();
+        if (now >= nextSweepAt) {
+            authStates.values().removeIf(cached -> cached.expiresAt() <= now);
+            nextSweepAt = now + SWEEP_INTERVAL_MILLIS;
+        }
+        Iterator<Map.Entry<String, CachedAuthState>> iterator = authStates.entrySet().iterator();
+        while (authStates.size() > maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+
+    public int size() {
+        synchronized (authStates) {
+            return authStates.size();
+        }
+    }
+
+
+    /**
+     * Hashes a token, so that the cache doesn't hold the tokens themselves.
+     *
+     * @param token The session token
+     * @return The Base64 encoded SHA-256 digest of the token
+     */
+    private static String digest(String token) {
+        return Base64.getEncoder().encodeToString(DigestUtil.sha256(token.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -1,11 +1,17 @@
 package nz.ac.canterbury.seng302.identityprovider.authentication;
 
-import io.jsonwebtoken.MalformedJwtException;
-import io.jsonwebtoken.security.SignatureException;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import nz.ac.canterbury.seng302.shared.identityprovider.AuthState;
 
 public class AuthenticationValidatorUtil {
 
+    /** The most session tokens whose auth states are cached at once, far more than the number of users signed in. */
+    private static final int AUTH_STATE_CACHE_SIZE = 10000;
+
+    /** The auth states of recently validated tokens, so each request with the same token doesn't verify it again. */
+    private static final AuthStateCache authStateCache = new AuthStateCache(AUTH_STATE_CACHE_SIZE);
+
 
     /**
      * Consumes the provided session token in the request body. If the session token is invalid, return an
@@ -16,36 +22,40 @@ public class AuthenticationValidatorUtil {
      * Fields like AuthenticationType, NameClaimType, and RoleClaimType are necessary in other technologies
      * for configuring JWT validation and parsing - just leave them intact and forget about them :)
      *
+     * The token is parsed and verified once, and the auth state of a valid token is cached until the token expires,
+     * so later requests with the same token are a cache lookup.
+     *
      * @param sessionToken The provided session token to validate
      * @return An AuthState derived from validating the token
      */
     public static AuthState validateTokenForAuthState(String sessionToken) {
-        AuthState.Builder reply = AuthState.newBuilder();
-        JwtTokenUtil jwtTokenUtil = JwtTokenUtil.getInstance();
+        AuthState cachedAuthState = authStateCache.get(sessionToken);
+        if (cachedAuthState != null) {
+            return cachedAuthState;
+        }
 
-        boolean tokenIsValid;
+        JwtTokenUtil jwtTokenUtil = JwtTokenUtil.getInstance();
+        Claims claims;
         try {
-            tokenIsValid = jwtTokenUtil.validateToken(sessionToken);
-        } catch (SignatureException | MalformedJwtException e) {
-            // A token is given, that was not valid jwt, has been tampered with, or was not signed with they key we are using.
-            // Currently, we generate a new signing key every time the IdP is started, so this exception can be expected if a browser
-            // is still using a key that was generated by a previous instance of this application.
-            tokenIsValid = false;
+            claims = jwtTokenUtil.parseClaims(sessionToken);
+        } catch (JwtException | IllegalArgumentException e) {
+            // A token is given, that was not valid jwt, has been tampered with, has expired, or was not signed with
+            // the key we are using. Currently, we generate a new signing key every time the IdP is started, so this
+            // exception can be expected if a browser is still using a key that was generated by a previous instance
+            // of this application.
+            return AuthState.newBuilder().setIsAuthenticated(false).build();
         }
 
-        if(!tokenIsValid) {
-            reply.setIsAuthenticated(false);
-        } else {
-            reply.addAllClaims(jwtTokenUtil.getClaimDTOsForAuthStateCheck(sessionToken));
-            reply
+        AuthState authState = AuthState.newBuilder()
+                .addAllClaims(jwtTokenUtil.getClaimDTOsForAuthStateCheck(claims))
                 .setIsAuthenticated(true)
                 .setNameClaimType(JwtTokenUtil.NAME_CLAIM_TYPE)
                 .setRoleClaimType(JwtTokenUtil.ROLE_CLAIM_TYPE)
                 .setAuthenticationType(JwtTokenUtil.AUTHENTICATION_TYPE)
-                .setName(jwtTokenUtil.getNamedClaimFromToken(sessionToken, "name").toString());
-        }
-
-        return reply.build();
+                .setName(claims.get("name").toString())
+                .build();
+        authStateCache.put(sessionToken, authState, claims.getExpiration().getTime());
+        return authState;
     }
 
 }
@@ -1,13 +1,17 @@
 package nz.ac.canterbury.seng302.identityprovider.authentication;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import nz.ac.canterbury.seng302.identityprovider.service.DigestUtil;
 import nz.ac.canterbury.seng302.shared.identityprovider.ClaimDTO;
 
-import javax.crypto.SecretKey;
 import java.io.Serializable;
+import java.security.KeyPair;
+import java.security.PublicKey;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -29,6 +33,7 @@ public class JwtTokenUtil implements Serializable {
 
 	public static final String ROLE_CLAIM_TYPE = "role";
 	public static final String NAME_CLAIM_TYPE = "name";
+	public static final String ROLE_EPOCH_CLAIM_TYPE = "role_epoch";
 	public static final String AUTHENTICATION_TYPE = "AuthenticationTypes.Federation";
 
 	private static final Map<Class, String> jwtValueTypesForJavaClasses = Map.of(
@@ -37,7 +42,72 @@ public class JwtTokenUtil implements Serializable {
 		Integer.class, "http://www.w3.org/2001/XMLSchema#integer"
 	);
 
-    SecretKey key = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+	/**
+	 * Tokens are signed with an asymmetric key, so that clients can verify them with the public key alone. A String
+	 * constant, as the singleton instance is created before any other static field is initialised.
+	 */
+	public static final String SIGNATURE_ALGORITHM = "RS256";
+
+	/**
+	 * The key tokens are currently signed with. Until a shared key is loaded with useKeyPair, a key pair generated for
+	 * this instance is used, so tokens from other instances, or from before a restart, are rejected.
+	 */
+	private transient volatile SigningKey signingKey = new SigningKey(
+			Keys.keyPairFor(SignatureAlgorithm.forName(SIGNATURE_ALGORITHM)));
+
+
+	/**
+	 * A key pair that tokens are signed with.
+	 *
+	 * @param keyId Identifies the key pair, sent as the "kid" header of every token so clients know which key to
+	 *              verify with. Derived from the public key, so every instance sharing the key pair has the same id.
+	 * @param keyPair The key pair, the private half signs tokens and the public half verifies them
+	 * @param parser Verifies tokens signed with the key. Parsers are immutable, so one is shared by every request.
+	 */
+	private record SigningKey(String keyId, KeyPair keyPair, JwtParser parser) {
+
+		SigningKey(KeyPair keyPair) {
+			this(keyIdFor(keyPair.getPublic()), keyPair, Jwts.parserBuilder().setSigningKey(keyPair.getPublic()).build());
+		}
+	}
+
+
+	/**
+	 * Derives a key id from a public key, as the start of the SHA-256 digest of its encoding.
+	 *
+	 * @param publicKey The public half of a signing key pair
+	 * @return The key id
+	 */
+	private static String keyIdFor(PublicKey publicKey) {
+		byte[] digest = DigestUtil.sha256(publicKey.getEncoded());
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16));
+	}
+
+
+	/**
+	 * Signs tokens with the given key pair from now on, so that every IdP instance sharing the key pair accepts each
+	 * other's tokens. Tokens signed with the previous key are no longer accepted.
+	 *
+	 * @param keyPair The key pair to sign and verify tokens with
+	 */
+	public void useKeyPair(KeyPair keyPair) {
+		signingKey = new SigningKey(keyPair);
+	}
+
+
+	public String getKeyId() {
+		return signingKey.keyId();
+	}
+
+
+	/**
+	 * Gets the public key that tokens can be verified with. This is safe to share, it can't be used to sign tokens.
+	 *
+	 * @return The public half of the signing key pair
+	 */
+	public PublicKey getPublicKey() {
+		return signingKey.keyPair().getPublic();
+	}
 
 	// retrieve username from jwt token
 	public String getUsernameFromToken(String token) {
@@ -61,7 +131,18 @@ public class JwtTokenUtil implements Serializable {
 
     // for retrieveing any information from token we will need the secret key
 	private Claims getAllClaimsFromToken(String token) {
-		return Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
+		return parseClaims(token);
+	}
+
+	/**
+	 * Verifies a token's signature and expiry, and gets its claims.
+	 *
+	 * @param token JWT token string
+	 * @return The claims in the token
+	 * @throws JwtException If the token isn't a valid JWT, wasn't signed with our key, or has expired
+	 */
+	public Claims parseClaims(String token) {
+		return signingKey.parser().parseClaimsJws(token).getBody();
 	}
 
 	// check if the token has expired
@@ -99,14 +180,23 @@ public class JwtTokenUtil implements Serializable {
 	 * @return List of ClaimDTOs generated from the session token
 	 */
 	public Collection<ClaimDTO> getClaimDTOsForAuthStateCheck(String token) {
-		Claims claims = getAllClaimsFromToken(token);
+		return getClaimDTOsForAuthStateCheck(getAllClaimsFromToken(token));
+	}
 
+	/**
+	 * Pulls certain expected claims out of already verified claims to form a list of ClaimDTOs.
+	 *
+	 * @param claims The claims of a verified session token
+	 * @return List of ClaimDTOs generated from the claims
+	 */
+	public Collection<ClaimDTO> getClaimDTOsForAuthStateCheck(Claims claims) {
 		return Stream.of(
 			getClaimAsDTO("unique_name", claims),
 			getClaimAsDTO("sub", claims),
 			getClaimAsDTO("nameid", claims),
 			getClaimAsDTO("name", claims),
 			getClaimAsDTO(ROLE_CLAIM_TYPE, claims),
+			getClaimAsDTO(ROLE_EPOCH_CLAIM_TYPE, claims),
 			getClaimAsDTO("nbf", claims),
 			getClaimAsDTO("exp", claims),
 			getClaimAsDTO("iat", claims)
@@ -120,9 +210,12 @@ public class JwtTokenUtil implements Serializable {
 	 * @param userId Internal ID of user assigned by the IdP
 	 * @param nameOfUser The user's name, e.g "John Smith"
 	 * @param roleOfUser The user's role, e.g student, teacher, or course administrator
+	 * @param roleEpoch The user's role epoch, which changes whenever their roles do, so clients can tell when the
+	 *                  roles in the token are out of date
 	 * @return String encoded JWT token
 	 */
-	public String generateTokenForUser(String username, int userId, String nameOfUser, String roleOfUser) {
+	public String generateTokenForUser(String username, int userId, String nameOfUser, String roleOfUser,
+									   int roleEpoch) {
 		Map<String, Object> claims = new HashMap<>();
 
         claims.put("unique_name", username);
@@ -132,14 +225,17 @@ public class JwtTokenUtil implements Serializable {
 		// When assigning multiple roles to a user, encode them as a comma separated list
 		// E.g "student,teacher" or "teacher,courseadministrator,student" (Order doesn't matter)
         claims.put(ROLE_CLAIM_TYPE, roleOfUser);
+		claims.put(ROLE_EPOCH_CLAIM_TYPE, roleEpoch);
 
+		SigningKey key = signingKey;
 		return Jwts.builder()
+				.setHeaderParam("kid", key.keyId())
                 .setClaims(claims)
                 .setSubject(username)
 				.setIssuer("LOCAL AUTHORITY")
                 .setIssuedAt(new Date(System.currentTimeMillis()))
 				.setExpiration(new Date(System.currentTimeMillis() + JWT_TOKEN_VALIDITY * 1000))
-				.signWith(key).compact();
+				.signWith(key.keyPair().getPrivate(), SignatureAlgorithm.forName(SIGNATURE_ALGORITHM)).compact();
     }
 
 	/**
@@ -0,0 +1,123 @@
+package nz.ac.canterbury.seng302.identityprovider.authentication;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Loads the key pair that session tokens are signed with from the file at the tokenSigningKeyPath property, creating
+ * the file with a new key pair if it doesn't exist. Every IdP instance given the same file signs and verifies tokens
+ * with the same key, so tokens survive restarts and are accepted by every replica.
+ *
+ * The file holds the Base64 PKCS#8 encoding of the private key on its first line, and the Base64 X.509 encoding of the
+ * public key on its second. It is a secret, anyone who can read it can sign session tokens.
+ */
+@Component
+public class TokenSigningKeyStore {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** The file the key pair is kept in, or blank to use a key pair generated for this instance. */
+    private final String keyPath;
+
+
+    /**
+     * Autowired constructor, which reads the key's location from the tokenSigningKeyPath property.
+     *
+     * @param env Gives access to the environment variables
+     */
+    @Autowired
+    public TokenSigningKeyStore(Environment env) {
+        this.keyPath = env.getProperty("tokenSigningKeyPath", "");
+    }
+
+
+    /**
+     * Loads the key pair and has the JwtTokenUtil sign tokens with it. Runs before the gRPC server starts, so no token
+     * is signed with the generated key first.
+     *
+     * @throws IOException If the key file can't be read or created
+     * @throws GeneralSecurityException If the key file doesn't hold a valid key pair
+     */
+    @PostConstruct
+    public void loadSigningKey() throws IOException, GeneralSecurityException {
+        if (keyPath.isBlank()) {
+            logger.warn("No tokenSigningKeyPath set, session tokens will be rejected after a restart or by other IdP instances");
+            return;
+        }
+        JwtTokenUtil.getInstance().useKeyPair(loadOrCreate(Path.of(keyPath)));
+        logger.info("Signing session tokens with the key in {}, key id {}", keyPath, JwtTokenUtil.getInstance().getKeyId());
+    }
+
+
+    /**
+     * Reads the key pair in the given file, first creating the file with a new key pair if it doesn't exist. The file
+     * is written to a temporary file and then moved into place, so an instance starting at the same time never reads
+     * half a key; if two instances both create a key pair, the first to move theirs into place wins. Temporary files
+     * are only readable by their owner on POSIX systems, so the key file is too.
+     *
+     * @param path The key file
+     * @return The key pair in the file
+     * @throws IOException If the key file can't be read or created
+     * @throws GeneralSecurityException If the key file doesn't hold a valid key pair
+     */
+    KeyPair loadOrCreate(Path path) throws IOException, GeneralSecurityException {
+        if (!Files.exists(path)) {
+            Path directory = path.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            try {
+                Files.writeString(temporary, encode(Keys.keyPairFor(SignatureAlgorithm.forName(JwtTokenUtil.SIGNATURE_ALGORITHM))));
+                Files.move(temporary, path);
+                logger.info("Created a new token signing key in {}", path);
+            } catch (FileAlreadyExistsException e) {
+                logger.info("Another IdP instance created the token signing key in {} first", path);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+        return decode(Files.readAllLines(path, StandardCharsets.US_ASCII));
+    }
+
+
+    private String encode(KeyPair keyPair) {
+        Base64.Encoder encoder = Base64.getEncoder();
+        return encoder.encodeToString(keyPair.getPrivate().getEncoded()) + "\n"
+                + encoder.encodeToString(keyPair.getPublic().getEncoded()) + "\n";
+    }
+
+
+    private KeyPair decode(List<String> lines) throws GeneralSecurityException {
+        if (lines.size() < 2) {
+            throw new GeneralSecurityException("The token signing key file must hold a private and a public key");
+        }
+        Base64.Decoder decoder = Base64.getDecoder();
+        KeyFactory keyFactory = KeyFactory.getInstance(
+                SignatureAlgorithm.forName(JwtTokenUtil.SIGNATURE_ALGORITHM).getFamilyName());
+        try {
+            return new KeyPair(
+                    keyFactory.generatePublic(new X509EncodedKeySpec(decoder.decode(lines.get(1).trim()))),
+                    keyFactory.generatePrivate(new PKCS8EncodedKeySpec(decoder.decode(lines.get(0).trim()))));
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException("The token signing key file is not Base64 encoded", e);
+        }
+    }
+}
@@ -1,20 +1,34 @@
 package nz.ac.canterbury.seng302.identityprovider.controller;
 
-import org.apache.tomcat.util.http.fileupload.IOUtils;
+import nz.ac.canterbury.seng302.identityprovider.model.User;
+import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
+import nz.ac.canterbury.seng302.identityprovider.service.ProfileImageCache;
+import nz.ac.canterbury.seng302.identityprovider.service.ProfileImageStore;
+import nz.ac.canterbury.seng302.identityprovider.service.ProfileImageVariants;
+import org.apache.catalina.Globals;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
-import org.springframework.http.MediaType;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.ServletWebRequest;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Manages the endpoint for image handling.
@@ -25,40 +39,135 @@ public class ImageController {
     /** For logging the requests related to image endpoints. */
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    /**
+     * Stored images are named by a hash of their content, so their URLs never serve different content and clients may
+     * keep them for a year without revalidating them.
+     */
+    private static final String IMMUTABLE_CACHE_CONTROL =
+            CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().getHeaderValue() + ", immutable";
+
+    /**
+     * Images requested by user id, and the default image, are kept at the same URL when they change, so clients may
+     * store them but must revalidate them, which costs a 304 response while the image is unchanged.
+     */
+    private static final String REVALIDATE_CACHE_CONTROL = CacheControl.noCache().cachePublic().getHeaderValue();
+
+    /** The name of a user's image requested by the user's id, as images were named before they were stored by hash. */
+    private static final Pattern USER_IMAGE = Pattern.compile("(\\d{1,9})\\.jpg");
+
     /** Retrieves the environment variables at runtime. */
     private final Environment env;
 
+    /** Holds the validators, content types and, for small images, content of the recently served images. */
+    private final ProfileImageCache profileImageCache;
+
+    /** Finds the smaller variant of an image to serve for the size it is shown at. */
+    private final ProfileImageVariants profileImageVariants;
+
+    /** Finds the current image of users whose image is requested by their id. */
+    private final UserRepository userRepository;
+
     @Autowired
-    public ImageController(Environment env) {
+    public ImageController(Environment env, ProfileImageCache profileImageCache,
+                           ProfileImageVariants profileImageVariants, UserRepository userRepository) {
         this.env = env;
+        this.profileImageCache = profileImageCache;
+        this.profileImageVariants = profileImageVariants;
+        this.userRepository = userRepository;
     }
 
 
     /**
-     * Processes requests to the profile/{name} endpoint. Creates an image file if one does not already exist.
-     * Retrieves the image at the user's location.
+     * Processes requests to the profile/{name} endpoint. Retrieves the stored image with the given name, which may be
+     * cached forever, or the current image of the user whose id is the name, or the default image if there is no such
+     * image. Given a size, the smallest variant of the image at least that size is
+     * retrieved instead, falling back to the image itself if it has no such variant.
      *
-     * @param name     The name of the file to be retrieved - the same as the user's ID number.
+     * Responses carry an ETag and Last-Modified date, and a request whose If-None-Match or If-Modified-Since header
+     * shows it already has the image gets a 304 response without the image. Small images are sent from memory, and
+     * larger ones are sent by the servlet container straight from the file where it supports it.
+     *
+     * @param name     The name of the file to be retrieved - a hash of its content, or the user's ID number.
+     * @param size     The size in pixels the image is shown at, or null for the image as uploaded.
+     * @param request  The request for the image, with any conditional headers.
      * @param response The response which returns the image to the requester.
      */
-    @RequestMapping("/profile/{name}")
-    public void image(@PathVariable("name") String name, HttpServletResponse response) {
-        logger.info("Retrieving profile image: {}", name);
+    @GetMapping("/profile/{name}")
+    public void image(@PathVariable("name") String name,
+                      @RequestParam(value = "size", required = false) Integer size,
+                      HttpServletRequest request,
+                      HttpServletResponse response) {
+        logger.info("Retrieving profile image: {} at size {}", name, size);
 
-        String photoLocation = env.getProperty("photoLocation", "/src/main/resources/profile-photos/");
-        File image = new File(photoLocation + name);
+        Path photoLocation = Path.of(env.getProperty("photoLocation", "/src/main/resources/profile-photos/"))
+                .toAbsolutePath()
+                .normalize();
+        Path image = null;
+        String cacheControl = REVALIDATE_CACHE_CONTROL;
+        Matcher userImage = USER_IMAGE.matcher(name);
+        if (ProfileImageStore.isStoredImage(name)) {
+            image = photoLocation.resolve(name);
+            cacheControl = IMMUTABLE_CACHE_CONTROL;
+        } else if (userImage.matches()) {
+            User user = userRepository.findById(Integer.parseInt(userImage.group(1)));
+            if (user != null && user.getProfileImage() != null) {
+                image = photoLocation.resolve(user.getProfileImage());
+            }
+        }
 
-        if (!image.exists()) {
+        if (image == null || !Files.isRegularFile(image)) {
             logger.info("profile image does not exist using default image");
-            image = new File(photoLocation + "default.png");
+            image = photoLocation.resolve("default.png");
+            cacheControl = REVALIDATE_CACHE_CONTROL;
+        } else {
+            image = profileImageVariants.resolve(image, size);
         }
 
-        try (InputStream in = new FileInputStream(image)){
-            response.setContentType(MediaType.IMAGE_JPEG_VALUE);
-            response.setContentLengthLong(image.length());
-            IOUtils.copy(in, response.getOutputStream());
+        try {
+            ProfileImageCache.CachedImage cachedImage = profileImageCache.get(image);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+            if (new ServletWebRequest(request, response)
+                    .checkNotModified(cachedImage.eTag(), cachedImage.lastModifiedMillis())) {
+                return;
+            }
+            response.setContentType(cachedImage.contentType().toString());
+            response.setContentLengthLong(cachedImage.size());
+            if (cachedImage.content() != null) {
+                response.getOutputStream().write(cachedImage.content());
+            } else if (Boolean.TRUE.equals(request.getAttribute(Globals.SENDFILE_SUPPORTED_ATTR))) {
+                // Tomcat sends the file itself once the request has been handled, without copying it through the JVM
+                request.setAttribute(Globals.SENDFILE_FILENAME_ATTR, image.toString());
+                request.setAttribute(Globals.SENDFILE_FILE_START_ATTR, 0L);
+                request.setAttribute(Globals.SENDFILE_FILE_END_ATTR, cachedImage.size());
+            } else {
+                transfer(image, cachedImage.size(), Channels.newChannel(response.getOutputStream()));
+            }
         } catch (IOException e) {
             logger.error("Error - {}", e.getMessage());
         }
     }
+
+
+    /**
+     * Writes a file to a channel with FileChannel.transferTo, which lets the operating system copy the file where the
+     * channel supports it.
+     *
+     * @param file The file to write
+     * @param size The number of bytes of the file to write
+     * @param out The channel to write to
+     * @throws IOException If the file can't be read, or the channel written to
+     */
+    private void transfer(Path file, long size, WritableByteChannel out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            long position = 0;
+            while (position < size) {
+                long transferred = channel.transferTo(position, size - position, out);
+                if (transferred <= 0) {
+                    // The file is shorter than when it was cached
+                    break;
+                }
+                position += transferred;
+            }
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package nz.ac.canterbury.seng302.identityprovider.demodata;
 
+import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
 import nz.ac.canterbury.seng302.identityprovider.service.PasswordEncryptionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,23 +30,34 @@ public class DataInitialisationManager {
     /** To add test groups and the default groups. */
     private final TestGroupData testGroupData;
 
+    /** To check whether the data has already been initialised. */
+    private final UserRepository userRepository;
+
     /**
      * Autowired constructor to inject the required services,
      *
      * @param testUserData - The TestUserData service used for adding initial users data
      * @param testGroupData - The TestUserData service used for adding initial group data
+     * @param userRepository - The repository of users, used to check whether the data has already been initialised
      */
     @Autowired
-    public DataInitialisationManager(TestUserData testUserData, TestGroupData testGroupData) {
+    public DataInitialisationManager(TestUserData testUserData, TestGroupData testGroupData,
+                                     UserRepository userRepository) {
         this.testUserData = testUserData;
         this.testGroupData = testGroupData;
+        this.userRepository = userRepository;
     }
 
 
     /**
-     * Delegates the adding of test data, where data is required.
+     * Delegates the adding of test data, where data is required. Nothing is added if the database already has users,
+     * e.g. because it is shared with another IdP replica that has already initialised it.
      */
     public void initialiseData() {
+        if (userRepository.count() > 0) {
+            logger.info("Users already exist, skipping data initialisation");
+            return;
+        }
         try {
             testGroupData.addDefaultGroups();
             if (INCLUDE_TEST_GROUPS)
@@ -9,6 +9,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -104,7 +105,9 @@ public class TestGroupData {
 
     /**
      * Loops through a list that contains every user and filters them into either nonGroupUsers or Teachers.
+     * Transactional so that each user's groups can be loaded.
      */
+    @Transactional
     public void setInitialTeachersAndMWAGGroupMembers() {
         logger.info("Adding Teacher and Members without a group to default groups");
 
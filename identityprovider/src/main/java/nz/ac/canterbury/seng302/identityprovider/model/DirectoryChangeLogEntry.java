@@ -0,0 +1,64 @@
+package nz.ac.canterbury.seng302.identityprovider.model;
+
+import javax.persistence.*;
+
+/**
+ * A record that a user or group has changed, written in the same transaction as the change. Only the id of what
+ * changed is kept, the change itself is read from the user or group when it is published.
+ *
+ * Changes are numbered in the order they're recorded, and the numbers are shared by every IdP replica using the
+ * database, so a client can resume from the last change it saw on whichever replica it reconnects to.
+ */
+@Entity
+@Table(name = "directory_change_log")
+public class DirectoryChangeLogEntry {
+
+    /** What kind of thing changed. */
+    public enum EntityType {
+        USER,
+        GROUP
+    }
+
+    /** The position of this change in the order changes were recorded. */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long sequence;
+
+    /** Whether a user or group changed. */
+    @Enumerated(EnumType.STRING)
+    private EntityType entityType;
+
+    /** The id of the user or group that changed. */
+    private int entityId;
+
+
+    /** The DirectoryChangeLogEntry constructor required by JPA. */
+    protected DirectoryChangeLogEntry() {}
+
+
+    /**
+     * Creates a record of a change, which is given its sequence when saved.
+     *
+     * @param entityType Whether a user or group changed
+     * @param entityId The id of the user or group that changed
+     */
+    public DirectoryChangeLogEntry(EntityType entityType, int entityId) {
+        this.entityType = entityType;
+        this.entityId = entityId;
+    }
+
+
+    public Long getSequence() {
+        return sequence;
+    }
+
+
+    public EntityType getEntityType() {
+        return entityType;
+    }
+
+
+    public int getEntityId() {
+        return entityId;
+    }
+}
@@ -0,0 +1,61 @@
+package nz.ac.canterbury.seng302.identityprovider.model;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * The log of changes to users and groups, read in sequence order to publish them to clients.
+ */
+public interface DirectoryChangeLogRepository extends CrudRepository<DirectoryChangeLogEntry, Long> {
+
+    /**
+     * Gets the next changes after a sequence, in sequence order.
+     *
+     * @param sequence The sequence of the last change already read
+     * @return Up to 500 changes after the sequence
+     */
+    List<DirectoryChangeLogEntry> findTop500BySequenceGreaterThanOrderBySequence(long sequence);
+
+    /**
+     * Gets the changes in a range of sequences, in sequence order. Used to look again for changes that were skipped
+     * because they hadn't committed yet.
+     *
+     * @param from The first sequence in the range
+     * @param to The last sequence in the range
+     * @return The changes in the range that have committed
+     */
+    List<DirectoryChangeLogEntry> findBySequenceBetweenOrderBySequence(long from, long to);
+
+    /**
+     * Gets the highest sequence recorded, without loading the change.
+     *
+     * @return The highest sequence, or null if the log is empty
+     */
+    @Query("SELECT MAX(c.sequence) FROM DirectoryChangeLogEntry c")
+    Long findMaxSequence();
+
+    /**
+     * Gets the lowest sequence still in the log, as the changes before it have been pruned.
+     *
+     * @return The lowest sequence, or null if the log is empty
+     */
+    @Query("SELECT MIN(c.sequence) FROM DirectoryChangeLogEntry c")
+    Long findMinSequence();
+
+    /**
+     * Removes the changes up to a sequence, so the log doesn't grow forever. Clients that have been disconnected since
+     * before the sequence get a snapshot instead when they reconnect.
+     *
+     * @param sequence The highest sequence to remove
+     * @return The number of changes removed
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM DirectoryChangeLogEntry c WHERE c.sequence <= :sequence")
+    int deleteUpTo(@Param("sequence") long sequence);
+}
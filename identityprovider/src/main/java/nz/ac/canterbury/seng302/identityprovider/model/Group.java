@@ -3,11 +3,14 @@ package nz.ac.canterbury.seng302.identityprovider.model;
 import javax.persistence.*;
 
 import nz.ac.canterbury.seng302.shared.identityprovider.GroupDetailsResponse;
+import nz.ac.canterbury.seng302.shared.identityprovider.UserResponse;
 import org.hibernate.annotations.Fetch;
 import org.hibernate.annotations.FetchMode;
 
-import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
 
 /**
  * Object representation of a group of users.
@@ -21,13 +24,16 @@ public class Group {
     @GeneratedValue(strategy = GenerationType.SEQUENCE)
     private Integer id;
 
-    /** A list of the users in the group. */
+    /**
+     * The users in the group. This is a set so that membership checks are hash lookups, and so that Hibernate changes
+     * single rows of group_members rather than deleting and re-inserting every row whenever a member is removed.
+     */
     @ManyToMany
     @Fetch(FetchMode.JOIN)
     @JoinTable(name = "group_members",
             joinColumns = @JoinColumn(name = "groupId"),
             inverseJoinColumns = @JoinColumn(name = "userId"))
-    private List<User> userList = new ArrayList<>();
+    private Set<User> userList = new LinkedHashSet<>();
 
     /** The group's short name. */
     private String shortName;
@@ -71,7 +77,7 @@ public class Group {
     }
 
 
-    public List<User> getUserList() {
+    public Set<User> getUserList() {
         return this.userList;
     }
 
@@ -127,11 +133,7 @@ public class Group {
      * @param users A list of the users to be added.
      */
     public void addGroupMembers(List<User> users) {
-        for (User user : users) {
-            if (!userList.contains(user)) {
-                userList.add(user);
-            }
-        }
+        userList.addAll(users);
     }
 
 
@@ -141,25 +143,23 @@ public class Group {
      * @param user The user to be added
      */
     public void addGroupMember(User user) {
-        if (!userList.contains(user)) {
-            userList.add(user);
-        }
+        userList.add(user);
     }
 
 
     /**
      * Converts this group to a GroupDetailsResponse.
      *
+     * @param toUserResponse - Gets the UserResponse of each member, e.g. from the UserResponseCache.
      * @return GroupDetailsResponse - the GroupDetailsResponse equivalent of this group.
      */
-    public GroupDetailsResponse groupDetailsResponse() {
+    public GroupDetailsResponse groupDetailsResponse(Function<User, UserResponse> toUserResponse) {
         GroupDetailsResponse.Builder response = GroupDetailsResponse.newBuilder()
                 .setLongName(this.getLongName())
                 .setShortName(this.getShortName())
                 .setGroupId(this.getId());
-        List<User> groupMembers = this.getUserList();
-        for (User user : groupMembers) {
-            response.addMembers(user.userResponse());
+        for (User user : this.getUserList()) {
+            response.addMembers(toUserResponse.apply(user));
         }
 
         return response.build();
@@ -1,14 +1,22 @@
 package nz.ac.canterbury.seng302.identityprovider.model;
 
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
  * Represents the repository which stores the groups' data.
+ *
+ * Membership changes are made with the bulk statements on group_members below rather than through Group.userList, so
+ * that moving a whole class between groups is a few statements instead of loading and changing every member. They
+ * flush before running and clear the persistence context after, so no loaded group is left with stale members.
  */
-public interface GroupRepository extends CrudRepository<Group, Integer> {
+public interface GroupRepository extends CrudRepository<Group, Integer>, GroupRepositoryCustom {
 
     /**
      * Gets a group by its short name, if it exists.
@@ -36,4 +44,157 @@ public interface GroupRepository extends CrudRepository<Group, Integer> {
      */
     @Query
     Group getGroupById(Integer groupId);
+
+    /**
+     * Gets the id and names of a group by its ID, without loading its members.
+     *
+     * @param groupId The ID of the group.
+     * @return The optional of the group's names. The optional is empty if the group doesn't exist.
+     */
+    Optional<GroupNamesView> findNamesById(Integer groupId);
+
+    /**
+     * Gets the id and names of a group by its short name, without loading its members.
+     *
+     * @param shortName The short name of the group.
+     * @return The optional of the group's names. The optional is empty if the group doesn't exist.
+     */
+    Optional<GroupNamesView> findNamesByShortName(String shortName);
+
+    /**
+     * Counts the members of a group, without loading them.
+     *
+     * @param groupId The ID of the group.
+     * @return The number of members in the group, 0 if the group doesn't exist.
+     */
+    @Query(value = "SELECT COUNT(*) FROM group_members WHERE group_id = :groupId", nativeQuery = true)
+    int countGroupMembers(@Param("groupId") int groupId);
+
+    /**
+     * Gets the id and names of every group, without loading their members.
+     *
+     * @return The names of every group.
+     */
+    @Query("SELECT g.id AS id, g.shortName AS shortName, g.longName AS longName FROM Group g")
+    List<GroupNamesView> findAllNames();
+
+    /**
+     * Gets the ids of the members of a group, without loading them.
+     *
+     * @param groupId The ID of the group.
+     * @return The ids of the group's members, empty if the group doesn't exist.
+     */
+    @Query(value = "SELECT user_id FROM group_members WHERE group_id = :groupId", nativeQuery = true)
+    List<Integer> findMemberIds(@Param("groupId") int groupId);
+
+    /**
+     * Gets every membership of every group, so all the groups' members can be read in one statement.
+     *
+     * @return Each user's membership of each of their groups.
+     */
+    @Query(value = "SELECT group_id AS groupId, user_id AS userId FROM group_members", nativeQuery = true)
+    List<GroupMemberView> findAllMemberships();
+
+    /**
+     * Gets the ids of the groups any of the given users are in, e.g. to find the groups a membership change affects.
+     *
+     * @param userIds The ids of the users.
+     * @return The ids of the groups containing at least one of the users.
+     */
+    @Query(value = "SELECT DISTINCT group_id FROM group_members WHERE user_id IN (:userIds)", nativeQuery = true)
+    List<Integer> findGroupIdsOfUsers(@Param("userIds") Collection<Integer> userIds);
+
+    /**
+     * Adds users to a group, skipping users who are already members and ids that aren't users.
+     *
+     * @param groupId The ID of the group.
+     * @param userIds The IDs of the users to add.
+     * @return The number of users added.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "INSERT INTO group_members (group_id, user_id) " +
+                   "SELECT :groupId, u.id FROM user_table u WHERE u.id IN (:userIds) " +
+                   "AND NOT EXISTS (SELECT 1 FROM group_members m WHERE m.group_id = :groupId AND m.user_id = u.id)",
+           nativeQuery = true)
+    int addGroupMembers(@Param("groupId") int groupId, @Param("userIds") Collection<Integer> userIds);
+
+    /**
+     * Adds the users who are not in any group to a group, e.g. to Members Without A Group.
+     *
+     * @param groupId The ID of the group.
+     * @param userIds The IDs of the users to add if they have no group.
+     * @return The number of users added.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "INSERT INTO group_members (group_id, user_id) " +
+                   "SELECT :groupId, u.id FROM user_table u WHERE u.id IN (:userIds) " +
+                   "AND NOT EXISTS (SELECT 1 FROM group_members m WHERE m.user_id = u.id)",
+           nativeQuery = true)
+    int addUngroupedUsers(@Param("groupId") int groupId, @Param("userIds") Collection<Integer> userIds);
+
+    /**
+     * Adds the members of a group who are in no other group to another group, e.g. before the group is deleted.
+     *
+     * @param groupId The ID of the group whose members are moved.
+     * @param toGroupId The ID of the group to add them to.
+     * @return The number of users added.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "INSERT INTO group_members (group_id, user_id) " +
+                   "SELECT :toGroupId, m.user_id FROM group_members m WHERE m.group_id = :groupId " +
+                   "AND NOT EXISTS (SELECT 1 FROM group_members o WHERE o.user_id = m.user_id AND o.group_id <> :groupId)",
+           nativeQuery = true)
+    int addSoleMembersTo(@Param("groupId") int groupId, @Param("toGroupId") int toGroupId);
+
+    /**
+     * Removes users from a group.
+     *
+     * @param groupId The ID of the group.
+     * @param userIds The IDs of the users to remove.
+     * @return The number of users removed.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM group_members WHERE group_id = :groupId AND user_id IN (:userIds)", nativeQuery = true)
+    int removeGroupMembers(@Param("groupId") int groupId, @Param("userIds") Collection<Integer> userIds);
+
+    /**
+     * Removes every member of a group.
+     *
+     * @param groupId The ID of the group.
+     * @return The number of users removed.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM group_members WHERE group_id = :groupId", nativeQuery = true)
+    int removeAllGroupMembers(@Param("groupId") int groupId);
+
+    /**
+     * Removes users from every group except one.
+     *
+     * @param userIds The IDs of the users.
+     * @param keptGroupId The ID of the group the users stay in, if they are in it.
+     * @return The number of memberships removed.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM group_members WHERE user_id IN (:userIds) AND group_id <> :keptGroupId", nativeQuery = true)
+    int removeFromGroupsOtherThan(@Param("userIds") Collection<Integer> userIds, @Param("keptGroupId") int keptGroupId);
+
+    /**
+     * The id and names of a group.
+     */
+    interface GroupNamesView {
+        Integer getId();
+
+        String getShortName();
+
+        String getLongName();
+    }
+
+    /**
+     * A user's membership of a group.
+     */
+    interface GroupMemberView {
+        Integer getGroupId();
+
+        Integer getUserId();
+    }
 }
@@ -0,0 +1,21 @@
+package nz.ac.canterbury.seng302.identityprovider.model;
+
+import java.util.List;
+
+/**
+ * Queries on groups that Spring can't derive from a method name, implemented in {@link GroupRepositoryCustomImpl}.
+ */
+public interface GroupRepositoryCustom {
+
+    /**
+     * Gets a page of group summaries sorted by the given key, skipping the first offset groups. The member counts are
+     * worked out by the database, so no members are loaded.
+     *
+     * @param sortKey The order to sort the groups by
+     * @param isAscending Whether the order is ascending or descending
+     * @param offset The number of groups to skip
+     * @param limit The maximum number of groups to return
+     * @return The summaries of the groups on the requested page, in order
+     */
+    List<GroupSummary> findGroupSummaryPage(GroupSortKey sortKey, boolean isAscending, int offset, int limit);
+}
@@ -0,0 +1,30 @@
+package nz.ac.canterbury.seng302.identityprovider.model;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+
+/**
+ * Implements the group queries which depend on the requested sort order. The JPQL is built from the GroupSortKey
+ * expressions, never from client input.
+ */
+public class GroupRepositoryCustomImpl implements GroupRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+
+    @Override
+    public List<GroupSummary> findGroupSummaryPage(GroupSortKey sortKey, boolean isAscending, int offset, int limit) {
+        String direction = isAscending ? "ASC" : "DESC";
+        String jpql = "SELECT new nz.ac.canterbury.seng302.identityprovider.model.GroupSummary(" +
+                "g.id, g.shortName, g.longName, COUNT(u)) " +
+                "FROM Group g LEFT JOIN g.userList u " +
+                "GROUP BY g.id, g.shortName, g.longName " +
+                "ORDER BY " + sortKey.getExpression() + " " + direction + ", g.id " + direction;
+        return entityManager.createQuery(jpql, GroupSummary.class)
+                .setFirstResult(offset)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+}
@@ -0,0 +1,50 @@
+package nz.ac.canterbury.seng302.identityprovider.model;
+
+/**
+ * The orders the group list can be sorted by. Each order maps the orderBy string sent by the client to the JPQL
+ * expression that is sorted on in the group summary query.
+ */
+public enum GroupSortKey {
+
+    SHORT_NAME("shortName", "LOWER(g.shortName)"),
+    LONG_NAME("longName", "LOWER(g.longName)"),
+    MEMBERS_NUMBER("membersNumber", "COUNT(u)");
+
+    /** The orderBy value the client sends to select this order. */
+    private final String orderBy;
+
+    /** The JPQL expression sorted on, where g is the group and u its members. */
+    private final String expression;
+
+
+    GroupSortKey(String orderBy, String expression) {
+        this.orderBy = orderBy;
+        this.expression = expression;
+    }
+
+
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+
+    public String getExpression() {
+        return expression;
+    }
+
+
+    /**
+     * Finds the sort key for an orderBy string, defaulting to short name as the group list always has.
+     *
+     * @param orderBy The orderBy value sent by the client
+     * @return The matching sort key, or SHORT_NAME if there is no match
+     */
+    public static GroupSortKey fromOrderBy(String orderBy) {
+        for (GroupSortKey sortKey : values()) {
+            if (sortKey.orderBy.equals(orderBy)) {
+                return sortKey;
+            }
+        }
+        return SHORT_NAME;
+    }
+}
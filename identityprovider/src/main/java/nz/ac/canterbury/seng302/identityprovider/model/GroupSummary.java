@@ -0,0 +1,28 @@
+package nz.ac.canterbury.seng302.identityprovider.model;
+
+import nz.ac.canterbury.seng302.shared.identityprovider.GroupSummaryResponse;
+
+/**
+ * The details of a group shown in the group list, without its members.
+ *
+ * @param id The ID of the group
+ * @param shortName The group's short name
+ * @param longName The group's long name
+ * @param membersNumber The number of users in the group
+ */
+public record GroupSummary(int id, String shortName, String longName, long membersNumber) {
+
+    /**
+     * Converts the summary into the GroupSummaryResponse sent to the client.
+     *
+     * @return The GroupSummaryResponse for this group
+     */
+    public GroupSummaryResponse groupSummaryResponse() {
+        return GroupSummaryResponse.newBuilder()
+                .setGroupId(id)
+                .setShortName(shortName)
+                .setLongName(longName)
+                .setMembersNumber((int) membersNumber)
+                .build();
+    }
+}
@@ -4,19 +4,17 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.google.protobuf.Timestamp;
 import nz.ac.canterbury.seng302.identityprovider.service.LoginService;
 import nz.ac.canterbury.seng302.identityprovider.service.PasswordEncryptionException;
+import nz.ac.canterbury.seng302.identityprovider.service.ProfileImageVariants;
 import nz.ac.canterbury.seng302.identityprovider.service.TimeService;
 import nz.ac.canterbury.seng302.identityprovider.service.UrlUtil;
 import nz.ac.canterbury.seng302.shared.identityprovider.UserResponse;
 import nz.ac.canterbury.seng302.shared.identityprovider.UserRole;
-import org.springframework.core.env.Environment;
 
 import javax.persistence.*;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 
 /**
  * The object used to store Users in the database
@@ -26,9 +24,24 @@ import java.util.Locale;
  * contract.
  */
 @Entity
-@Table(name = "user_table")
+@Table(name = "user_table", indexes = {
+        @Index(name = "idx_user_first_name_sort", columnList = "first_name_sort_key, id"),
+        @Index(name = "idx_user_middle_name_sort", columnList = "middle_name_sort_key, id"),
+        @Index(name = "idx_user_last_name_sort", columnList = "last_name_sort_key, id"),
+        @Index(name = "idx_user_username_sort", columnList = "username_sort_key, id"),
+        @Index(name = "idx_user_alias_sort", columnList = "alias_sort_key, id"),
+        @Index(name = "idx_user_role_precedence", columnList = "role_precedence, id")
+})
 public class User {
 
+    /** The maximum stored length of a sort key, long enough for four concatenated name fields. */
+    private static final int SORT_KEY_LENGTH = 500;
+
+    /** The weight of each role in the role precedence. Each is a separate bit, so the roles can be read back out. */
+    private static final int STUDENT_WEIGHT = 1;
+    private static final int TEACHER_WEIGHT = 2;
+    private static final int COURSE_ADMINISTRATOR_WEIGHT = 4;
+
     @Id
     @GeneratedValue
     private int id;
@@ -52,8 +65,43 @@ public class User {
 
     private final ArrayList<UserRole> roles = new ArrayList<>();
 
+    /**
+     * Pre-computed, lower case sort keys for each of the orders the user list supports. These are kept up to date by
+     * the setters so that the database can page through users using an index, rather than loading every user.
+     */
+    @Column(name = "first_name_sort_key", length = SORT_KEY_LENGTH)
+    private String firstNameSortKey;
+
+    @Column(name = "middle_name_sort_key", length = SORT_KEY_LENGTH)
+    private String middleNameSortKey;
+
+    @Column(name = "last_name_sort_key", length = SORT_KEY_LENGTH)
+    private String lastNameSortKey;
+
+    @Column(name = "username_sort_key", length = SORT_KEY_LENGTH)
+    private String usernameSortKey;
+
+    @Column(name = "alias_sort_key", length = SORT_KEY_LENGTH)
+    private String aliasSortKey;
+
+    /** The sum of the user's role weights, higher means more privileged roles. Used to sort by roles. */
+    @Column(name = "role_precedence")
+    private int rolePrecedence;
+
+    /** Incremented whenever the user's roles change, so session tokens issued with the old roles can be told apart. */
+    @Column(name = "role_epoch")
+    private int roleEpoch;
+
+    /**
+     * The file name of the user's profile image, which is named by a hash of its content so that its URL never serves
+     * different content. Null if the user has no profile image.
+     */
+    @Column(name = "profile_image")
+    private String profileImage;
+
+    /** The groups the user is in. Lazy, so that loading a page of users doesn't load every member of their groups. */
     @JsonIgnore
-    @ManyToMany(mappedBy = "userList", fetch = FetchType.EAGER)
+    @ManyToMany(mappedBy = "userList", fetch = FetchType.LAZY)
     private final List<Group> groups = new ArrayList<>();
 
 
@@ -86,6 +134,8 @@ public class User {
         this.email = email;
         this.roles.add(UserRole.STUDENT); //To automatically assign a new user as a student, subject to change
         this.accountCreatedTime = TimeService.getTimeStamp();
+        updateSortKeys();
+        updateRolePrecedence();
 
         LoginService encryptor = new LoginService();
 
@@ -179,21 +229,25 @@ public class User {
 
     public void setFirstName(String firstName) {
         this.firstName = firstName;
+        updateSortKeys();
     }
 
 
     public void setMiddleName(String middleName) {
         this.middleName = middleName;
+        updateSortKeys();
     }
 
 
     public void setLastName(String lastName) {
         this.lastName = lastName;
+        updateSortKeys();
     }
 
 
     public void setNickname(String nickname) {
         this.nickname = nickname;
+        updateSortKeys();
     }
 
 
@@ -226,6 +280,7 @@ public class User {
     public void addRole(UserRole role) {
         if (! roles.contains(role)) {
             roles.add(role);
+            updateRolePrecedence();
         }
     }
 
@@ -242,18 +297,132 @@ public class User {
             throw new IllegalStateException("You can't have a user with 0 Roles!");
         } else {
             roles.remove(role);
+            updateRolePrecedence();
         }
     }
 
 
+    public String getFirstNameSortKey() {
+        return firstNameSortKey;
+    }
+
+
+    public String getMiddleNameSortKey() {
+        return middleNameSortKey;
+    }
+
+
+    public String getLastNameSortKey() {
+        return lastNameSortKey;
+    }
+
+
+    public String getUsernameSortKey() {
+        return usernameSortKey;
+    }
+
+
+    public String getAliasSortKey() {
+        return aliasSortKey;
+    }
+
+
+    public int getRolePrecedence() {
+        return rolePrecedence;
+    }
+
+
+    public int getRoleEpoch() {
+        return roleEpoch;
+    }
+
+
+    /**
+     * Marks the user's roles as changed, so that session tokens issued before the change are known to be stale.
+     */
+    public void incrementRoleEpoch() {
+        roleEpoch++;
+    }
+
+
+    /**
+     * Recalculates the sort keys and role precedence from the user's fields, for users saved before they were stored.
+     */
+    public void refreshSortKeys() {
+        updateSortKeys();
+        updateRolePrecedence();
+    }
+
+
+    /**
+     * Recalculates the name based sort keys. Each key is the lower case field being sorted on, followed by the other
+     * name fields to decide the order when the sorted field is the same.
+     */
+    private void updateSortKeys() {
+        String first = lowerCase(firstName);
+        String middle = lowerCase(middleName);
+        String last = lowerCase(lastName);
+
+        firstNameSortKey = first + ' ' + middle + ' ' + last;
+        middleNameSortKey = middle + ' ' + first + ' ' + last;
+        lastNameSortKey = last + ' ' + first + ' ' + middle;
+        usernameSortKey = lowerCase(username);
+        aliasSortKey = lowerCase(nickname) + ' ' + first + ' ' + middle + ' ' + last;
+    }
+
+
+    /**
+     * Recalculates the role precedence, where students are worth 1, teachers 2 and course administrators 4.
+     */
+    private void updateRolePrecedence() {
+        rolePrecedence = (roles.contains(UserRole.STUDENT) ? STUDENT_WEIGHT : 0) +
+                         (roles.contains(UserRole.TEACHER) ? TEACHER_WEIGHT : 0) +
+                         (roles.contains(UserRole.COURSE_ADMINISTRATOR) ? COURSE_ADMINISTRATOR_WEIGHT : 0);
+    }
+
+
+    /**
+     * Checks if a role precedence includes the teacher role, so that teachers can be found without loading the users.
+     *
+     * @param rolePrecedence A role precedence, as stored in the role_precedence column
+     * @return True if the user with this precedence is a teacher
+     */
+    public static boolean isTeacherPrecedence(int rolePrecedence) {
+        return (rolePrecedence & TEACHER_WEIGHT) != 0;
+    }
+
+
+    private static String lowerCase(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+
+    /**
+     * Gets the path of the user's profile image on the IdP, which is the shared default image if the user has none.
+     *
+     * @return The path of the image, relative to the IdP's root path
+     */
     public String getProfileImagePath() {
-        return "/profile/" + id + ".jpg";
+        return "/profile/" + (profileImage == null ? "default.png" : profileImage);
+    }
+
+
+    public String getProfileImage() {
+        return profileImage;
+    }
+
+
+    public void setProfileImage(String profileImage) {
+        this.profileImage = profileImage;
     }
 
 
-    public void deleteProfileImage(Environment env) throws IOException {
-        String photoLocation = env.getProperty("photoLocation", "src/main/resources/profile-photos/");
-        Files.delete(Path.of(photoLocation + id + ".jpg"));
+    /**
+     * Removes the user's profile image. The image file is left for the ProfileImageStore to delete once no user has
+     * it, as other users may have the same image.
+     */
+    public void deleteProfileImage() {
+        profileImage = null;
     }
 
 
@@ -274,7 +443,9 @@ public class User {
                 .setEmail(this.getEmail())
                 .setCreated(this.getAccountCreatedTime())
                 .setId(this.getId())
-                .setProfileImagePath(UrlUtil.getUrlService().getProfileURL(this).toString());
+                .setProfileImagePath(UrlUtil.getUrlService().getProfileURL(this).toString())
+                .setLargeProfileImagePath(UrlUtil.getUrlService()
+                        .getProfileURL(this, ProfileImageVariants.LARGE_SIZE).toString());
 
         // To add all the users roles to the response
         for (UserRole role : this.getRoles()) {
@@ -297,4 +468,13 @@ public class User {
 
         return CharSequence.compare(username, u.username) == 0;
     }
+
+
+    /**
+     * Hashes the username, consistent with equals, so that users can be kept in hash sets such as group memberships.
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(username);
+    }
 }
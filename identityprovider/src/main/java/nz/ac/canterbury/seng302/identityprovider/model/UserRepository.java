@@ -1,6 +1,13 @@
 package nz.ac.canterbury.seng302.identityprovider.model;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
 
 /**
  * Interface that defines how to interact with the database. Spring boot does the hard work under the hood
@@ -8,7 +15,7 @@ import org.springframework.data.repository.CrudRepository;
  *
  * @see  <a href="https://spring.io/guides/gs/accessing-data-jpa">https://spring.io/guides/gs/accessing-data-jpa/</a>
  */
-public interface UserRepository extends CrudRepository <User, Integer> {
+public interface UserRepository extends CrudRepository <User, Integer>, UserRepositoryCustom {
     /**
      * Gets a user object from the database using the ID.
      *
@@ -24,4 +31,98 @@ public interface UserRepository extends CrudRepository <User, Integer> {
      * @return A user object, or null if none exist with that username.
      */
     User findByUsername(String username);
+
+    /**
+     * Gets the given users that are members of a group, e.g. to check if a user is in a group without loading the
+     * rest of its members.
+     *
+     * @param groupId The ID of the group
+     * @param ids The ids of the users
+     * @return The given users who are members of the group
+     */
+    @Query("SELECT u FROM User u JOIN u.groups g WHERE g.id = :groupId AND u.id IN (:ids)")
+    List<User> findGroupMembersByIdIn(@Param("groupId") int groupId, @Param("ids") Collection<Integer> ids);
+
+    /**
+     * Gets the profile image file names that at least one user has, without loading the rest of each user.
+     *
+     * @return The file name of every profile image in use
+     */
+    @Query("SELECT DISTINCT u.profileImage FROM User u WHERE u.profileImage IS NOT NULL")
+    List<String> findAllProfileImages();
+
+    /**
+     * Gets the ids of the users whose sort keys or role precedence haven't been stored, e.g. users saved before the
+     * columns were added, which were added to their rows empty.
+     *
+     * @return The ids of the users whose sort keys need to be calculated
+     */
+    @Query(value = "SELECT id FROM user_table WHERE first_name_sort_key IS NULL OR middle_name_sort_key IS NULL " +
+                   "OR last_name_sort_key IS NULL OR username_sort_key IS NULL OR alias_sort_key IS NULL " +
+                   "OR role_precedence IS NULL OR role_precedence = 0",
+           nativeQuery = true)
+    List<Integer> findIdsWithoutSortKeys();
+
+    /**
+     * Sets the role precedences that were added empty to 0, so the users can be loaded and their precedence
+     * calculated.
+     *
+     * @return The number of users changed
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE user_table SET role_precedence = 0 WHERE role_precedence IS NULL", nativeQuery = true)
+    int clearNullRolePrecedences();
+
+    /**
+     * Sets a user's password hash in its own transaction, without writing the rest of the user, so that changes made
+     * to the user while their new password was being hashed aren't overwritten.
+     *
+     * @param id The id of the user
+     * @param pwhash The hash of the user's new password
+     * @return The number of users changed
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.pwhash = :pwhash WHERE u.id = :id")
+    int updatePasswordHash(@Param("id") int id, @Param("pwhash") String pwhash);
+
+    /**
+     * Gets the ids and role epochs of the users whose role epochs are greater than the given epoch, without loading
+     * the rest of each user.
+     *
+     * @param roleEpoch The epoch to compare against, 0 for every user whose roles have changed
+     * @return The id and role epoch of each matching user
+     */
+    List<RoleEpochView> findByRoleEpochGreaterThan(int roleEpoch);
+
+    /**
+     * The id and role epoch of a user.
+     */
+    interface RoleEpochView {
+        int getId();
+
+        int getRoleEpoch();
+    }
+
+    /**
+     * Gets the ids and role precedences of the given users, without loading the rest of each user or their groups.
+     *
+     * @param ids The ids of the users
+     * @return The id and role precedence of each user that exists
+     */
+    List<RolePrecedenceView> findRolePrecedenceByIdIn(Collection<Integer> ids);
+
+    /**
+     * The id and role precedence of a user.
+     */
+    interface RolePrecedenceView {
+        int getId();
+
+        int getRolePrecedence();
+
+        default boolean isTeacher() {
+            return User.isTeacherPrecedence(getRolePrecedence());
+        }
+    }
 }
@@ -0,0 +1,61 @@
+package nz.ac.canterbury.seng302.identityprovider.model;
+
+import java.util.List;
+
+/**
+ * Queries on users that Spring can't derive from a method name, implemented in {@link UserRepositoryCustomImpl}.
+ */
+public interface UserRepositoryCustom {
+
+    /**
+     * Gets a page of users sorted by the given key, skipping the first offset users.
+     *
+     * @param sortKey The order to sort the users by
+     * @param isAscending Whether the order is ascending or descending
+     * @param offset The number of users to skip
+     * @param limit The maximum number of users to return
+     * @return The users on the requested page, in order
+     */
+    List<User> findUserPage(UserSortKey sortKey, boolean isAscending, int offset, int limit);
+
+    /**
+     * Gets the page of users that directly follows the given user in the given order. Because this seeks straight to
+     * the last user's position in the sort key index, it costs the same no matter how far through the list it is.
+     *
+     * @param sortKey The order to sort the users by
+     * @param isAscending Whether the order is ascending or descending
+     * @param lastKey The sort key of the last user on the previous page
+     * @param lastId The id of the last user on the previous page
+     * @param limit The maximum number of users to return
+     * @return The users after the given user, in order
+     */
+    List<User> findUserPageAfter(UserSortKey sortKey, boolean isAscending, Object lastKey, int lastId, int limit);
+
+
+    /**
+     * Gets a page of the members of a group sorted by the given key, skipping the first offset members. Only the
+     * members on the page are loaded, not the whole group.
+     *
+     * @param groupId The ID of the group
+     * @param sortKey The order to sort the members by
+     * @param isAscending Whether the order is ascending or descending
+     * @param offset The number of members to skip
+     * @param limit The maximum number of members to return
+     * @return The members on the requested page, in order
+     */
+    List<User> findGroupMemberPage(int groupId, UserSortKey sortKey, boolean isAscending, int offset, int limit);
+
+    /**
+     * Gets the page of the members of a group that directly follows the given member in the given order.
+     *
+     * @param groupId The ID of the group
+     * @param sortKey The order to sort the members by
+     * @param isAscending Whether the order is ascending or descending
+     * @param lastKey The sort key of the last member on the previous page
+     * @param lastId The id of the last member on the previous page
+     * @param limit The maximum number of members to return
+     * @return The members after the given member, in order
+     */
+    List<User> findGroupMemberPageAfter(int groupId, UserSortKey sortKey, boolean isAscending, Object lastKey,
+                                        int lastId, int limit);
+}
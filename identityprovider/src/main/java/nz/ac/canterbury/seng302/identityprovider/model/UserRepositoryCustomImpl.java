@@ -0,0 +1,98 @@
+package nz.ac.canterbury.seng302.identityprovider.model;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.util.List;
+
+/**
+ * Implements the user queries which depend on the requested sort order. The JPQL is built from the UserSortKey
+ * property names, never from client input, so every order is backed by its sort key index.
+ */
+public class UserRepositoryCustomImpl implements UserRepositoryCustom {
+
+    /** Selects every user. */
+    private static final String ALL_USERS = "SELECT u FROM User u WHERE 1 = 1 ";
+
+    /** Selects the members of the group given by the groupId parameter. */
+    private static final String GROUP_MEMBERS = "SELECT u FROM User u JOIN u.groups g WHERE g.id = :groupId ";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+
+    @Override
+    public List<User> findUserPage(UserSortKey sortKey, boolean isAscending, int offset, int limit) {
+        String jpql = ALL_USERS + orderByClause(sortKey, isAscending);
+        return entityManager.createQuery(jpql, User.class)
+                .setFirstResult(offset)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+
+    @Override
+    public List<User> findUserPageAfter(UserSortKey sortKey, boolean isAscending, Object lastKey, int lastId, int limit) {
+        String jpql = ALL_USERS + afterClause(sortKey, isAscending) + orderByClause(sortKey, isAscending);
+        TypedQuery<User> query = entityManager.createQuery(jpql, User.class)
+                .setParameter("lastKey", lastKey)
+                .setParameter("lastId", lastId)
+                .setMaxResults(limit);
+        return query.getResultList();
+    }
+
+
+    @Override
+    public List<User> findGroupMemberPage(int groupId, UserSortKey sortKey, boolean isAscending, int offset, int limit) {
+        String jpql = GROUP_MEMBERS + orderByClause(sortKey, isAscending);
+        return entityManager.createQuery(jpql, User.class)
+                .setParameter("groupId", groupId)
+                .setFirstResult(offset)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+
+    @Override
+    public List<User> findGroupMemberPageAfter(int groupId, UserSortKey sortKey, boolean isAscending, Object lastKey,
+                                               int lastId, int limit) {
+        String jpql = GROUP_MEMBERS + afterClause(sortKey, isAscending) + orderByClause(sortKey, isAscending);
+        TypedQuery<User> query = entityManager.createQuery(jpql, User.class)
+                .setParameter("groupId", groupId)
+                .setParameter("lastKey", lastKey)
+                .setParameter("lastId", lastId)
+                .setMaxResults(limit);
+        return query.getResultList();
+    }
+
+
+    /**
+     * Builds the condition that keeps only the users after the one given by the lastKey and lastId parameters.
+     *
+     * @param sortKey The order to sort the users by
+     * @param isAscending Whether the order is ascending or descending
+     * @return The condition, to follow a WHERE clause
+     */
+    private String afterClause(UserSortKey sortKey, boolean isAscending) {
+        String key = "u." + sortKey.getProperty();
+        String keyComparison = sortKey.isKeyAscending(isAscending) ? ">" : "<";
+        String idComparison = isAscending ? ">" : "<";
+        return "AND (" + key + " " + keyComparison + " :lastKey " +
+                "OR (" + key + " = :lastKey AND u.id " + idComparison + " :lastId)) ";
+    }
+
+
+    /**
+     * Builds the ORDER BY clause for a sort key. Users with the same key are ordered by id, so that every user has a
+     * unique position to continue on from.
+     *
+     * @param sortKey The order to sort the users by
+     * @param isAscending Whether the order is ascending or descending
+     * @return The ORDER BY clause
+     */
+    private String orderByClause(UserSortKey sortKey, boolean isAscending) {
+        String keyDirection = sortKey.isKeyAscending(isAscending) ? "ASC" : "DESC";
+        String idDirection = isAscending ? "ASC" : "DESC";
+        return "ORDER BY u." + sortKey.getProperty() + " " + keyDirection + ", u.id " + idDirection;
+    }
+}
@@ -0,0 +1,98 @@
+package nz.ac.canterbury.seng302.identityprovider.model;
+
+/**
+ * The orders the user list can be sorted by. Each order maps the orderBy string sent by the client to the User
+ * property holding its pre-computed sort key.
+ */
+public enum UserSortKey {
+
+    FIRST_NAME("firstname", "firstNameSortKey", false),
+    MIDDLE_NAME("middlename", "middleNameSortKey", false),
+    LAST_NAME("lastname", "lastNameSortKey", false),
+    USERNAME("username", "usernameSortKey", false),
+    ALIAS("aliases", "aliasSortKey", false),
+    ROLES("roles", "rolePrecedence", true);
+
+    /** The orderBy value the client sends to select this order. */
+    private final String orderBy;
+
+    /** The name of the User property that is sorted on. */
+    private final String property;
+
+    /** True if an ascending sort should list the highest key first, e.g. the most privileged roles first. */
+    private final boolean keyDescendingWhenAscending;
+
+
+    UserSortKey(String orderBy, String property, boolean keyDescendingWhenAscending) {
+        this.orderBy = orderBy;
+        this.property = property;
+        this.keyDescendingWhenAscending = keyDescendingWhenAscending;
+    }
+
+
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+
+    public String getProperty() {
+        return property;
+    }
+
+
+    /**
+     * Works out if the sort key itself should be in ascending order for the requested direction.
+     *
+     * @param isAscending The direction requested by the client
+     * @return True if the key should be ordered from smallest to largest
+     */
+    public boolean isKeyAscending(boolean isAscending) {
+        return isAscending != keyDescendingWhenAscending;
+    }
+
+
+    /**
+     * Gets the value of this sort key for the given user.
+     *
+     * @param user The user to get the key of
+     * @return The user's sort key, a String for name orders and an Integer for roles
+     */
+    public Object getKey(User user) {
+        return switch (this) {
+            case FIRST_NAME -> user.getFirstNameSortKey();
+            case MIDDLE_NAME -> user.getMiddleNameSortKey();
+            case LAST_NAME -> user.getLastNameSortKey();
+            case USERNAME -> user.getUsernameSortKey();
+            case ALIAS -> user.getAliasSortKey();
+            case ROLES -> user.getRolePrecedence();
+        };
+    }
+
+
+    /**
+     * Converts a key previously written with String.valueOf back into the type stored for this sort key.
+     *
+     * @param key The string form of the key
+     * @return The key as the type used by the database
+     * @throws NumberFormatException If this is the roles order and the key is not a number
+     */
+    public Object parseKey(String key) {
+        return this == ROLES ? Integer.valueOf(key) : key;
+    }
+
+
+    /**
+     * Finds the sort key for an orderBy string, defaulting to first name as the user list always has.
+     *
+     * @param orderBy The orderBy value sent by the client
+     * @return The matching sort key, or FIRST_NAME if there is no match
+     */
+    public static UserSortKey fromOrderBy(String orderBy) {
+        for (UserSortKey sortKey : values()) {
+            if (sortKey.orderBy.equals(orderBy)) {
+                return sortKey;
+            }
+        }
+        return FIRST_NAME;
+    }
+}
@@ -1,6 +1,8 @@
 package nz.ac.canterbury.seng302.identityprovider.service;
 
+import com.google.protobuf.ByteString;
 import com.google.protobuf.Empty;
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import net.devh.boot.grpc.server.service.GrpcService;
 import nz.ac.canterbury.seng302.identityprovider.model.User;
@@ -11,10 +13,13 @@ import nz.ac.canterbury.seng302.shared.identityprovider.AuthState;
 import nz.ac.canterbury.seng302.shared.identityprovider.AuthenticateRequest;
 import nz.ac.canterbury.seng302.shared.identityprovider.AuthenticateResponse;
 import nz.ac.canterbury.seng302.shared.identityprovider.AuthenticationServiceGrpc.AuthenticationServiceImplBase;
+import nz.ac.canterbury.seng302.shared.identityprovider.TokenVerificationKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.concurrent.RejectedExecutionException;
+
 
 /**
  * The Server side gRPC service used to authenticate users, both attempting to login and
@@ -33,6 +38,10 @@ public class AuthenticateServerService extends AuthenticationServiceImplBase{
     @Autowired
     private UserRepository repository;
 
+    /** Hashes the attempted passwords off the gRPC handler threads. */
+    @Autowired
+    private PasswordHashingExecutor passwordHashingExecutor;
+
     /**
      * Attempts to authenticate a user with a given username and password.
      *
@@ -40,24 +49,36 @@ public class AuthenticateServerService extends AuthenticationServiceImplBase{
      * This user is then passed to the LoginController to check if the request forms a valid login.
      * Depending on the Login status returned from the LoginService, one of 3 helper methods is called to form
      * the request response.
+     *
+     * The password is checked on the PasswordHashingExecutor, and the response is sent once it has been checked. If
+     * too many passwords are already waiting to be checked, the request fails with RESOURCE_EXHAUSTED.
      */
     @Override
     public void authenticate(AuthenticateRequest request, StreamObserver<AuthenticateResponse> responseObserver) {
         logger.info("SERVICE - Authenticating user with username: {}", request.getUsername());
-        AuthenticateResponse.Builder reply = AuthenticateResponse.newBuilder();
-
         User foundUser = repository.findByUsername(request.getUsername());
-        LoginService service = new LoginService();
-        LoginService.LoginStatus status = service.checkLogin(foundUser, request);
 
-        switch (status) {
-            case VALID -> setSuccessReply(foundUser, reply);
-            case USER_INVALID -> setNoUserReply(request.getUsername(), reply);
-            case PASSWORD_INVALID -> setBadPasswordReply(reply);
+        try {
+            passwordHashingExecutor.submit(() -> new LoginService().checkLogin(foundUser, request))
+                    .whenComplete((status, error) -> passwordHashingExecutor.respond(responseObserver, () -> {
+                        if (error != null) {
+                            logger.error("SERVICE - Authentication failed: {}", error.getMessage());
+                            responseObserver.onError(Status.INTERNAL.withDescription("Could not check password")
+                                    .asRuntimeException());
+                            return;
+                        }
+                        AuthenticateResponse.Builder reply = AuthenticateResponse.newBuilder();
+                        switch (status) {
+                            case VALID -> setSuccessReply(foundUser, reply);
+                            case USER_INVALID -> setNoUserReply(request.getUsername(), reply);
+                            case PASSWORD_INVALID -> setBadPasswordReply(reply);
+                        }
+                        responseObserver.onNext(reply.build());
+                        responseObserver.onCompleted();
+                    }));
+        } catch (RejectedExecutionException exception) {
+            responseObserver.onError(PasswordHashingExecutor.rejectedStatus());
         }
-
-        responseObserver.onNext(reply.build());
-        responseObserver.onCompleted();
     }
 
 
@@ -73,6 +94,22 @@ public class AuthenticateServerService extends AuthenticationServiceImplBase{
     }
 
 
+    /**
+     * Sends the public key that session tokens are signed with, so that clients can verify tokens themselves rather
+     * than calling checkAuthState for every request. Every IdP instance sharing a tokenSigningKeyPath has the same key,
+     * but the key can still change, so clients should fetch it again when they see a token with a different key id.
+     */
+    @Override
+    public void getTokenVerificationKey(Empty request, StreamObserver<TokenVerificationKey> responseObserver) {
+        responseObserver.onNext(TokenVerificationKey.newBuilder()
+                .setKeyId(jwtTokenService.getKeyId())
+                .setAlgorithm(JwtTokenUtil.SIGNATURE_ALGORITHM)
+                .setPublicKey(ByteString.copyFrom(jwtTokenService.getPublicKey().getEncoded()))
+                .build());
+        responseObserver.onCompleted();
+    }
+
+
     /**
      * Helper function for the authenticate method. This is called when a user enters the correct
      * login details, to set the reply details to reflect a successful login response
@@ -85,7 +122,8 @@ public class AuthenticateServerService extends AuthenticationServiceImplBase{
                 foundUser.getUsername(),
                 foundUser.getId(),
                 foundUser.getFirstName() + " " + foundUser.getLastName(),
-                foundUser.getRolesCsv()
+                foundUser.getRolesCsv(),
+                foundUser.getRoleEpoch()
         );
 
         reply
@@ -0,0 +1,39 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Creates the SHA-256 digests the IdP hashes profile images, session tokens and signing keys with.
+ */
+public class DigestUtil {
+
+    private DigestUtil() {
+    }
+
+
+    /**
+     * Creates a new SHA-256 digest, which can be updated as content is read.
+     *
+     * @return A SHA-256 digest
+     */
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * Hashes the given content with SHA-256.
+     *
+     * @param content The content to hash
+     * @return The SHA-256 digest of the content
+     */
+    public static byte[] sha256(byte[] content) {
+        return newSha256().digest(content);
+    }
+}
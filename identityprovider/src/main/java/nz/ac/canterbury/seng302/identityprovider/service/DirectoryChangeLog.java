@@ -0,0 +1,102 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import nz.ac.canterbury.seng302.identityprovider.model.DirectoryChangeLogEntry;
+import nz.ac.canterbury.seng302.identityprovider.model.DirectoryChangeLogRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records every change to a user or group in the directory change log, for the DirectoryChangePublisher to send to
+ * clients watching the directory. Anything that changes a user's UserResponse or role epoch, or a group's names or
+ * members, must record it.
+ *
+ * When called during a transaction, the record is part of the transaction, so a change is recorded if and only if it
+ * commits. When called during a gRPC call, the change's sequence is sent back to the client when the call ends, by the
+ * DirectorySequenceServerInterceptor.
+ */
+@Service
+public class DirectoryChangeLog {
+
+    /** Where the changes are recorded. */
+    private final DirectoryChangeLogRepository directoryChangeLogRepository;
+
+    /** Told about each change once it commits, so it is published without waiting for the next poll. */
+    private final DirectoryChangePublisher directoryChangePublisher;
+
+
+    /**
+     * Creates a log that records changes to the given repository.
+     *
+     * @param directoryChangeLogRepository Where the changes are recorded
+     * @param directoryChangePublisher Publishes the recorded changes
+     */
+    public DirectoryChangeLog(DirectoryChangeLogRepository directoryChangeLogRepository,
+                              DirectoryChangePublisher directoryChangePublisher) {
+        this.directoryChangeLogRepository = directoryChangeLogRepository;
+        this.directoryChangePublisher = directoryChangePublisher;
+    }
+
+
+    /**
+     * Records that a user has changed.
+     *
+     * @param userId The id of the user
+     */
+    public void recordUserChange(int userId) {
+        record(List.of(new DirectoryChangeLogEntry(DirectoryChangeLogEntry.EntityType.USER, userId)));
+    }
+
+
+    /**
+     * Records that a group has changed, including being created or deleted.
+     *
+     * @param groupId The id of the group
+     */
+    public void recordGroupChange(int groupId) {
+        recordGroupChanges(List.of(groupId));
+    }
+
+
+    /**
+     * Records that several groups have changed, e.g. all the groups a membership change moved users out of.
+     *
+     * @param groupIds The ids of the groups
+     */
+    public void recordGroupChanges(Collection<Integer> groupIds) {
+        if (groupIds.isEmpty()) {
+            return;
+        }
+        record(groupIds.stream()
+                .map(groupId -> new DirectoryChangeLogEntry(DirectoryChangeLogEntry.EntityType.GROUP, groupId))
+                .toList());
+    }
+
+
+    private void record(List<DirectoryChangeLogEntry> entries) {
+        directoryChangeLogRepository.saveAll(entries);
+        AtomicLong writtenSequence = DirectorySequenceServerInterceptor.WRITTEN_SEQUENCE.get();
+        if (writtenSequence != null) {
+            for (DirectoryChangeLogEntry entry : entries) {
+                // The entries are given their sequences as they are inserted
+                if (entry.getSequence() != null) {
+                    writtenSequence.accumulateAndGet(entry.getSequence(), Math::max);
+                }
+            }
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    directoryChangePublisher.pollSoon();
+                }
+            });
+        } else {
+            directoryChangePublisher.pollSoon();
+        }
+    }
+}
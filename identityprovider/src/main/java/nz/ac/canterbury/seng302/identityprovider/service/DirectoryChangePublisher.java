@@ -0,0 +1,658 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import nz.ac.canterbury.seng302.identityprovider.model.DirectoryChangeLogEntry;
+import nz.ac.canterbury.seng302.identityprovider.model.DirectoryChangeLogRepository;
+import nz.ac.canterbury.seng302.identityprovider.model.GroupRepository;
+import nz.ac.canterbury.seng302.identityprovider.model.User;
+import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
+import nz.ac.canterbury.seng302.shared.identityprovider.DirectoryChange;
+import nz.ac.canterbury.seng302.shared.identityprovider.DirectoryChangesResponse;
+import nz.ac.canterbury.seng302.shared.identityprovider.DirectoryGroup;
+import nz.ac.canterbury.seng302.shared.identityprovider.DirectoryUser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Streams the directory change log to every client watching the directory with WatchDirectoryChanges, so clients can
+ * keep their own copy of the users and groups instead of asking the IdP for them.
+ *
+ * Changes are read from the log by a single polling thread, which every IdP replica sharing the database runs, so a
+ * client sees the changes made on every replica whichever one it is connected to. The thread is woken as soon as a
+ * change commits on this replica, and otherwise polls every directoryChangePollMillis. Each change is sent with the
+ * current state of the user or group, read when it is sent, so a client that applies the changes in order ends up
+ * with the current directory.
+ *
+ * A new subscriber is sent the changes after the sequence it asked for if they are still in the log, or a snapshot of
+ * the whole directory otherwise. New subscribers are served on the polling thread too, so a subscriber is never sent a
+ * change out of order. A snapshot is sent only as fast as the subscriber is ready for it, then the subscriber is sent
+ * the changes published while it was being sent. While nothing changes, an empty response is sent every few seconds
+ * so clients can tell the stream is still up.
+ *
+ * A sequence that is still missing after the gap timeout is skipped, but is looked for again for a while after, and
+ * is published if its transaction turns out to have committed late.
+ */
+@Service
+public class DirectoryChangePublisher {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** The most changes sent in one response. */
+    private static final int BATCH_SIZE = 500;
+
+    /** How long the stream can go without a response before an empty one is sent. */
+    private static final long HEARTBEAT_INTERVAL_MILLIS = 2000;
+
+    /** How often old changes are pruned from the log. */
+    private static final long PRUNE_INTERVAL_MILLIS = 60_000;
+
+    /** How long a skipped sequence is looked for after it is skipped, in case its transaction commits late. */
+    private static final long SKIPPED_RECHECK_MILLIS = 10 * 60_000L;
+
+    /** The log of changes to publish. */
+    private final DirectoryChangeLogRepository directoryChangeLogRepository;
+
+    /** Used to read the changed users. */
+    private final UserRepository userRepository;
+
+    /** Used to read the changed groups and their members. */
+    private final GroupRepository groupRepository;
+
+    /** Used to build the UserResponses of the changed users. */
+    private final UserResponseCache userResponseCache;
+
+    /** How often the log is polled when nothing wakes the polling thread, or 0 to only poll when poll is called. */
+    private final long pollIntervalMillis;
+
+    /**
+     * How long a missing sequence is waited for before it is skipped. A sequence goes missing when the transaction
+     * given it is still running while later ones commit, or when it rolls back.
+     */
+    private final long gapTimeoutMillis;
+
+    /** The number of changes kept in the log for reconnecting clients, or 0 to never prune the log. */
+    private final long retainedChanges;
+
+    /** The streams of the clients receiving changes. */
+    private final Set<ServerCallStreamObserver<DirectoryChangesResponse>> subscribers = new CopyOnWriteArraySet<>();
+
+    /** The clients waiting to be sent the changes they missed, or a snapshot. */
+    private final Queue<PendingSubscriber> pendingSubscribers = new ConcurrentLinkedQueue<>();
+
+    /** The ranges of missing sequences that were skipped, still being looked for. Only used by the polling thread. */
+    private final List<SkippedRange> skippedRanges = new ArrayList<>();
+
+    /** The sequence of the last change sent to the subscribers. Only changed by the polling thread. */
+    private volatile long publishedSequence = 0;
+
+    /** The missing sequence being waited for, or 0 if none is. Only used by the polling thread. */
+    private long gapSequence = 0;
+
+    /** When the missing sequence was first noticed. Only used by the polling thread. */
+    private long gapNoticedMillis = 0;
+
+    /**
+     * The published sequence when a skipped change was last published late, or 0 if none has been. A client that
+     * resumes from this sequence or before may have missed the late change. Only used by the polling thread.
+     */
+    private long lateChangeSequence = 0;
+
+    /** The number of times skipped changes have been published late. Only used by the polling thread. */
+    private long lateChangeCount = 0;
+
+    /** When a response was last sent to the subscribers. Only used by the polling thread. */
+    private long lastSentMillis = 0;
+
+    /** When the log was last pruned. Only used by the polling thread. */
+    private long lastPrunedMillis = 0;
+
+    /** Runs the polls, or null if not polling. */
+    private ScheduledExecutorService poller;
+
+
+    /**
+     * A client that has asked to watch the directory but hasn't been caught up yet.
+     *
+     * @param subscriber The client's subscription
+     * @param afterSequence The sequence the client asked to resume from, or the sequence of the snapshot it was sent
+     * @param snapshotSent True if the client has been sent a snapshot, so can resume from its sequence even if it is 0
+     */
+    private record PendingSubscriber(Subscriber subscriber, long afterSequence, boolean snapshotSent) {}
+
+
+    /**
+     * A range of missing sequences that was skipped, and which of them have since been found and published.
+     *
+     * @param from The first skipped sequence
+     * @param to The last skipped sequence
+     * @param skippedMillis When the range was skipped
+     * @param found The sequences in the range that have since been published
+     */
+    private record SkippedRange(long from, long to, long skippedMillis, Set<Long> found) {}
+
+
+    /**
+     * Autowired constructor, which reads the poll interval, gap timeout and log size from the
+     * directoryChangePollMillis, directoryChangeGapTimeoutMillis and directoryChangeLogSize properties.
+     *
+     * @param directoryChangeLogRepository The log of changes
+     * @param userRepository Used to read the changed users
+     * @param groupRepository Used to read the changed groups
+     * @param userResponseCache Used to build the UserResponses of the changed users
+     * @param env Gives access to the environment variables
+     */
+    @Autowired
+    public DirectoryChangePublisher(DirectoryChangeLogRepository directoryChangeLogRepository,
+                                    UserRepository userRepository,
+                                    GroupRepository groupRepository, UserResponseCache userResponseCache,
+                                    Environment env) {
+        this(directoryChangeLogRepository, userRepository, groupRepository, userResponseCache,
+                Long.parseLong(env.getProperty("directoryChangePollMillis", "500")),
+                Long.parseLong(env.getProperty("directoryChangeGapTimeoutMillis", "5000")),
+                Long.parseLong(env.getProperty("directoryChangeLogSize", "10000")));
+    }
+
+
+    /**
+     * Creates a publisher with the given poll interval, gap timeout and log size.
+     *
+     * @param directoryChangeLogRepository The log of changes
+     * @param userRepository Used to read the changed users
+     * @param groupRepository Used to read the changed groups
+     * @param userResponseCache Used to build the UserResponses of the changed users
+     * @param pollIntervalMillis How often to poll the log, or 0 to only poll when poll is called
+     * @param gapTimeoutMillis How long to wait for a missing sequence before skipping it
+     * @param retainedChanges The number of changes to keep in the log, or 0 to never prune it
+     */
+    public DirectoryChangePublisher(DirectoryChangeLogRepository directoryChangeLogRepository,
+                                    UserRepository userRepository,
+                                    GroupRepository groupRepository, UserResponseCache userResponseCache,
+                                    long pollIntervalMillis, long gapTimeoutMillis, long retainedChanges) {
+        this.directoryChangeLogRepository = directoryChangeLogRepository;
+        this.userRepository = userRepository;
+        this.groupRepository = groupRepository;
+        this.userResponseCache = userResponseCache;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.gapTimeoutMillis = gapTimeoutMillis;
+        this.retainedChanges = retainedChanges;
+    }
+
+
+    /**
+     * Starts publishing from the end of the log, and starts polling it if a poll interval is set. Changes recorded
+     * before startup are only sent to clients resuming from before them.
+     */
+    @PostConstruct
+    public void start() {
+        Long maxSequence = directoryChangeLogRepository.findMaxSequence();
+        publishedSequence = maxSequence == null ? 0 : maxSequence;
+        lastSentMillis = System.currentTimeMillis();
+        if (pollIntervalMillis <= 0) {
+            return;
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "directory-change-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::pollSafely, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("Polling directory changes every {}ms from sequence {}", pollIntervalMillis, publishedSequence);
+    }
+
+
+    @PreDestroy
+    public void stop() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Subscribes a client to the directory's changes. The client is sent the changes after the given sequence, or a
+     * snapshot if they are no longer in the log, then every change as it happens until it cancels the call.
+     *
+     * @param afterSequence The sequence of the last change the client has, or 0 for a snapshot
+     * @param observer The stream of the client's WatchDirectoryChanges call
+     */
+    public void subscribe(long afterSequence, ServerCallStreamObserver<DirectoryChangesResponse> observer) {
+        Subscriber subscriber = new Subscriber(observer);
+        observer.setOnCancelHandler(() -> subscribers.remove(observer));
+        observer.setOnReadyHandler(subscriber);
+        pendingSubscribers.add(new PendingSubscriber(subscriber, afterSequence, false));
+        pollSoon();
+    }
+
+
+    /**
+     * Wakes the polling thread, e.g. because a change has been committed. Does nothing if not polling.
+     */
+    public void pollSoon() {
+        if (poller == null) {
+            return;
+        }
+        try {
+            poller.execute(this::pollSafely);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+
+    private void pollSafely() {
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            // Keep polling, the next poll carries on from the last change published
+            logger.warn("Could not poll directory changes: {}", e.getMessage());
+        }
+    }
+
+
+    /**
+     * Publishes the changes recorded since the last poll and any skipped changes that have since committed, then
+     * catches up the new subscribers, then sends the empty response that shows the stream is up if nothing has been
+     * sent for a while.
+     */
+    synchronized void poll() {
+        publishChanges();
+        publishLateChanges();
+        PendingSubscriber pending;
+        while ((pending = pendingSubscribers.poll()) != null) {
+            catchUp(pending);
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastSentMillis >= HEARTBEAT_INTERVAL_MILLIS) {
+            broadcast(DirectoryChangesResponse.newBuilder()
+                    .setIsUpToDate(true)
+                    .setSequence(publishedSequence)
+                    .build());
+        }
+        if (retainedChanges > 0 && now - lastPrunedMillis >= PRUNE_INTERVAL_MILLIS) {
+            lastPrunedMillis = now;
+            if (publishedSequence > retainedChanges) {
+                directoryChangeLogRepository.deleteUpTo(publishedSequence - retainedChanges);
+            }
+        }
+    }
+
+
+    /**
+     * Sends the subscribers the changes after the last one published, in sequence order. Stops at a missing sequence
+     * until it either commits or has been missing for the gap timeout.
+     */
+    private void publishChanges() {
+        List<DirectoryChangeLogEntry> changes;
+        do {
+            changes = directoryChangeLogRepository.findTop500BySequenceGreaterThanOrderBySequence(publishedSequence);
+            List<DirectoryChangeLogEntry> published = new ArrayList<>();
+            long sequence = publishedSequence;
+            for (DirectoryChangeLogEntry change : changes) {
+                if (change.getSequence() != sequence + 1) {
+                    if (!gapTimedOut(sequence + 1)) {
+                        break;
+                    }
+                    skippedRanges.add(new SkippedRange(sequence + 1, change.getSequence() - 1,
+                            System.currentTimeMillis(), new HashSet<>()));
+                }
+                published.add(change);
+                sequence = change.getSequence();
+            }
+            if (published.isEmpty()) {
+                return;
+            }
+            DirectoryChangesResponse.Builder response = DirectoryChangesResponse.newBuilder()
+                    .setIsUpToDate(true)
+                    .setSequence(sequence);
+            addChanges(response, published);
+            publishedSequence = sequence;
+            broadcast(response.build());
+            logger.info("Published directory changes up to sequence {}", sequence);
+        } while (changes.size() == BATCH_SIZE);
+    }
+
+
+    /**
+     * Checks whether a missing sequence has been waited for long enough to skip it.
+     *
+     * @param sequence The missing sequence
+     * @return True if the sequence should be skipped
+     */
+    private boolean gapTimedOut(long sequence) {
+        long now = System.currentTimeMillis();
+        if (gapSequence != sequence) {
+            gapSequence = sequence;
+            gapNoticedMillis = now;
+        }
+        if (now - gapNoticedMillis < gapTimeoutMillis) {
+            return false;
+        }
+        logger.warn("Skipping missing directory change {}", sequence);
+        return true;
+    }
+
+
+    /**
+     * Looks again for the skipped sequences, and publishes any that have committed since they were skipped. Each
+     * change is sent with the current state of its user or group, so it can be applied out of order. A range is
+     * given up on once all of it is found, or it was skipped SKIPPED_RECHECK_MILLIS ago, as its transaction most
+     * likely rolled back.
+     */
+    private void publishLateChanges() {
+        if (skippedRanges.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<DirectoryChangeLogEntry> lateChanges = new ArrayList<>();
+        Iterator<SkippedRange> ranges = skippedRanges.iterator();
+        while (ranges.hasNext()) {
+            SkippedRange range = ranges.next();
+            for (DirectoryChangeLogEntry change :
+                    directoryChangeLogRepository.findBySequenceBetweenOrderBySequence(range.from(), range.to())) {
+                if (range.found().add(change.getSequence())) {
+                    lateChanges.add(change);
+                }
+            }
+            boolean allFound = range.found().size() > range.to() - range.from();
+            if (allFound || now - range.skippedMillis() >= SKIPPED_RECHECK_MILLIS) {
+                ranges.remove();
+            }
+        }
+        if (lateChanges.isEmpty()) {
+            return;
+        }
+        lateChanges.sort(Comparator.comparing(DirectoryChangeLogEntry::getSequence));
+        DirectoryChangesResponse.Builder response = DirectoryChangesResponse.newBuilder()
+                .setIsUpToDate(true)
+                .setSequence(publishedSequence);
+        addChanges(response, lateChanges);
+        lateChangeSequence = publishedSequence;
+        lateChangeCount++;
+        broadcast(response.build());
+        logger.info("Published {} directory changes that committed after being skipped", lateChanges.size());
+    }
+
+
+    /**
+     * Sends a new subscriber the changes it missed if they're still in the log, otherwise a snapshot, then adds it
+     * to the subscribers.
+     *
+     * @param pending The new subscriber
+     */
+    private void catchUp(PendingSubscriber pending) {
+        Subscriber subscriber = pending.subscriber();
+        if (!canReplayFrom(pending)) {
+            subscriber.startSnapshot(readSnapshot(), publishedSequence, lateChangeCount);
+            return;
+        }
+        if (replay(subscriber.observer, pending.afterSequence())) {
+            subscribers.add(subscriber.observer);
+            logger.info("Directory subscriber added from sequence {}, {} subscribers",
+                    pending.afterSequence(), subscribers.size());
+        }
+    }
+
+
+    /**
+     * Checks whether every change after a sequence that has been published is still in the log. A sequence ahead of
+     * the log comes from a database that has since been reset, so can't be resumed from either. Nor can a sequence
+     * from before a skipped change was published late, or a snapshot sent while one was, as the client may have
+     * missed the late change.
+     *
+     * @param pending The new subscriber, with the sequence it asked to resume from or was sent a snapshot at
+     * @return True if the client can be sent the changes it missed
+     */
+    private boolean canReplayFrom(PendingSubscriber pending) {
+        long afterSequence = pending.afterSequence();
+        if (pending.snapshotSent()) {
+            if (pending.subscriber().snapshotLateChangeCount != lateChangeCount) {
+                return false;
+            }
+        } else if (afterSequence <= 0 || afterSequence <= lateChangeSequence) {
+            return false;
+        }
+        if (afterSequence > publishedSequence) {
+            return false;
+        }
+        if (afterSequence == publishedSequence) {
+            return true;
+        }
+        Long minSequence = directoryChangeLogRepository.findMinSequence();
+        return minSequence != null && minSequence <= afterSequence + 1;
+    }
+
+
+    /**
+     * Sends a subscriber the published changes after a sequence.
+     *
+     * @param observer The subscriber's stream
+     * @param afterSequence The sequence of the last change the subscriber has
+     * @return False if the subscriber's call has ended
+     */
+    private boolean replay(ServerCallStreamObserver<DirectoryChangesResponse> observer, long afterSequence) {
+        long sequence = afterSequence;
+        while (sequence < publishedSequence) {
+            long from = sequence;
+            List<DirectoryChangeLogEntry> changes = directoryChangeLogRepository
+                    .findTop500BySequenceGreaterThanOrderBySequence(from).stream()
+                    .filter(change -> change.getSequence() <= publishedSequence)
+                    .toList();
+            if (changes.isEmpty()) {
+                break;
+            }
+            sequence = changes.get(changes.size() - 1).getSequence();
+            DirectoryChangesResponse.Builder response = DirectoryChangesResponse.newBuilder().setSequence(sequence);
+            addChanges(response, changes);
+            if (!send(observer, response.build())) {
+                return false;
+            }
+        }
+        return send(observer, DirectoryChangesResponse.newBuilder()
+                .setIsUpToDate(true)
+                .setSequence(publishedSequence)
+                .build());
+    }
+
+
+    /**
+     * Reads every user and group to send as a snapshot. The directory is read as it is now, so may include changes
+     * after the published sequence, which are sent again when they are published.
+     *
+     * @return A change for every user and group
+     */
+    private List<DirectoryChange> readSnapshot() {
+        long sequence = publishedSequence;
+        List<DirectoryChange> snapshot = new ArrayList<>();
+        for (User user : userRepository.findAll()) {
+            snapshot.add(userChange(sequence, user));
+        }
+        Map<Integer, List<Integer>> memberIds = new HashMap<>();
+        for (GroupRepository.GroupMemberView membership : groupRepository.findAllMemberships()) {
+            memberIds.computeIfAbsent(membership.getGroupId(), id -> new ArrayList<>()).add(membership.getUserId());
+        }
+        for (GroupRepository.GroupNamesView group : groupRepository.findAllNames()) {
+            snapshot.add(groupChange(sequence, group, memberIds.getOrDefault(group.getId(), List.of())));
+        }
+        return snapshot;
+    }
+
+
+    /**
+     * Adds the current state of each changed user and group to a response. A user or group changed several times is
+     * only added once, at its last change.
+     *
+     * @param response The response to add to
+     * @param changes The changes from the log, in sequence order
+     */
+    private void addChanges(DirectoryChangesResponse.Builder response, List<DirectoryChangeLogEntry> changes) {
+        Map<String, DirectoryChangeLogEntry> lastChanges = new LinkedHashMap<>();
+        for (DirectoryChangeLogEntry change : changes) {
+            String key = change.getEntityType() + ":" + change.getEntityId();
+            lastChanges.remove(key);
+            lastChanges.put(key, change);
+        }
+        for (DirectoryChangeLogEntry change : lastChanges.values()) {
+            long sequence = change.getSequence();
+            if (change.getEntityType() == DirectoryChangeLogEntry.EntityType.USER) {
+                User user = userRepository.findById(change.getEntityId());
+                if (user != null) {
+                    response.addChanges(userChange(sequence, user));
+                }
+            } else {
+                Optional<GroupRepository.GroupNamesView> group = groupRepository.findNamesById(change.getEntityId());
+                response.addChanges(group.isPresent()
+                        ? groupChange(sequence, group.get(), groupRepository.findMemberIds(change.getEntityId()))
+                        : DirectoryChange.newBuilder()
+                                .setSequence(sequence)
+                                .setDeletedGroupId(change.getEntityId())
+                                .build());
+            }
+        }
+    }
+
+
+    private DirectoryChange userChange(long sequence, User user) {
+        return DirectoryChange.newBuilder()
+                .setSequence(sequence)
+                .setUser(DirectoryUser.newBuilder()
+                        .setUser(userResponseCache.get(user))
+                        .setRoleEpoch(user.getRoleEpoch()))
+                .build();
+    }
+
+
+    private DirectoryChange groupChange(
+            long sequence, GroupRepository.GroupNamesView group, List<Integer> memberIds) {
+        return DirectoryChange.newBuilder()
+                .setSequence(sequence)
+                .setGroup(DirectoryGroup.newBuilder()
+                        .setGroupId(group.getId())
+                        .setShortName(group.getShortName())
+                        .setLongName(group.getLongName())
+                        .addAllMemberIds(memberIds))
+                .build();
+    }
+
+
+    private void broadcast(DirectoryChangesResponse response) {
+        for (ServerCallStreamObserver<DirectoryChangesResponse> subscriber : subscribers) {
+            send(subscriber, response);
+        }
+        lastSentMillis = System.currentTimeMillis();
+    }
+
+
+    /**
+     * Sends a response to a subscriber, dropping the subscriber if its call has ended. gRPC streams can't be written
+     * to by two threads at once, so each send holds the lock on the subscriber's stream.
+     *
+     * @param subscriber The stream of a subscribed client
+     * @param response The response to send
+     * @return False if the subscriber has been dropped
+     */
+    private boolean send(ServerCallStreamObserver<DirectoryChangesResponse> subscriber,
+                         DirectoryChangesResponse response) {
+        synchronized (subscriber) {
+            if (subscriber.isCancelled()) {
+                subscribers.remove(subscriber);
+                return false;
+            }
+            try {
+                subscriber.onNext(response);
+                return true;
+            } catch (RuntimeException e) {
+                logger.warn("Dropping directory subscriber: {}", e.getMessage());
+                subscribers.remove(subscriber);
+                return false;
+            }
+        }
+    }
+
+
+    /**
+     * A client's subscription, which sends it a snapshot a batch at a time for as long as it is ready to receive
+     * more. gRPC runs this again each time the client becomes ready. Once the whole snapshot is sent, the client is
+     * queued to be sent the changes published since the snapshot was read.
+     */
+    private final class Subscriber implements Runnable {
+
+        /** The stream of the client's WatchDirectoryChanges call. */
+        private final ServerCallStreamObserver<DirectoryChangesResponse> observer;
+
+        /** The snapshot being sent, or null if none is. */
+        private List<DirectoryChange> snapshot = null;
+
+        /** The published sequence when the snapshot was read. */
+        private long snapshotSequence = 0;
+
+        /** The number of the snapshot's changes sent so far. */
+        private int snapshotPosition = 0;
+
+        /** The number of times skipped changes had been published late when the snapshot was read. */
+        private long snapshotLateChangeCount = 0;
+
+
+        private Subscriber(ServerCallStreamObserver<DirectoryChangesResponse> observer) {
+            this.observer = observer;
+        }
+
+
+        /**
+         * Starts sending a snapshot, sending as much of it as the client is ready for now.
+         *
+         * @param changes A change for every user and group
+         * @param sequence The published sequence when the snapshot was read
+         * @param lateChanges The number of times skipped changes had been published late when it was read
+         */
+        synchronized void startSnapshot(List<DirectoryChange> changes, long sequence, long lateChanges) {
+            snapshot = changes;
+            snapshotSequence = sequence;
+            snapshotLateChangeCount = lateChanges;
+            snapshotPosition = 0;
+            run();
+        }
+
+
+        @Override
+        public synchronized void run() {
+            while (snapshot != null && observer.isReady()) {
+                int end = Math.min(snapshotPosition + BATCH_SIZE, snapshot.size());
+                DirectoryChangesResponse response = DirectoryChangesResponse.newBuilder()
+                        .setResetReplica(snapshotPosition == 0)
+                        .setSequence(snapshotSequence)
+                        .addAllChanges(snapshot.subList(snapshotPosition, end))
+                        .build();
+                if (!send(observer, response)) {
+                    snapshot = null;
+                    return;
+                }
+                snapshotPosition = end;
+                if (snapshotPosition >= snapshot.size()) {
+                    logger.info("Sent directory snapshot of {} users and groups at sequence {}",
+                            snapshot.size(), snapshotSequence);
+                    snapshot = null;
+                    pendingSubscribers.add(new PendingSubscriber(this, snapshotSequence, true));
+                    pollSoon();
+                }
+            }
+        }
+    }
+
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+
+    public long getPublishedSequence() {
+        return publishedSequence;
+    }
+}
@@ -0,0 +1,45 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import io.grpc.*;
+import net.devh.boot.grpc.server.interceptor.GrpcGlobalServerInterceptor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tells the client of each call that changed the directory the sequence of its last change, in the call's
+ * directory-sequence trailer. A client keeping a copy of the directory waits until its copy has applied that change
+ * before using the copy again, so it sees its own writes.
+ *
+ * The DirectoryChangeLog records the sequences of the changes made during a call in the call's context.
+ */
+@GrpcGlobalServerInterceptor
+public class DirectorySequenceServerInterceptor implements ServerInterceptor {
+
+    /** The trailer holding the sequence of the last change the call made. */
+    public static final Metadata.Key<String> DIRECTORY_SEQUENCE_TRAILER =
+            Metadata.Key.of("directory-sequence", Metadata.ASCII_STRING_MARSHALLER);
+
+    /** The highest sequence recorded during the current call, or 0 if the call hasn't changed the directory. */
+    static final Context.Key<AtomicLong> WRITTEN_SEQUENCE = Context.key("directory-written-sequence");
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+            ServerCall<ReqT, RespT> call,
+            Metadata headers,
+            ServerCallHandler<ReqT, RespT> next
+    ) {
+        AtomicLong writtenSequence = new AtomicLong();
+        ServerCall<ReqT, RespT> sequencedCall = new ForwardingServerCall.SimpleForwardingServerCall<>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                long sequence = writtenSequence.get();
+                if (sequence > 0) {
+                    trailers.put(DIRECTORY_SEQUENCE_TRAILER, Long.toString(sequence));
+                }
+                super.close(status, trailers);
+            }
+        };
+        Context context = Context.current().withValue(WRITTEN_SEQUENCE, writtenSequence);
+        return Contexts.interceptCall(context, sequencedCall, headers, next);
+    }
+}
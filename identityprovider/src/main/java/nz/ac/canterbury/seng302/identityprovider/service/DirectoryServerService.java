@@ -0,0 +1,44 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import net.devh.boot.grpc.server.service.GrpcService;
+import nz.ac.canterbury.seng302.shared.identityprovider.DirectoryChangesResponse;
+import nz.ac.canterbury.seng302.shared.identityprovider.DirectoryServiceGrpc.DirectoryServiceImplBase;
+import nz.ac.canterbury.seng302.shared.identityprovider.WatchDirectoryChangesRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The DirectoryServerService implements the server side functionality defined by the directory.proto rpc contracts,
+ * which lets clients keep a copy of the users and groups up to date.
+ */
+@GrpcService
+public class DirectoryServerService extends DirectoryServiceImplBase {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** Streams the directory's changes to the watching clients. */
+    private final DirectoryChangePublisher directoryChangePublisher;
+
+
+    public DirectoryServerService(DirectoryChangePublisher directoryChangePublisher) {
+        this.directoryChangePublisher = directoryChangePublisher;
+    }
+
+
+    /**
+     * Follows the gRPC contract for watching the directory. The call is left open, and is sent the changes after the
+     * request's sequence, or a snapshot, followed by every change until the client cancels it.
+     *
+     * @param request The request with the sequence of the last change the client has
+     * @param responseObserver Used to stream the changes to the client
+     */
+    @Override
+    public void watchDirectoryChanges(WatchDirectoryChangesRequest request,
+                                      StreamObserver<DirectoryChangesResponse> responseObserver) {
+        logger.info("SERVICE - Watching directory changes after sequence {}", request.getAfterSequence());
+        directoryChangePublisher.subscribe(request.getAfterSequence(),
+                (ServerCallStreamObserver<DirectoryChangesResponse>) responseObserver);
+    }
+}
@@ -1,22 +1,20 @@
 package nz.ac.canterbury.seng302.identityprovider.service;
 
-import nz.ac.canterbury.seng302.identityprovider.model.User;
 import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
-import nz.ac.canterbury.seng302.identityprovider.model.Group;
 import nz.ac.canterbury.seng302.identityprovider.model.GroupRepository;
-import nz.ac.canterbury.seng302.shared.identityprovider.UserRole;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.persistence.EntityNotFoundException;
-import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 /**
- * Provides utility functions to add and remove users from groups.
+ * Provides utility functions to add and remove users from groups. Membership is changed with bulk statements on the
+ * group_members table, so the groups and their members are never loaded.
  */
 @Service
 public class GroupService {
@@ -27,101 +25,115 @@ public class GroupService {
     /** The repository containing the users being managed by the group service. */
     private final UserRepository userRepository;
 
+    /** Records the groups changed by each membership change, for the clients watching the directory. */
+    private final DirectoryChangeLog directoryChangeLog;
+
     /** For logging the requests related to groups. */
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     /** The Teacher group ID as stored in the Database */
     private static final Integer TEACHERS_GROUP_ID = 1;
 
+    /** The short name of the Members Without A Group group. */
+    private static final String MWAG_SHORT_NAME = "Non-Group";
+
+    /** The long name of the Members Without A Group group. */
+    private static final String MWAG_LONG_NAME = "Members Without A Group";
+
 
     /**
      * The default constructor for the group service.
      *
      * @param groupRepository The repository containing the groups being managed by the group service.
      * @param userRepository The repository containing the users being managed by the group service.
+     * @param directoryChangeLog Records the groups changed by each membership change.
      */
-    public GroupService(GroupRepository groupRepository, UserRepository userRepository) {
+    public GroupService(GroupRepository groupRepository, UserRepository userRepository,
+                        DirectoryChangeLog directoryChangeLog) {
         this.groupRepository = groupRepository;
         this.userRepository = userRepository;
+        this.directoryChangeLog = directoryChangeLog;
     }
 
 
     /**
      * Adds users to a group. If the group is the Members Without A Group group, the users will be removed from every
-     * other group. Otherwise, removes the users from Members Without A Group if they are a member
+     * other group. Otherwise, removes the users from Members Without A Group if they are a member. User IDs that
+     * don't refer to users are ignored.
      *
      * @param groupId The id of the group.
      * @param userIds The ids of the users.
-     * @throws Exception If the group ID or user IDs are invalid.
+     * @throws IllegalArgumentException If the group ID is invalid.
      */
     @Transactional
-    public void addGroupMembers(Integer groupId, List<Integer> userIds) throws Exception {
+    public void addGroupMembers(Integer groupId, List<Integer> userIds) {
         logger.info("Adding users to group {}", groupId);
-        Optional<Group> optionalGroup = groupRepository.findById(groupId);
-        if (optionalGroup.isEmpty()) {
-            logger.info("Error adding users to group as group id is not valid");
-            throw new IllegalArgumentException(groupId + " does not refer to a valid group");
+        GroupRepository.GroupNamesView group = getGroupNames(groupId);
+        if (userIds.isEmpty()) {
+            return;
         }
-        Group group = optionalGroup.get();
-        try {
-            List<User> usersToAdd = (List<User>) userRepository.findAllById(userIds);
-            if (group.getLongName().equals("Members Without A Group")) {
-                addUsersToMWAG(usersToAdd, group); // Need to remove users from all the other groups in this case
-            } else {
-                Group mwagGroup = getMWAG();
-                for (User user : usersToAdd) {
-                    group.addGroupMember(user);
-                    if (user.getGroups().contains(mwagGroup)) {
-                        removeUserFromMWAG(user, mwagGroup);
-                    }
-                }
-            }
-            logger.info("Successfully added users to group {}", groupId);
-            groupRepository.save(group);
-        } catch (EntityNotFoundException e) {
-            logger.info("Error adding users to group as user id is not valid");
-            throw new IllegalArgumentException(userIds + " does not refer to valid users");
+        // The users may be moved out of any of their groups
+        Set<Integer> changedGroupIds = new HashSet<>(groupRepository.findGroupIdsOfUsers(userIds));
+        changedGroupIds.add(groupId);
+        if (group.getLongName().equals(MWAG_LONG_NAME)) {
+            addUsersToMWAG(userIds, groupId); // Need to remove users from all the other groups in this case
+        } else {
+            groupRepository.addGroupMembers(groupId, userIds);
+            getMWAGId().ifPresent(mwagId -> groupRepository.removeGroupMembers(mwagId, userIds));
         }
+        directoryChangeLog.recordGroupChanges(changedGroupIds);
+        logger.info("Successfully added users to group {}", groupId);
     }
 
 
     /**
-     * Removes users from a given group. Checks if the user has been removed from their last group and if so, adds them
-     * to Members Without A Group
+     * Removes users from a given group. Users who are left without a group are added to Members Without A Group.
      *
      * @param groupId The id of the group from which users will be removed.
      * @param userIds The id of the users to be removed.
+     * @throws IllegalArgumentException If the group ID is invalid, or is Members Without A Group.
      */
     @Transactional
     public void removeGroupMembers(Integer groupId, List<Integer> userIds) {
         logger.info("Removing users from group {}", groupId);
-        Optional<Group> optionalGroup = groupRepository.findById(groupId);
-        if (optionalGroup.isEmpty()) {
-            logger.info("Error removing users from group as group id is invalid");
-            throw new IllegalArgumentException(groupId + " does not refer to a valid group");
-        }
-        Group group = optionalGroup.get();
-        if (group.getLongName().equals("Members Without A Group")) {
+        GroupRepository.GroupNamesView group = getGroupNames(groupId);
+        if (group.getLongName().equals(MWAG_LONG_NAME)) {
             logger.info("Error cannot remove users from Members Without A Group");
             throw new IllegalArgumentException("Can't remove user from 'Members Without A Group'");
         }
-        try {
-            List<User> usersToRemove = (List<User>) userRepository.findAllById(userIds);
-            for (User user : usersToRemove) {
-                int initialNumGroups = user.getGroups().size();
-                boolean removed = group.removeGroupMember(user);
-                if (initialNumGroups == 1 && removed) {
-                    addUserToMWAG(user);
-                }
-            }
-            logger.info("Successfully removed users from group {}", groupId);
-            groupRepository.save(group);
-        } catch (EntityNotFoundException e) {
-            logger.info("Error removing users from group as user id is invalid");
-            throw new IllegalArgumentException(userIds + " does not refer to valid users");
+        if (userIds.isEmpty()) {
+            return;
+        }
+        groupRepository.removeGroupMembers(groupId, userIds);
+        Optional<Integer> mwagId = getMWAGId();
+        mwagId.ifPresent(id -> groupRepository.addUngroupedUsers(id, userIds));
+        recordGroupChanges(groupId, mwagId);
+        logger.info("Successfully removed users from group {}", groupId);
+    }
+
+
+    /**
+     * Deletes a group. Its members who aren't in any other group are added to Members Without A Group.
+     *
+     * @param groupId The id of the group to delete.
+     * @throws IllegalArgumentException If the group ID is invalid, or is Members Without A Group.
+     */
+    @Transactional
+    public void deleteGroup(Integer groupId) {
+        logger.info("Deleting group {}", groupId);
+        GroupRepository.GroupNamesView group = getGroupNames(groupId);
+        if (group.getLongName().equals(MWAG_LONG_NAME)) {
+            logger.info("Error cannot delete Members Without A Group");
+            throw new IllegalArgumentException("Can't delete 'Members Without A Group'");
         }
+        Optional<Integer> mwagId = getMWAGId();
+        mwagId.ifPresent(id -> groupRepository.addSoleMembersTo(groupId, id));
+        groupRepository.removeAllGroupMembers(groupId);
+        groupRepository.deleteById(groupId);
+        recordGroupChanges(groupId, mwagId);
     }
 
+
     /**
      * Used to remove a user from a group when we only know the group shortname, useful for automatic removal when a
      * group object is not passed around (eg for auto removal from teacher group when teacher role is removed)
@@ -132,13 +144,8 @@ public class GroupService {
     @Transactional
     public void removeGroupMembersByGroupShortName(String shortname, Integer userId){
         logger.info("Retrieving group with shortname {}", shortname);
-        Optional<Group> optionalGroup = groupRepository.findByShortName(shortname);
-        if (optionalGroup.isPresent()) {
-            int groupId = optionalGroup.get().getId();
-            ArrayList<Integer> users = new ArrayList<>();
-            users.add(userId);
-            removeGroupMembers(groupId, users);
-        }
+        groupRepository.findNamesByShortName(shortname)
+                .ifPresent(group -> removeGroupMembers(group.getId(), List.of(userId)));
     }
 
 
@@ -151,83 +158,79 @@ public class GroupService {
      * @param userId The id of the user being added to the group
      */
     @Transactional
-    public void addGroupMemberByGroupShortName(String shortname, Integer userId) throws Exception {
+    public void addGroupMemberByGroupShortName(String shortname, Integer userId) {
         logger.info("Retrieving group with shortname {}", shortname);
-        Optional<Group> optionalGroup = groupRepository.findByShortName(shortname);
-        if (optionalGroup.isPresent()) {
-            int groupId = optionalGroup.get().getId();
-            ArrayList<Integer> users = new ArrayList<>();
-            users.add(userId);
-            addGroupMembers(groupId, users);
-        }
+        groupRepository.findNamesByShortName(shortname)
+                .ifPresent(group -> addGroupMembers(group.getId(), List.of(userId)));
     }
 
 
     /**
-     * Removes to user from all the groups they are currently a member of except for
-     * the teachers group.
+     * Adds the users to Members Without A Group, also removes them from every other group. Teachers aren't added to
+     * Members Without A Group, and stay in the teachers group.
      *
-     * @param user user to be removed from all groups
+     * @param userIds The ids of the users to be added to Members Without A Group
+     * @param mwagId The id of the Members Without A Group group
      */
-    private void removeUserFromAllGroups(User user){
-        logger.info("Removing user {} from all groups", user.getId());
-        List<Group> usersCurrentGroups = user.getGroups();
-        for (Group group: usersCurrentGroups){
-            if (!(group.getId().equals(TEACHERS_GROUP_ID) && user.getRoles().contains(UserRole.TEACHER))) {
-                group.removeGroupMember(user);
+    private void addUsersToMWAG(List<Integer> userIds, int mwagId) {
+        logger.info("Adding users {} to Members Without A Group", userIds);
+        Set<Integer> teacherIds = new HashSet<>();
+        for (UserRepository.RolePrecedenceView user : userRepository.findRolePrecedenceByIdIn(userIds)) {
+            if (user.isTeacher()) {
+                teacherIds.add(user.getId());
             }
         }
-    }
+        List<Integer> studentIds = userIds.stream().filter(id -> !teacherIds.contains(id)).toList();
 
-
-    private void addUserToMWAG(User user) {
-        Group mwagGroup = getMWAG();
-        mwagGroup.addGroupMember(user);
+        if (!teacherIds.isEmpty()) {
+            groupRepository.removeFromGroupsOtherThan(teacherIds, TEACHERS_GROUP_ID);
+        }
+        if (!studentIds.isEmpty()) {
+            groupRepository.removeFromGroupsOtherThan(studentIds, mwagId);
+            groupRepository.addGroupMembers(mwagId, studentIds);
+        }
     }
 
 
     /**
-     * Adds the users to Members Without A Group, also removes them from every other group,
-     * doesn't add teachers to MWAG.
+     * Gets the id and names of a group, without loading its members.
      *
-     * @param usersToAdd a list of users the be added to Members Without A Group
-     * @param mwaggroup The Members Without A Group group to add the users to
+     * @param groupId The id of the group
+     * @return The group's id and names
+     * @throws IllegalArgumentException If there is no group with the id
      */
-    private void addUsersToMWAG(List<User> usersToAdd, Group mwaggroup) {
-        logger.info("Adding users {} to Members Without A Group", usersToAdd);
-        for (User user: usersToAdd) {
-            removeUserFromAllGroups(user);
-            if (!user.getRoles().contains(UserRole.TEACHER)) {
-                mwaggroup.addGroupMember(user);
-            }
+    private GroupRepository.GroupNamesView getGroupNames(Integer groupId) {
+        Optional<GroupRepository.GroupNamesView> group = groupRepository.findNamesById(groupId);
+        if (group.isEmpty()) {
+            logger.info("Error changing group members as group id {} is not valid", groupId);
+            throw new IllegalArgumentException(groupId + " does not refer to a valid group");
         }
+        return group.get();
     }
 
 
     /**
-     * Removes the user from Members Without A Group
+     * Records that a group has changed, along with Members Without A Group, which users moved out of the group may
+     * have been moved into.
      *
-     * @param user The user to remove
-     * @throws Exception Thrown when there is an error getting Members Without A Group from the repository
+     * @param groupId The id of the changed group
+     * @param mwagId The id of Members Without A Group, or empty if it doesn't exist
      */
-    private void removeUserFromMWAG(User user, Group mwagGroup) throws Exception {
-        if (mwagGroup == (null)){
-            logger.info("Failed to retrieve MWAG");
-            throw new Exception("An error occurred getting the MWAG group");
-        } else {
-            mwagGroup.removeGroupMember(user);
-        }
+    private void recordGroupChanges(int groupId, Optional<Integer> mwagId) {
+        Set<Integer> changedGroupIds = new HashSet<>();
+        changedGroupIds.add(groupId);
+        mwagId.ifPresent(changedGroupIds::add);
+        directoryChangeLog.recordGroupChanges(changedGroupIds);
     }
 
 
     /**
-     * Gets the Member Without A Group from the group repository
+     * Gets the id of Members Without A Group from the group repository
      *
-     * @return The Member Without A Group group
+     * @return The id of Members Without A Group, or empty if it doesn't exist
      */
-    public Group getMWAG() {
+    private Optional<Integer> getMWAGId() {
         logger.info("Retrieving Members Without A Group");
-        Optional<Group> group = groupRepository.findByShortName("Non-Group");
-        return group.orElse(null);
+        return groupRepository.findNamesByShortName(MWAG_SHORT_NAME).map(GroupRepository.GroupNamesView::getId);
     }
-}
\ No newline at end of file
+}
@@ -1,11 +1,16 @@
 package nz.ac.canterbury.seng302.identityprovider.service;
 
 import com.google.protobuf.Empty;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import net.devh.boot.grpc.server.service.GrpcService;
-import nz.ac.canterbury.seng302.identityprovider.model.User;
 import nz.ac.canterbury.seng302.identityprovider.model.Group;
 import nz.ac.canterbury.seng302.identityprovider.model.GroupRepository;
+import nz.ac.canterbury.seng302.identityprovider.model.GroupSortKey;
+import nz.ac.canterbury.seng302.identityprovider.model.GroupSummary;
+import nz.ac.canterbury.seng302.identityprovider.model.User;
+import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
+import nz.ac.canterbury.seng302.identityprovider.model.UserSortKey;
 import nz.ac.canterbury.seng302.shared.identityprovider.*;
 import nz.ac.canterbury.seng302.shared.util.PaginationRequestOptions;
 import nz.ac.canterbury.seng302.shared.util.PaginationResponseOptions;
@@ -29,10 +34,22 @@ public class GroupsServerService extends GroupsServiceGrpc.GroupsServiceImplBase
     @Autowired
     private GroupRepository groupRepository;
 
+    /** The user repository, for reading pages of a group's members. */
+    @Autowired
+    private UserRepository userRepository;
+
     /** Provides helpful services for adding and removing users from groups. */
     @Autowired
     private GroupService groupService;
 
+    /** Caches the UserResponse of each group member. */
+    @Autowired
+    private UserResponseCache userResponseCache;
+
+    /** Records each created and modified group, for the clients watching the directory. */
+    @Autowired
+    private DirectoryChangeLog directoryChangeLog;
+
     private static final int MAX_SHORT_NAME_LENGTH = 50;
     private static final int MAX_LONG_NAME_LENGTH = 100;
     private static final int MIN_LENGTH = 1;
@@ -66,6 +83,7 @@ public class GroupsServerService extends GroupsServiceGrpc.GroupsServiceImplBase
 
             if (response.getIsSuccess()) {
                 Group group = groupRepository.save(new Group(request.getShortName(), request.getLongName()));
+                directoryChangeLog.recordGroupChange(group.getId());
                 response.setNewGroupId(group.getId())
                         .setMessage("Group created");
             }
@@ -151,6 +169,7 @@ public class GroupsServerService extends GroupsServiceGrpc.GroupsServiceImplBase
                 group.setShortName(request.getShortName());
                 group.setLongName(request.getLongName());
                 groupRepository.save(group);
+                directoryChangeLog.recordGroupChange(group.getId());
 
                 response.setIsSuccess(true)
                         .setMessage("Successfully updated details for " + group.getShortName());
@@ -178,11 +197,15 @@ public class GroupsServerService extends GroupsServiceGrpc.GroupsServiceImplBase
         logger.info("SERVICE - Deleting group {}", request.getGroupId());
         DeleteGroupResponse.Builder response = DeleteGroupResponse.newBuilder();
         if (groupRepository.existsById(request.getGroupId())) {
-            logger.info("SERVICE - Successfully deleted the group with Id: {}", request.getGroupId());
-            groupService.removeGroupMembers(request.getGroupId(), groupRepository.getGroupById(request.getGroupId()).getUserList().stream().map(User::getId).toList());
-            groupRepository.deleteById(request.getGroupId());
-            response.setIsSuccess(true)
-                    .setMessage("Successfully deleted the group with Id: " + request.getGroupId());
+            try {
+                groupService.deleteGroup(request.getGroupId());
+                logger.info("SERVICE - Successfully deleted the group with Id: {}", request.getGroupId());
+                response.setIsSuccess(true)
+                        .setMessage("Successfully deleted the group with Id: " + request.getGroupId());
+            } catch (IllegalArgumentException e) {
+                response.setIsSuccess(false)
+                        .setMessage(e.getMessage());
+            }
         } else {
             logger.info("SERVICE - No group exists with Id: {}", request.getGroupId());
             response.setIsSuccess(false)
@@ -206,7 +229,7 @@ public class GroupsServerService extends GroupsServiceGrpc.GroupsServiceImplBase
         // Checks that the group exists.
         if (groupRepository.existsById(request.getGroupId())) {
             Group group = groupRepository.getGroupById(request.getGroupId());
-            response = group.groupDetailsResponse();
+            response = group.groupDetailsResponse(userResponseCache::get);
             responseObserver.onNext(response);
             responseObserver.onCompleted();
         } else {
@@ -245,7 +268,7 @@ public class GroupsServerService extends GroupsServiceGrpc.GroupsServiceImplBase
 
         for (int i = request.getOffset(); ((i - request.getOffset()) < request.getLimit()) && (i < allGroups.size()); i++) {
             Group group = allGroups.get(i);
-            reply.addGroups(group.groupDetailsResponse());
+            reply.addGroups(group.groupDetailsResponse(userResponseCache::get));
         }
         PaginationResponseOptions options = PaginationResponseOptions.newBuilder()
                                                                      .setResultSetSize(allGroups.size())
@@ -256,6 +279,107 @@ public class GroupsServerService extends GroupsServiceGrpc.GroupsServiceImplBase
     }
 
 
+    /**
+     * Follows the gRPC contract for retrieving a page of group summaries. Unlike getPaginatedGroups, the sorting, paging
+     * and member counting is done by the database, and the members themselves are never loaded.
+     *
+     * @param groupsRequest the GetPaginatedGroupsRequest passed through from the client service
+     * @param responseObserver Used to return the response to the client side.
+     */
+    @Override
+    public void getPaginatedGroupSummaries(GetPaginatedGroupsRequest groupsRequest,
+                                           StreamObserver<PaginatedGroupSummariesResponse> responseObserver) {
+        PaginatedGroupSummariesResponse.Builder reply = PaginatedGroupSummariesResponse.newBuilder();
+        PaginationRequestOptions request = groupsRequest.getPaginationRequestOptions();
+
+        List<GroupSummary> page = groupRepository.findGroupSummaryPage(GroupSortKey.fromOrderBy(request.getOrderBy()),
+                request.getIsAscendingOrder(), request.getOffset(), request.getLimit());
+        for (GroupSummary group : page) {
+            reply.addGroups(group.groupSummaryResponse());
+        }
+        PaginationResponseOptions options = PaginationResponseOptions.newBuilder()
+                                                                     .setResultSetSize((int) groupRepository.count())
+                                                                     .build();
+        reply.setPaginationResponseOptions(options);
+        responseObserver.onNext(reply.build());
+        responseObserver.onCompleted();
+    }
+
+
+    /**
+     * Follows the gRPC contract for retrieving a page of the members of a group. The sorting and paging is done by the
+     * database, so only the members on the page are loaded, however large the group is. If the request has a cursor
+     * from a previous page with the same order, the page starts directly after the last member of that page rather
+     * than skipping offset members.
+     *
+     * If the request lists user ids, the page is instead those of the users who are members of the group, e.g. to
+     * check if a single user is a member. If the group doesn't exist, the response has a group id of -1.
+     *
+     * @param request          A GetGroupMembersRequest formatted to satisfy the groups.proto contract.
+     * @param responseObserver Used to return the response to the client side.
+     */
+    @Override
+    public void getGroupMembers(GetGroupMembersRequest request, StreamObserver<GroupMembersResponse> responseObserver) {
+        logger.info("SERVICE - Getting members of group {}", request.getGroupId());
+        Optional<GroupRepository.GroupNamesView> names = groupRepository.findNamesById(request.getGroupId());
+        if (names.isEmpty()) {
+            logger.info("SERVICE - No group exists with Id: {}", request.getGroupId());
+            responseObserver.onNext(GroupMembersResponse.newBuilder().setGroupId(-1).build());
+            responseObserver.onCompleted();
+            return;
+        }
+        GroupMembersResponse.Builder reply = GroupMembersResponse.newBuilder()
+                .setGroupId(names.get().getId())
+                .setShortName(names.get().getShortName())
+                .setLongName(names.get().getLongName());
+        PaginationResponseOptions.Builder options = PaginationResponseOptions.newBuilder();
+
+        if (request.getUserIdsCount() > 0) {
+            List<User> members = userRepository.findGroupMembersByIdIn(request.getGroupId(), request.getUserIdsList());
+            members.forEach(member -> reply.addMembers(userResponseCache.get(member)));
+            options.setResultSetSize(members.size());
+        } else {
+            PaginationRequestOptions pagination = request.getPaginationRequestOptions();
+            UserSortKey sortKey = UserSortKey.fromOrderBy(pagination.getOrderBy());
+            boolean isAscending = pagination.getIsAscendingOrder();
+            int limit = Math.max(pagination.getLimit(), 0);
+            UserPageCursor cursor = UserPageCursor.decode(pagination.getCursor(), sortKey, isAscending);
+
+            Object lastKey = (cursor != null) ? cursor.lastKey() : null;
+            int lastId = (cursor != null) ? cursor.lastId() : 0;
+            UserIndexService.UserPage page = readGroupMemberPage(request.getGroupId(), sortKey, isAscending, lastKey,
+                    lastId, Math.max(pagination.getOffset(), 0), limit);
+            reply.addAllMembers(page.users());
+            options.setResultSetSize(groupRepository.countGroupMembers(request.getGroupId()));
+            if (!page.users().isEmpty() && page.users().size() == limit) {
+                options.setNextCursor(new UserPageCursor(sortKey, isAscending, page.lastId(), page.lastKey()).encode());
+            }
+        }
+        reply.setPaginationResponseOptions(options);
+        responseObserver.onNext(reply.build());
+        responseObserver.onCompleted();
+    }
+
+
+    /**
+     * Follows the gRPC contract for streaming every member of a group in sorted order. The members are sent in
+     * batches, and a batch is only read and sent when the client is ready for it, so the group is never held in memory.
+     *
+     * @param request          A StreamGroupMembersRequest with the group and the order to send its members in.
+     * @param responseObserver Used to send the batches of members to the client side.
+     */
+    @Override
+    public void streamGroupMembers(StreamGroupMembersRequest request, StreamObserver<UserBatch> responseObserver) {
+        logger.info("SERVICE - Streaming members of group {}", request.getGroupId());
+        UserSortKey sortKey = UserSortKey.fromOrderBy(request.getOrderBy());
+        boolean isAscending = request.getIsAscendingOrder();
+        UserBatchPublisher.start((ServerCallStreamObserver<UserBatch>) responseObserver,
+                (lastKey, lastId, limit) -> readGroupMemberPage(request.getGroupId(), sortKey, isAscending, lastKey,
+                                                                lastId, 0, limit),
+                request.getBatchSize());
+    }
+
+
     /**
      * Follows the gRPC contract and provides the server side service for getting the teaching group details.
      *
@@ -269,7 +393,7 @@ public class GroupsServerService extends GroupsServiceGrpc.GroupsServiceImplBase
         try {
             Optional<Group> group = groupRepository.findByShortName("Teachers");
             if (group.isPresent()) {
-                response = group.get().groupDetailsResponse();
+                response = group.get().groupDetailsResponse(userResponseCache::get);
             } else {
                 response = GroupDetailsResponse.newBuilder().setGroupId(-1).build();
             }
@@ -296,7 +420,7 @@ public class GroupsServerService extends GroupsServiceGrpc.GroupsServiceImplBase
         try {
             Optional<Group> group = groupRepository.findByShortName("Non-Group");
             if (group.isPresent()) {
-                response = group.get().groupDetailsResponse();
+                response = group.get().groupDetailsResponse(userResponseCache::get);
             } else {
                 response = GroupDetailsResponse.newBuilder().setGroupId(-1).build();
             }
@@ -310,6 +434,38 @@ public class GroupsServerService extends GroupsServiceGrpc.GroupsServiceImplBase
     }
 
 
+    /**
+     * Reads a page of the members of a group from the repository.
+     *
+     * @param groupId The ID of the group
+     * @param sortKey The order to sort the members by
+     * @param isAscending Whether the order is ascending or descending
+     * @param lastKey The sort key of the member before the page, or null to skip offset members instead
+     * @param lastId The id of the member before the page
+     * @param offset The number of members to skip, when there is no last key
+     * @param limit The maximum number of members to return
+     * @return The page of members
+     */
+    private UserIndexService.UserPage readGroupMemberPage(int groupId, UserSortKey sortKey, boolean isAscending,
+                                                          Object lastKey, int lastId, int offset, int limit) {
+        List<User> members;
+        if (limit == 0) {
+            members = List.of();
+        } else if (lastKey != null) {
+            members = userRepository.findGroupMemberPageAfter(groupId, sortKey, isAscending, lastKey, lastId, limit);
+        } else {
+            members = userRepository.findGroupMemberPage(groupId, sortKey, isAscending, offset, limit);
+        }
+
+        if (members.isEmpty()) {
+            return new UserIndexService.UserPage(List.of(), null, 0);
+        }
+        User lastMember = members.get(members.size() - 1);
+        return new UserIndexService.UserPage(members.stream().map(userResponseCache::get).toList(),
+                sortKey.getKey(lastMember), lastMember.getId());
+    }
+
+
     /**
      * Checks if the given modification is valid. If it is not valid, adds validation errors and sets response.isSuccess
      * to false.
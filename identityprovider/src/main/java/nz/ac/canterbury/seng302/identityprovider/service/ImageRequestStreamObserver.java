@@ -3,6 +3,7 @@ package nz.ac.canterbury.seng302.identityprovider.service;
 import com.google.protobuf.ByteString;
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
+import nz.ac.canterbury.seng302.identityprovider.model.User;
 import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
 import nz.ac.canterbury.seng302.shared.identityprovider.ProfilePhotoUploadMetadata;
 import nz.ac.canterbury.seng302.shared.identityprovider.UploadUserProfilePhotoRequest;
@@ -12,8 +13,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.env.Environment;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
 
 /**
  * Defines the StreamObserver<UploadUserProfilePhotoRequest> implementation used by the UserAccountsServerService for
@@ -26,65 +30,104 @@ public class ImageRequestStreamObserver implements StreamObserver<UploadUserProf
     Logger logger = LoggerFactory.getLogger(this.getClass());
 
 
+    /** The largest photo accepted when the profilePhotoMaxBytes property isn't set. */
+    private static final String DEFAULT_MAX_BYTES = "5242880";
+
     private int userId;
     private String fileType;
-    private ByteString bytes;
+    private final long maxBytes;
+    /** The file the photo is written to as it arrives, which is moved over the user's photo once it is complete. */
+    private Path temporaryFile;
+    private OutputStream out;
+    /** Hashes the photo as it arrives, as it is stored under the hash. */
+    private final MessageDigest digest = DigestUtil.newSha256();
+    private long received;
+    /** Set once the upload has failed, so later chunks are dropped. */
+    private boolean failed;
     private final StreamObserver<FileUploadStatusResponse> responseObserver;
     private final UserRepository userRepository;
     private Environment env;
-
-    public ImageRequestStreamObserver (StreamObserver<FileUploadStatusResponse> responseObserver, UserRepository userRepository, Environment env) {
+    private final UserResponseCache userResponseCache;
+    private final UserIndexService userIndexService;
+    private final DirectoryChangeLog directoryChangeLog;
+    private final ProfileImageStore profileImageStore;
+
+    public ImageRequestStreamObserver (StreamObserver<FileUploadStatusResponse> responseObserver, UserRepository userRepository,
+                                       Environment env, UserResponseCache userResponseCache,
+                                       UserIndexService userIndexService, DirectoryChangeLog directoryChangeLog,
+                                       ProfileImageStore profileImageStore) {
         this.responseObserver = responseObserver;
         this.userRepository = userRepository;
         this.env = env;
+        this.userResponseCache = userResponseCache;
+        this.userIndexService = userIndexService;
+        this.directoryChangeLog = directoryChangeLog;
+        this.profileImageStore = profileImageStore;
+        this.maxBytes = Long.parseLong(env.getProperty("profilePhotoMaxBytes", DEFAULT_MAX_BYTES));
     }
 
 
     /**
      * should be called by the client when they are sending data to the server. The first chunk should be
-     * metadata, and every chunk following should be fileContent. On reception calls the responseObservers
-     * onNext method to request the next chunk.
+     * metadata, and every chunk following should be fileContent. Each chunk is written to a temporary file as it
+     * arrives, and gRPC only asks the client for the next chunk once this returns, so the upload is paced by how fast
+     * the photo is written. The upload fails if the photo grows past the profilePhotoMaxBytes property.
      *
      * @param request - the UploadUserProfilePhotoRequest chunk being sent to the server
      */
     @Override
     public void onNext(UploadUserProfilePhotoRequest request) {
+        if (failed) {
+            return;
+        }
 //  --------------------------------- Check if the first "packet" is the metadata --------------------------------------
         if (request.getUploadDataCase() == UploadUserProfilePhotoRequest.UploadDataCase.METADATA) {
             ProfilePhotoUploadMetadata metadata = request.getMetaData();
             logger.info("Received image metadata: {}", metadata);
+            if (out != null) {
+                logger.error("Image metadata sent twice");
+                fail(Status.INVALID_ARGUMENT.withDescription("Image metadata sent twice"));
+                return;
+            }
 
-            // Metadata received, create new image and tell client with PENDING status
             userId = metadata.getUserId();
             fileType = metadata.getFileType();
-            bytes = ByteString.EMPTY;
-            // Update client that metadata received
-            responseObserver.onNext(FileUploadStatusResponse.newBuilder()
-                    .setStatus(FileUploadStatus.PENDING)
-                    .setMessage("Received image metadata: " + metadata)
-                    .build()
-            );
+            if (!fileType.matches("[a-z]+")) {
+                logger.error("Invalid image file type: {}", fileType);
+                fail(Status.INVALID_ARGUMENT.withDescription("Invalid image file type"));
+                return;
+            }
+            try {
+                // Created in the photo location, so it can be stored in one step
+                temporaryFile = Files.createTempFile(photoLocation(), userId + "-", ProfileImageStore.UPLOAD_SUFFIX);
+                out = Files.newOutputStream(temporaryFile);
+            } catch (IOException e) {
+                logger.error(e.getMessage(), e);
+                fail(Status.INTERNAL.withDescription("Could not store the image"));
+            }
 //  ---------------------------- Otherwise the incoming content must be file chunks ------------------------------------
         } else {
             ByteString fileContent = request.getFileContent();
-            logger.info("Received image chunk of size: {}", fileContent.size());
+            logger.debug("Received image chunk of size: {}", fileContent.size());
 
             // If the metadata wasn't received first as error will occur
-            if (bytes == null) {
+            if (out == null) {
                 logger.error("Image metadata data not sent before transfer");
-                responseObserver.onError(
-                        Status.INVALID_ARGUMENT
-                                .withDescription("Image Content sent before metadata")
-                                .asRuntimeException()
-                );
-            } else {
-                bytes = bytes.concat(fileContent);
-                // Update client that contents received
-                responseObserver.onNext(FileUploadStatusResponse.newBuilder()
-                        .setStatus(FileUploadStatus.IN_PROGRESS)
-                        .setMessage("Received " + fileContent.size() + " bytes of image data")
-                        .build()
-                );
+                fail(Status.INVALID_ARGUMENT.withDescription("Image Content sent before metadata"));
+                return;
+            }
+            received += fileContent.size();
+            if (received > maxBytes) {
+                logger.error("Image for user {} is larger than {} bytes", userId, maxBytes);
+                fail(Status.INVALID_ARGUMENT.withDescription("Image is larger than " + maxBytes + " bytes"));
+                return;
+            }
+            try {
+                fileContent.writeTo(out);
+                digest.update(fileContent.asReadOnlyByteBuffer());
+            } catch (IOException e) {
+                logger.error(e.getMessage(), e);
+                fail(Status.INTERNAL.withDescription("Could not store the image"));
             }
         }
     }
@@ -93,53 +136,102 @@ public class ImageRequestStreamObserver implements StreamObserver<UploadUserProf
 
     /**
      * has little effect for the server, as it is more crucial for the client, however it informs the server
-     * to drop the content received as the transfer was unsuccessful and calls responseObserver.onNext with an
-     * FAILED FileUploadStatus.
+     * to drop the content received as the transfer was unsuccessful.
      * <br>
      * @param throwable - the error thrown when the error occurred
      */
     @Override
     public void onError(Throwable throwable) {
-        responseObserver.onNext(FileUploadStatusResponse.newBuilder()
-                .setStatus(FileUploadStatus.FAILED)
-                .setMessage("An error has occurred")
-                .build());
         logger.error(throwable.getMessage());
+        discard();
     }
 
 
     /**
-     * When called the server can save the data received return a SUCCESS FileUploadStatus calling onNext and
-     * onComplete to tell the client that the server has saved the image.
+     * When called the server stores the received photo as the user's photo, and returns a SUCCESS FileUploadStatus
+     * with the URL of the saved photo, calling onNext and onComplete to tell the client that the server has saved the
+     * image.
      */
     @Override
     public void onCompleted() {
-        FileUploadStatusResponse.Builder response = FileUploadStatusResponse.newBuilder();
-        saveImageToGallery();
-        response.setStatus(FileUploadStatus.SUCCESS)
-                .setMessage("COMPLETE: Successfully transferred bytes");
-
-        responseObserver.onNext(response.build());
+        if (failed) {
+            return;
+        }
+        if (out == null) {
+            fail(Status.INVALID_ARGUMENT.withDescription("No image metadata sent"));
+            return;
+        }
+        String profileImagePath;
+        try {
+            profileImagePath = saveImageToGallery();
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            fail(Status.INTERNAL.withDescription("Could not store the image"));
+            return;
+        }
+        responseObserver.onNext(FileUploadStatusResponse.newBuilder()
+                .setStatus(FileUploadStatus.SUCCESS)
+                .setMessage("COMPLETE: Successfully transferred " + received + " bytes")
+                .setFilePath(profileImagePath)
+                .build());
         responseObserver.onCompleted();
     }
 
 
     /**
-     * Called on a successful image transfer in onComplete method. This method takes the imageContents and saves it to
-     * a file in the user's directory with an image type of that sent in metadata.
+     * Called on a successful image transfer in onComplete method. This method stores the received image under the
+     * hash of its content, with an image type of that sent in metadata, and gives it to the user.
+     *
+     * @return The URL the user's new photo is served from
+     */
+    private String saveImageToGallery() throws IOException {
+        out.close();
+        String profileImage = profileImageStore.store(temporaryFile, digest.digest(), fileType);
+        temporaryFile = null;
+        User user = userRepository.findById(userId);
+        if (user == null) {
+            throw new IOException("Could not find user " + userId);
+        }
+        user.setProfileImage(profileImage);
+        userRepository.save(user);
+        userIndexService.update(user);
+        userResponseCache.invalidate(userId);
+        directoryChangeLog.recordUserChange(userId);
+        return UrlUtil.getUrlService().getProfileURL(user).toString();
+    }
+
+
+    /**
+     * Gets the directory photos are stored in.
      */
-    private void saveImageToGallery() {
-        try {
-            String photoLocation = env.getProperty("photoLocation", "src/main/resources/profile-photos/");
-            FileOutputStream out = new FileOutputStream(
-                    photoLocation + userId + "." + fileType
-            );
+    private Path photoLocation() {
+        return Path.of(env.getProperty("photoLocation", "src/main/resources/profile-photos/")).toAbsolutePath();
+    }
+
+
+    /**
+     * Drops the received image and tells the client the upload failed.
+     */
+    private void fail(Status status) {
+        failed = true;
+        discard();
+        responseObserver.onError(status.asRuntimeException());
+    }
 
-            bytes.writeTo(out);
-            out.close();
+
+    /**
+     * Closes and deletes the temporary file, if there is one.
+     */
+    private void discard() {
+        try {
+            if (out != null) {
+                out.close();
+            }
+            if (temporaryFile != null) {
+                Files.deleteIfExists(temporaryFile);
+            }
         } catch (IOException e) {
             logger.error(e.getMessage(), e);
         }
     }
 }
-
@@ -21,6 +21,17 @@ public class LoginService {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    private static final String HASH_ALGORITHM = "PBKDF2WithHmacSHA1";
+    private static final int DERIVED_KEY_LENGTH = 160;
+    private static final int ITERATIONS = 20000;
+
+    /**
+     * Each thread's SecretKeyFactory and SecureRandom, as looking them up is slow and they aren't guaranteed to be
+     * thread safe. Hashing runs on the few threads of the PasswordHashingExecutor, so there are only a few of each.
+     */
+    private static final ThreadLocal<SecretKeyFactory> KEY_FACTORY = new ThreadLocal<>();
+    private static final ThreadLocal<SecureRandom> RANDOM = new ThreadLocal<>();
+
     /**
      * Enum to store different possible outcomes of attempting to log in
      */
@@ -80,16 +91,16 @@ public class LoginService {
      * @return Base64 encoded hash
      */
     public String getHash(String password, String salt) throws PasswordEncryptionException {
-        String algorithm = "PBKDF2WithHmacSHA1";
-        int derivedKeyLength = 160;
-        int iterations = 20000;
-
         byte[] saltBytes = Base64.getDecoder().decode(salt);
-        KeySpec spec = new PBEKeySpec(password.toCharArray(), saltBytes, iterations, derivedKeyLength);
+        KeySpec spec = new PBEKeySpec(password.toCharArray(), saltBytes, ITERATIONS, DERIVED_KEY_LENGTH);
 
         byte[] encBytes;
         try {
-            SecretKeyFactory factory = SecretKeyFactory.getInstance(algorithm);
+            SecretKeyFactory factory = KEY_FACTORY.get();
+            if (factory == null) {
+                factory = SecretKeyFactory.getInstance(HASH_ALGORITHM);
+                KEY_FACTORY.set(factory);
+            }
             encBytes = factory.generateSecret(spec).getEncoded();
         } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
             // This exception will only be thrown if the java algorithm specification changes
@@ -106,10 +117,13 @@ public class LoginService {
      * @return Base64 encoded salt
      */
     public String getNewSalt() throws PasswordEncryptionException {
-        SecureRandom random;
+        SecureRandom random = RANDOM.get();
 
         try {
-            random = SecureRandom.getInstance("SHA1PRNG");
+            if (random == null) {
+                random = SecureRandom.getInstance("SHA1PRNG");
+                RANDOM.set(random);
+            }
         } catch (NoSuchAlgorithmException e) {
             // This exception will only be thrown if the java algorithm specification changes
             logger.error("ERROR - failed to retrieve salt for password");
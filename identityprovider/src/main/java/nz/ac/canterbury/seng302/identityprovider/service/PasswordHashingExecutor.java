@@ -0,0 +1,209 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs password hashing on a small pool of threads, so that a burst of logins can't take every gRPC handler thread
+ * and starve the identity provider's other requests.
+ *
+ * The pool has one thread per CPU, as hashing is CPU bound, and a bounded queue. Once the queue is full, new tasks are
+ * rejected straight away rather than queueing up behind work that will take longer than the client will wait, and
+ * the handler should respond with the status from rejectedStatus.
+ */
+@Service
+public class PasswordHashingExecutor {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** The number of tasks that can wait for a thread when the passwordHashingQueueSize property isn't set. */
+    private static final String DEFAULT_QUEUE_SIZE = "64";
+
+    /** Runs the tasks. */
+    private final Executor executor;
+
+    /** The pool behind the executor, or null if given an executor to use. */
+    private final ThreadPoolExecutor pool;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalHashNanos = new LongAdder();
+    private final AtomicLong maxHashNanos = new AtomicLong();
+
+
+    /**
+     * Password hashing work, which may fail to hash.
+     *
+     * @param <T> The result of the task
+     */
+    @FunctionalInterface
+    public interface HashingTask<T> {
+        T call() throws PasswordEncryptionException;
+    }
+
+
+    /**
+     * The executor's metrics since it was created.
+     *
+     * @param queueDepth The number of tasks waiting for a thread
+     * @param completed The number of tasks that have finished
+     * @param rejected The number of tasks rejected because the queue was full
+     * @param averageHashMillis The average time taken to run a task, not including time spent queued
+     * @param maxHashMillis The longest time taken to run a task
+     */
+    public record Stats(int queueDepth, long completed, long rejected, double averageHashMillis, double maxHashMillis) {}
+
+
+    /**
+     * Autowired constructor, which creates the pool with the passwordHashingThreads and passwordHashingQueueSize
+     * properties. There is one thread per CPU by default.
+     *
+     * @param env Gives access to the environment variables
+     */
+    @Autowired
+    public PasswordHashingExecutor(Environment env) {
+        int threads = Integer.parseInt(env.getProperty("passwordHashingThreads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int queueSize = Integer.parseInt(env.getProperty("passwordHashingQueueSize", DEFAULT_QUEUE_SIZE));
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor = pool;
+        logger.info("Hashing passwords on {} threads, with up to {} queued", threads, queueSize);
+    }
+
+
+    /**
+     * Creates a PasswordHashingExecutor that runs its tasks with the given executor, with no queue limit.
+     *
+     * @param executor Runs the tasks, e.g. Runnable::run to hash on the calling thread
+     */
+    public PasswordHashingExecutor(Executor executor) {
+        this.executor = executor;
+        this.pool = null;
+    }
+
+
+    /**
+     * Queues a task to run on the hashing pool.
+     *
+     * @param task The hashing work to do
+     * @param <T> The result of the task
+     * @return A future completed with the task's result, or with the exception it threw
+     * @throws RejectedExecutionException If the queue is full, in which case the task is never run
+     */
+    public <T> CompletableFuture<T> submit(HashingTask<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        queueDepth.incrementAndGet();
+        try {
+            executor.execute(() -> run(task, future));
+        } catch (RejectedExecutionException exception) {
+            queueDepth.decrementAndGet();
+            rejected.increment();
+            logger.warn("Rejected password hashing task, {} tasks are already queued", queueDepth.get());
+            throw exception;
+        }
+        return future;
+    }
+
+
+    /**
+     * Runs a task and completes its future. The task is counted as completed before the future is, so the metrics
+     * include it once its result is available.
+     */
+    private <T> void run(HashingTask<T> task, CompletableFuture<T> future) {
+        queueDepth.decrementAndGet();
+        long start = System.nanoTime();
+        T result = null;
+        Exception failure = null;
+        try {
+            result = task.call();
+        } catch (Exception exception) {
+            failure = exception;
+        }
+        long hashNanos = System.nanoTime() - start;
+        completed.increment();
+        totalHashNanos.add(hashNanos);
+        maxHashNanos.accumulateAndGet(hashNanos, Math::max);
+
+        if (failure != null) {
+            future.completeExceptionally(failure);
+        } else {
+            future.complete(result);
+        }
+    }
+
+
+    /**
+     * Sends a handler's response once its task has finished. The response is usually sent from a hashing thread, where
+     * nothing else would answer the call if sending it threw, so the call is failed with INTERNAL instead.
+     *
+     * @param responseObserver The observer of the call being answered
+     * @param respond Builds and sends the response
+     */
+    public void respond(StreamObserver<?> responseObserver, Runnable respond) {
+        try {
+            respond.run();
+        } catch (RuntimeException exception) {
+            logger.error("Could not respond after hashing a password: {}", exception.getMessage());
+            try {
+                responseObserver.onError(Status.INTERNAL.withDescription("Could not respond to the request")
+                        .asRuntimeException());
+            } catch (RuntimeException closed) {
+                logger.warn("Could not fail the call: {}", closed.getMessage());
+            }
+        }
+    }
+
+
+    /**
+     * Gets the status to send a client whose request was rejected because the queue is full.
+     *
+     * @return A RESOURCE_EXHAUSTED status exception
+     */
+    public static StatusRuntimeException rejectedStatus() {
+        return Status.RESOURCE_EXHAUSTED
+                .withDescription("Too many password requests are being processed, try again shortly")
+                .asRuntimeException();
+    }
+
+
+    /**
+     * Gets the number of tasks waiting to run, and how long tasks have taken to run.
+     *
+     * @return The executor's metrics
+     */
+    public Stats getStats() {
+        long completedCount = completed.sum();
+        double averageHashMillis = completedCount == 0 ? 0 : totalHashNanos.sum() / 1e6 / completedCount;
+        return new Stats(queueDepth.get(), completedCount, rejected.sum(), averageHashMillis, maxHashNanos.get() / 1e6);
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
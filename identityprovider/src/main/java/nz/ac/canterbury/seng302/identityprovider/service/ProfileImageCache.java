@@ -0,0 +1,197 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches what is needed to serve each profile image: its content type, a strong ETag from a hash of its content, and,
+ * for images of at most maxImageBytes, the content itself. Hot images, like default.png, are then served from memory
+ * and every image's request validators are known without reading the file.
+ *
+ * An image is checked against its file's size and modification time whenever it is requested, so a replaced image is
+ * reloaded without the cache being told. The cache holds at most maxSize images, evicting the least recently used
+ * image when it is full.
+ */
+@Service
+public class ProfileImageCache {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** The number of images cached when the profileImageCacheSize property isn't set. */
+    private static final String DEFAULT_MAX_SIZE = "256";
+
+    /** The largest image kept in memory when the profileImageCacheMaxBytes property isn't set. */
+    private static final String DEFAULT_MAX_IMAGE_BYTES = "262144";
+
+    /** How much of an image is read to recognise its content type. */
+    private static final int SIGNATURE_LENGTH = 12;
+
+    /** The content type of WebP images, which Spring has no constant for. */
+    private static final MediaType IMAGE_WEBP = MediaType.parseMediaType("image/webp");
+
+    /** The most images that are cached at once. */
+    private final int maxSize;
+
+    /** The largest image whose content is kept in memory. */
+    private final long maxImageBytes;
+
+    /** The cached images by path, in least recently used order. Guarded by synchronizing on the map. */
+    private final LinkedHashMap<Path, CachedImage> images;
+
+
+    /**
+     * An image as cached.
+     *
+     * @param size The size of the image file in bytes
+     * @param lastModifiedMillis When the image file was last modified
+     * @param eTag The strong ETag of the image, from a hash of its content
+     * @param contentType The content type of the image, recognised from its content
+     * @param content The image's content, or null if it is too large to keep in memory
+     */
+    public record CachedImage(long size, long lastModifiedMillis, String eTag, MediaType contentType, byte[] content) {}
+
+
+    /**
+     * Autowired constructor, which sizes the cache with the profileImageCacheSize and profileImageCacheMaxBytes
+     * properties.
+     *
+     * @param env Gives access to the environment variables
+     */
+    @Autowired
+    public ProfileImageCache(Environment env) {
+        this(Integer.parseInt(env.getProperty("profileImageCacheSize", DEFAULT_MAX_SIZE)),
+                Long.parseLong(env.getProperty("profileImageCacheMaxBytes", DEFAULT_MAX_IMAGE_BYTES)));
+    }
+
+
+    /**
+     * Creates an empty cache holding at most the given number of images.
+     *
+     * @param maxSize The most images that are cached at once
+     * @param maxImageBytes The largest image whose content is kept in memory
+     */
+    public ProfileImageCache(int maxSize, long maxImageBytes) {
+        this.maxSize = maxSize;
+        this.maxImageBytes = maxImageBytes;
+        this.images = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, CachedImage> eldest) {
+                return size() > ProfileImageCache.this.maxSize;
+            }
+        };
+    }
+
+
+    /**
+     * Gets an image, loading and caching it if it isn't cached or its file has changed since it was cached.
+     *
+     * @param path The path of the image file
+     * @return The image
+     * @throws IOException If the image file can't be read
+     */
+    public CachedImage get(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModifiedMillis = attributes.lastModifiedTime().toMillis();
+        synchronized (images) {
+            CachedImage image = images.get(path);
+            if (image != null && image.size() == size && image.lastModifiedMillis() == lastModifiedMillis) {
+                return image;
+            }
+        }
+
+        // Loaded outside the lock, so other images are still served while the file is read
+        CachedImage image = load(path, size, lastModifiedMillis);
+        if (maxSize > 0) {
+            synchronized (images) {
+                images.put(path, image);
+            }
+        }
+        return image;
+    }
+
+
+    /**
+     * Reads an image file once, hashing it and recognising its content type, and keeping its content if it is small
+     * enough.
+     */
+    private CachedImage load(Path path, long size, long lastModifiedMillis) throws IOException {
+        logger.debug("Loading profile image {}", path);
+        MessageDigest digest = DigestUtil.newSha256();
+        byte[] signature;
+        byte[] content = null;
+        if (size <= maxImageBytes) {
+            content = Files.readAllBytes(path);
+            digest.update(content);
+            signature = Arrays.copyOf(content, Math.min(content.length, SIGNATURE_LENGTH));
+        } else {
+            try (InputStream in = Files.newInputStream(path)) {
+                signature = in.readNBytes(SIGNATURE_LENGTH);
+                digest.update(signature);
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        }
+        // Half of the hash is plenty to tell versions of the same image apart
+        String eTag = "\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+        return new CachedImage(size, lastModifiedMillis, eTag, contentType(path, signature), content);
+    }
+
+
+    /**
+     * Recognises an image's content type from the signature at the start of its content, as images are saved with a
+     * .jpg name whatever their type. Falls back to the type of the file's extension.
+     *
+     * @param path The path of the image file
+     * @param signature The first bytes of the image
+     * @return The image's content type
+     */
+    static MediaType contentType(Path path, byte[] signature) {
+        if (startsWith(signature, 0, 0xFF, 0xD8, 0xFF)) {
+            return MediaType.IMAGE_JPEG;
+        }
+        if (startsWith(signature, 0, 0x89, 'P', 'N', 'G')) {
+            return MediaType.IMAGE_PNG;
+        }
+        if (startsWith(signature, 0, 'G', 'I', 'F', '8')) {
+            return MediaType.IMAGE_GIF;
+        }
+        if (startsWith(signature, 0, 'R', 'I', 'F', 'F') && startsWith(signature, 8, 'W', 'E', 'B', 'P')) {
+            return IMAGE_WEBP;
+        }
+        return MediaTypeFactory.getMediaType(path.getFileName().toString())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+    }
+
+
+    private static boolean startsWith(byte[] content, int offset, int... expected) {
+        if (content.length < offset + expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if ((content[offset + i] & 0xFF) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,297 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import nz.ac.canterbury.seng302.identityprovider.model.User;
+import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Stores profile images under a SHA-256 hash of their content, so an image's URL always serves the same content and
+ * can be cached by browsers and proxies forever. Users with the same image share one file.
+ *
+ * As users change their images, images that no user has any more are deleted in the background. An image is only
+ * deleted once it has gone unused for a whole collection interval, so pages that still show it keep working for a
+ * while, and an image isn't deleted between being stored and being given to its user.
+ */
+@Service
+public class ProfileImageStore {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** The name of a stored image or of one of its variants, whose first group is the image's hash. */
+    private static final Pattern STORED_FILE = Pattern.compile("([0-9a-f]{64})(_\\d+)?\\.[a-z]+");
+
+    /** The name of an image saved under its user's id, before images were stored by hash. */
+    private static final Pattern LEGACY_IMAGE = Pattern.compile("(\\d+)\\.jpg");
+
+    /** The suffix of the temporary files uploads are written to. */
+    static final String UPLOAD_SUFFIX = ".upload";
+
+    private final UserRepository userRepository;
+
+    private final ProfileImageVariants profileImageVariants;
+
+    private final DirectoryChangeLog directoryChangeLog;
+
+    private final UserIndexService userIndexService;
+
+    private final UserResponseCache userResponseCache;
+
+    /** The directory images are stored in. */
+    private final Path photoLocation;
+
+    /** How often unused images are looked for, and how long an image must go unused to be deleted. */
+    private final long collectionIntervalMillis;
+
+    private final LongSupplier clock;
+
+    /** The hash of each unused image, mapped to when it was first found unused. */
+    private final Map<String, Long> unusedSince = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService collector;
+
+
+    /**
+     * Autowired constructor, which stores images in the photoLocation and looks for unused images every
+     * profileImageCollectionMinutes.
+     *
+     * @param userRepository Used to find the images users have
+     * @param profileImageVariants Creates the smaller variants of each stored image
+     * @param directoryChangeLog Records the users whose images are moved when images saved by user are migrated
+     * @param userIndexService Updated with the users whose images are moved
+     * @param userResponseCache Invalidated for the users whose images are moved
+     * @param env Gives access to the environment variables
+     */
+    @Autowired
+    public ProfileImageStore(UserRepository userRepository, ProfileImageVariants profileImageVariants,
+                             DirectoryChangeLog directoryChangeLog, UserIndexService userIndexService,
+                             UserResponseCache userResponseCache, Environment env) {
+        this(userRepository, profileImageVariants, directoryChangeLog, userIndexService, userResponseCache,
+                Path.of(env.getProperty("photoLocation", "src/main/resources/profile-photos/")),
+                TimeUnit.MINUTES.toMillis(Long.parseLong(env.getProperty("profileImageCollectionMinutes", "60"))),
+                System::currentTimeMillis);
+    }
+
+
+    /**
+     * Creates a store of images in the given directory.
+     *
+     * @param userRepository Used to find the images users have
+     * @param profileImageVariants Creates the smaller variants of each stored image
+     * @param directoryChangeLog Records the users whose images are moved when images saved by user are migrated
+     * @param userIndexService Updated with the users whose images are moved
+     * @param userResponseCache Invalidated for the users whose images are moved
+     * @param photoLocation The directory images are stored in
+     * @param collectionIntervalMillis How often to look for unused images, or 0 to not look in the background
+     * @param clock Gives the current time in milliseconds
+     */
+    public ProfileImageStore(UserRepository userRepository, ProfileImageVariants profileImageVariants,
+                             DirectoryChangeLog directoryChangeLog, UserIndexService userIndexService,
+                             UserResponseCache userResponseCache, Path photoLocation, long collectionIntervalMillis,
+                             LongSupplier clock) {
+        this.userRepository = userRepository;
+        this.profileImageVariants = profileImageVariants;
+        this.directoryChangeLog = directoryChangeLog;
+        this.userIndexService = userIndexService;
+        this.userResponseCache = userResponseCache;
+        this.photoLocation = photoLocation;
+        this.collectionIntervalMillis = collectionIntervalMillis;
+        this.clock = clock;
+    }
+
+
+    /**
+     * Checks whether an image name is the name of a stored image or variant, rather than a user's id.
+     *
+     * @param name The name of the image file
+     * @return True if the name is a hash of the image's content
+     */
+    public static boolean isStoredImage(String name) {
+        return STORED_FILE.matcher(name).matches();
+    }
+
+
+    /**
+     * Stores an image under the hash of its content, moving the file into place and creating its variants. If the
+     * image is already stored, because another user has the same image, the file is deleted instead.
+     *
+     * @param file The image file, in the photo location so it can be moved in one step
+     * @param hash The SHA-256 hash of the image's content
+     * @param fileType The extension of the image
+     * @return The name of the stored image
+     * @throws IOException If the image can't be moved into place
+     */
+    public String store(Path file, byte[] hash, String fileType) throws IOException {
+        String hex = HexFormat.of().formatHex(hash);
+        String name = hex + "." + fileType;
+        Path image = photoLocation.resolve(name);
+        // Used again, so it isn't deleted before the user is given it
+        unusedSince.remove(hex);
+        if (Files.exists(image)) {
+            logger.info("Profile image {} is already stored", name);
+            Files.delete(file);
+        } else {
+            Files.move(file, image, StandardCopyOption.ATOMIC_MOVE);
+            profileImageVariants.createVariants(image);
+        }
+        return name;
+    }
+
+
+    /**
+     * Moves any images saved under their user's id into the store, then starts looking for unused images in the
+     * background. Runs once the application is ready, so the users exist.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        try {
+            migrateLegacyImages();
+        } catch (IOException | RuntimeException e) {
+            logger.error("Could not migrate profile images saved by user id: {}", e.getMessage());
+        }
+        if (collectionIntervalMillis <= 0) {
+            return;
+        }
+        collector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "profile-image-collector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        collector.scheduleWithFixedDelay(() -> {
+            try {
+                collect();
+            } catch (IOException | RuntimeException e) {
+                // Keep collecting, a later run deletes whatever this one missed
+                logger.warn("Could not collect unused profile images: {}", e.getMessage());
+            }
+        }, collectionIntervalMillis, collectionIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    @PreDestroy
+    public void stop() {
+        if (collector != null) {
+            collector.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Stores each image saved under its user's id by its hash instead, giving it to the user if they don't already
+     * have a stored image. The image's variants saved under the user's id are deleted. The user index and cached
+     * responses are updated with each moved image, so they are right whether or not the index has been built yet.
+     *
+     * @throws IOException If the photo location can't be listed
+     */
+    void migrateLegacyImages() throws IOException {
+        List<Path> legacyImages;
+        try (Stream<Path> files = Files.list(photoLocation)) {
+            legacyImages = files.filter(file -> LEGACY_IMAGE.matcher(file.getFileName().toString()).matches())
+                    .toList();
+        }
+        for (Path legacyImage : legacyImages) {
+            Matcher matcher = LEGACY_IMAGE.matcher(legacyImage.getFileName().toString());
+            if (!matcher.matches()) {
+                continue;
+            }
+            User user = userRepository.findById(Integer.parseInt(matcher.group(1)));
+            if (user == null) {
+                // The users may not have been created yet, so the image is left to be migrated on the next start
+                continue;
+            }
+            profileImageVariants.deleteVariants(legacyImage);
+            if (user.getProfileImage() == null) {
+                Path file = Files.createTempFile(photoLocation, user.getId() + "-", UPLOAD_SUFFIX);
+                Files.move(legacyImage, file, StandardCopyOption.REPLACE_EXISTING);
+                user.setProfileImage(store(file, hash(file), "jpg"));
+                userRepository.save(user);
+                userIndexService.update(user);
+                userResponseCache.invalidate(user.getId());
+                directoryChangeLog.recordUserChange(user.getId());
+                logger.info("Migrated the profile image of user {}", user.getId());
+            } else {
+                Files.delete(legacyImage);
+            }
+        }
+    }
+
+
+    /**
+     * Deletes the images, and their variants, that no user has had since the previous collection. Also deletes the
+     * temporary files of uploads that never finished.
+     *
+     * @throws IOException If the photo location can't be listed
+     */
+    void collect() throws IOException {
+        Set<String> usedHashes = new HashSet<>();
+        for (String image : userRepository.findAllProfileImages()) {
+            int extension = image.lastIndexOf('.');
+            usedHashes.add(extension == -1 ? image : image.substring(0, extension));
+        }
+        long now = clock.getAsLong();
+
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(photoLocation)) {
+            files = listing.toList();
+        }
+        Set<String> unusedHashes = new HashSet<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            Matcher matcher = STORED_FILE.matcher(name);
+            if (matcher.matches()) {
+                String hash = matcher.group(1);
+                if (!usedHashes.contains(hash)) {
+                    unusedHashes.add(hash);
+                    long since = unusedSince.computeIfAbsent(hash, unused -> now);
+                    if (now - since >= collectionIntervalMillis) {
+                        logger.info("Deleting unused profile image {}", name);
+                        Files.deleteIfExists(file);
+                    }
+                }
+            } else if (name.endsWith(UPLOAD_SUFFIX)
+                    && now - Files.getLastModifiedTime(file).toMillis() >= collectionIntervalMillis) {
+                Files.deleteIfExists(file);
+            }
+        }
+        unusedSince.keySet().retainAll(unusedHashes);
+    }
+
+
+    private static byte[] hash(Path file) throws IOException {
+        MessageDigest digest = DigestUtil.newSha256();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+}
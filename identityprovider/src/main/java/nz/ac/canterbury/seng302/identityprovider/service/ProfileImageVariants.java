@@ -0,0 +1,206 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Creates and finds the fixed size variants of profile images, so that a page showing a small avatar downloads a
+ * small image instead of the photo at whatever size it was uploaded.
+ *
+ * The variants of an image are square JPEGs saved next to it, named with the image's name and the variant's size, so
+ * the 128px variant of the stored image {hash}.jpg is {hash}_128.jpg. Variants that would be larger than the image
+ * aren't created.
+ */
+@Service
+public class ProfileImageVariants {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** The sizes, in pixels, of the variants created for each image, from smallest to largest. */
+    public static final List<Integer> SIZES = List.of(48, 128, 512);
+
+    /** The variant linked to from user responses, which is large enough for the avatars shown across the site. */
+    public static final int DEFAULT_SIZE = 128;
+
+    /** The variant linked to from user responses for pages showing the image large, like the account page. */
+    public static final int LARGE_SIZE = 512;
+
+    /** The most pixels an image may have to be decoded, so that an image can't take up an unbounded heap. */
+    private static final long MAX_PIXELS = 64_000_000;
+
+    /** The JPEG quality variants are written at. */
+    private static final float QUALITY = 0.85f;
+
+
+    /**
+     * Creates the variants of an image, replacing any variants of the image it replaced. Variants of a previous image
+     * are deleted when the image can't be read, so a stale variant is never served for it.
+     *
+     * @param image The path of the image file
+     */
+    public void createVariants(Path image) {
+        try {
+            BufferedImage square = readSquare(image);
+            for (int size : SIZES) {
+                if (size < square.getWidth()) {
+                    write(scale(square, size), variant(image, size));
+                } else {
+                    Files.deleteIfExists(variant(image, size));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Could not create the variants of {}: {}", image, e.getMessage());
+            deleteVariants(image);
+        }
+    }
+
+
+    /**
+     * Deletes the variants of an image, if it has any.
+     *
+     * @param image The path of the image file
+     */
+    public void deleteVariants(Path image) {
+        for (int size : SIZES) {
+            try {
+                Files.deleteIfExists(variant(image, size));
+            } catch (IOException e) {
+                logger.error("Could not delete the {}px variant of {}: {}", size, image, e.getMessage());
+            }
+        }
+    }
+
+
+    /**
+     * Finds the file to serve for an image shown at the given size: the smallest variant at least that large, or the
+     * image itself if it has no such variant.
+     *
+     * @param image The path of the image file
+     * @param size The size the image is shown at in pixels, or null for the image itself
+     * @return The path of the file to serve
+     */
+    public Path resolve(Path image, Integer size) {
+        if (size == null) {
+            return image;
+        }
+        for (int variantSize : SIZES) {
+            if (variantSize >= size) {
+                Path variant = variant(image, variantSize);
+                if (Files.isRegularFile(variant)) {
+                    return variant;
+                }
+            }
+        }
+        return image;
+    }
+
+
+    /**
+     * Gets the path of an image's variant of the given size.
+     *
+     * @param image The path of the image file
+     * @param size The size of the variant
+     * @return The path the variant is saved at
+     */
+    static Path variant(Path image, int size) {
+        String name = image.getFileName().toString();
+        int extension = name.lastIndexOf('.');
+        String baseName = extension == -1 ? name : name.substring(0, extension);
+        return image.resolveSibling(baseName + "_" + size + ".jpg");
+    }
+
+
+    /**
+     * Decodes the largest centred square of an image, checking the image's dimensions before decoding it.
+     */
+    private BufferedImage readSquare(Path image) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(image.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unrecognised image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > MAX_PIXELS) {
+                    throw new IOException("Image is too large to decode: " + width + "x" + height);
+                }
+                BufferedImage decoded = reader.read(0);
+                int side = Math.min(width, height);
+                return decoded.getSubimage((width - side) / 2, (height - side) / 2, side, side);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+
+    /**
+     * Scales a square image down to the given size, halving it with bilinear interpolation until it is within twice
+     * the size, as a single bilinear step from a much larger image skips most of its pixels. Transparent pixels are
+     * drawn over white, as JPEGs have no transparency.
+     */
+    private BufferedImage scale(BufferedImage square, int size) {
+        BufferedImage current = square;
+        int side = square.getWidth();
+        do {
+            side = Math.max(side / 2, size);
+            BufferedImage next = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, side, side, Color.WHITE, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (side > size);
+        return current;
+    }
+
+
+    /**
+     * Writes a JPEG to a temporary file and moves it into place, so a variant is never served half written.
+     */
+    private void write(BufferedImage image, Path path) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        Path temporary = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(temporary.toFile())) {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(QUALITY);
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
+import nz.ac.canterbury.seng302.shared.identityprovider.RoleEpochsResponse;
+import nz.ac.canterbury.seng302.shared.identityprovider.UserRoleEpoch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes users' role epochs to every client subscribed with SubscribeToRoleEpochs, so that clients authorising
+ * requests from the roles in a session token can tell when the token's roles are out of date.
+ *
+ * A new subscriber is first sent the epoch of every user whose roles have ever changed, then each change as it is
+ * published. When several IdP replicas share a database, a subscriber is only connected to one of them, so each
+ * replica also polls the database every roleEpochPollMillis and publishes the changes made by the others.
+ */
+@Service
+public class RoleEpochPublisher {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** Used to find the current role epochs for new subscribers. */
+    private final UserRepository userRepository;
+
+    /** The streams of the subscribed clients. */
+    private final Set<ServerCallStreamObserver<RoleEpochsResponse>> subscribers = new CopyOnWriteArraySet<>();
+
+    /** How often the database is polled for role changes made by other replicas, or 0 to not poll. */
+    private final long pollIntervalMillis;
+
+    /** The role epochs seen by the last poll, by user id. Only used by the polling thread. */
+    private final Map<Integer, Integer> polledRoleEpochs = new HashMap<>();
+
+    /** False until the first poll, which only records the epochs at startup. Only used by the polling thread. */
+    private boolean polled = false;
+
+    /** Runs the polls, or null if not polling. */
+    private ScheduledExecutorService poller;
+
+
+    /**
+     * Autowired constructor, which reads the poll interval from the roleEpochPollMillis property.
+     *
+     * @param userRepository Used to find the current role epochs
+     * @param env Gives access to the environment variables
+     */
+    @Autowired
+    public RoleEpochPublisher(UserRepository userRepository, Environment env) {
+        this(userRepository, Long.parseLong(env.getProperty("roleEpochPollMillis", "0")));
+    }
+
+
+    /**
+     * Creates a publisher that polls the database at the given interval.
+     *
+     * @param userRepository Used to find the current role epochs
+     * @param pollIntervalMillis How often to poll for role changes made by other replicas, or 0 to not poll
+     */
+    public RoleEpochPublisher(UserRepository userRepository, long pollIntervalMillis) {
+        this.userRepository = userRepository;
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+
+    /**
+     * Starts polling for role changes made by other replicas, if a poll interval is set. The current epochs are read
+     * first, so only changes made after startup are published.
+     */
+    @PostConstruct
+    public void startPolling() {
+        if (pollIntervalMillis <= 0) {
+            return;
+        }
+        pollChanges();
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "role-epoch-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(() -> {
+            try {
+                pollChanges();
+            } catch (RuntimeException e) {
+                // Keep polling, a later poll publishes whatever this one missed
+                logger.warn("Could not poll role epochs: {}", e.getMessage());
+            }
+        }, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("Polling role epochs every {}ms", pollIntervalMillis);
+    }
+
+
+    @PreDestroy
+    public void stopPolling() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Publishes every role epoch that has increased since the last poll. Changes made by this replica are published
+     * again, which doesn't matter as clients keep the highest epoch they've seen.
+     */
+    void pollChanges() {
+        for (UserRepository.RoleEpochView user : userRepository.findByRoleEpochGreaterThan(0)) {
+            Integer previous = polledRoleEpochs.put(user.getId(), user.getRoleEpoch());
+            if (polled && (previous == null || previous < user.getRoleEpoch())) {
+                publishNow(user.getId(), user.getRoleEpoch());
+            }
+        }
+        polled = true;
+    }
+
+
+    /**
+     * Subscribes a client to role epoch changes, sending it the current epochs straight away. The client stays
+     * subscribed until it cancels the call.
+     *
+     * @param observer The stream of the client's SubscribeToRoleEpochs call
+     */
+    public void subscribe(ServerCallStreamObserver<RoleEpochsResponse> observer) {
+        observer.setOnCancelHandler(() -> subscribers.remove(observer));
+        // Subscribe before reading the current epochs, so no change is missed in between. A change may be sent twice,
+        // which doesn't matter as clients keep the highest epoch they've seen.
+        subscribers.add(observer);
+
+        RoleEpochsResponse.Builder snapshot = RoleEpochsResponse.newBuilder();
+        for (UserRepository.RoleEpochView user : userRepository.findByRoleEpochGreaterThan(0)) {
+            snapshot.addRoleEpochs(UserRoleEpoch.newBuilder()
+                    .setUserId(user.getId())
+                    .setRoleEpoch(user.getRoleEpoch()));
+        }
+        send(observer, snapshot.build());
+        logger.info("Role epoch subscriber added, {} subscribers", subscribers.size());
+    }
+
+
+    /**
+     * Sends a user's new role epoch to every subscriber. If called during a transaction, it is sent once the
+     * transaction commits, so subscribers never see an epoch that was rolled back.
+     *
+     * @param userId The id of the user whose roles changed
+     * @param roleEpoch The user's new role epoch
+     */
+    public void publish(int userId, int roleEpoch) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishNow(userId, roleEpoch);
+                }
+            });
+        } else {
+            publishNow(userId, roleEpoch);
+        }
+    }
+
+
+    private void publishNow(int userId, int roleEpoch) {
+        RoleEpochsResponse response = RoleEpochsResponse.newBuilder()
+                .addRoleEpochs(UserRoleEpoch.newBuilder().setUserId(userId).setRoleEpoch(roleEpoch))
+                .build();
+        for (ServerCallStreamObserver<RoleEpochsResponse> subscriber : subscribers) {
+            send(subscriber, response);
+        }
+        logger.info("Published role epoch {} of user {}", roleEpoch, userId);
+    }
+
+
+    /**
+     * Sends a response to a subscriber, dropping the subscriber if its call has ended. gRPC streams can't be written
+     * to by two threads at once, so each send holds the lock on the subscriber's stream.
+     *
+     * @param subscriber The stream of a subscribed client
+     * @param response The response to send
+     */
+    private void send(ServerCallStreamObserver<RoleEpochsResponse> subscriber, RoleEpochsResponse response) {
+        synchronized (subscriber) {
+            if (subscriber.isCancelled()) {
+                subscribers.remove(subscriber);
+                return;
+            }
+            try {
+                subscriber.onNext(response);
+            } catch (RuntimeException e) {
+                logger.warn("Dropping role epoch subscriber: {}", e.getMessage());
+                subscribers.remove(subscriber);
+            }
+        }
+    }
+
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+}
@@ -0,0 +1,104 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically logs the metrics of the IdP's caches and password hashing pool, so their sizes can be tuned from how
+ * well they are being used.
+ */
+@Service
+public class ServiceStatsLogger {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final UserResponseCache userResponseCache;
+
+    private final PasswordHashingExecutor passwordHashingExecutor;
+
+    /** How often the metrics are logged. */
+    private final long logIntervalMillis;
+
+    private ScheduledExecutorService statsLogger;
+
+
+    /**
+     * Autowired constructor, which logs the metrics every serviceStatsLogMinutes.
+     *
+     * @param userResponseCache The cache of users' responses
+     * @param passwordHashingExecutor The pool passwords are hashed on
+     * @param env Gives access to the environment variables
+     */
+    @Autowired
+    public ServiceStatsLogger(UserResponseCache userResponseCache, PasswordHashingExecutor passwordHashingExecutor,
+                              Environment env) {
+        this(userResponseCache, passwordHashingExecutor,
+                TimeUnit.MINUTES.toMillis(Long.parseLong(env.getProperty("serviceStatsLogMinutes", "10"))));
+    }
+
+
+    /**
+     * Creates a logger of the given services' metrics.
+     *
+     * @param userResponseCache The cache of users' responses
+     * @param passwordHashingExecutor The pool passwords are hashed on
+     * @param logIntervalMillis How often to log the metrics, or 0 to never log them
+     */
+    public ServiceStatsLogger(UserResponseCache userResponseCache, PasswordHashingExecutor passwordHashingExecutor,
+                              long logIntervalMillis) {
+        this.userResponseCache = userResponseCache;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.logIntervalMillis = logIntervalMillis;
+    }
+
+
+    /**
+     * Starts logging the metrics in the background, once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (logIntervalMillis <= 0) {
+            return;
+        }
+        statsLogger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "service-stats-logger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        statsLogger.scheduleWithFixedDelay(this::logStats, logIntervalMillis, logIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    @PreDestroy
+    public void stop() {
+        if (statsLogger != null) {
+            statsLogger.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Logs the current metrics of each service.
+     */
+    void logStats() {
+        UserResponseCache.Stats cacheStats = userResponseCache.getStats();
+        logger.info("User response cache - hits: {}, misses: {}, evictions: {}, size: {}",
+                cacheStats.hits(), cacheStats.misses(), cacheStats.evictions(), cacheStats.size());
+
+        PasswordHashingExecutor.Stats hashingStats = passwordHashingExecutor.getStats();
+        logger.info("Password hashing - queued: {}, completed: {}, rejected: {}, average ms: {}, max ms: {}",
+                hashingStats.queueDepth(), hashingStats.completed(), hashingStats.rejected(),
+                String.format("%.1f", hashingStats.averageHashMillis()),
+                String.format("%.1f", hashingStats.maxHashMillis()));
+    }
+}
@@ -32,28 +32,47 @@ public class UrlService {
     }
 
 
+    /**
+     * Gets the absolute image path of the image's default size variant, which is large enough for the avatars shown
+     * across the site.
+     *
+     * @param user - The user whose profile image is being retrieved
+     * @return - A URL object that contains the profile image path.
+     * @see #getProfileURL(User, int)
+     */
+    public URL getProfileURL(User user) {
+        return getProfileURL(user, ProfileImageVariants.DEFAULT_SIZE);
+    }
+
+
     /**
      * Gets the absolute image path based off the users image name and the environment variables
      * for the protocol, endpoint, port and image root path.
      * Note: this method is required to provide the correct path for images independent of the server host.
+     * The path asks for the smallest variant of the image at least the given size. Users without an image share the
+     * default image's path.
      *
      * @param user - The user whose profile image is being retrieved
+     * @param size - The size in pixels the image is shown at
      * @return - A URL object that contains the profile image path.
      */
-    public URL getProfileURL(User user) {
+    public URL getProfileURL(User user, int size) {
 
         String protocol = env.getProperty("protocol", "http");
         String hostName = env.getProperty("hostName", "localhost");
         int port = Integer.parseInt(env.getProperty("port", "9001"));
         String rootPath = env.getProperty("rootPath", "");
 
+        String path = rootPath + user.getProfileImagePath();
+        if (user.getProfileImage() != null) {
+            path += "?size=" + size;
+        }
         try {
             return new URL(
                     protocol,
                     hostName,
                     port,
-                    rootPath + user.getProfileImagePath()
-
+                    path
             );
         } catch (MalformedURLException e) {
             throw new RuntimeException("URL creation failed. Check application.properties has all required properties");
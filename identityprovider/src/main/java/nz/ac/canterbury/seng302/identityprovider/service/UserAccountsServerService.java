@@ -1,13 +1,14 @@
 package nz.ac.canterbury.seng302.identityprovider.service;
 
 import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import net.devh.boot.grpc.server.service.GrpcService;
 import nz.ac.canterbury.seng302.identityprovider.model.User;
 import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
+import nz.ac.canterbury.seng302.identityprovider.model.UserSortKey;
 import nz.ac.canterbury.seng302.shared.identityprovider.*;
 import nz.ac.canterbury.seng302.shared.identityprovider.UserAccountServiceGrpc.UserAccountServiceImplBase;
-import nz.ac.canterbury.seng302.shared.util.BasicStringFilteringOptions;
 import nz.ac.canterbury.seng302.shared.util.FileUploadStatusResponse;
 import nz.ac.canterbury.seng302.shared.util.PaginationRequestOptions;
 import nz.ac.canterbury.seng302.shared.util.PaginationResponseOptions;
@@ -19,6 +20,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Predicate;
 
 /**
@@ -39,58 +41,43 @@ public class UserAccountsServerService extends UserAccountServiceImplBase {
     /** To edit group details related to users roles. */
     private final GroupService groupService;
 
+    /** Holds the users sorted in memory, so pages of users can be served without the database. */
+    private final UserIndexService userIndexService;
 
-    // Repeat messages
-    private static final String UNEXPECTED_ERROR_MESSAGE = "An Unexpected error occurred";
-    private static final String UNFOUND_USER_ERROR_MESSAGE = "Could not find user";
+    /** Caches the UserResponse of each user, so it isn't rebuilt every time the user is sent to a client. */
+    private final UserResponseCache userResponseCache;
 
+    /** Hashes passwords off the gRPC handler threads. */
+    private final PasswordHashingExecutor passwordHashingExecutor;
 
-    /** First Name Comparator, has other name fields after to decide order if first names are the same*/
-    Comparator<User> compareByFirstName = Comparator.comparing((User user) ->
-            (user.getFirstName().toLowerCase(Locale.ROOT) + ' ' +
-             user.getMiddleName().toLowerCase(Locale.ROOT) + ' ' +
-             user.getLastName().toLowerCase(Locale.ROOT)));
-
-    /** Middle Name Comparator, has other name fields after to decide order if middle names are the same */
-    Comparator<User> compareByMiddleName = Comparator.comparing((User user) ->
-            (user.getMiddleName().toLowerCase(Locale.ROOT) + ' ' +
-             user.getFirstName().toLowerCase(Locale.ROOT) + ' ' +
-             user.getLastName().toLowerCase(Locale.ROOT)));
-
-    /** Last Name Comparator, has other name fields after to decide order if last names are the same */
-    Comparator<User> compareByLastName = Comparator.comparing((User user) ->
-            (user.getLastName().toLowerCase(Locale.ROOT) + ' ' +
-             user.getFirstName().toLowerCase(Locale.ROOT) + ' ' +
-             user.getMiddleName().toLowerCase(Locale.ROOT)));
-
-    /** Username Comparator */
-    Comparator<User> compareByUsername = Comparator.comparing((User user) ->
-            (user.getUsername().toLowerCase(Locale.ROOT)));
-
-    /** Alias Comparator, has name fields afterwards to decide order if the aliases are the same */
-    Comparator<User> compareByAlias = Comparator.comparing((User user) ->
-            (user.getNickname().toLowerCase(Locale.ROOT) + ' ' +
-             user.getFirstName().toLowerCase(Locale.ROOT) + ' ' +
-             user.getMiddleName().toLowerCase(Locale.ROOT) + ' ' +
-             user.getLastName().toLowerCase(Locale.ROOT)));
-
-    /** Role Comparator */
-    Comparator<User> compareByRole = (userOne, userTwo) -> {
-        List<UserRole> userOneRoles = userOne.getRoles();
-        List<UserRole> userTwoRoles = userTwo.getRoles();
-        Integer userOnePrecedence = (userOneRoles.contains(UserRole.STUDENT) ? 1 : 0) +
-                                    (userOneRoles.contains(UserRole.TEACHER) ? 2 : 0) +
-                                    (userOneRoles.contains(UserRole.COURSE_ADMINISTRATOR) ? 4 : 0);
-        Integer userTwoPrecedence = (userTwoRoles.contains(UserRole.STUDENT) ? 1 : 0) +
-                                    (userTwoRoles.contains(UserRole.TEACHER) ? 2 : 0) +
-                                    (userTwoRoles.contains(UserRole.COURSE_ADMINISTRATOR) ? 4 : 0);
-
-        userOneRoles.sort(Collections.reverseOrder());
-        userTwoRoles.sort(Collections.reverseOrder());
-
-        return userTwoPrecedence.compareTo(userOnePrecedence);
-    };
+    /** Pushes users' role epochs to subscribed clients when their roles change. */
+    private final RoleEpochPublisher roleEpochPublisher;
 
+    /** Records every change to a user, for the clients watching the directory. */
+    private final DirectoryChangeLog directoryChangeLog;
+
+    /** Stores uploaded profile photos under the hash of their content. */
+    private final ProfileImageStore profileImageStore;
+
+    /**
+     * How long the number of users is reused for while paging from the database. It is forgotten whenever this
+     * replica adds a user, but other replicas sharing the database can add users too.
+     */
+    private static final long USER_COUNT_TTL_MILLIS = 5000;
+
+    /** The number of users last counted in the database, or -1 if it needs counting again. */
+    private volatile long userCount = -1;
+
+    /** When the users were last counted. */
+    private volatile long userCountedMillis = 0;
+
+    /** The number of users read at a time when filtering users by name without the user index. */
+    private static final int FILTER_BATCH_SIZE = 500;
+
+
+    // Repeat messages
+    private static final String UNEXPECTED_ERROR_MESSAGE = "An Unexpected error occurred";
+    private static final String UNFOUND_USER_ERROR_MESSAGE = "Could not find user";
 
     /**
      * Autowired constructor to inject the required beans.
@@ -98,12 +85,28 @@ public class UserAccountsServerService extends UserAccountServiceImplBase {
      * @param userRepository - The repo that stores the users
      * @param env  - Gives access to the environment variables
      * @param groupService - For CRUD actions to do with groups.
+     * @param userIndexService - The in memory index of users, kept up to date with every change to a user.
+     * @param userResponseCache - The cache of UserResponses, invalidated by every change to a user.
+     * @param passwordHashingExecutor - The pool that new and changed passwords are hashed on.
+     * @param roleEpochPublisher - Tells subscribed clients when a user's roles change.
+     * @param directoryChangeLog - Records every change to a user for the clients watching the directory.
+     * @param profileImageStore - Stores uploaded profile photos under the hash of their content.
      */
     @Autowired
-    public UserAccountsServerService(UserRepository userRepository, Environment env, GroupService groupService) {
+    public UserAccountsServerService(UserRepository userRepository, Environment env, GroupService groupService,
+                                     UserIndexService userIndexService, UserResponseCache userResponseCache,
+                                     PasswordHashingExecutor passwordHashingExecutor,
+                                     RoleEpochPublisher roleEpochPublisher, DirectoryChangeLog directoryChangeLog,
+                                     ProfileImageStore profileImageStore) {
        this.userRepository = userRepository;
        this.env = env;
        this.groupService = groupService;
+       this.userIndexService = userIndexService;
+       this.userResponseCache = userResponseCache;
+       this.passwordHashingExecutor = passwordHashingExecutor;
+       this.roleEpochPublisher = roleEpochPublisher;
+       this.directoryChangeLog = directoryChangeLog;
+       this.profileImageStore = profileImageStore;
     }
 
 
@@ -124,26 +127,59 @@ public class UserAccountsServerService extends UserAccountServiceImplBase {
             reply = UserResponse.newBuilder().setId(-1).build();
         } else {
             logger.info("Sending user details for {}", user.getUsername());
-            reply = user.userResponse();
+            reply = userResponseCache.get(user);
         }
         responseObserver.onNext(reply);
         responseObserver.onCompleted();
     }
 
 
+    /**
+     * Follows the gRPC contract for retrieving the details of many users at once, so that clients resolving a list of
+     * users make one request rather than one per user. All the users are loaded with a single repository query.
+     * Ids of users that don't exist are left out of the response.
+     *
+     * @param request - The GetUsersByIdsRequest with the ids of the users to get
+     * @param responseObserver - used to return the response to the Client side of the service
+     */
+    @Override
+    public void getUsersByIds(GetUsersByIdsRequest request, StreamObserver<GetUsersByIdsResponse> responseObserver) {
+        Set<Integer> ids = new HashSet<>(request.getIdsList());
+        logger.info("SERVICE - Getting user details for {} ids", ids.size());
+        GetUsersByIdsResponse.Builder response = GetUsersByIdsResponse.newBuilder();
+        for (User user : userRepository.findAllById(ids)) {
+            response.addUsers(userResponseCache.get(user));
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+
     /**
      * Follows the gRPC contract and provides the server side service for registering new users, adding them to the database
      *
+     * The new user's password is hashed on the PasswordHashingExecutor, and the user is saved and the response sent
+     * once it has been hashed. If the username is already in use, the response is sent straight away without hashing.
+     * If too many passwords are already waiting to be hashed, the request fails with RESOURCE_EXHAUSTED.
+     *
      * @param request - A UserRegisterRequest formatted to satisfy the user_accounts.proto contract
      * @param responseObserver - Used to return the response to the client side.
      */
     @Override
     public void register(UserRegisterRequest request, StreamObserver<UserRegisterResponse> responseObserver) {
         logger.info("SERVICE - Registering new user with username {}", request.getUsername());
-        UserRegisterResponse.Builder reply = UserRegisterResponse.newBuilder();
+        if (userRepository.findByUsername(request.getUsername()) != null) {
+            logger.info("Registration Failure - username {} already in use", request.getUsername());
+            responseObserver.onNext(UserRegisterResponse.newBuilder()
+                    .setIsSuccess(false)
+                    .setMessage("Username already in use")
+                    .build());
+            responseObserver.onCompleted();
+            return;
+        }
 
         try {
-            User user = new User(
+            passwordHashingExecutor.submit(() -> new User(
                     request.getUsername(),
                     request.getPassword(),
                     request.getFirstName(),
@@ -153,11 +189,41 @@ public class UserAccountsServerService extends UserAccountServiceImplBase {
                     request.getBio(),
                     request.getPersonalPronouns(),
                     request.getEmail()
-            );
+            )).whenComplete((user, error) -> passwordHashingExecutor.respond(responseObserver, () -> {
+                UserRegisterResponse.Builder reply = UserRegisterResponse.newBuilder();
+                if (error != null) {
+                    logger.info("An unexpected error occurred when trying to add the new user:\n {}", error.getMessage());
+                    reply.setIsSuccess(false)
+                            .setMessage(UNEXPECTED_ERROR_MESSAGE);
+                } else {
+                    saveNewUser(request, user, reply);
+                }
+                responseObserver.onNext(reply.build());
+                responseObserver.onCompleted();
+            }));
+        } catch (RejectedExecutionException exception) {
+            responseObserver.onError(PasswordHashingExecutor.rejectedStatus());
+        }
+    }
 
+
+    /**
+     * Saves a newly registered user whose password has been hashed, unless their username was taken while it was
+     * being hashed.
+     *
+     * @param request - The UserRegisterRequest the user was created from
+     * @param user - The new user
+     * @param reply - The response to fill in with the outcome
+     */
+    private void saveNewUser(UserRegisterRequest request, User user, UserRegisterResponse.Builder reply) {
+        try {
             if (userRepository.findByUsername(user.getUsername()) == null) {
                 logger.info("Registration Success - for new user {}", request.getUsername());
                 userRepository.save(user);
+                userCount = -1;
+                userIndexService.update(user);
+                userResponseCache.invalidate(user.getId());
+                directoryChangeLog.recordUserChange(user.getId());
                 groupService.addGroupMemberByGroupShortName("Non-Group",user.getId());
                 reply.setIsSuccess(true)
                         .setNewUserId(user.getId())
@@ -178,9 +244,6 @@ public class UserAccountsServerService extends UserAccountServiceImplBase {
             reply.setIsSuccess(false)
                     .setMessage(UNEXPECTED_ERROR_MESSAGE);
         }
-
-        responseObserver.onNext(reply.build());
-        responseObserver.onCompleted();
     }
 
 
@@ -213,6 +276,9 @@ public class UserAccountsServerService extends UserAccountServiceImplBase {
                 userToEdit.setPronouns(request.getPersonalPronouns());
                 userToEdit.setEmail(request.getEmail());
                 userRepository.save(userToEdit);
+                userIndexService.update(userToEdit);
+                userResponseCache.invalidate(userToEdit.getId());
+                directoryChangeLog.recordUserChange(userToEdit.getId());
                 response.setIsSuccess(true)
                         .setMessage("Successfully updated details for " + userToEdit.getUsername());
             } catch (StatusRuntimeException e) {
@@ -242,55 +308,82 @@ public class UserAccountsServerService extends UserAccountServiceImplBase {
      *    - If this password is correct the password is updated to the new password, otherwise the user is informed
      *    that they have used an incorrect old password.
      *
+     * Both passwords are hashed on the PasswordHashingExecutor, and the response is sent once they have been hashed.
+     * If too many passwords are already waiting to be hashed, the request fails with RESOURCE_EXHAUSTED.
+     *
      * @param request - The gRPC ChangePasswordRequest passed from the client
      * @param responseObserver - Used to return the response to the client side.
      */
-    @Transactional
     @Override
     public void changeUserPassword(ChangePasswordRequest request, StreamObserver<ChangePasswordResponse> responseObserver) {
         logger.info("SERVICE - Changing password for user with id {}", request.getUserId());
-        ChangePasswordResponse.Builder response = ChangePasswordResponse.newBuilder();
 
         User userToUpdate = userRepository.findById(request.getUserId());
-        if (userToUpdate != null) {
-            // User is found, check correct current password provided
-            try {
+        if (userToUpdate == null) {
+            logger.info("Password Change Failure - could not find user with id {}", request.getUserId());
+            responseObserver.onNext(ChangePasswordResponse.newBuilder()
+                    .setIsSuccess(false)
+                    .setMessage(UNFOUND_USER_ERROR_MESSAGE)
+                    .build());
+            responseObserver.onCompleted();
+            return;
+        }
+
+        try {
+            passwordHashingExecutor.submit(() -> {
                 // encrypt attempted current password to "match" pwhash
                 LoginService encryptor = new LoginService();
                 String inputPWHash = encryptor.getHash(request.getCurrentPassword(), userToUpdate.getSalt());
                 // Check encrypted password against pw hash
-                if (userToUpdate.getPwhash().equals(inputPWHash)) {
-                    // If password hash matches, update
-                    logger.info("Password Change Success - password updated for user {}", request.getUserId());
-                    userToUpdate.setPwhash(request.getNewPassword());
-                    userRepository.save(userToUpdate);
-                    response.setIsSuccess(true)
-                            .setMessage("Successfully updated details for " + userToUpdate.getUsername());
+                if (!userToUpdate.getPwhash().equals(inputPWHash)) {
+                    return false;
+                }
+                userToUpdate.setPwhash(request.getNewPassword());
+                return true;
+            }).whenComplete((isCorrectPassword, error) -> passwordHashingExecutor.respond(responseObserver, () -> {
+                ChangePasswordResponse.Builder response = ChangePasswordResponse.newBuilder();
+                if (error != null) {
+                    logger.error("An error occurred encrypting the new password");
+                    logger.error(error.getMessage());
+                    response.setIsSuccess(false)
+                            .setMessage("An error has occurred while encrypting the new password");
+                } else if (isCorrectPassword) {
+                    saveNewPassword(request, userToUpdate, response);
                 } else {
                     logger.info("Password Change Failure - incorrect old password for {}", request.getUserId());
                     // Password hash doesn't match so don't update
                     response.setIsSuccess(false)
                             .setMessage("Incorrect current password provided");
                 }
-            } catch (StatusRuntimeException e) {
-                logger.error("An error occurred changing user password from request: {}\n See stack trace below \n", request);
-                logger.error(e.getMessage());
-                response.setIsSuccess(false)
-                        .setMessage("An error has occurred while connecting to the database");
-            } catch (PasswordEncryptionException e) {
-                logger.error("An error occurred encrypting the new password");
-                logger.error(e.getMessage());
-                response.setIsSuccess(false)
-                        .setMessage("An error has occurred while encrypting the new password");
-            }
-        } else {
-            logger.info("Password Change Failure - could not find user with id {}", request.getUserId());
-            response.setIsSuccess(false)
-                    .setMessage(UNFOUND_USER_ERROR_MESSAGE);
+                responseObserver.onNext(response.build());
+                responseObserver.onCompleted();
+            }));
+        } catch (RejectedExecutionException exception) {
+            responseObserver.onError(PasswordHashingExecutor.rejectedStatus());
         }
+    }
 
-        responseObserver.onNext(response.build());
-        responseObserver.onCompleted();
+
+    /**
+     * Saves the new password hash of a user, in a transaction of its own as this runs on a hashing thread after the
+     * request's handler has returned.
+     *
+     * @param request - The ChangePasswordRequest the password was changed by
+     * @param userToUpdate - The user with their new password hash
+     * @param response - The response to fill in with the outcome
+     */
+    private void saveNewPassword(ChangePasswordRequest request, User userToUpdate, ChangePasswordResponse.Builder response) {
+        try {
+            logger.info("Password Change Success - password updated for user {}", request.getUserId());
+            userRepository.updatePasswordHash(userToUpdate.getId(), userToUpdate.getPwhash());
+            response.setIsSuccess(true)
+                    .setMessage("Successfully updated details for " + userToUpdate.getUsername());
+        } catch (StatusRuntimeException e) {
+            logger.error("An error occurred changing user password from request: {}\n See stack trace below \n", request);
+            logger.error(e.getMessage());
+            response.setIsSuccess(false)
+                    .setMessage("An error has occurred while connecting to the database");
+        }
     }
 
 
@@ -309,7 +402,8 @@ public class UserAccountsServerService extends UserAccountServiceImplBase {
      */
     @Override
     public StreamObserver<UploadUserProfilePhotoRequest> uploadUserProfilePhoto(StreamObserver<FileUploadStatusResponse> responseObserver) {
-        return new ImageRequestStreamObserver(responseObserver, userRepository, env);
+        return new ImageRequestStreamObserver(responseObserver, userRepository, env, userResponseCache,
+                userIndexService, directoryChangeLog, profileImageStore);
     }
 
 
@@ -325,7 +419,11 @@ public class UserAccountsServerService extends UserAccountServiceImplBase {
         try {
             int id = request.getUserId();
             User user = userRepository.findById(id);
-            user.deleteProfileImage(env);
+            user.deleteProfileImage();
+            userRepository.save(user);
+            userIndexService.update(user);
+            userResponseCache.invalidate(id);
+            directoryChangeLog.recordUserChange(id);
             response.setIsSuccess(true);
         } catch (Exception exception) {
             response.setIsSuccess(false);
@@ -343,6 +441,8 @@ public class UserAccountsServerService extends UserAccountServiceImplBase {
      *  - Otherwise the role to be added is checked against the user's current roles to prevent duplication, then the
      *  role is added if it's unique for the user.
      *
+     * Adding a role increments the user's role epoch, so session tokens issued with their old roles are stale.
+     *
      * @param request - The gRPC ModifyRoleOfUserRequest passed from the client
      * @param responseObserver - Used to return the response to the client side.
      */
@@ -356,7 +456,12 @@ public class UserAccountsServerService extends UserAccountServiceImplBase {
             try {
                 if (!userToUpdate.getRoles().contains(request.getRole())) {
                     userToUpdate.addRole(request.getRole());
+                    userToUpdate.incrementRoleEpoch();
                     userRepository.save(userToUpdate);
+                    userIndexService.update(userToUpdate);
+                    userResponseCache.invalidate(userToUpdate.getId());
+                    roleEpochPublisher.publish(userToUpdate.getId(), userToUpdate.getRoleEpoch());
+                    directoryChangeLog.recordUserChange(userToUpdate.getId());
                     if (request.getRole() == UserRole.TEACHER) {
                         groupService.addGroupMemberByGroupShortName("Teachers", userToUpdate.getId());
                     }
@@ -394,6 +499,8 @@ public class UserAccountsServerService extends UserAccountServiceImplBase {
      *  then an exception gets thrown, because a user should always have at least 1 role. We catch this exception
      *  and send a failure message.
      *
+     *  - Removing a role increments the user's role epoch, so session tokens issued with their old roles are stale.
+     *
      * @param request - The gRPC ModifyRoleOfUserRequest passed from the client
      * @param responseObserver - Used to return the response to the client side.
      */
@@ -407,7 +514,12 @@ public class UserAccountsServerService extends UserAccountServiceImplBase {
             //We've found the user!
             try {
                 userToUpdate.deleteRole(request.getRole());
+                userToUpdate.incrementRoleEpoch();
                 userRepository.save(userToUpdate);
+                userIndexService.update(userToUpdate);
+                userResponseCache.invalidate(userToUpdate.getId());
+                roleEpochPublisher.publish(userToUpdate.getId(), userToUpdate.getRoleEpoch());
+                directoryChangeLog.recordUserChange(userToUpdate.getId());
                 logger.info("Role Removal Success - removed {} from user {}", request.getRole(), request.getUserId());
                 if (request.getRole().equals(UserRole.TEACHER)){
                     groupService.removeGroupMembersByGroupShortName("Teachers", userToUpdate.getId());
@@ -438,8 +550,8 @@ public class UserAccountsServerService extends UserAccountServiceImplBase {
 
 
     /**
-     * Follows the gRPC contract for retrieving the paginated users. Does this by sorting a list of all the users based
-     * on what was requested and then looping through to add the specific page of users to the response
+     * Follows the gRPC contract for retrieving the paginated users. Does this by asking the repository for the
+     * specific page of users in the requested order, continuing from the request's cursor if it has one
      *
      * @param usersRequest the GetPaginatedUsersRequest passed through from the client service
      * @param responseObserver Used to return the response to the client side.
@@ -453,33 +565,42 @@ public class UserAccountsServerService extends UserAccountServiceImplBase {
 
 
     /**
-     * Follows the gRPC contract for retrieving the paginated users and filtering them. Does this by calling a helper
-     * function that gets the paginated users and then filters them by their last and first name
+     * Follows the gRPC contract for retrieving the paginated users and filtering them. Does this by searching the
+     * user index's name search index for users whose first, last or full name or nickname contains the filter text,
+     * returning the best matches first. If the request has MaxResults, at most that many users are returned.
      *
      * @param usersRequest the GetPaginatedUsersFilteredRequest passed through from the client service
      * @param responseObserver Used to return the response to the client side.
      */
     @Override
     public void getPaginatedUsersFilteredByName(GetPaginatedUsersFilteredRequest usersRequest, StreamObserver<PaginatedUsersResponse> responseObserver){
-        PaginatedUsersResponse.Builder response = getPaginatedUsersHelper(usersRequest.getPaginationRequestOptions());
-
-        BasicStringFilteringOptions filteringOptions = usersRequest.getFilteringOptions();
-        // Filtered by first, last and then full name so that the order for the auto-complete is more natural
-        Predicate<UserResponse> firstName = user -> (user.getFirstName().toLowerCase(Locale.ROOT))
-                .contains(filteringOptions.getFilterText().toLowerCase(Locale.ROOT));
-        Predicate<UserResponse> lastName = user -> (user.getLastName().toLowerCase(Locale.ROOT))
-                .contains(filteringOptions.getFilterText().toLowerCase(Locale.ROOT));
-        Predicate<UserResponse> fullName = user -> (user.getFirstName().toLowerCase(Locale.ROOT) + " " +
-                user.getLastName().toLowerCase(Locale.ROOT))
-                .contains((filteringOptions.getFilterText().toLowerCase(Locale.ROOT)));
+        PaginationRequestOptions options = usersRequest.getPaginationRequestOptions();
+        String filterText = usersRequest.getFilteringOptions().getFilterText();
+        int limit = Math.max(options.getLimit(), 0);
+        if (usersRequest.getMaxResults() > 0) {
+            limit = Math.min(limit, usersRequest.getMaxResults());
+        }
 
-        ArrayList<UserResponse> filteredUsers = new ArrayList<>();
-        filteredUsers.addAll(response.getUsersList().stream().filter(firstName).toList());
-        filteredUsers.addAll(response.getUsersList().stream().filter(lastName).toList());
-        filteredUsers.addAll(response.getUsersList().stream().filter(fullName).toList());
+        UserSortKey sortKey = UserSortKey.fromOrderBy(options.getOrderBy());
+        int offset = Math.max(options.getOffset(), 0);
 
-        response.clearUsers();
-        response.addAllUsers(new ArrayList<>(new LinkedHashSet<>(filteredUsers))); // to remove duplicates
+        PaginatedUsersResponse.Builder response = PaginatedUsersResponse.newBuilder();
+        if (userIndexService.isReady()) {
+            UserIndexService.SearchResult result = userIndexService.searchByName(filterText, sortKey,
+                    options.getIsAscendingOrder(), offset, limit);
+            response.addAllUsers(result.users());
+            response.setPaginationResponseOptions(PaginationResponseOptions.newBuilder()
+                    .setResultSetSize(result.matchCount())
+                    .build());
+        } else {
+            List<UserResponse> filteredUsers = findUsersByName(sortKey, options.getIsAscendingOrder(), filterText);
+            int start = Math.min(offset, filteredUsers.size());
+            int end = (int) Math.min((long) start + limit, filteredUsers.size());
+            response.addAllUsers(filteredUsers.subList(start, end));
+            response.setPaginationResponseOptions(PaginationResponseOptions.newBuilder()
+                    .setResultSetSize(filteredUsers.size())
+                    .build());
+        }
 
         responseObserver.onNext(response.build());
         responseObserver.onCompleted();
@@ -487,37 +608,170 @@ public class UserAccountsServerService extends UserAccountServiceImplBase {
 
 
     /**
-     * A helper function to get all the users, sort them, and select the ones needed for the requested page
+     * Follows the gRPC contract for subscribing to users' role epochs. The client is sent the epoch of every user
+     * whose roles have changed, then each user's new epoch whenever their roles change, until it cancels the call.
+     *
+     * @param request the SubscribeToRoleEpochsRequest, which has no options
+     * @param responseObserver Used to send the role epochs to the client side.
+     */
+    @Override
+    public void subscribeToRoleEpochs(SubscribeToRoleEpochsRequest request,
+                                      StreamObserver<RoleEpochsResponse> responseObserver) {
+        logger.info("SERVICE - Subscribing to role epochs");
+        roleEpochPublisher.subscribe((ServerCallStreamObserver<RoleEpochsResponse>) responseObserver);
+    }
+
+
+    /**
+     * Follows the gRPC contract for streaming every user in sorted order. The users are sent in batches, and a batch
+     * is only read and sent when the client is ready for it, so the whole user list is never held in memory.
+     *
+     * @param request the StreamUsersRequest with the order to send the users in
+     * @param responseObserver Used to send the batches of users to the client side.
+     */
+    @Override
+    public void streamUsers(StreamUsersRequest request, StreamObserver<UserBatch> responseObserver) {
+        logger.info("SERVICE - Streaming users ordered by {}", request.getOrderBy());
+        UserSortKey sortKey = UserSortKey.fromOrderBy(request.getOrderBy());
+        boolean isAscending = request.getIsAscendingOrder();
+        UserBatchPublisher.start((ServerCallStreamObserver<UserBatch>) responseObserver,
+                (lastKey, lastId, limit) -> readUserPage(sortKey, isAscending, lastKey, lastId, 0, limit),
+                request.getBatchSize());
+    }
+
+
+    /**
+     * Finds every user whose name matches the filter text by reading through all the users in batches, used while the
+     * user index is still being built. Only the matching users are kept, so they can be paged once they are filtered.
+     *
+     * @param sortKey The order to read the users in
+     * @param isAscending Whether that order is ascending or descending
+     * @param filterText The text the names must contain
+     * @return All the matching users, in the order given by filterUsersByName
+     */
+    private List<UserResponse> findUsersByName(UserSortKey sortKey, boolean isAscending, String filterText) {
+        List<UserResponse> matches = new ArrayList<>();
+        UserIndexService.UserPage batch = readUserPage(sortKey, isAscending, null, 0, 0, FILTER_BATCH_SIZE);
+        while (!batch.users().isEmpty()) {
+            matches.addAll(filterUsersByName(batch.users(), filterText));
+            if (batch.users().size() < FILTER_BATCH_SIZE) {
+                break;
+            }
+            batch = readUserPage(sortKey, isAscending, batch.lastKey(), batch.lastId(), 0, FILTER_BATCH_SIZE);
+        }
+        return filterUsersByName(matches, filterText);
+    }
+
+
+    /**
+     * Filters a page of users by their first, last and then full name, used while the user index is still being built.
+     *
+     * @param users The page of users to filter
+     * @param filterText The text the names must contain
+     * @return The users that match, without duplicates
+     */
+    private List<UserResponse> filterUsersByName(List<UserResponse> users, String filterText) {
+        String text = filterText.toLowerCase(Locale.ROOT);
+        // Filtered by first, last and then full name so that the order for the auto-complete is more natural
+        Predicate<UserResponse> firstName = user -> (user.getFirstName().toLowerCase(Locale.ROOT)).contains(text);
+        Predicate<UserResponse> lastName = user -> (user.getLastName().toLowerCase(Locale.ROOT)).contains(text);
+        Predicate<UserResponse> fullName = user -> (user.getFirstName().toLowerCase(Locale.ROOT) + " " +
+                user.getLastName().toLowerCase(Locale.ROOT)).contains(text);
+
+        ArrayList<UserResponse> filteredUsers = new ArrayList<>();
+        filteredUsers.addAll(users.stream().filter(firstName).toList());
+        filteredUsers.addAll(users.stream().filter(lastName).toList());
+        filteredUsers.addAll(users.stream().filter(fullName).toList());
+        return new ArrayList<>(new LinkedHashSet<>(filteredUsers)); // to remove duplicates
+    }
+
+
+    /**
+     * A helper function to get the users on the requested page. Once the user index is ready, the page is read from
+     * it without touching the database. Before then, the sorting and paging is done by the database using the users'
+     * sort key indexes, so only the requested page of users is ever loaded.
+     *
+     * If the request has a cursor from a previous page with the same order, the page starts directly after the last
+     * user of that page rather than skipping offset users. Otherwise, the offset is used.
      *
      * @param request the PaginationRequestOptions passed through from the client service
      * @return a builder for the PaginatedUsersResponse populated with the paginated users
      */
     private PaginatedUsersResponse.Builder getPaginatedUsersHelper(PaginationRequestOptions request){
         PaginatedUsersResponse.Builder response = PaginatedUsersResponse.newBuilder();
-        List<User> allUsers = (List<User>) userRepository.findAll();
-        String sortMethod = request.getOrderBy();
-
-        switch (sortMethod) {
-            case "roles" -> allUsers.sort(compareByRole);
-            case "username" -> allUsers.sort(compareByUsername);
-            case "aliases" -> allUsers.sort(compareByAlias);
-            case "middlename" -> allUsers.sort(compareByMiddleName);
-            case "lastname" -> allUsers.sort(compareByLastName);
-            default -> allUsers.sort(compareByFirstName);
+        UserSortKey sortKey = UserSortKey.fromOrderBy(request.getOrderBy());
+        boolean isAscending = request.getIsAscendingOrder();
+        int limit = Math.max(request.getLimit(), 0);
+        int offset = Math.max(request.getOffset(), 0);
+        UserPageCursor cursor = UserPageCursor.decode(request.getCursor(), sortKey, isAscending);
+
+        Object lastKey = (cursor != null) ? cursor.lastKey() : null;
+        int lastId = (cursor != null) ? cursor.lastId() : 0;
+        UserIndexService.UserPage page = readUserPage(sortKey, isAscending, lastKey, lastId, offset, limit);
+        int resultSetSize = userIndexService.isReady() ? userIndexService.size() : countUsers();
+
+        response.addAllUsers(page.users());
+        PaginationResponseOptions.Builder options = PaginationResponseOptions.newBuilder()
+                .setResultSetSize(resultSetSize);
+        if (!page.users().isEmpty() && page.users().size() == limit) {
+            options.setNextCursor(new UserPageCursor(sortKey, isAscending, page.lastId(), page.lastKey()).encode());
         }
+        response.setPaginationResponseOptions(options.build());
+        return response;
+    }
+
+
+    /**
+     * Counts the users in the database, reusing the last count for USER_COUNT_TTL_MILLIS so that paging through the
+     * users doesn't count them again for every page.
+     *
+     * @return The number of users
+     */
+    private int countUsers() {
+        long now = System.currentTimeMillis();
+        long count = userCount;
+        if (count < 0 || now - userCountedMillis >= USER_COUNT_TTL_MILLIS) {
+            count = userRepository.count();
+            userCount = count;
+            userCountedMillis = now;
+        }
+        return (int) count;
+    }
 
-        if (!request.getIsAscendingOrder()){
-            Collections.reverse(allUsers);
+
+    /**
+     * Reads a page of users from the user index, or from the repository while the index is still being built.
+     *
+     * @param sortKey The order to sort the users by
+     * @param isAscending Whether the order is ascending or descending
+     * @param lastKey The sort key of the user before the page, or null to skip offset users instead
+     * @param lastId The id of the user before the page
+     * @param offset The number of users to skip, when there is no last key
+     * @param limit The maximum number of users to return
+     * @return The page of users
+     */
+    private UserIndexService.UserPage readUserPage(UserSortKey sortKey, boolean isAscending, Object lastKey, int lastId,
+                                                   int offset, int limit) {
+        if (userIndexService.isReady()) {
+            return (lastKey != null)
+                    ? userIndexService.getPageAfter(sortKey, isAscending, lastKey, lastId, limit)
+                    : userIndexService.getPage(sortKey, isAscending, offset, limit);
         }
 
-        //for each user up to the limit or until all the users have been looped through, add to the response
-        for (int i = request.getOffset(); ((i - request.getOffset()) < request.getLimit()) && (i < allUsers.size()); i++) {
-            response.addUsers(allUsers.get(i).userResponse());
+        List<User> users;
+        if (limit == 0) {
+            users = List.of();
+        } else if (lastKey != null) {
+            users = userRepository.findUserPageAfter(sortKey, isAscending, lastKey, lastId, limit);
+        } else {
+            users = userRepository.findUserPage(sortKey, isAscending, offset, limit);
         }
-        PaginationResponseOptions options = PaginationResponseOptions.newBuilder()
-                .setResultSetSize(allUsers.size())
-                .build();
-        response.setPaginationResponseOptions(options);
-        return response;
+
+        if (users.isEmpty()) {
+            return new UserIndexService.UserPage(List.of(), null, 0);
+        }
+        User lastUser = users.get(users.size() - 1);
+        return new UserIndexService.UserPage(users.stream().map(userResponseCache::get).toList(),
+                sortKey.getKey(lastUser), lastUser.getId());
     }
 }
@@ -0,0 +1,108 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import nz.ac.canterbury.seng302.shared.identityprovider.UserBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends a sorted list of users to a streaming client one batch at a time, for as long as the client is ready to
+ * receive more. gRPC runs this again each time the client becomes ready. Each batch continues on from the last user of
+ * the batch before, in the same way as a pagination cursor, so the whole list is never held in memory.
+ */
+class UserBatchPublisher implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserBatchPublisher.class);
+
+    /** The number of users sent in each UserBatch, when the client doesn't ask for a batch size. */
+    private static final int DEFAULT_STREAM_BATCH_SIZE = 100;
+
+    /** The largest UserBatch a client can ask for, keeping each message well under gRPC's message size limit. */
+    private static final int MAX_STREAM_BATCH_SIZE = 1000;
+
+    private static final String UNEXPECTED_ERROR_MESSAGE = "An Unexpected error occurred";
+
+    /**
+     * Reads the batch of users after the given user, in the order being streamed.
+     */
+    @FunctionalInterface
+    interface BatchReader {
+        /**
+         * @param lastKey The sort key of the last user sent, or null for the first batch
+         * @param lastId The id of the last user sent
+         * @param limit The maximum number of users to read
+         * @return The next batch of users
+         */
+        UserIndexService.UserPage read(Object lastKey, int lastId, int limit);
+    }
+
+    private final ServerCallStreamObserver<UserBatch> observer;
+
+    private final BatchReader reader;
+
+    private final int batchSize;
+
+    /** The sort key of the last user sent, or null before the first batch. */
+    private Object lastKey = null;
+
+    private int lastId = 0;
+
+    /** True once the stream has been completed, has failed, or was cancelled by the client. */
+    private boolean done = false;
+
+
+    private UserBatchPublisher(ServerCallStreamObserver<UserBatch> observer, BatchReader reader, int batchSize) {
+        this.observer = observer;
+        this.reader = reader;
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * Starts streaming users to the client, sending batches whenever the client is ready for them.
+     *
+     * @param observer The observer of the streaming call
+     * @param reader Reads each batch of users
+     * @param requestedBatchSize The batch size the client asked for, 0 or less for the default
+     */
+    static void start(ServerCallStreamObserver<UserBatch> observer, BatchReader reader, int requestedBatchSize) {
+        int batchSize = (requestedBatchSize > 0)
+                ? Math.min(requestedBatchSize, MAX_STREAM_BATCH_SIZE)
+                : DEFAULT_STREAM_BATCH_SIZE;
+        UserBatchPublisher publisher = new UserBatchPublisher(observer, reader, batchSize);
+        observer.setOnCancelHandler(publisher::cancel);
+        observer.setOnReadyHandler(publisher);
+    }
+
+
+    @Override
+    public synchronized void run() {
+        try {
+            while (!done && observer.isReady()) {
+                UserIndexService.UserPage page = reader.read(lastKey, lastId, batchSize);
+                if (!page.users().isEmpty()) {
+                    observer.onNext(UserBatch.newBuilder().addAllUsers(page.users()).build());
+                    lastKey = page.lastKey();
+                    lastId = page.lastId();
+                }
+                if (page.users().size() < batchSize) {
+                    done = true;
+                    observer.onCompleted();
+                }
+            }
+        } catch (Exception e) {
+            logger.error("An error occurred streaming users: {}", e.getMessage());
+            if (!done) {
+                done = true;
+                observer.onError(Status.INTERNAL.withDescription(UNEXPECTED_ERROR_MESSAGE).asRuntimeException());
+            }
+        }
+    }
+
+
+    synchronized void cancel() {
+        logger.info("User stream cancelled by the client");
+        done = true;
+    }
+}
@@ -0,0 +1,363 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import nz.ac.canterbury.seng302.identityprovider.model.User;
+import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
+import nz.ac.canterbury.seng302.identityprovider.model.UserSortKey;
+import nz.ac.canterbury.seng302.shared.identityprovider.UserResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps every user sorted in memory, once for each order the user list can be sorted by, so that a page of users can
+ * be served without querying the database or sorting.
+ *
+ * The name orders are sorted on CollationKeys made once when a user is indexed, so comparing two users is a byte
+ * comparison rather than building and comparing strings. Each write to a user updates the index in O(log n).
+ *
+ * The index is built from the repository once the application is ready. Until then it is not ready, and callers
+ * should page through the repository instead.
+ */
+@Service
+public class UserIndexService {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** The repository the index is built from. */
+    private final UserRepository userRepository;
+
+    /** Used to make the CollationKeys, only used while holding the write lock as Collators aren't thread safe. */
+    private final Collator collator = Collator.getInstance(Locale.ROOT);
+
+    /** Lets many pages be read at once, while making sure a page never sees a user half way through an update. */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** The indexed users by their id. */
+    private final Map<Integer, IndexedUser> usersById = new HashMap<>();
+
+    /** The index entries of every user, one set for each sort key, in the order of an ascending request. */
+    private final Map<UserSortKey, NavigableSet<IndexEntry>> orderings = new EnumMap<>(UserSortKey.class);
+
+    /** Finds users by their names, kept up to date alongside the orderings. */
+    private final UserNameSearchIndex nameSearchIndex = new UserNameSearchIndex();
+
+    /** True once the index has been built from the repository. */
+    private volatile boolean ready = false;
+
+
+    /**
+     * A user's position in one of the orderings.
+     *
+     * @param key The user's sort key, a CollationKey for name orders and an Integer for roles
+     * @param id The user's id, which orders users with the same key
+     */
+    private record IndexEntry(Comparable<?> key, int id) {}
+
+
+    /**
+     * A user held by the index.
+     *
+     * @param response The user's details, as sent to clients
+     * @param entries The user's entry in each ordering, so they can be found when the user changes
+     */
+    private record IndexedUser(UserResponse response, Map<UserSortKey, IndexEntry> entries) {}
+
+
+    /**
+     * A page of users read from the index.
+     *
+     * @param users The users on the page, in order
+     * @param lastKey The sort key of the last user on the page, as stored in the database, or null if empty
+     * @param lastId The id of the last user on the page, or 0 if empty
+     */
+    public record UserPage(List<UserResponse> users, Object lastKey, int lastId) {}
+
+
+    /**
+     * A page of the users found by a name search.
+     *
+     * @param users The matching users on the page, best first
+     * @param matchCount The number of users that match, including those not on the page
+     */
+    public record SearchResult(List<UserResponse> users, int matchCount) {}
+
+
+    /**
+     * Creates an empty index. The index isn't ready until rebuild has been called.
+     *
+     * @param userRepository The repository the index is built from
+     */
+    public UserIndexService(UserRepository userRepository) {
+        this.userRepository = userRepository;
+        for (UserSortKey sortKey : UserSortKey.values()) {
+            orderings.put(sortKey, new TreeSet<>(entryComparator(sortKey)));
+        }
+    }
+
+
+    /**
+     * Builds the ascending request order of a sort key, by the key and then by id.
+     *
+     * @param sortKey The sort key to order by
+     * @return The comparator for the sort key's entries
+     */
+    @SuppressWarnings("unchecked")
+    private static Comparator<IndexEntry> entryComparator(UserSortKey sortKey) {
+        Comparator<IndexEntry> byKey = (entryOne, entryTwo) ->
+                ((Comparable<Object>) entryOne.key()).compareTo(entryTwo.key());
+        if (!sortKey.isKeyAscending(true)) {
+            byKey = byKey.reversed();
+        }
+        return byKey.thenComparingInt(IndexEntry::id);
+    }
+
+
+    /**
+     * Replaces the contents of the index with every user in the repository, and marks the index as ready.
+     */
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            usersById.clear();
+            orderings.values().forEach(Set::clear);
+            nameSearchIndex.clear();
+            for (User user : userRepository.findAll()) {
+                put(user);
+            }
+            ready = true;
+            logger.info("Indexed {} users", usersById.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    public boolean isReady() {
+        return ready;
+    }
+
+
+    /**
+     * Adds a user to the index, or moves them to their new positions if they are already indexed. If called during a
+     * transaction, the index is only updated once the transaction commits, so it never holds uncommitted changes.
+     *
+     * @param user The user that was saved
+     */
+    public void update(User user) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    updateNow(user);
+                }
+            });
+        } else {
+            updateNow(user);
+        }
+    }
+
+
+    private void updateNow(User user) {
+        lock.writeLock().lock();
+        try {
+            put(user);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Puts a user into every ordering, removing their old entries first. Must be called holding the write lock.
+     *
+     * @param user The user to index
+     */
+    private void put(User user) {
+        IndexedUser oldUser = usersById.get(user.getId());
+        if (oldUser != null) {
+            oldUser.entries().forEach((sortKey, entry) -> orderings.get(sortKey).remove(entry));
+        }
+
+        Map<UserSortKey, IndexEntry> entries = new EnumMap<>(UserSortKey.class);
+        for (UserSortKey sortKey : UserSortKey.values()) {
+            IndexEntry entry = new IndexEntry(toIndexKey(sortKey.getKey(user)), user.getId());
+            orderings.get(sortKey).add(entry);
+            entries.put(sortKey, entry);
+        }
+        usersById.put(user.getId(), new IndexedUser(user.userResponse(), entries));
+        nameSearchIndex.put(user.getId(), user.getFirstName(), user.getLastName(), user.getNickname());
+    }
+
+
+    /**
+     * Converts a key stored in the database into the key stored in the index.
+     *
+     * @param key The user's sort key, a String or an Integer
+     * @return A CollationKey for Strings, otherwise the key itself
+     */
+    private Comparable<?> toIndexKey(Object key) {
+        if (key instanceof String stringKey) {
+            return collator.getCollationKey(stringKey);
+        }
+        return (Comparable<?>) key;
+    }
+
+
+    /**
+     * Gets the number of users in the index.
+     *
+     * @return The number of indexed users
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return usersById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Gets a page of users in the given order, skipping the first offset users. The skipped users are still walked,
+     * so this is only the fallback for jumping straight to a page; moving to the next page uses getPageAfter instead.
+     *
+     * @param sortKey The order to sort the users by
+     * @param isAscending Whether the order is ascending or descending
+     * @param offset The number of users to skip
+     * @param limit The maximum number of users to return
+     * @return The page of users
+     */
+    public UserPage getPage(UserSortKey sortKey, boolean isAscending, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<IndexEntry> ordering = orderings.get(sortKey);
+            return readPage(isAscending ? ordering : ordering.descendingSet(), offset, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Gets the page of users that directly follows the given position in the given order.
+     *
+     * @param sortKey The order to sort the users by
+     * @param isAscending Whether the order is ascending or descending
+     * @param lastKey The sort key of the last user on the previous page, as stored in the database
+     * @param lastId The id of the last user on the previous page
+     * @param limit The maximum number of users to return
+     * @return The page of users
+     */
+    public UserPage getPageAfter(UserSortKey sortKey, boolean isAscending, Object lastKey, int lastId, int limit) {
+        Comparable<?> indexKey;
+        if (lastKey instanceof String stringKey) {
+            // Not holding the write lock, so use a new collator
+            indexKey = Collator.getInstance(Locale.ROOT).getCollationKey(stringKey);
+        } else {
+            indexKey = (Comparable<?>) lastKey;
+        }
+        IndexEntry lastEntry = new IndexEntry(indexKey, lastId);
+
+        lock.readLock().lock();
+        try {
+            NavigableSet<IndexEntry> ordering = orderings.get(sortKey);
+            NavigableSet<IndexEntry> remaining = isAscending
+                    ? ordering.tailSet(lastEntry, false)
+                    : ordering.headSet(lastEntry, false).descendingSet();
+            return readPage(remaining, 0, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Finds the users whose first name, last name, full name or nickname contains the given text, ignoring case. The
+     * best matches come first, see UserNameSearchIndex.search, and equally good matches are in the given order.
+     *
+     * Only the best offset + limit matches are kept while ranking, so the cost grows with the number of matches and
+     * not with the number of users.
+     *
+     * @param text The text to search for
+     * @param sortKey The order of equally good matches
+     * @param isAscending Whether that order is ascending or descending
+     * @param offset The number of matches to skip
+     * @param limit The maximum number of matches to return
+     * @return The page of matching users, best first, and the number of users that match
+     */
+    public SearchResult searchByName(String text, UserSortKey sortKey, boolean isAscending, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            Map<Integer, Integer> ranks = nameSearchIndex.search(text);
+            int keep = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+            if (keep <= 0) {
+                return new SearchResult(List.of(), ranks.size());
+            }
+            Comparator<IndexEntry> order = entryComparator(sortKey);
+            if (!isAscending) {
+                order = order.reversed();
+            }
+            Comparator<Integer> byMatch = Comparator.<Integer>comparingInt(ranks::get)
+                    .thenComparing(id -> usersById.get(id).entries().get(sortKey), order);
+
+            // A heap with the worst kept match on top, so it can be replaced by a better one
+            PriorityQueue<Integer> best = new PriorityQueue<>(byMatch.reversed());
+            for (int id : ranks.keySet()) {
+                best.add(id);
+                if (best.size() > keep) {
+                    best.poll();
+                }
+            }
+
+            List<Integer> ids = new ArrayList<>(best);
+            ids.sort(byMatch);
+            List<UserResponse> users = ids.stream()
+                    .skip(offset)
+                    .map(id -> usersById.get(id).response())
+                    .toList();
+            return new SearchResult(users, ranks.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Reads a page of users from an ordering, walking past the first offset entries. Must be called holding the read
+     * lock.
+     *
+     * @param entries The entries to read from, in the requested order
+     * @param offset The number of entries to skip
+     * @param limit The maximum number of users to return
+     * @return The page of users
+     */
+    private UserPage readPage(Iterable<IndexEntry> entries, int offset, int limit) {
+        List<UserResponse> users = new ArrayList<>();
+        IndexEntry lastEntry = null;
+        Iterator<IndexEntry> iterator = entries.iterator();
+        for (int skipped = 0; skipped < offset && iterator.hasNext(); skipped++) {
+            iterator.next();
+        }
+        while (users.size() < limit && iterator.hasNext()) {
+            lastEntry = iterator.next();
+            users.add(usersById.get(lastEntry.id()).response());
+        }
+
+        if (lastEntry == null) {
+            return new UserPage(users, null, 0);
+        }
+        Object lastKey = lastEntry.key() instanceof CollationKey collationKey
+                ? collationKey.getSourceString()
+                : lastEntry.key();
+        return new UserPage(users, lastKey, lastEntry.id());
+    }
+}
@@ -0,0 +1,162 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import java.util.*;
+
+/**
+ * An n-gram index of users' first names, last names, full names and nicknames, used to find the users whose names
+ * contain some text without scanning every user.
+ *
+ * Every substring of up to three characters of each name is indexed. Text of up to three characters is looked up
+ * directly, and longer text is looked up by intersecting the users of each of its three character substrings, and
+ * then checking those few candidates actually contain the text.
+ *
+ * This class isn't thread safe, it is guarded by the lock of the UserIndexService that owns it.
+ */
+class UserNameSearchIndex {
+
+    /** The longest substrings that are indexed. */
+    private static final int GRAM_LENGTH = 3;
+
+    /** The ids of the users with a name containing each substring. */
+    private final Map<String, Set<Integer>> postings = new HashMap<>();
+
+    /** The indexed names of each user by their id. */
+    private final Map<Integer, SearchableNames> namesById = new HashMap<>();
+
+
+    /**
+     * The lower case names of a user that can be searched, in the order matches on them are ranked.
+     *
+     * @param names The first name, last name, full name and nickname
+     */
+    private record SearchableNames(List<String> names) {}
+
+
+    /**
+     * Indexes a user's names, replacing any names previously indexed for them.
+     *
+     * @param id The user's id
+     * @param firstName The user's first name
+     * @param lastName The user's last name
+     * @param nickname The user's nickname
+     */
+    void put(int id, String firstName, String lastName, String nickname) {
+        remove(id);
+        String first = lowerCase(firstName);
+        String last = lowerCase(lastName);
+        SearchableNames names = new SearchableNames(List.of(first, last, first + " " + last, lowerCase(nickname)));
+        namesById.put(id, names);
+        for (String gram : grams(names)) {
+            postings.computeIfAbsent(gram, key -> new HashSet<>()).add(id);
+        }
+    }
+
+
+    /**
+     * Removes a user from the index, if they are in it.
+     *
+     * @param id The user's id
+     */
+    void remove(int id) {
+        SearchableNames names = namesById.remove(id);
+        if (names == null) {
+            return;
+        }
+        for (String gram : grams(names)) {
+            Set<Integer> ids = postings.get(gram);
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+
+    void clear() {
+        postings.clear();
+        namesById.clear();
+    }
+
+
+    /**
+     * Finds the users with a name containing the given text, ignoring case, and ranks how well they match. Matches on
+     * first names rank best, then last names, full names and nicknames, and a name starting with the text ranks better
+     * than one containing it elsewhere. Empty text matches every user equally.
+     *
+     * @param text The text to search for
+     * @return The rank of every matching user by their id, lower ranks are better matches
+     */
+    Map<Integer, Integer> search(String text) {
+        String query = lowerCase(text);
+        Map<Integer, Integer> ranks = new HashMap<>();
+        if (query.isEmpty()) {
+            namesById.keySet().forEach(id -> ranks.put(id, 0));
+            return ranks;
+        }
+
+        for (int id : candidates(query)) {
+            List<String> names = namesById.get(id).names();
+            for (int i = 0; i < names.size(); i++) {
+                int position = names.get(i).indexOf(query);
+                if (position != -1) {
+                    ranks.put(id, i * 2 + (position == 0 ? 0 : 1));
+                    break;
+                }
+            }
+        }
+        return ranks;
+    }
+
+
+    /**
+     * Finds the users who may have a name containing the query, using the postings of the query's substrings.
+     *
+     * @param query The lower case text being searched for
+     * @return The ids of the users who may match
+     */
+    private Set<Integer> candidates(String query) {
+        if (query.length() <= GRAM_LENGTH) {
+            return postings.getOrDefault(query, Set.of());
+        }
+
+        List<Set<Integer>> queryPostings = new ArrayList<>();
+        for (int i = 0; i + GRAM_LENGTH <= query.length(); i++) {
+            Set<Integer> ids = postings.get(query.substring(i, i + GRAM_LENGTH));
+            if (ids == null) {
+                return Set.of();
+            }
+            queryPostings.add(ids);
+        }
+        queryPostings.sort(Comparator.comparingInt(Set::size));
+
+        Set<Integer> candidates = new HashSet<>(queryPostings.get(0));
+        for (int i = 1; i < queryPostings.size() && !candidates.isEmpty(); i++) {
+            candidates.retainAll(queryPostings.get(i));
+        }
+        return candidates;
+    }
+
+
+    /**
+     * Gets every substring of up to GRAM_LENGTH characters of the given names.
+     *
+     * @param names The names to split up
+     * @return The distinct substrings
+     */
+    private static Set<String> grams(SearchableNames names) {
+        Set<String> grams = new HashSet<>();
+        for (String name : names.names()) {
+            for (int start = 0; start < name.length(); start++) {
+                for (int end = start + 1; end <= Math.min(start + GRAM_LENGTH, name.length()); end++) {
+                    grams.add(name.substring(start, end));
+                }
+            }
+        }
+        return grams;
+    }
+
+
+    private static String lowerCase(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,64 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import nz.ac.canterbury.seng302.identityprovider.model.UserSortKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * The position of a user in a sorted list of users, which is given to the client as an opaque cursor that it can send
+ * back to get the next page. Used for the user list and for the members of a group.
+ *
+ * @param sortKey The order the users are sorted in
+ * @param isAscending Whether the order is ascending or descending
+ * @param lastId The id of the last user on the current page
+ * @param lastKey The sort key of the last user on the current page
+ */
+record UserPageCursor(UserSortKey sortKey, boolean isAscending, int lastId, Object lastKey) {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserPageCursor.class);
+
+    /** Separates the fields of a cursor, the last field is the sort key so may contain it. */
+    private static final String CURSOR_SEPARATOR = "\n";
+
+
+    /**
+     * Encodes this position as a cursor for the page after it.
+     *
+     * @return The cursor for the page after the last user
+     */
+    String encode() {
+        String position = sortKey.getOrderBy() + CURSOR_SEPARATOR + isAscending + CURSOR_SEPARATOR +
+                lastId + CURSOR_SEPARATOR + lastKey;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    /**
+     * Decodes a cursor made by encode. A cursor can only be used for the order it was made for, so one from a
+     * different order, or one that can't be read, is ignored and the request falls back to its offset.
+     *
+     * @param cursor The cursor sent by the client, possibly empty
+     * @param sortKey The order requested
+     * @param isAscending The direction requested
+     * @return The position of the cursor, or null if it can't be used
+     */
+    static UserPageCursor decode(String cursor, UserSortKey sortKey, boolean isAscending) {
+        if (cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = position.split(CURSOR_SEPARATOR, 4);
+            if (parts.length == 4 && parts[0].equals(sortKey.getOrderBy())
+                    && parts[1].equals(String.valueOf(isAscending))) {
+                return new UserPageCursor(sortKey, isAscending, Integer.parseInt(parts[2]), sortKey.parseKey(parts[3]));
+            }
+        } catch (IllegalArgumentException e) {
+            logger.info("Ignoring unreadable pagination cursor {}", cursor);
+        }
+        return null;
+    }
+}
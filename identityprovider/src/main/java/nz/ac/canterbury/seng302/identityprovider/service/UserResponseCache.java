@@ -0,0 +1,167 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import nz.ac.canterbury.seng302.identityprovider.model.User;
+import nz.ac.canterbury.seng302.shared.identityprovider.UserResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the UserResponse built for each user, so that the same user isn't converted to a protobuf message, and their
+ * profile image URL rebuilt, every time they are sent to a client.
+ *
+ * The cache holds at most maxSize users, evicting the least recently used user when it is full. It is not kept up to
+ * date automatically, anything that changes the details in a user's UserResponse must call invalidate.
+ */
+@Service
+public class UserResponseCache {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** The number of users cached when the userResponseCacheSize property isn't set. */
+    private static final String DEFAULT_MAX_SIZE = "1000";
+
+    /** The most users that are cached at once. */
+    private final int maxSize;
+
+    /** The cached responses by user id, in least recently used order. Guarded by synchronizing on the map. */
+    private final LinkedHashMap<Integer, UserResponse> responses;
+
+    /**
+     * Counts every invalidation, so a response built while a user was being invalidated can be recognised and left out
+     * of the cache.
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+
+    /**
+     * The cache's metrics since it was created.
+     *
+     * @param hits The number of responses served from the cache
+     * @param misses The number of responses that had to be built
+     * @param evictions The number of responses removed to make room for others
+     * @param size The number of responses currently cached
+     */
+    public record Stats(long hits, long misses, long evictions, int size) {}
+
+
+    /**
+     * Autowired constructor, which sizes the cache with the userResponseCacheSize property.
+     *
+     * @param env Gives access to the environment variables
+     */
+    @Autowired
+    public UserResponseCache(Environment env) {
+        this(Integer.parseInt(env.getProperty("userResponseCacheSize", DEFAULT_MAX_SIZE)));
+    }
+
+
+    /**
+     * Creates an empty cache holding at most the given number of users.
+     *
+     * @param maxSize The most users that are cached at once
+     */
+    public UserResponseCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.responses = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, UserResponse> eldest) {
+                boolean isFull = size() > UserResponseCache.this.maxSize;
+                if (isFull) {
+                    evictions.increment();
+                }
+                return isFull;
+            }
+        };
+    }
+
+
+    /**
+     * Gets the UserResponse for a user, building and caching it if it isn't cached. Users that haven't been saved
+     * don't have an id yet, so they are never cached.
+     *
+     * @param user The user to get the response of
+     * @return The user's UserResponse
+     */
+    public UserResponse get(User user) {
+        int id = user.getId();
+        if (id > 0) {
+            synchronized (responses) {
+                UserResponse response = responses.get(id);
+                if (response != null) {
+                    hits.increment();
+                    return response;
+                }
+            }
+        }
+        misses.increment();
+
+        // Built outside the lock, as building the profile image URL reads the environment
+        long invalidationsBefore = invalidations.get();
+        UserResponse response = user.userResponse();
+        if (id > 0 && maxSize > 0) {
+            synchronized (responses) {
+                if (invalidations.get() == invalidationsBefore) {
+                    responses.put(id, response);
+                }
+            }
+        }
+        return response;
+    }
+
+
+    /**
+     * Removes a user's response from the cache, so it is rebuilt with their new details the next time it is needed.
+     * If called during a transaction, the response is removed again once the transaction commits, so a response built
+     * from the user's old details part way through the transaction isn't kept.
+     *
+     * @param userId The id of the user that changed
+     */
+    public void invalidate(int userId) {
+        invalidateNow(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidateNow(userId);
+                }
+            });
+        }
+    }
+
+
+    private void invalidateNow(int userId) {
+        synchronized (responses) {
+            invalidations.incrementAndGet();
+            responses.remove(userId);
+        }
+        logger.debug("Invalidated cached response of user {}", userId);
+    }
+
+
+    /**
+     * Gets the cache's hit, miss and eviction counts, and its current size.
+     *
+     * @return The cache's metrics
+     */
+    public Stats getStats() {
+        int size;
+        synchronized (responses) {
+            size = responses.size();
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), size);
+    }
+}
@@ -0,0 +1,57 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import nz.ac.canterbury.seng302.identityprovider.model.User;
+import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fills in the sort keys and role precedence of users saved before they were stored. The columns are added to the
+ * existing rows empty, and are otherwise only set when a user is edited, so those users would be sorted and paged
+ * wrongly, and couldn't be indexed.
+ *
+ * Runs once the repository is ready, before the gRPC server starts and before the user index is built.
+ */
+@Service
+public class UserSortKeyBackfill {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** The most users loaded and saved at once. */
+    private static final int BATCH_SIZE = 500;
+
+    /** The repository of the users to fill in. */
+    private final UserRepository userRepository;
+
+
+    public UserSortKeyBackfill(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+
+    /**
+     * Calculates and saves the sort keys of every user that doesn't have them, a batch at a time.
+     */
+    @PostConstruct
+    public void backfill() {
+        List<Integer> ids = userRepository.findIdsWithoutSortKeys();
+        if (ids.isEmpty()) {
+            return;
+        }
+        userRepository.clearNullRolePrecedences();
+        for (int start = 0; start < ids.size(); start += BATCH_SIZE) {
+            List<User> users = new ArrayList<>();
+            for (User user : userRepository.findAllById(ids.subList(start, Math.min(start + BATCH_SIZE, ids.size())))) {
+                user.refreshSortKeys();
+                users.add(user);
+            }
+            userRepository.saveAll(users);
+        }
+        logger.info("Filled in the sort keys of {} users", ids.size());
+    }
+}
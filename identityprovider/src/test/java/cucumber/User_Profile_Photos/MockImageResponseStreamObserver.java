@@ -7,7 +7,6 @@ import nz.ac.canterbury.seng302.shared.util.FileUploadStatusResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileNotFoundException;
 import java.util.List;
 
 public class MockImageResponseStreamObserver implements StreamObserver<FileUploadStatusResponse> {
@@ -16,36 +15,13 @@ public class MockImageResponseStreamObserver implements StreamObserver<FileUploa
 
     private StreamObserver<UploadUserProfilePhotoRequest> requestObserver;
     private List<UploadUserProfilePhotoRequest> requestChunks;
-    int numChunks;
-    int currentChunk = 0;
 
 
     @Override
     public void onNext(FileUploadStatusResponse status) {
-        switch (status.getStatusValue()) {
-            case FileUploadStatus.FAILED_VALUE -> logger.error("Transfer failed");
-            case FileUploadStatus.IN_PROGRESS_VALUE -> {
-                if (currentChunk < numChunks) {
-                    logger.info("Sending next chunk: " + currentChunk);
-                    requestObserver.onNext(requestChunks.get(currentChunk++));
-                } else {
-                    logger.info("Sent all image chunks calling onComplete() for server");
-                    requestObserver.onCompleted();
-                }
-            }
-            case FileUploadStatus.PENDING_VALUE -> {
-                if (currentChunk == 1) {
-                    logger.info("Sending next chunk: " + currentChunk);
-                    requestObserver.onNext(requestChunks.get(currentChunk++));
-                } else {
-                    logger.error("Got code PENDING but expected code IN_PROGRESS");
-                    requestObserver.onError(new FileNotFoundException("Client Got code PENDING but expected code IN_PROGRESS"));
-                }
-            }
-            case FileUploadStatus.SUCCESS_VALUE -> this.onCompleted();
-            default -> onError(new FileNotFoundException("Invalid response received"));
+        if (status.getStatus() == FileUploadStatus.SUCCESS) {
+            logger.info("Server saved the image");
         }
-
     }
 
 
@@ -70,7 +46,9 @@ public class MockImageResponseStreamObserver implements StreamObserver<FileUploa
 
     public void sendImage(List<UploadUserProfilePhotoRequest> requestChunks) {
         this.requestChunks = requestChunks;
-        this.numChunks = requestChunks.size();
-        requestObserver.onNext(requestChunks.get(currentChunk++));
+        for (UploadUserProfilePhotoRequest chunk : requestChunks) {
+            requestObserver.onNext(chunk);
+        }
+        requestObserver.onCompleted();
     }
 }
\ No newline at end of file
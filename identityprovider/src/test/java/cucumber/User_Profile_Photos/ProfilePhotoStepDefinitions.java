@@ -9,8 +9,14 @@ import io.grpc.stub.StreamObserver;
 import nz.ac.canterbury.seng302.identityprovider.controller.ImageController;
 import nz.ac.canterbury.seng302.identityprovider.model.User;
 import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
+import nz.ac.canterbury.seng302.identityprovider.service.DirectoryChangeLog;
 import nz.ac.canterbury.seng302.identityprovider.service.ImageRequestStreamObserver;
 import nz.ac.canterbury.seng302.identityprovider.service.PasswordEncryptionException;
+import nz.ac.canterbury.seng302.identityprovider.service.ProfileImageCache;
+import nz.ac.canterbury.seng302.identityprovider.service.ProfileImageStore;
+import nz.ac.canterbury.seng302.identityprovider.service.ProfileImageVariants;
+import nz.ac.canterbury.seng302.identityprovider.service.UserIndexService;
+import nz.ac.canterbury.seng302.identityprovider.service.UserResponseCache;
 import nz.ac.canterbury.seng302.shared.identityprovider.ProfilePhotoUploadMetadata;
 import nz.ac.canterbury.seng302.shared.identityprovider.UploadUserProfilePhotoRequest;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -28,6 +34,7 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 
@@ -64,13 +71,15 @@ public class ProfilePhotoStepDefinitions {
         mockEnv = mock(Environment.class);
         when(mockEnv.getProperty(eq("photoLocation"), any(String.class)))
                 .thenReturn("src/main/resources/profile-photos/");
+        when(mockEnv.getProperty(eq("profilePhotoMaxBytes"), any(String.class))).thenReturn("5242880");
 
         when(mockEnv.getProperty("protocol", "http")).thenReturn("http");
         when(mockEnv.getProperty("hostName", "localhost")).thenReturn("localhost");
         when(mockEnv.getProperty("port", "9001")).thenReturn("9001");
         when(mockEnv.getProperty("rootPath", "")).thenReturn("");
 
-        ImageController controller = new ImageController(mockEnv);
+        ImageController controller = new ImageController(mockEnv, new ProfileImageCache(16, 262144),
+                new ProfileImageVariants(), repository);
         this.mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
     }
 
@@ -94,11 +103,7 @@ public class ProfilePhotoStepDefinitions {
 
     @Given("I have no profile photo")
     public void i_have_no_profile_photo() {
-        try {
-            user.deleteProfileImage(mockEnv);
-        } catch (IOException exception) {
-            // The user already does not have a profile photo
-        }
+        user.deleteProfileImage();
     }
 
 
@@ -169,7 +174,11 @@ public class ProfilePhotoStepDefinitions {
         photo.close();
 
         StreamObserver<UploadUserProfilePhotoRequest> requestObserver = new ImageRequestStreamObserver(
-                mockImageResponseStreamObserver, repository, mockEnv);
+                mockImageResponseStreamObserver, repository, mockEnv, new UserResponseCache(0),
+                mock(UserIndexService.class), mock(DirectoryChangeLog.class), new ProfileImageStore(repository, mock(ProfileImageVariants.class),
+                mock(DirectoryChangeLog.class), mock(UserIndexService.class), new UserResponseCache(0),
+                Path.of("src/main/resources/profile-photos/"), 0,
+                System::currentTimeMillis));
         mockImageResponseStreamObserver.initialise(requestObserver);
         mockImageResponseStreamObserver.sendImage(requestChunks);
     }
@@ -0,0 +1,77 @@
+package nz.ac.canterbury.seng302.identityprovider.authentication;
+
+import nz.ac.canterbury.seng302.shared.identityprovider.AuthState;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuthStateCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1000);
+
+    private final AuthStateCache authStateCache = new AuthStateCache(2, now::get);
+
+
+    private AuthState authState(String name) {
+        return AuthState.newBuilder().setIsAuthenticated(true).setName(name).build();
+    }
+
+
+    @Test
+    void getReturnsCachedAuthState() {
+        AuthState authState = authState("Steve");
+        authStateCache.put("token", authState, 2000);
+
+        assertSame(authState, authStateCache.get("token"));
+        assertNull(authStateCache.get("other token"));
+    }
+
+
+    @Test
+    void getDoesNotReturnExpiredAuthState() {
+        authStateCache.put("token", authState("Steve"), 2000);
+
+        now.set(2000);
+
+        assertNull(authStateCache.get("token"));
+        assertEquals(0, authStateCache.size());
+    }
+
+
+    @Test
+    void putDoesNotCacheExpiredToken() {
+        authStateCache.put("token", authState("Steve"), 1000);
+
+        assertNull(authStateCache.get("token"));
+    }
+
+
+    @Test
+    void putEvictsExpiredTokensBeforeRecentlyUsedTokens() {
+        authStateCache.put("expiring", authState("Steve"), 1500);
+        authStateCache.put("first", authState("Amy"), 5000);
+        now.set(1500);
+
+        authStateCache.put("second", authState("Tom"), 5000);
+
+        assertNotNull(authStateCache.get("first"));
+        assertNotNull(authStateCache.get("second"));
+        assertEquals(2, authStateCache.size());
+    }
+
+
+    @Test
+    void putEvictsLeastRecentlyUsedToken() {
+        authStateCache.put("first", authState("Steve"), 5000);
+        authStateCache.put("second", authState("Amy"), 5000);
+        authStateCache.get("first");
+
+        authStateCache.put("third", authState("Tom"), 5000);
+
+        assertNotNull(authStateCache.get("first"));
+        assertNull(authStateCache.get("second"));
+        assertNotNull(authStateCache.get("third"));
+    }
+}
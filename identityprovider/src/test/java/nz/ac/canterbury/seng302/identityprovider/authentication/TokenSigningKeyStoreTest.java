@@ -0,0 +1,53 @@
+package nz.ac.canterbury.seng302.identityprovider.authentication;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenSigningKeyStoreTest {
+
+    private final TokenSigningKeyStore keyStore = new TokenSigningKeyStore(new MockEnvironment());
+
+    @TempDir
+    Path directory;
+
+
+    @Test
+    void createsKeyFileWhenMissing() throws Exception {
+        Path keyFile = directory.resolve("keys").resolve("token-signing.key");
+
+        KeyPair keyPair = keyStore.loadOrCreate(keyFile);
+
+        assertTrue(Files.exists(keyFile));
+        assertNotNull(keyPair.getPrivate());
+        assertNotNull(keyPair.getPublic());
+    }
+
+
+    @Test
+    void loadsSameKeyPairFromExistingFile() throws Exception {
+        Path keyFile = directory.resolve("token-signing.key");
+
+        KeyPair created = keyStore.loadOrCreate(keyFile);
+        KeyPair loaded = new TokenSigningKeyStore(new MockEnvironment()).loadOrCreate(keyFile);
+
+        assertArrayEquals(created.getPrivate().getEncoded(), loaded.getPrivate().getEncoded());
+        assertArrayEquals(created.getPublic().getEncoded(), loaded.getPublic().getEncoded());
+    }
+
+
+    @Test
+    void rejectsInvalidKeyFile() throws Exception {
+        Path keyFile = directory.resolve("token-signing.key");
+        Files.writeString(keyFile, "not a key\n");
+
+        assertThrows(GeneralSecurityException.class, () -> keyStore.loadOrCreate(keyFile));
+    }
+}
@@ -0,0 +1,131 @@
+package nz.ac.canterbury.seng302.identityprovider.controller;
+
+import nz.ac.canterbury.seng302.identityprovider.model.User;
+import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
+import nz.ac.canterbury.seng302.identityprovider.service.ProfileImageCache;
+import nz.ac.canterbury.seng302.identityprovider.service.ProfileImageVariants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class ImageControllerTest {
+
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 5, 6, 7, 8};
+
+    private static final byte[] VARIANT = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 1, 2};
+
+    private static final String STORED_NAME = "0123456789abcdef".repeat(4);
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 1, 2, 3, 4};
+
+    @TempDir
+    Path directory;
+
+    private MockMvc mockMvc;
+
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Files.write(directory.resolve(STORED_NAME + ".jpg"), JPEG);
+        Files.write(directory.resolve(STORED_NAME + "_128.jpg"), VARIANT);
+        Files.write(directory.resolve("default.png"), PNG);
+        MockEnvironment env = new MockEnvironment().withProperty("photoLocation", directory + "/");
+        User user = Mockito.mock(User.class);
+        Mockito.when(user.getProfileImage()).thenReturn(STORED_NAME + ".jpg");
+        UserRepository userRepository = Mockito.mock(UserRepository.class);
+        Mockito.when(userRepository.findById(1)).thenReturn(user);
+        mockMvc = MockMvcBuilders.standaloneSetup(new ImageController(env, new ProfileImageCache(16, 10),
+                new ProfileImageVariants(), userRepository)).build();
+    }
+
+
+    @Test
+    void imageServedWithValidators() throws Exception {
+        mockMvc.perform(get("/profile/1.jpg"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/jpeg"))
+                .andExpect(content().bytes(JPEG))
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, public"));
+    }
+
+
+    @Test
+    void storedImageServedImmutable() throws Exception {
+        mockMvc.perform(get("/profile/" + STORED_NAME + ".jpg"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(JPEG))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public, immutable"));
+    }
+
+
+    @Test
+    void missingStoredImageServedAsDefault() throws Exception {
+        mockMvc.perform(get("/profile/" + "f".repeat(64) + ".jpg"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(PNG))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, public"));
+    }
+
+
+    @Test
+    void missingImageServedAsDefault() throws Exception {
+        mockMvc.perform(get("/profile/2.jpg"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/png"))
+                .andExpect(content().bytes(PNG));
+    }
+
+
+    @Test
+    void matchingETagNotModified() throws Exception {
+        MvcResult first = mockMvc.perform(get("/profile/1.jpg")).andReturn();
+        String eTag = first.getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(eTag);
+
+        mockMvc.perform(get("/profile/1.jpg").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+
+    @Test
+    void unchangedSinceNotModified() throws Exception {
+        MvcResult first = mockMvc.perform(get("/profile/1.jpg")).andReturn();
+        String lastModified = first.getResponse().getHeader(HttpHeaders.LAST_MODIFIED);
+        assertNotNull(lastModified);
+
+        mockMvc.perform(get("/profile/1.jpg").header(HttpHeaders.IF_MODIFIED_SINCE, lastModified))
+                .andExpect(status().isNotModified());
+    }
+
+
+    @Test
+    void sizeServesSmallestLargeEnoughVariant() throws Exception {
+        mockMvc.perform(get("/profile/" + STORED_NAME + ".jpg").param("size", "48"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(VARIANT));
+    }
+
+
+    @Test
+    void sizeWithoutVariantServesImage() throws Exception {
+        mockMvc.perform(get("/profile/" + STORED_NAME + ".jpg").param("size", "512"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(JPEG));
+    }
+}
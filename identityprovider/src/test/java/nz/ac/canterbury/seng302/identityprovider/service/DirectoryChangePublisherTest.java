@@ -0,0 +1,311 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import nz.ac.canterbury.seng302.identityprovider.model.DirectoryChangeLogEntry;
+import nz.ac.canterbury.seng302.identityprovider.model.DirectoryChangeLogRepository;
+import nz.ac.canterbury.seng302.identityprovider.model.GroupRepository;
+import nz.ac.canterbury.seng302.identityprovider.model.User;
+import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
+import nz.ac.canterbury.seng302.shared.identityprovider.DirectoryChange;
+import nz.ac.canterbury.seng302.shared.identityprovider.DirectoryChangesResponse;
+import nz.ac.canterbury.seng302.shared.identityprovider.UserResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SuppressWarnings("unchecked") // Suppresses intelliJ's warning for testing with mock StreamObservers
+class DirectoryChangePublisherTest {
+
+    private final DirectoryChangeLogRepository directoryChangeLogRepository =
+            Mockito.mock(DirectoryChangeLogRepository.class);
+
+    private final UserRepository userRepository = Mockito.mock(UserRepository.class);
+
+    private final GroupRepository groupRepository = Mockito.mock(GroupRepository.class);
+
+    private final UserResponseCache userResponseCache = Mockito.mock(UserResponseCache.class);
+
+    private ServerCallStreamObserver<DirectoryChangesResponse> subscriber;
+
+
+    @BeforeEach
+    void setUp() {
+        subscriber = Mockito.mock(ServerCallStreamObserver.class);
+        Mockito.when(subscriber.isReady()).thenReturn(true);
+        User user = Mockito.mock(User.class);
+        Mockito.when(user.getRoleEpoch()).thenReturn(2);
+        Mockito.when(userResponseCache.get(user)).thenReturn(UserResponse.newBuilder().setId(3).build());
+        Mockito.when(userRepository.findById(3)).thenReturn(user);
+        Mockito.when(userRepository.findAll()).thenReturn(List.of(user));
+
+        GroupRepository.GroupNamesView group = Mockito.mock(GroupRepository.GroupNamesView.class);
+        Mockito.when(group.getId()).thenReturn(5);
+        Mockito.when(group.getShortName()).thenReturn("Short");
+        Mockito.when(group.getLongName()).thenReturn("Long");
+        Mockito.when(groupRepository.findNamesById(5)).thenReturn(Optional.of(group));
+        Mockito.when(groupRepository.findAllNames()).thenReturn(List.of(group));
+        Mockito.when(groupRepository.findMemberIds(5)).thenReturn(List.of(3));
+        GroupRepository.GroupMemberView membership = Mockito.mock(GroupRepository.GroupMemberView.class);
+        Mockito.when(membership.getGroupId()).thenReturn(5);
+        Mockito.when(membership.getUserId()).thenReturn(3);
+        Mockito.when(groupRepository.findAllMemberships()).thenReturn(List.of(membership));
+    }
+
+
+    @Test
+    void subscribeWithoutSequenceSendsSnapshot() {
+        DirectoryChangePublisher publisher = startPublisher(0, 0);
+
+        publisher.subscribe(0, subscriber);
+        publisher.poll();
+
+        List<DirectoryChangesResponse> responses = captureResponses(2);
+        assertTrue(responses.get(0).getResetReplica());
+        assertEquals(3, responses.get(0).getChanges(0).getUser().getUser().getId());
+        assertEquals(2, responses.get(0).getChanges(0).getUser().getRoleEpoch());
+        assertEquals(List.of(3), responses.get(0).getChanges(1).getGroup().getMemberIdsList());
+        assertTrue(responses.get(1).getIsUpToDate());
+        assertEquals(1, publisher.getSubscriberCount());
+    }
+
+
+    @Test
+    void subscribeFromRetainedSequenceReplaysMissedChanges() {
+        Mockito.when(directoryChangeLogRepository.findMaxSequence()).thenReturn(2L);
+        Mockito.when(directoryChangeLogRepository.findMinSequence()).thenReturn(1L);
+        List<DirectoryChangeLogEntry> missed = List.of(logEntry(2, DirectoryChangeLogEntry.EntityType.USER, 3));
+        Mockito.when(directoryChangeLogRepository.findTop500BySequenceGreaterThanOrderBySequence(1)).thenReturn(missed);
+        DirectoryChangePublisher publisher = startPublisher(0, 0);
+
+        publisher.subscribe(1, subscriber);
+        publisher.poll();
+
+        List<DirectoryChangesResponse> responses = captureResponses(2);
+        assertFalse(responses.get(0).getResetReplica());
+        assertEquals(2, responses.get(0).getSequence());
+        assertEquals(3, responses.get(0).getChanges(0).getUser().getUser().getId());
+        assertTrue(responses.get(1).getIsUpToDate());
+        assertEquals(2, responses.get(1).getSequence());
+    }
+
+
+    @Test
+    void subscribeFromPrunedSequenceSendsSnapshot() {
+        Mockito.when(directoryChangeLogRepository.findMaxSequence()).thenReturn(20L);
+        Mockito.when(directoryChangeLogRepository.findMinSequence()).thenReturn(10L);
+        DirectoryChangePublisher publisher = startPublisher(0, 0);
+
+        publisher.subscribe(3, subscriber);
+        publisher.poll();
+
+        List<DirectoryChangesResponse> responses = captureResponses(2);
+        assertTrue(responses.get(0).getResetReplica());
+        assertEquals(20, responses.get(1).getSequence());
+    }
+
+
+    @Test
+    void pollPublishesNewChangesWithCurrentState() {
+        DirectoryChangePublisher publisher = startPublisher(0, 0);
+        publisher.subscribe(0, subscriber);
+        publisher.poll();
+        Mockito.when(directoryChangeLogRepository.findTop500BySequenceGreaterThanOrderBySequence(0)).thenReturn(List.of(
+                logEntry(1, DirectoryChangeLogEntry.EntityType.GROUP, 5),
+                logEntry(2, DirectoryChangeLogEntry.EntityType.GROUP, 6)));
+
+        publisher.poll();
+
+        List<DirectoryChangesResponse> responses = captureResponses(3);
+        DirectoryChangesResponse published = responses.get(2);
+        assertEquals(2, published.getSequence());
+        assertEquals(DirectoryChange.EntityCase.GROUP, published.getChanges(0).getEntityCase());
+        assertEquals("Long", published.getChanges(0).getGroup().getLongName());
+        assertEquals(6, published.getChanges(1).getDeletedGroupId());
+        assertEquals(2, publisher.getPublishedSequence());
+    }
+
+
+    @Test
+    void pollSendsEachChangedEntityOnce() {
+        DirectoryChangePublisher publisher = startPublisher(0, 0);
+        publisher.subscribe(0, subscriber);
+        publisher.poll();
+        Mockito.when(directoryChangeLogRepository.findTop500BySequenceGreaterThanOrderBySequence(0)).thenReturn(List.of(
+                logEntry(1, DirectoryChangeLogEntry.EntityType.USER, 3),
+                logEntry(2, DirectoryChangeLogEntry.EntityType.GROUP, 5),
+                logEntry(3, DirectoryChangeLogEntry.EntityType.USER, 3)));
+
+        publisher.poll();
+
+        DirectoryChangesResponse published = captureResponses(3).get(2);
+        assertEquals(2, published.getChangesCount());
+        assertEquals(5, published.getChanges(0).getGroup().getGroupId());
+        assertEquals(3, published.getChanges(1).getSequence());
+    }
+
+
+    @Test
+    void pollWaitsForMissingSequence() {
+        DirectoryChangePublisher publisher = startPublisher(60_000, 0);
+        publisher.subscribe(0, subscriber);
+        publisher.poll();
+        Mockito.when(directoryChangeLogRepository.findTop500BySequenceGreaterThanOrderBySequence(0))
+                .thenReturn(List.of(logEntry(2, DirectoryChangeLogEntry.EntityType.USER, 3)));
+
+        publisher.poll();
+
+        Mockito.verify(subscriber, Mockito.times(2)).onNext(Mockito.any());
+        assertEquals(0, publisher.getPublishedSequence());
+    }
+
+
+    @Test
+    void pollSkipsMissingSequenceAfterTimeout() {
+        DirectoryChangePublisher publisher = startPublisher(0, 0);
+        Mockito.when(directoryChangeLogRepository.findTop500BySequenceGreaterThanOrderBySequence(0))
+                .thenReturn(List.of(logEntry(2, DirectoryChangeLogEntry.EntityType.USER, 3)));
+
+        publisher.poll();
+
+        assertEquals(2, publisher.getPublishedSequence());
+    }
+
+
+    @Test
+    void pollPublishesSkippedChangeWhenItCommits() {
+        DirectoryChangePublisher publisher = startPublisher(0, 0);
+        publisher.subscribe(0, subscriber);
+        publisher.poll();
+        Mockito.when(directoryChangeLogRepository.findTop500BySequenceGreaterThanOrderBySequence(0))
+                .thenReturn(List.of(logEntry(2, DirectoryChangeLogEntry.EntityType.USER, 3)));
+        publisher.poll();
+        Mockito.when(directoryChangeLogRepository.findBySequenceBetweenOrderBySequence(1, 1))
+                .thenReturn(List.of(logEntry(1, DirectoryChangeLogEntry.EntityType.GROUP, 5)));
+
+        publisher.poll();
+
+        DirectoryChangesResponse published = captureResponses(4).get(3);
+        assertEquals(2, published.getSequence());
+        assertEquals(1, published.getChanges(0).getSequence());
+        assertEquals(5, published.getChanges(0).getGroup().getGroupId());
+    }
+
+
+    @Test
+    void pollPublishesSkippedChangeOnce() {
+        DirectoryChangePublisher publisher = startPublisher(0, 0);
+        publisher.subscribe(0, subscriber);
+        publisher.poll();
+        Mockito.when(directoryChangeLogRepository.findTop500BySequenceGreaterThanOrderBySequence(0))
+                .thenReturn(List.of(logEntry(3, DirectoryChangeLogEntry.EntityType.USER, 3)));
+        publisher.poll();
+        Mockito.when(directoryChangeLogRepository.findBySequenceBetweenOrderBySequence(1, 2))
+                .thenReturn(List.of(logEntry(1, DirectoryChangeLogEntry.EntityType.GROUP, 5)));
+
+        publisher.poll();
+        publisher.poll();
+
+        List<DirectoryChangesResponse> responses = captureResponses(4);
+        assertEquals(5, responses.get(3).getChanges(0).getGroup().getGroupId());
+    }
+
+
+    @Test
+    void subscribeFromBeforeLateChangeSendsSnapshot() {
+        DirectoryChangePublisher publisher = startPublisher(0, 0);
+        Mockito.when(directoryChangeLogRepository.findTop500BySequenceGreaterThanOrderBySequence(0))
+                .thenReturn(List.of(logEntry(2, DirectoryChangeLogEntry.EntityType.USER, 3)));
+        publisher.poll();
+        Mockito.when(directoryChangeLogRepository.findBySequenceBetweenOrderBySequence(1, 1))
+                .thenReturn(List.of(logEntry(1, DirectoryChangeLogEntry.EntityType.GROUP, 5)));
+        publisher.poll();
+        Mockito.when(directoryChangeLogRepository.findMinSequence()).thenReturn(1L);
+
+        publisher.subscribe(2, subscriber);
+        publisher.poll();
+
+        List<DirectoryChangesResponse> responses = captureResponses(2);
+        assertTrue(responses.get(0).getResetReplica());
+        assertTrue(responses.get(1).getIsUpToDate());
+    }
+
+
+    @Test
+    void snapshotWaitsUntilSubscriberIsReady() {
+        Mockito.when(subscriber.isReady()).thenReturn(false);
+        DirectoryChangePublisher publisher = startPublisher(0, 0);
+        ArgumentCaptor<Runnable> onReadyCaptor = ArgumentCaptor.forClass(Runnable.class);
+
+        publisher.subscribe(0, subscriber);
+        publisher.poll();
+
+        Mockito.verify(subscriber, Mockito.never()).onNext(Mockito.any());
+        assertEquals(0, publisher.getSubscriberCount());
+
+        Mockito.when(subscriber.isReady()).thenReturn(true);
+        Mockito.verify(subscriber).setOnReadyHandler(onReadyCaptor.capture());
+        onReadyCaptor.getValue().run();
+        publisher.poll();
+
+        List<DirectoryChangesResponse> responses = captureResponses(2);
+        assertTrue(responses.get(0).getResetReplica());
+        assertTrue(responses.get(1).getIsUpToDate());
+        assertEquals(1, publisher.getSubscriberCount());
+    }
+
+
+    @Test
+    void pollPrunesChangesBeyondRetainedCount() {
+        Mockito.when(directoryChangeLogRepository.findMaxSequence()).thenReturn(25L);
+        DirectoryChangePublisher publisher = startPublisher(0, 10);
+
+        publisher.poll();
+
+        Mockito.verify(directoryChangeLogRepository).deleteUpTo(15);
+    }
+
+
+    @Test
+    void cancellingUnsubscribes() {
+        DirectoryChangePublisher publisher = startPublisher(0, 0);
+        publisher.subscribe(0, subscriber);
+        publisher.poll();
+        ArgumentCaptor<Runnable> onCancelCaptor = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(subscriber).setOnCancelHandler(onCancelCaptor.capture());
+
+        onCancelCaptor.getValue().run();
+
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+
+
+    private DirectoryChangePublisher startPublisher(long gapTimeoutMillis, long retainedChanges) {
+        DirectoryChangePublisher publisher = new DirectoryChangePublisher(directoryChangeLogRepository, userRepository,
+                groupRepository, userResponseCache, 0, gapTimeoutMillis, retainedChanges);
+        publisher.start();
+        return publisher;
+    }
+
+
+    private DirectoryChangeLogEntry logEntry(long sequence, DirectoryChangeLogEntry.EntityType entityType,
+                                             int entityId) {
+        DirectoryChangeLogEntry entry = new DirectoryChangeLogEntry(entityType, entityId);
+        ReflectionTestUtils.setField(entry, "sequence", sequence);
+        return entry;
+    }
+
+
+    private List<DirectoryChangesResponse> captureResponses(int count) {
+        ArgumentCaptor<DirectoryChangesResponse> responseCaptor =
+                ArgumentCaptor.forClass(DirectoryChangesResponse.class);
+        Mockito.verify(subscriber, Mockito.times(count)).onNext(responseCaptor.capture());
+        return responseCaptor.getAllValues();
+    }
+}
@@ -0,0 +1,100 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+import nz.ac.canterbury.seng302.identityprovider.model.DirectoryChangeLogEntry;
+import nz.ac.canterbury.seng302.identityprovider.model.DirectoryChangeLogRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+
+@SuppressWarnings("unchecked") // Suppresses intelliJ's warning for testing with mock ServerCalls
+class DirectorySequenceServerInterceptorTest {
+
+    private final DirectoryChangeLogRepository directoryChangeLogRepository =
+            Mockito.mock(DirectoryChangeLogRepository.class);
+
+    private final DirectoryChangeLog directoryChangeLog = new DirectoryChangeLog(directoryChangeLogRepository,
+            Mockito.mock(DirectoryChangePublisher.class));
+
+    private final DirectorySequenceServerInterceptor interceptor = new DirectorySequenceServerInterceptor();
+
+    private final ServerCall<Object, Object> call = Mockito.mock(ServerCall.class);
+
+
+    /**
+     * Gives the saved changes the following sequences, as the database would.
+     *
+     * @param firstSequence The sequence of the first change saved
+     */
+    private void numberChangesFrom(long firstSequence) {
+        AtomicLong nextSequence = new AtomicLong(firstSequence);
+        Mockito.when(directoryChangeLogRepository.saveAll(anyIterable())).thenAnswer(invocation -> {
+            Iterable<DirectoryChangeLogEntry> entries = invocation.getArgument(0);
+            for (DirectoryChangeLogEntry entry : entries) {
+                ReflectionTestUtils.setField(entry, "sequence", nextSequence.getAndIncrement());
+            }
+            return entries;
+        });
+    }
+
+
+    /**
+     * Runs a call through the interceptor, and gets the trailers it is closed with.
+     *
+     * @param handler Handles the call, which it must close
+     * @return The trailers the call was closed with
+     */
+    private Metadata runCall(ServerCallHandler<Object, Object> handler) {
+        interceptor.interceptCall(call, new Metadata(), handler);
+        ArgumentCaptor<Metadata> trailers = ArgumentCaptor.forClass(Metadata.class);
+        Mockito.verify(call).close(any(), trailers.capture());
+        return trailers.getValue();
+    }
+
+
+    @Test
+    void callThatChangesTheDirectorySendsItsLastSequence() {
+        numberChangesFrom(7);
+
+        Metadata trailers = runCall((serverCall, headers) -> {
+            directoryChangeLog.recordUserChange(3);
+            directoryChangeLog.recordGroupChanges(List.of(1, 2));
+            serverCall.close(Status.OK, new Metadata());
+            return new ServerCall.Listener<>() {};
+        });
+
+        assertEquals("9", trailers.get(DirectorySequenceServerInterceptor.DIRECTORY_SEQUENCE_TRAILER));
+    }
+
+
+    @Test
+    void callThatDoesNotChangeTheDirectorySendsNoSequence() {
+        Metadata trailers = runCall((serverCall, headers) -> {
+            serverCall.close(Status.OK, new Metadata());
+            return new ServerCall.Listener<>() {};
+        });
+
+        assertNull(trailers.get(DirectorySequenceServerInterceptor.DIRECTORY_SEQUENCE_TRAILER));
+    }
+
+
+    @Test
+    void changesOutsideACallAreStillRecorded() {
+        numberChangesFrom(1);
+
+        directoryChangeLog.recordUserChange(3);
+
+        Mockito.verify(directoryChangeLogRepository).saveAll(anyIterable());
+    }
+}
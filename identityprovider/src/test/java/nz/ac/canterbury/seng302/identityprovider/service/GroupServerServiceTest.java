@@ -1,11 +1,15 @@
 package nz.ac.canterbury.seng302.identityprovider.service;
 
 import com.google.protobuf.Empty;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import nz.ac.canterbury.seng302.identityprovider.model.Group;
 import nz.ac.canterbury.seng302.identityprovider.model.GroupRepository;
+import nz.ac.canterbury.seng302.identityprovider.model.GroupSortKey;
+import nz.ac.canterbury.seng302.identityprovider.model.GroupSummary;
 import nz.ac.canterbury.seng302.identityprovider.model.User;
 import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
+import nz.ac.canterbury.seng302.identityprovider.model.UserSortKey;
 import nz.ac.canterbury.seng302.shared.identityprovider.*;
 import nz.ac.canterbury.seng302.shared.util.PaginationRequestOptions;
 import org.junit.jupiter.api.Assertions;
@@ -15,6 +19,7 @@ import org.mockito.*;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 
@@ -28,11 +33,16 @@ class GroupServerServiceTest {
 
     private final UserRepository userRepository = Mockito.mock(UserRepository.class);
 
+    private final DirectoryChangeLog directoryChangeLog = Mockito.mock(DirectoryChangeLog.class);
+
     @InjectMocks
     private GroupsServerService groupsServerService = new GroupsServerService();
 
     @Mock
-    private GroupService groupService = new GroupService(groupRepository, userRepository);
+    private GroupService groupService = new GroupService(groupRepository, userRepository, directoryChangeLog);
+
+    @Spy
+    private UserResponseCache userResponseCache = new UserResponseCache(100);
 
     @BeforeEach
     public void setUp() {
@@ -189,10 +199,22 @@ class GroupServerServiceTest {
     }
 
 
+    @Test
+    void testDeleteGroupRejectedByGroupService() {
+        Mockito.doThrow(new IllegalArgumentException("Can't delete 'Members Without A Group'"))
+                .when(groupService).deleteGroup(1);
+
+        DeleteGroupResponse response = runDeleteGroupTest(1);
+
+        Assertions.assertFalse(response.getIsSuccess());
+        Assertions.assertEquals("Can't delete 'Members Without A Group'", response.getMessage());
+    }
+
+
     @Test
     void testGetGroupDetails() throws PasswordEncryptionException {
         Group group = new Group(1, "Short", "Long");
-        ReflectionTestUtils.setField(group, "userList", new ArrayList<>());
+        ReflectionTestUtils.setField(group, "userList", new LinkedHashSet<>());
 
         User user = new User("Steve1", "password", "Steve", "Stevenson", "McSteve", "KingSteve", "", "", "Steve@steve.com");
         user = spy(user);
@@ -256,7 +278,7 @@ class GroupServerServiceTest {
         List<User> userList = new ArrayList<>();
         userList.add(user);
         userList.add(user2);
-        ReflectionTestUtils.setField(teachingGroup, "userList", userList);
+        ReflectionTestUtils.setField(teachingGroup, "userList", new LinkedHashSet<>(userList));
 
         StreamObserver<GroupDetailsResponse> responseObserver = Mockito.mock(StreamObserver.class);
         ArgumentCaptor<GroupDetailsResponse> responseCaptor = ArgumentCaptor.forClass(GroupDetailsResponse.class);
@@ -328,7 +350,7 @@ class GroupServerServiceTest {
         List<User> userList = new ArrayList<>();
         userList.add(user);
         userList.add(user2);
-        ReflectionTestUtils.setField(nonGroup, "userList", userList);
+        ReflectionTestUtils.setField(nonGroup, "userList", new LinkedHashSet<>(userList));
 
         StreamObserver<GroupDetailsResponse> responseObserver = Mockito.mock(StreamObserver.class);
         ArgumentCaptor<GroupDetailsResponse> responseCaptor = ArgumentCaptor.forClass(GroupDetailsResponse.class);
@@ -629,6 +651,156 @@ class GroupServerServiceTest {
     }
 
 
+    // ------------------------------------- Test getPaginatedGroupSummaries -----------------------------------------
+
+
+    @Test
+    void getPaginatedGroupSummariesReturnsPageFromRepository() {
+        Mockito.when(groupRepository.findGroupSummaryPage(GroupSortKey.MEMBERS_NUMBER, false, 3, 2))
+                .thenReturn(List.of(new GroupSummary(2, "Group 2", "Comp Sci Group 2", 2),
+                                    new GroupSummary(3, "Group 3", "Comp Sci Group 3", 1)));
+        Mockito.when(groupRepository.count()).thenReturn(5L);
+
+        PaginatedGroupSummariesResponse response = runGetPaginatedGroupSummariesTest("membersNumber", 3, 2, false);
+
+        Assertions.assertEquals(5, response.getPaginationResponseOptions().getResultSetSize());
+        Assertions.assertEquals(2, response.getGroupsCount());
+        Assertions.assertEquals(GroupSummaryResponse.newBuilder()
+                .setGroupId(2)
+                .setShortName("Group 2")
+                .setLongName("Comp Sci Group 2")
+                .setMembersNumber(2)
+                .build(), response.getGroups(0));
+        Assertions.assertEquals(1, response.getGroups(1).getMembersNumber());
+        Mockito.verify(groupRepository, Mockito.never()).findAll();
+    }
+
+
+    @Test
+    void getPaginatedGroupSummariesDefaultsToShortName() {
+        Mockito.when(groupRepository.findGroupSummaryPage(GroupSortKey.SHORT_NAME, true, 0, 10)).thenReturn(List.of());
+
+        PaginatedGroupSummariesResponse response = runGetPaginatedGroupSummariesTest("unknown", 0, 10, true);
+
+        Assertions.assertEquals(0, response.getGroupsCount());
+        Mockito.verify(groupRepository).findGroupSummaryPage(GroupSortKey.SHORT_NAME, true, 0, 10);
+    }
+
+
+    // ------------------------------------------- Test getGroupMembers ----------------------------------------------
+
+
+    @Test
+    void getGroupMembersReturnsPageFromRepository() throws PasswordEncryptionException {
+        mockGroupNames(2, "Group 2", "Comp Sci Group 2");
+        List<User> members = createMembers(2);
+        Mockito.when(userRepository.findGroupMemberPage(2, UserSortKey.FIRST_NAME, true, 4, 2)).thenReturn(members);
+        Mockito.when(groupRepository.countGroupMembers(2)).thenReturn(7);
+
+        GroupMembersResponse response = runGetGroupMembersTest(GetGroupMembersRequest.newBuilder()
+                .setGroupId(2)
+                .setPaginationRequestOptions(memberPageOptions(4, 2, ""))
+                .build());
+
+        Assertions.assertEquals(2, response.getGroupId());
+        Assertions.assertEquals("Group 2", response.getShortName());
+        Assertions.assertEquals(2, response.getMembersCount());
+        Assertions.assertEquals("Steve1", response.getMembers(0).getUsername());
+        Assertions.assertEquals(7, response.getPaginationResponseOptions().getResultSetSize());
+        Assertions.assertFalse(response.getPaginationResponseOptions().getNextCursor().isEmpty());
+        Mockito.verify(groupRepository, Mockito.never()).getGroupById(Mockito.any());
+    }
+
+
+    @Test
+    void getGroupMembersContinuesFromCursor() throws PasswordEncryptionException {
+        mockGroupNames(2, "Group 2", "Comp Sci Group 2");
+        List<User> members = createMembers(3);
+        User lastOnFirstPage = members.get(1);
+        Mockito.when(userRepository.findGroupMemberPage(2, UserSortKey.FIRST_NAME, true, 0, 2))
+                .thenReturn(members.subList(0, 2));
+        Mockito.when(userRepository.findGroupMemberPageAfter(2, UserSortKey.FIRST_NAME, true,
+                lastOnFirstPage.getFirstNameSortKey(), lastOnFirstPage.getId(), 2)).thenReturn(members.subList(2, 3));
+
+        GroupMembersResponse firstPage = runGetGroupMembersTest(GetGroupMembersRequest.newBuilder()
+                .setGroupId(2)
+                .setPaginationRequestOptions(memberPageOptions(0, 2, ""))
+                .build());
+        GroupMembersResponse secondPage = runGetGroupMembersTest(GetGroupMembersRequest.newBuilder()
+                .setGroupId(2)
+                .setPaginationRequestOptions(memberPageOptions(2, 2,
+                        firstPage.getPaginationResponseOptions().getNextCursor()))
+                .build());
+
+        Assertions.assertEquals(1, secondPage.getMembersCount());
+        Assertions.assertEquals("Steve3", secondPage.getMembers(0).getUsername());
+        Assertions.assertTrue(secondPage.getPaginationResponseOptions().getNextCursor().isEmpty());
+    }
+
+
+    @Test
+    void getGroupMembersOnlyChecksGivenUsers() throws PasswordEncryptionException {
+        mockGroupNames(2, "Group 2", "Comp Sci Group 2");
+        List<User> members = createMembers(1);
+        Mockito.when(userRepository.findGroupMembersByIdIn(2, List.of(1, 9))).thenReturn(members);
+
+        GroupMembersResponse response = runGetGroupMembersTest(GetGroupMembersRequest.newBuilder()
+                .setGroupId(2)
+                .addAllUserIds(List.of(1, 9))
+                .build());
+
+        Assertions.assertEquals(1, response.getMembersCount());
+        Assertions.assertEquals(1, response.getMembers(0).getId());
+        Assertions.assertEquals(1, response.getPaginationResponseOptions().getResultSetSize());
+        Mockito.verify(userRepository, Mockito.never())
+                .findGroupMemberPage(Mockito.anyInt(), Mockito.any(), Mockito.anyBoolean(), Mockito.anyInt(), Mockito.anyInt());
+    }
+
+
+    @Test
+    void getGroupMembersGroupDoesNotExist() {
+        Mockito.when(groupRepository.findNamesById(3)).thenReturn(Optional.empty());
+
+        GroupMembersResponse response = runGetGroupMembersTest(GetGroupMembersRequest.newBuilder()
+                .setGroupId(3)
+                .setPaginationRequestOptions(memberPageOptions(0, 10, ""))
+                .build());
+
+        Assertions.assertEquals(-1, response.getGroupId());
+        Assertions.assertEquals(0, response.getMembersCount());
+    }
+
+
+    @Test
+    void streamGroupMembersSendsBatchesUntilAllMembersAreSent() throws PasswordEncryptionException {
+        List<User> members = createMembers(3);
+        User lastOfFirstBatch = members.get(1);
+        Mockito.when(userRepository.findGroupMemberPage(2, UserSortKey.FIRST_NAME, true, 0, 2))
+                .thenReturn(members.subList(0, 2));
+        Mockito.when(userRepository.findGroupMemberPageAfter(2, UserSortKey.FIRST_NAME, true,
+                lastOfFirstBatch.getFirstNameSortKey(), lastOfFirstBatch.getId(), 2)).thenReturn(members.subList(2, 3));
+        ServerCallStreamObserver<UserBatch> responseObserver = Mockito.mock(ServerCallStreamObserver.class);
+        Mockito.when(responseObserver.isReady()).thenReturn(true);
+        ArgumentCaptor<Runnable> onReadyCaptor = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<UserBatch> batchCaptor = ArgumentCaptor.forClass(UserBatch.class);
+        StreamGroupMembersRequest request = StreamGroupMembersRequest.newBuilder()
+                .setGroupId(2)
+                .setOrderBy("firstname")
+                .setIsAscendingOrder(true)
+                .setBatchSize(2)
+                .build();
+
+        groupsServerService.streamGroupMembers(request, responseObserver);
+        Mockito.verify(responseObserver).setOnReadyHandler(onReadyCaptor.capture());
+        onReadyCaptor.getValue().run();
+
+        Mockito.verify(responseObserver, Mockito.times(2)).onNext(batchCaptor.capture());
+        Mockito.verify(responseObserver).onCompleted();
+        Assertions.assertEquals(2, batchCaptor.getAllValues().get(0).getUsersCount());
+        Assertions.assertEquals("Steve3", batchCaptor.getAllValues().get(1).getUsers(0).getUsername());
+    }
+
+
     // ----------------------------------------- Test runner helpers -------------------------------------------------
 
     private void mockUserResponses(List<User> users) {
@@ -653,6 +825,56 @@ class GroupServerServiceTest {
     }
 
 
+    /**
+     * Creates users with ids from 1 to the given number, sorted by username, to be returned as group members.
+     *
+     * @param number The number of users to create
+     * @return The users
+     */
+    private List<User> createMembers(int number) throws PasswordEncryptionException {
+        List<User> members = new ArrayList<>();
+        for (int i = 1; i <= number; i++) {
+            User user = spy(new User("Steve" + i, "password", "Steve", "", "Stevenson", "", "", "", "Steve@steve.com"));
+            Mockito.doReturn(i).when(user).getId();
+            members.add(user);
+        }
+        mockUserResponses(members);
+        return members;
+    }
+
+
+    private void mockGroupNames(int groupId, String shortName, String longName) {
+        GroupRepository.GroupNamesView names = Mockito.mock(GroupRepository.GroupNamesView.class);
+        Mockito.when(names.getId()).thenReturn(groupId);
+        Mockito.when(names.getShortName()).thenReturn(shortName);
+        Mockito.when(names.getLongName()).thenReturn(longName);
+        Mockito.when(groupRepository.findNamesById(groupId)).thenReturn(Optional.of(names));
+    }
+
+
+    private PaginationRequestOptions memberPageOptions(int offset, int limit, String cursor) {
+        return PaginationRequestOptions.newBuilder()
+                .setOffset(offset)
+                .setLimit(limit)
+                .setOrderBy("firstname")
+                .setIsAscendingOrder(true)
+                .setCursor(cursor)
+                .build();
+    }
+
+
+    private GroupMembersResponse runGetGroupMembersTest(GetGroupMembersRequest request) {
+        StreamObserver<GroupMembersResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<GroupMembersResponse> responseCaptor = ArgumentCaptor.forClass(GroupMembersResponse.class);
+
+        groupsServerService.getGroupMembers(request, responseObserver);
+
+        Mockito.verify(responseObserver).onNext(responseCaptor.capture());
+        Mockito.verify(responseObserver).onCompleted();
+        return responseCaptor.getValue();
+    }
+
+
     /**
      * A helper function for running tests for getting paginated groups
      *
@@ -689,6 +911,36 @@ class GroupServerServiceTest {
     }
 
 
+    /**
+     * A helper function for running tests for getting paginated group summaries
+     *
+     * @param orderBy The string of what parameter to order by
+     * @param offset The amount of groups to offset the start of the list by
+     * @param limit The maximum amount of groups to get for the page
+     * @param isAscending Whether the list should be in ascending or descending order
+     * @return The response received from the tested GroupsServerService.getPaginatedGroupSummaries method
+     */
+    private PaginatedGroupSummariesResponse runGetPaginatedGroupSummariesTest(String orderBy, int offset, int limit, boolean isAscending) {
+        PaginationRequestOptions options = PaginationRequestOptions.newBuilder()
+                .setOffset(offset)
+                .setLimit(limit)
+                .setOrderBy(orderBy)
+                .setIsAscendingOrder(isAscending)
+                .build();
+        GetPaginatedGroupsRequest request = GetPaginatedGroupsRequest.newBuilder()
+                .setPaginationRequestOptions(options)
+                .build();
+        StreamObserver<PaginatedGroupSummariesResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<PaginatedGroupSummariesResponse> responseCaptor = ArgumentCaptor.forClass(PaginatedGroupSummariesResponse.class);
+
+        groupsServerService.getPaginatedGroupSummaries(request, responseObserver);
+
+        Mockito.verify(responseObserver).onNext(responseCaptor.capture());
+        Mockito.verify(responseObserver).onCompleted();
+        return responseCaptor.getValue();
+    }
+
+
     /**
      * A helper function to set up some groups and users in these groups
      *
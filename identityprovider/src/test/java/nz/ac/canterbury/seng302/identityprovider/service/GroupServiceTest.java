@@ -1,19 +1,18 @@
 package nz.ac.canterbury.seng302.identityprovider.service;
 
-import nz.ac.canterbury.seng302.identityprovider.model.Group;
 import nz.ac.canterbury.seng302.identityprovider.model.GroupRepository;
-import nz.ac.canterbury.seng302.identityprovider.model.User;
 import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
-import org.springframework.test.util.ReflectionTestUtils;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -21,153 +20,146 @@ class GroupServiceTest {
 
     private final GroupRepository groupRepository = Mockito.mock(GroupRepository.class);
     private final UserRepository userRepository = Mockito.mock(UserRepository.class);
+    private final DirectoryChangeLog directoryChangeLog = Mockito.mock(DirectoryChangeLog.class);
     private GroupService groupService;
 
+    private static final int TEACHERS_ID = 1;
+    private static final int MWAG_ID = 2;
+    private static final int GROUP_ID = 3;
+
     @BeforeEach
     public void setUp() {
-        groupService = new GroupService(groupRepository, userRepository);
+        groupService = new GroupService(groupRepository, userRepository, directoryChangeLog);
+        mockGroupNames(TEACHERS_ID, "Teachers", "Teaching Staff");
+        mockGroupNames(MWAG_ID, "Non-Group", "Members Without A Group");
+        mockGroupNames(GROUP_ID, "Short", "Long");
+    }
+
+
+    @Test
+    void testAddUser() {
+        groupService.addGroupMembers(GROUP_ID, List.of(1, 2));
+
+        verify(groupRepository).addGroupMembers(GROUP_ID, List.of(1, 2));
+    }
+
+
+    @Test
+    void testAddUserToNewGroupRemovedFromMwag() {
+        groupService.addGroupMembers(GROUP_ID, List.of(1, 2));
+
+        verify(groupRepository).removeGroupMembers(MWAG_ID, List.of(1, 2));
+    }
+
+
+    @Test
+    void testAddNoUsersChangesNothing() {
+        groupService.addGroupMembers(GROUP_ID, List.of());
+
+        verify(groupRepository, Mockito.never()).addGroupMembers(Mockito.anyInt(), Mockito.any());
+        verify(groupRepository, Mockito.never()).removeGroupMembers(Mockito.anyInt(), Mockito.any());
+    }
+
+
+    @Test
+    void testAddUserToInvalidGroup() {
+        List<Integer> userIds = List.of(1);
+
+        assertThrows(IllegalArgumentException.class, () -> groupService.addGroupMembers(99, userIds));
+    }
+
+
+    @Test
+    void testUserAddedToMwagRemovedFromOtherGroups() {
+        groupService.addGroupMembers(MWAG_ID, List.of(1, 2));
+
+        verify(groupRepository).removeFromGroupsOtherThan(List.of(1, 2), MWAG_ID);
+        verify(groupRepository).addGroupMembers(MWAG_ID, List.of(1, 2));
     }
 
 
     @Test
-    void testAddUser() throws Exception {
-        User user = new User("Steve1", "password", "Steve", "Stevenson", "McSteve", "KingSteve", "", "", "Steve@steve.com");
-        User user2 = new User("Steve2", "password", "Steve", "Stevenson", "McSteve", "KingSteve", "", "", "Steve@steve.com");
-        List<User> userList = new ArrayList<>();
-        userList.add(user);
-        userList.add(user2);
-
-
-        Group group = new Group(1, "Short", "Long");
-        ReflectionTestUtils.setField(group, "userList", new ArrayList<>());
-        when(groupRepository.findById(group.getId())).thenReturn(Optional.of(group));
-        when(userRepository.findAllById(Mockito.any())).thenReturn(userList);
-        ArrayList<Integer> userIds = new ArrayList<>();
-        userIds.add(1);
-        userIds.add(2);
-
-        groupService.addGroupMembers(group.getId(), userIds);
-
-        assertEquals(2, group.getUserList().size());
-        assertEquals(userList, group.getUserList());
+    void testTeacherAddedToMwagStaysInTeachersGroup() {
+        UserRepository.RolePrecedenceView teacher = Mockito.mock(UserRepository.RolePrecedenceView.class);
+        when(teacher.getId()).thenReturn(1);
+        when(teacher.isTeacher()).thenReturn(true);
+        when(userRepository.findRolePrecedenceByIdIn(List.of(1, 2))).thenReturn(List.of(teacher));
+
+        groupService.addGroupMembers(MWAG_ID, List.of(1, 2));
+
+        verify(groupRepository).removeFromGroupsOtherThan(Set.of(1), TEACHERS_ID);
+        verify(groupRepository).removeFromGroupsOtherThan(List.of(2), MWAG_ID);
+        verify(groupRepository).addGroupMembers(MWAG_ID, List.of(2));
     }
 
 
     @Test
-    void testAddAlreadyPresentUser() throws Exception {
-        User user = new User("Steve1", "password", "Steve", "Stevenson", "McSteve", "KingSteve", "", "", "Steve@steve.com");
-        User user2 = new User("Steve2", "password", "Steve", "Stevenson", "McSteve", "KingSteve", "", "", "Steve@steve.com");
-        List<User> userList = new ArrayList<>();
-        userList.add(user);
-        userList.add(user2);
-
-        Group group = new Group(1, "Short", "Long");
-        ReflectionTestUtils.setField(group, "userList", new ArrayList<>());
-        when(groupRepository.findById(group.getId())).thenReturn(Optional.of(group));
-        when(userRepository.findAllById(Mockito.any())).thenReturn(userList);
-        ArrayList<Integer> userIds = new ArrayList<>();
-        userIds.add(1);
-        userIds.add(2);
-
-        groupService.addGroupMembers(group.getId(), userIds);
-        groupService.addGroupMembers(group.getId(), userIds);
-
-        assertEquals(2, group.getMembersNumber());
-        assertEquals(userList, group.getUserList());
+    void testDeleteUser() {
+        groupService.removeGroupMembers(GROUP_ID, List.of(1, 2));
+
+        verify(groupRepository).removeGroupMembers(GROUP_ID, List.of(1, 2));
     }
 
 
     @Test
-    void testDeleteUser() throws Exception {
-        User user = new User("Steve1", "password", "Steve", "Stevenson", "McSteve", "KingSteve", "", "", "Steve@steve.com");
-        User user2 = new User("Steve2", "password", "Steve", "Stevenson", "McSteve", "KingSteve", "", "", "Steve@steve.com");
-        List<User> userList = new ArrayList<>();
-        userList.add(user);
-        userList.add(user2);
-
-        Group group = new Group(1, "Short", "Long");
-        Group MwagGroup = new Group(2, "Non-Group", "Members Without A Group");
-        ReflectionTestUtils.setField(group, "userList", new ArrayList<>());
-        when(groupRepository.findById(group.getId())).thenReturn(Optional.of(group));
-        when(groupRepository.findByShortName(MwagGroup.getShortName())).thenReturn(Optional.of(MwagGroup));
-        when(userRepository.findAllById(Mockito.any())).thenReturn(userList);
-        ArrayList<Integer> userIds = new ArrayList<>();
-        userIds.add(1);
-        userIds.add(2);
-
-        groupService.addGroupMembers(group.getId(), userIds);
-        groupService.removeGroupMembers(group.getId(), userIds);
-
-        assertEquals(0, group.getMembersNumber());
+    void testRemoveUserFromLastGroup() {
+        groupService.removeGroupMembers(GROUP_ID, List.of(1, 2));
 
+        verify(groupRepository).addUngroupedUsers(MWAG_ID, List.of(1, 2));
     }
 
 
     @Test
-    void testRemoveUserFromLastGroup() throws Exception {
-        User user = new User("Steve1", "password", "Steve", "Stevenson", "McSteve", "KingSteve", "", "", "Steve@steve.com");
-        List<User> userList = new ArrayList<>();
-        userList.add(user);
-        ArrayList<Integer> userIds = new ArrayList<>();
-        userIds.add(1);
-
-        Group group = new Group(1, "Short", "Long");
-        group.addGroupMember(user);
-        Group MwagGroup = new Group(2, "Non-Group", "Members Without A Group");
-        when(groupRepository.findById(group.getId())).thenReturn(Optional.of(group));
-        when(groupRepository.findByShortName(MwagGroup.getShortName())).thenReturn(Optional.of(MwagGroup));
-        when(userRepository.findAllById(Mockito.any())).thenReturn(userList);
-
-        groupService.removeGroupMembers(group.getId(), userIds);
-
-        assertEquals(0, group.getMembersNumber());
+    void testRemoveUserFromMwag() {
+        List<Integer> userIds = List.of(1);
+
+        assertThrows(IllegalArgumentException.class, () -> groupService.removeGroupMembers(MWAG_ID, userIds));
+        verify(groupRepository, Mockito.never()).removeGroupMembers(Mockito.anyInt(), Mockito.any());
     }
 
 
     @Test
-    void testAddUserToNewGroupRemovedFromMwag() throws Exception {
-        User user = new User("Steve1", "password", "Steve", "Stevenson", "McSteve", "KingSteve", "", "", "Steve@steve.com");
-        List<User> userList = new ArrayList<>();
-        userList.add(user);
-        ArrayList<Integer> userIds = new ArrayList<>();
-        userIds.add(1);
-
-        Group group = new Group(1, "Short", "Long");
-        Group MwagGroup = new Group(2, "Non-Group", "Members Without A Group");
-        MwagGroup.addGroupMember(user);
-        user.getGroups().add(MwagGroup);
-
-        when(groupRepository.findById(group.getId())).thenReturn(Optional.of(group));
-        when(groupRepository.findByShortName(MwagGroup.getShortName())).thenReturn(Optional.of(MwagGroup));
-        when(userRepository.findAllById(Mockito.any())).thenReturn(userList);
-
-        groupService.addGroupMembers(group.getId(), userIds);
-
-        assertEquals(0, MwagGroup.getMembersNumber());
-        assertEquals(userList, group.getUserList());
+    void testDeleteGroupMovesSoleMembersToMwag() {
+        groupService.deleteGroup(GROUP_ID);
+
+        InOrder inOrder = Mockito.inOrder(groupRepository);
+        inOrder.verify(groupRepository).addSoleMembersTo(GROUP_ID, MWAG_ID);
+        inOrder.verify(groupRepository).removeAllGroupMembers(GROUP_ID);
+        inOrder.verify(groupRepository).deleteById(GROUP_ID);
     }
 
+
     @Test
-    void testUserAddedToMwagRemovedFromOtherGroups() throws Exception {
-        User user = new User("Steve1", "password", "Steve", "Stevenson", "McSteve", "KingSteve", "", "", "Steve@steve.com");
-        List<User> userList = new ArrayList<>();
-        userList.add(user);
-        ArrayList<Integer> userIds = new ArrayList<>();
-        userIds.add(1);
-
-        Group group = new Group(1, "Short", "Long");
-        Group MwagGroup = new Group(2, "Non-Group", "Members Without A Group");
-        user.getGroups().add(group);
-        group.addGroupMember(user);
-
-        when(groupRepository.findById(group.getId())).thenReturn(Optional.of(group));
-        when(groupRepository.findById(MwagGroup.getId())).thenReturn(Optional.of(MwagGroup));
-        when(groupRepository.findByShortName(MwagGroup.getShortName())).thenReturn(Optional.of(MwagGroup));
-        when(userRepository.findAllById(Mockito.any())).thenReturn(userList);
-
-        groupService.addGroupMembers(MwagGroup.getId(), userIds);
-
-        assertEquals(0, group.getMembersNumber());
-        assertEquals(userList, MwagGroup.getUserList());
+    void testAddUserRecordsChangedGroups() {
+        when(groupRepository.findGroupIdsOfUsers(List.of(1, 2))).thenReturn(List.of(MWAG_ID));
+
+        groupService.addGroupMembers(GROUP_ID, List.of(1, 2));
+
+        verify(directoryChangeLog).recordGroupChanges(Set.of(GROUP_ID, MWAG_ID));
+    }
+
+
+    @Test
+    void testDeleteGroupRecordsGroupAndMwag() {
+        groupService.deleteGroup(GROUP_ID);
+
+        verify(directoryChangeLog).recordGroupChanges(Set.of(GROUP_ID, MWAG_ID));
+    }
+
+
+    @Test
+    void testDeleteMwag() {
+        assertThrows(IllegalArgumentException.class, () -> groupService.deleteGroup(MWAG_ID));
+        verify(groupRepository, Mockito.never()).deleteById(Mockito.any());
+    }
+
+
+    private void mockGroupNames(int id, String shortName, String longName) {
+        GroupRepository.GroupNamesView names = Mockito.mock(GroupRepository.GroupNamesView.class);
+        when(names.getId()).thenReturn(id);
+        when(names.getShortName()).thenReturn(shortName);
+        when(names.getLongName()).thenReturn(longName);
+        when(groupRepository.findNamesById(id)).thenReturn(Optional.of(names));
+        when(groupRepository.findNamesByShortName(shortName)).thenReturn(Optional.of(names));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,155 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import com.google.protobuf.ByteString;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import nz.ac.canterbury.seng302.identityprovider.model.User;
+import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
+import nz.ac.canterbury.seng302.shared.identityprovider.ProfilePhotoUploadMetadata;
+import nz.ac.canterbury.seng302.shared.identityprovider.UploadUserProfilePhotoRequest;
+import nz.ac.canterbury.seng302.shared.util.FileUploadStatus;
+import nz.ac.canterbury.seng302.shared.util.FileUploadStatusResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+
+@SuppressWarnings("unchecked") // Suppresses intelliJ's warning for testing with mock StreamObservers
+class ImageRequestStreamObserverTest {
+
+    private static final int USER_ID = 3;
+
+    private final StreamObserver<FileUploadStatusResponse> responseObserver = Mockito.mock(StreamObserver.class);
+
+    private final ProfileImageVariants profileImageVariants = Mockito.mock(ProfileImageVariants.class);
+
+    private final DirectoryChangeLog directoryChangeLog = Mockito.mock(DirectoryChangeLog.class);
+
+    private final UserRepository userRepository = Mockito.mock(UserRepository.class);
+
+    private final UserIndexService userIndexService = Mockito.mock(UserIndexService.class);
+
+    private final User user = Mockito.mock(User.class);
+
+    private UrlService urlService;
+
+    @TempDir
+    Path directory;
+
+    private ImageRequestStreamObserver requestObserver;
+
+
+    @BeforeEach
+    void setUp() {
+        MockEnvironment env = new MockEnvironment()
+                .withProperty("photoLocation", directory + "/")
+                .withProperty("profilePhotoMaxBytes", "8");
+        Mockito.when(userRepository.findById(USER_ID)).thenReturn(user);
+        urlService = new UrlService(env);
+        // The saved photo's URL is built with the UrlUtil singleton, which Spring would set
+        ReflectionTestUtils.setField(UrlUtil.class, "urlService", urlService);
+        ProfileImageStore profileImageStore = new ProfileImageStore(userRepository, profileImageVariants,
+                directoryChangeLog, userIndexService, new UserResponseCache(0), directory, 0, System::currentTimeMillis);
+        requestObserver = new ImageRequestStreamObserver(responseObserver, userRepository, env,
+                new UserResponseCache(0), userIndexService, directoryChangeLog, profileImageStore);
+    }
+
+
+    private UploadUserProfilePhotoRequest metadata() {
+        return UploadUserProfilePhotoRequest.newBuilder()
+                .setMetaData(ProfilePhotoUploadMetadata.newBuilder().setUserId(USER_ID).setFileType("jpg"))
+                .build();
+    }
+
+
+    private UploadUserProfilePhotoRequest chunk(int... content) {
+        byte[] bytes = new byte[content.length];
+        for (int i = 0; i < content.length; i++) {
+            bytes[i] = (byte) content[i];
+        }
+        return UploadUserProfilePhotoRequest.newBuilder().setFileContent(ByteString.copyFrom(bytes)).build();
+    }
+
+
+    private long filesInDirectory() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+
+    @Test
+    void chunksStoredByHashOnCompletion() throws Exception {
+        byte[] content = {1, 2, 3, 4, 5};
+        String name = HexFormat.of().formatHex(DigestUtil.sha256(content)) + ".jpg";
+        Path photo = directory.resolve(name);
+        Mockito.when(user.getProfileImage()).thenReturn(name);
+        Mockito.when(user.getProfileImagePath()).thenReturn("/profile/" + name);
+        requestObserver.onNext(metadata());
+        requestObserver.onNext(chunk(1, 2, 3));
+        requestObserver.onNext(chunk(4, 5));
+
+        assertFalse(Files.exists(photo));
+
+        requestObserver.onCompleted();
+
+        assertArrayEquals(content, Files.readAllBytes(photo));
+        assertEquals(1, filesInDirectory());
+        ArgumentCaptor<FileUploadStatusResponse> responseCaptor =
+                ArgumentCaptor.forClass(FileUploadStatusResponse.class);
+        Mockito.verify(responseObserver).onNext(responseCaptor.capture());
+        assertEquals(FileUploadStatus.SUCCESS, responseCaptor.getValue().getStatus());
+        assertEquals(urlService.getProfileURL(user).toString(), responseCaptor.getValue().getFilePath());
+        Mockito.verify(responseObserver).onCompleted();
+        Mockito.verify(profileImageVariants).createVariants(photo);
+        Mockito.verify(user).setProfileImage(name);
+        Mockito.verify(userRepository).save(user);
+        Mockito.verify(userIndexService).update(user);
+        Mockito.verify(directoryChangeLog).recordUserChange(USER_ID);
+    }
+
+
+    @Test
+    void photoOverSizeCapRejected() throws Exception {
+        requestObserver.onNext(metadata());
+        requestObserver.onNext(chunk(1, 2, 3, 4, 5));
+        requestObserver.onNext(chunk(6, 7, 8, 9));
+        requestObserver.onCompleted();
+
+        assertEquals(0, filesInDirectory());
+        Mockito.verify(responseObserver).onError(any(StatusRuntimeException.class));
+        Mockito.verify(responseObserver, Mockito.never()).onCompleted();
+        Mockito.verifyNoInteractions(directoryChangeLog);
+    }
+
+
+    @Test
+    void contentBeforeMetadataRejected() throws Exception {
+        requestObserver.onNext(chunk(1, 2, 3));
+
+        assertEquals(0, filesInDirectory());
+        Mockito.verify(responseObserver).onError(any(StatusRuntimeException.class));
+    }
+
+
+    @Test
+    void cancelledUploadDiscarded() throws Exception {
+        requestObserver.onNext(metadata());
+        requestObserver.onNext(chunk(1, 2, 3));
+        requestObserver.onError(new RuntimeException("Cancelled"));
+
+        assertEquals(0, filesInDirectory());
+        Mockito.verifyNoInteractions(directoryChangeLog);
+    }
+}
@@ -0,0 +1,98 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.core.env.Environment;
+
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SuppressWarnings("unchecked") // Suppresses intelliJ's warning for testing with mock StreamObservers
+class PasswordHashingExecutorTest {
+
+    private final Environment env = Mockito.mock(Environment.class);
+
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(env.getProperty(Mockito.eq("passwordHashingThreads"), Mockito.anyString())).thenReturn("1");
+        Mockito.when(env.getProperty(Mockito.eq("passwordHashingQueueSize"), Mockito.anyString())).thenReturn("1");
+        passwordHashingExecutor = new PasswordHashingExecutor(env);
+    }
+
+
+    @AfterEach
+    void tearDown() {
+        passwordHashingExecutor.shutdown();
+    }
+
+
+    @Test
+    void submitCompletesWithResult() throws Exception {
+        CompletableFuture<String> future = passwordHashingExecutor.submit(
+                () -> new LoginService().getHash("password", "c2FsdHNhbHQ="));
+
+        assertEquals(new LoginService().getHash("password", "c2FsdHNhbHQ="), future.get(10, TimeUnit.SECONDS));
+        assertEquals(1, passwordHashingExecutor.getStats().completed());
+    }
+
+
+    @Test
+    void submitCompletesExceptionallyWhenHashingFails() {
+        CompletableFuture<String> future = passwordHashingExecutor.submit(() -> {
+            throw new PasswordEncryptionException("Could not hash password");
+        });
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(PasswordEncryptionException.class, exception.getCause());
+    }
+
+
+    @Test
+    void respondFailsTheCallWhenTheResponseThrows() {
+        StreamObserver<String> responseObserver = Mockito.mock(StreamObserver.class);
+
+        passwordHashingExecutor.respond(responseObserver, () -> {
+            throw new IllegalStateException("Could not save");
+        });
+
+        ArgumentCaptor<Throwable> errorCaptor = ArgumentCaptor.forClass(Throwable.class);
+        Mockito.verify(responseObserver).onError(errorCaptor.capture());
+        assertEquals(Status.Code.INTERNAL, Status.fromThrowable(errorCaptor.getValue()).getCode());
+    }
+
+
+    @Test
+    void submitRejectsWhenQueueIsFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = passwordHashingExecutor.submit(() -> {
+            started.countDown();
+            try {
+                return release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> queued = passwordHashingExecutor.submit(() -> true);
+
+        assertThrows(RejectedExecutionException.class, () -> passwordHashingExecutor.submit(() -> true));
+        PasswordHashingExecutor.Stats stats = passwordHashingExecutor.getStats();
+        assertEquals(1, stats.queueDepth());
+        assertEquals(1, stats.rejected());
+
+        release.countDown();
+        assertTrue(running.get(10, TimeUnit.SECONDS));
+        assertTrue(queued.get(10, TimeUnit.SECONDS));
+    }
+}
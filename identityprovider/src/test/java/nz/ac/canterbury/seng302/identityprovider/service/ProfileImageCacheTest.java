@@ -0,0 +1,72 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.MediaType;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProfileImageCacheTest {
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 1, 2, 3, 4};
+
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 5, 6, 7, 8};
+
+    private final ProfileImageCache profileImageCache = new ProfileImageCache(2, 1024);
+
+    @TempDir
+    Path directory;
+
+
+    @Test
+    void smallImageKeptInMemory() throws Exception {
+        Path image = Files.write(directory.resolve("1.jpg"), PNG);
+
+        ProfileImageCache.CachedImage first = profileImageCache.get(image);
+        ProfileImageCache.CachedImage second = profileImageCache.get(image);
+
+        assertArrayEquals(PNG, first.content());
+        assertEquals(MediaType.IMAGE_PNG, first.contentType());
+        assertEquals(PNG.length, first.size());
+        assertSame(first, second);
+    }
+
+
+    @Test
+    void largeImageNotKeptInMemory() throws Exception {
+        Path image = Files.write(directory.resolve("1.jpg"), JPEG);
+
+        ProfileImageCache.CachedImage large = new ProfileImageCache(2, 4).get(image);
+        ProfileImageCache.CachedImage small = profileImageCache.get(image);
+
+        assertNull(large.content());
+        assertEquals(MediaType.IMAGE_JPEG, large.contentType());
+        assertEquals(small.eTag(), large.eTag());
+    }
+
+
+    @Test
+    void changedImageReloaded() throws Exception {
+        Path image = Files.write(directory.resolve("1.jpg"), PNG);
+        ProfileImageCache.CachedImage before = profileImageCache.get(image);
+
+        Files.write(image, JPEG);
+        Files.setLastModifiedTime(image, FileTime.fromMillis(before.lastModifiedMillis() + 1000));
+        ProfileImageCache.CachedImage after = profileImageCache.get(image);
+
+        assertNotEquals(before.eTag(), after.eTag());
+        assertEquals(MediaType.IMAGE_JPEG, after.contentType());
+    }
+
+
+    @Test
+    void unrecognisedImageTypedByExtension() throws Exception {
+        Path image = Files.write(directory.resolve("default.png"), new byte[] {1, 2, 3});
+
+        assertEquals(MediaType.IMAGE_PNG, profileImageCache.get(image).contentType());
+    }
+}
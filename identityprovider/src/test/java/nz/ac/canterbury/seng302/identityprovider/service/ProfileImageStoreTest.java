@@ -0,0 +1,122 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import nz.ac.canterbury.seng302.identityprovider.model.User;
+import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProfileImageStoreTest {
+
+    private static final long INTERVAL_MILLIS = 60_000;
+
+    private static final byte[] CONTENT = {1, 2, 3};
+
+    private static final String NAME = HexFormat.of().formatHex(DigestUtil.sha256(CONTENT)) + ".jpg";
+
+    private final UserRepository userRepository = Mockito.mock(UserRepository.class);
+
+    private final ProfileImageVariants profileImageVariants = Mockito.mock(ProfileImageVariants.class);
+
+    private final DirectoryChangeLog directoryChangeLog = Mockito.mock(DirectoryChangeLog.class);
+
+    private final UserIndexService userIndexService = Mockito.mock(UserIndexService.class);
+
+    private final UserResponseCache userResponseCache = Mockito.mock(UserResponseCache.class);
+
+    private long now = 1000;
+
+    @TempDir
+    Path directory;
+
+    private ProfileImageStore profileImageStore;
+
+
+    @BeforeEach
+    void setUp() {
+        profileImageStore = new ProfileImageStore(userRepository, profileImageVariants, directoryChangeLog,
+                userIndexService, userResponseCache, directory, INTERVAL_MILLIS, () -> now);
+    }
+
+
+    private String store() throws Exception {
+        Path upload = Files.write(directory.resolve("1-upload" + ProfileImageStore.UPLOAD_SUFFIX), CONTENT);
+        return profileImageStore.store(upload, DigestUtil.sha256(CONTENT), "jpg");
+    }
+
+
+    @Test
+    void imageStoredByHash() throws Exception {
+        assertEquals(NAME, store());
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(directory.resolve(NAME)));
+        assertTrue(ProfileImageStore.isStoredImage(NAME));
+        Mockito.verify(profileImageVariants).createVariants(directory.resolve(NAME));
+    }
+
+
+    @Test
+    void identicalImageStoredOnce() throws Exception {
+        store();
+        store();
+
+        try (var files = Files.list(directory)) {
+            assertEquals(List.of(directory.resolve(NAME)), files.toList());
+        }
+        Mockito.verify(profileImageVariants).createVariants(directory.resolve(NAME));
+    }
+
+
+    @Test
+    void unusedImageDeletedAfterInterval() throws Exception {
+        store();
+        Mockito.when(userRepository.findAllProfileImages()).thenReturn(List.of());
+
+        profileImageStore.collect();
+        assertTrue(Files.exists(directory.resolve(NAME)));
+
+        now += INTERVAL_MILLIS;
+        profileImageStore.collect();
+        assertFalse(Files.exists(directory.resolve(NAME)));
+    }
+
+
+    @Test
+    void usedImageKept() throws Exception {
+        store();
+        Mockito.when(userRepository.findAllProfileImages()).thenReturn(List.of(NAME));
+
+        profileImageStore.collect();
+        now += INTERVAL_MILLIS;
+        profileImageStore.collect();
+
+        assertTrue(Files.exists(directory.resolve(NAME)));
+    }
+
+
+    @Test
+    void legacyImageMigrated() throws Exception {
+        Files.write(directory.resolve("7.jpg"), CONTENT);
+        User user = Mockito.mock(User.class);
+        Mockito.when(user.getId()).thenReturn(7);
+        Mockito.when(userRepository.findById(7)).thenReturn(user);
+
+        profileImageStore.migrateLegacyImages();
+
+        assertFalse(Files.exists(directory.resolve("7.jpg")));
+        assertTrue(Files.exists(directory.resolve(NAME)));
+        Mockito.verify(user).setProfileImage(NAME);
+        Mockito.verify(userRepository).save(user);
+        Mockito.verify(userIndexService).update(user);
+        Mockito.verify(userResponseCache).invalidate(7);
+        Mockito.verify(directoryChangeLog).recordUserChange(7);
+    }
+}
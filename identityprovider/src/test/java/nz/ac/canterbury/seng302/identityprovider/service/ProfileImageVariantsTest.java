@@ -0,0 +1,77 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProfileImageVariantsTest {
+
+    private final ProfileImageVariants profileImageVariants = new ProfileImageVariants();
+
+    @TempDir
+    Path directory;
+
+
+    private Path writeImage(int width, int height) throws Exception {
+        Path image = directory.resolve("1.jpg");
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), "png", image.toFile());
+        return image;
+    }
+
+
+    @Test
+    void variantsCreatedSquareUpToImageSize() throws Exception {
+        Path image = writeImage(600, 400);
+
+        profileImageVariants.createVariants(image);
+
+        BufferedImage small = ImageIO.read(directory.resolve("1_48.jpg").toFile());
+        BufferedImage medium = ImageIO.read(directory.resolve("1_128.jpg").toFile());
+        assertEquals(48, small.getWidth());
+        assertEquals(48, small.getHeight());
+        assertEquals(128, medium.getWidth());
+        assertEquals(128, medium.getHeight());
+        assertFalse(Files.exists(directory.resolve("1_512.jpg")));
+    }
+
+
+    @Test
+    void variantsOfReplacedImageDeleted() throws Exception {
+        Files.write(directory.resolve("1_512.jpg"), new byte[] {1});
+        Path image = writeImage(200, 200);
+
+        profileImageVariants.createVariants(image);
+
+        assertTrue(Files.exists(directory.resolve("1_128.jpg")));
+        assertFalse(Files.exists(directory.resolve("1_512.jpg")));
+    }
+
+
+    @Test
+    void unreadableImageHasNoVariants() throws Exception {
+        Files.write(directory.resolve("1_48.jpg"), new byte[] {1});
+        Path image = Files.write(directory.resolve("1.jpg"), new byte[] {1, 2, 3});
+
+        profileImageVariants.createVariants(image);
+
+        assertFalse(Files.exists(directory.resolve("1_48.jpg")));
+    }
+
+
+    @Test
+    void resolveFindsSmallestLargeEnoughVariant() throws Exception {
+        Path image = writeImage(200, 200);
+        profileImageVariants.createVariants(image);
+
+        assertEquals(directory.resolve("1_48.jpg"), profileImageVariants.resolve(image, 40));
+        assertEquals(directory.resolve("1_128.jpg"), profileImageVariants.resolve(image, 100));
+        assertEquals(image, profileImageVariants.resolve(image, 300));
+        assertEquals(image, profileImageVariants.resolve(image, null));
+    }
+}
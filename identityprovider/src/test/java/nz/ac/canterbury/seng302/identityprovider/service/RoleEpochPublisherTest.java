@@ -0,0 +1,117 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
+import nz.ac.canterbury.seng302.shared.identityprovider.RoleEpochsResponse;
+import nz.ac.canterbury.seng302.shared.identityprovider.UserRoleEpoch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SuppressWarnings("unchecked") // Suppresses intelliJ's warning for testing with mock StreamObservers
+class RoleEpochPublisherTest {
+
+    private final UserRepository userRepository = Mockito.mock(UserRepository.class);
+
+    private final RoleEpochPublisher roleEpochPublisher = new RoleEpochPublisher(userRepository, 0);
+
+    private ServerCallStreamObserver<RoleEpochsResponse> subscriber;
+
+
+    @BeforeEach
+    void setUp() {
+        subscriber = Mockito.mock(ServerCallStreamObserver.class);
+        UserRepository.RoleEpochView changedUser = Mockito.mock(UserRepository.RoleEpochView.class);
+        Mockito.when(changedUser.getId()).thenReturn(3);
+        Mockito.when(changedUser.getRoleEpoch()).thenReturn(2);
+        Mockito.when(userRepository.findByRoleEpochGreaterThan(0)).thenReturn(List.of(changedUser));
+    }
+
+
+    @Test
+    void subscribeSendsCurrentRoleEpochs() {
+        roleEpochPublisher.subscribe(subscriber);
+
+        ArgumentCaptor<RoleEpochsResponse> responseCaptor = ArgumentCaptor.forClass(RoleEpochsResponse.class);
+        Mockito.verify(subscriber).onNext(responseCaptor.capture());
+        assertEquals(List.of(UserRoleEpoch.newBuilder().setUserId(3).setRoleEpoch(2).build()),
+                responseCaptor.getValue().getRoleEpochsList());
+        assertEquals(1, roleEpochPublisher.getSubscriberCount());
+    }
+
+
+    @Test
+    void publishSendsRoleEpochToSubscribers() {
+        roleEpochPublisher.subscribe(subscriber);
+
+        roleEpochPublisher.publish(5, 1);
+
+        ArgumentCaptor<RoleEpochsResponse> responseCaptor = ArgumentCaptor.forClass(RoleEpochsResponse.class);
+        Mockito.verify(subscriber, Mockito.times(2)).onNext(responseCaptor.capture());
+        assertEquals(List.of(UserRoleEpoch.newBuilder().setUserId(5).setRoleEpoch(1).build()),
+                responseCaptor.getValue().getRoleEpochsList());
+    }
+
+
+    @Test
+    void publishDropsCancelledSubscribers() {
+        roleEpochPublisher.subscribe(subscriber);
+        Mockito.when(subscriber.isCancelled()).thenReturn(true);
+
+        roleEpochPublisher.publish(5, 1);
+
+        Mockito.verify(subscriber, Mockito.times(1)).onNext(Mockito.any());
+        assertEquals(0, roleEpochPublisher.getSubscriberCount());
+    }
+
+
+    @Test
+    void pollPublishesRoleEpochsChangedByOtherReplicas() {
+        roleEpochPublisher.pollChanges();
+        roleEpochPublisher.subscribe(subscriber);
+        UserRepository.RoleEpochView changedAgain = Mockito.mock(UserRepository.RoleEpochView.class);
+        Mockito.when(changedAgain.getId()).thenReturn(3);
+        Mockito.when(changedAgain.getRoleEpoch()).thenReturn(3);
+        UserRepository.RoleEpochView newlyChanged = Mockito.mock(UserRepository.RoleEpochView.class);
+        Mockito.when(newlyChanged.getId()).thenReturn(4);
+        Mockito.when(newlyChanged.getRoleEpoch()).thenReturn(1);
+        Mockito.when(userRepository.findByRoleEpochGreaterThan(0)).thenReturn(List.of(changedAgain, newlyChanged));
+
+        roleEpochPublisher.pollChanges();
+
+        ArgumentCaptor<RoleEpochsResponse> responseCaptor = ArgumentCaptor.forClass(RoleEpochsResponse.class);
+        Mockito.verify(subscriber, Mockito.times(3)).onNext(responseCaptor.capture());
+        assertEquals(List.of(UserRoleEpoch.newBuilder().setUserId(3).setRoleEpoch(3).build()),
+                responseCaptor.getAllValues().get(1).getRoleEpochsList());
+        assertEquals(List.of(UserRoleEpoch.newBuilder().setUserId(4).setRoleEpoch(1).build()),
+                responseCaptor.getAllValues().get(2).getRoleEpochsList());
+    }
+
+
+    @Test
+    void pollDoesNotPublishUnchangedRoleEpochs() {
+        roleEpochPublisher.pollChanges();
+        roleEpochPublisher.subscribe(subscriber);
+
+        roleEpochPublisher.pollChanges();
+
+        Mockito.verify(subscriber, Mockito.times(1)).onNext(Mockito.any());
+    }
+
+
+    @Test
+    void cancellingUnsubscribes() {
+        roleEpochPublisher.subscribe(subscriber);
+        ArgumentCaptor<Runnable> onCancelCaptor = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(subscriber).setOnCancelHandler(onCancelCaptor.capture());
+
+        onCancelCaptor.getValue().run();
+
+        assertEquals(0, roleEpochPublisher.getSubscriberCount());
+    }
+}
@@ -0,0 +1,35 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class ServiceStatsLoggerTest {
+
+    private final UserResponseCache userResponseCache = Mockito.mock(UserResponseCache.class);
+
+    private final PasswordHashingExecutor passwordHashingExecutor = Mockito.mock(PasswordHashingExecutor.class);
+
+
+    @Test
+    void logStatsReadsTheStatsOfEachService() {
+        Mockito.when(userResponseCache.getStats()).thenReturn(new UserResponseCache.Stats(3, 1, 0, 1));
+        Mockito.when(passwordHashingExecutor.getStats()).thenReturn(new PasswordHashingExecutor.Stats(0, 2, 0, 50, 60));
+        ServiceStatsLogger serviceStatsLogger = new ServiceStatsLogger(userResponseCache, passwordHashingExecutor, 0);
+
+        serviceStatsLogger.logStats();
+
+        Mockito.verify(userResponseCache).getStats();
+        Mockito.verify(passwordHashingExecutor).getStats();
+    }
+
+
+    @Test
+    void startWithNoIntervalNeverLogs() {
+        ServiceStatsLogger serviceStatsLogger = new ServiceStatsLogger(userResponseCache, passwordHashingExecutor, 0);
+
+        serviceStatsLogger.start();
+        serviceStatsLogger.stop();
+
+        Mockito.verifyNoInteractions(userResponseCache, passwordHashingExecutor);
+    }
+}
@@ -1,10 +1,13 @@
 package nz.ac.canterbury.seng302.identityprovider.service;
 
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
-import nz.ac.canterbury.seng302.identityprovider.model.Group;
 import nz.ac.canterbury.seng302.identityprovider.model.GroupRepository;
 import nz.ac.canterbury.seng302.identityprovider.model.User;
 import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
+import nz.ac.canterbury.seng302.identityprovider.model.UserSortKey;
 import nz.ac.canterbury.seng302.shared.identityprovider.*;
 import nz.ac.canterbury.seng302.shared.util.BasicStringFilteringOptions;
 import nz.ac.canterbury.seng302.shared.util.PaginationRequestOptions;
@@ -16,11 +19,15 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.core.env.Environment;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -34,10 +41,24 @@ class UserAccountsServerServiceTest {
 
     private final GroupRepository groupRepository = Mockito.mock(GroupRepository.class);
 
+    private static final int TEACHERS_GROUP_ID = 1;
+
+    private static final int MWAG_GROUP_ID = 2;
+
     private UrlService urlService;
 
     private UserAccountsServerService userAccountsServerService;
 
+    private UserResponseCache userResponseCache;
+
+    private UserIndexService userIndexService;
+
+    private final RoleEpochPublisher roleEpochPublisher = Mockito.mock(RoleEpochPublisher.class);
+
+    private final DirectoryChangeLog directoryChangeLog = Mockito.mock(DirectoryChangeLog.class);
+
+    private final ProfileImageStore profileImageStore = Mockito.mock(ProfileImageStore.class);
+
     private User initialUser;
 
     private UserResponse initialUserResponse;
@@ -59,23 +80,34 @@ class UserAccountsServerServiceTest {
         );
         initialUser = Mockito.spy(initialUser);
 
-        Group teacherGroup = new Group(1, "Teachers", "Teaching staff group");
-        Group mwagGroup = new Group(2, "Non-Group", "Members Without A Group");
-
         initialiseMocks();
         urlService = new UrlService(env);
-        GroupService groupService = new GroupService(groupRepository, userRepository);
-        userAccountsServerService = new UserAccountsServerService(userRepository, env, groupService);
-
-        Mockito.when(groupRepository.findByShortName(mwagGroup.getShortName())).thenReturn(Optional.of(mwagGroup));
-        Mockito.when(groupRepository.findByShortName(teacherGroup.getShortName())).thenReturn(Optional.of(teacherGroup));
-        Mockito.when(groupRepository.findById(mwagGroup.getId())).thenReturn(Optional.of(mwagGroup));
-        Mockito.when(groupRepository.findById(teacherGroup.getId())).thenReturn(Optional.of(teacherGroup));
+        // Users that aren't mocked build their responses with the UrlUtil singleton, which Spring would set
+        ReflectionTestUtils.setField(UrlUtil.class, "urlService", urlService);
+        GroupService groupService = new GroupService(groupRepository, userRepository, directoryChangeLog);
+        userResponseCache = Mockito.spy(new UserResponseCache(100));
+        userIndexService = Mockito.spy(new UserIndexService(userRepository));
+        userAccountsServerService = new UserAccountsServerService(userRepository, env, groupService,
+                userIndexService, userResponseCache, new PasswordHashingExecutor(Runnable::run),
+                roleEpochPublisher, directoryChangeLog, profileImageStore);
+
+        mockGroupNames(TEACHERS_GROUP_ID, "Teachers", "Teaching staff group");
+        mockGroupNames(MWAG_GROUP_ID, "Non-Group", "Members Without A Group");
 
         mockUserResponses(List.of(initialUser));
     }
 
 
+    private void mockGroupNames(int id, String shortName, String longName) {
+        GroupRepository.GroupNamesView names = Mockito.mock(GroupRepository.GroupNamesView.class);
+        Mockito.when(names.getId()).thenReturn(id);
+        Mockito.when(names.getShortName()).thenReturn(shortName);
+        Mockito.when(names.getLongName()).thenReturn(longName);
+        Mockito.when(groupRepository.findNamesById(id)).thenReturn(Optional.of(names));
+        Mockito.when(groupRepository.findNamesByShortName(shortName)).thenReturn(Optional.of(names));
+    }
+
+
     private void initialiseMocks() {
         String defaultPhotoLocation = "src/main/resources/profile-photos/";
         Mockito.when(env.getProperty("photoLocation", defaultPhotoLocation)).thenReturn(defaultPhotoLocation);
@@ -125,6 +157,23 @@ class UserAccountsServerServiceTest {
     }
 
 
+    @Test
+    void removeExistingRoleFromUserIncrementsRoleEpoch() {
+        initialUser.addRole(UserRole.STUDENT);
+        initialUser.addRole(UserRole.TEACHER);
+        int initialRoleEpoch = initialUser.getRoleEpoch();
+
+        ModifyRoleOfUserRequest request = ModifyRoleOfUserRequest.newBuilder()
+                .setRole(UserRole.TEACHER)
+                .setUserId(initialUser.getId())
+                .build();
+        userAccountsServerService.removeRoleFromUser(request, Mockito.mock(StreamObserver.class));
+
+        assertEquals(initialRoleEpoch + 1, initialUser.getRoleEpoch());
+        Mockito.verify(roleEpochPublisher).publish(initialUser.getId(), initialRoleEpoch + 1);
+    }
+
+
     @Test
     void removeExistingRoleFromUserNoUserOfThatId() {
         //Add some roles to the user
@@ -219,6 +268,39 @@ class UserAccountsServerServiceTest {
     }
 
 
+    @Test
+    void deleteUserProfilePhotoUpdatesUserIndex() {
+        Mockito.when(userRepository.findById(initialUser.getId())).thenReturn(initialUser);
+        DeleteUserProfilePhotoRequest request = DeleteUserProfilePhotoRequest.newBuilder()
+                .setUserId(initialUser.getId())
+                .build();
+        StreamObserver<DeleteUserProfilePhotoResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<DeleteUserProfilePhotoResponse> responseCaptor =
+                ArgumentCaptor.forClass(DeleteUserProfilePhotoResponse.class);
+
+        userAccountsServerService.deleteUserProfilePhoto(request, responseObserver);
+
+        Mockito.verify(responseObserver).onNext(responseCaptor.capture());
+        assertTrue(responseCaptor.getValue().getIsSuccess());
+        Mockito.verify(userIndexService).update(initialUser);
+    }
+
+
+    @Test
+    void registerFailsTheCallWhenTheResponseCannotBeSent() {
+        UserRegisterRequest request = UserRegisterRequest.newBuilder()
+                .setUsername("NewUsername")
+                .setPassword("password")
+                .build();
+        StreamObserver<UserRegisterResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        Mockito.doThrow(new IllegalStateException("Call already closed")).when(responseObserver).onNext(Mockito.any());
+
+        userAccountsServerService.register(request, responseObserver);
+
+        Mockito.verify(responseObserver).onError(Mockito.any(StatusRuntimeException.class));
+    }
+
+
     @Test
     void registerNewUserUsernameInUse() {
         UserRegisterRequest.Builder request = UserRegisterRequest.newBuilder();
@@ -265,8 +347,9 @@ class UserAccountsServerServiceTest {
                 .setPersonalPronouns(initialUser.getPronouns())
                 .setEmail(initialUser.getEmail())
                 .setCreated(initialUser.getAccountCreatedTime())
-                .setProfileImagePath(urlService.getProfileURL(initialUser).toString()
-                );
+                .setProfileImagePath(urlService.getProfileURL(initialUser).toString())
+                .setLargeProfileImagePath(urlService.getProfileURL(initialUser, ProfileImageVariants.LARGE_SIZE)
+                        .toString());
         expectedObject.addRoles(UserRole.STUDENT);
 
         StreamObserver<UserResponse> responseObserver = Mockito.mock(StreamObserver.class);
@@ -284,6 +367,28 @@ class UserAccountsServerServiceTest {
     }
 
 
+    @Test
+    void getUsersByIdsLoadsAllUsersInOneQuery() {
+        Mockito.when(userRepository.findAllById(Set.of(initialUser.getId(), -1))).thenReturn(List.of(initialUser));
+        GetUsersByIdsRequest request = GetUsersByIdsRequest.newBuilder()
+                .addIds(initialUser.getId())
+                .addIds(-1)
+                .addIds(initialUser.getId())
+                .build();
+
+        StreamObserver<GetUsersByIdsResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<GetUsersByIdsResponse> responseCaptor = ArgumentCaptor.forClass(GetUsersByIdsResponse.class);
+
+        userAccountsServerService.getUsersByIds(request, responseObserver);
+
+        Mockito.verify(userRepository, Mockito.times(1)).findAllById(Mockito.any());
+        Mockito.verify(responseObserver).onNext(responseCaptor.capture());
+        GetUsersByIdsResponse response = responseCaptor.getValue();
+        assertEquals(1, response.getUsersCount());
+        assertEquals(initialUser.getUsername(), response.getUsers(0).getUsername());
+    }
+
+
     @Test
     void editUser() {
         groupRepository.deleteAll();
@@ -313,6 +418,7 @@ class UserAccountsServerServiceTest {
 
         assertTrue(response.getIsSuccess());
         assertEquals("Johnny", userRepository.findById(initialUser.getId()).getFirstName());
+        Mockito.verify(userResponseCache).invalidate(initialUser.getId());
     }
 
 
@@ -373,6 +479,7 @@ class UserAccountsServerServiceTest {
 
         assertTrue(response.getIsSuccess());
         assertEquals(expectedPassword, userRepository.findById(initialUser.getId()).getPwhash());
+        Mockito.verify(userRepository).updatePasswordHash(initialUser.getId(), expectedPassword);
     }
 
 
@@ -404,6 +511,33 @@ class UserAccountsServerServiceTest {
     }
 
 
+    @Test
+    void changeUserPasswordRejectedWhenHashingQueueFull() {
+        PasswordHashingExecutor fullExecutor = new PasswordHashingExecutor(runnable -> {
+            throw new RejectedExecutionException();
+        });
+        userAccountsServerService = new UserAccountsServerService(userRepository, env,
+                new GroupService(groupRepository, userRepository, directoryChangeLog),
+                new UserIndexService(userRepository),
+                userResponseCache, fullExecutor, roleEpochPublisher, directoryChangeLog, profileImageStore);
+
+        ChangePasswordRequest request = ChangePasswordRequest.newBuilder()
+                .setUserId(initialUser.getId())
+                .setCurrentPassword("password")
+                .setNewPassword("SuperSecurePassword")
+                .build();
+        StreamObserver<ChangePasswordResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<Throwable> errorCaptor = ArgumentCaptor.forClass(Throwable.class);
+
+        userAccountsServerService.changeUserPassword(request, responseObserver);
+
+        Mockito.verify(responseObserver).onError(errorCaptor.capture());
+        Mockito.verify(responseObserver, Mockito.never()).onNext(Mockito.any());
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, Status.fromThrowable(errorCaptor.getValue()).getCode());
+        Mockito.verify(userRepository, Mockito.never()).save(Mockito.any());
+    }
+
+
     @Test
     void changeUserPasswordNoUserOfThatId() {
         userRepository.save(initialUser);
@@ -458,6 +592,37 @@ class UserAccountsServerServiceTest {
     }
 
 
+    @Test
+    void addRoleToUserIncrementsRoleEpoch() {
+        int initialRoleEpoch = initialUser.getRoleEpoch();
+
+        ModifyRoleOfUserRequest request = ModifyRoleOfUserRequest.newBuilder()
+                .setRole(UserRole.TEACHER)
+                .setUserId(initialUser.getId())
+                .build();
+        userAccountsServerService.addRoleToUser(request, Mockito.mock(StreamObserver.class));
+
+        assertEquals(initialRoleEpoch + 1, initialUser.getRoleEpoch());
+        Mockito.verify(roleEpochPublisher).publish(initialUser.getId(), initialRoleEpoch + 1);
+    }
+
+
+    @Test
+    void addExistingRoleToUserKeepsRoleEpoch() {
+        initialUser.addRole(UserRole.TEACHER);
+        int initialRoleEpoch = initialUser.getRoleEpoch();
+
+        ModifyRoleOfUserRequest request = ModifyRoleOfUserRequest.newBuilder()
+                .setRole(UserRole.TEACHER)
+                .setUserId(initialUser.getId())
+                .build();
+        userAccountsServerService.addRoleToUser(request, Mockito.mock(StreamObserver.class));
+
+        assertEquals(initialRoleEpoch, initialUser.getRoleEpoch());
+        Mockito.verifyNoInteractions(roleEpochPublisher);
+    }
+
+
     @Test
     void addRoleToUserNoUserOfThatId() {
         userRepository.save(initialUser);
@@ -520,7 +685,6 @@ class UserAccountsServerServiceTest {
 
         StreamObserver<UserRoleChangeResponse> responseObserver = Mockito.mock(StreamObserver.class);
         ArgumentCaptor<UserRoleChangeResponse> responseCaptor = ArgumentCaptor.forClass(UserRoleChangeResponse.class);
-        ArgumentCaptor<Group> groupArgumentCaptor = ArgumentCaptor.forClass(Group.class);
 
         Mockito.doNothing().when(responseObserver).onNext(Mockito.any());
         Mockito.doNothing().when(responseObserver).onCompleted();
@@ -530,14 +694,8 @@ class UserAccountsServerServiceTest {
         Mockito.verify(responseObserver).onNext(responseCaptor.capture());
         UserRoleChangeResponse response = responseCaptor.getValue();
 
-        Mockito.verify(groupRepository).save(groupArgumentCaptor.capture());
-        Group group = groupArgumentCaptor.getValue();
-
-        List<User> usersInTeachersGroup = group.getUserList();
-
         assertTrue(response.getIsSuccess());
-        assertEquals(1, usersInTeachersGroup.size());
-        assertTrue(usersInTeachersGroup.contains(initialUser));
+        Mockito.verify(groupRepository).addGroupMembers(TEACHERS_GROUP_ID, List.of(initialUser.getId()));
     }
 
 
@@ -560,11 +718,6 @@ class UserAccountsServerServiceTest {
         newUser.addRole(UserRole.TEACHER);
         Mockito.when(userRepository.findAllById(List.of(newUser.getId()))).thenReturn(List.of(newUser));
         Mockito.when(userRepository.findById(newUser.getId())).thenReturn(newUser);
-        // Since we want to add the teacher role without actually adding it, we'll mock the group repo
-        Group teacherGroup = new Group(1, "Teachers", "Teaching staff group");
-        teacherGroup.addGroupMember(newUser);
-        Mockito.when(groupRepository.findByShortName(teacherGroup.getShortName())).thenReturn(Optional.of(teacherGroup));
-        Mockito.when(groupRepository.findById(teacherGroup.getId())).thenReturn(Optional.of(teacherGroup));
 
         ModifyRoleOfUserRequest request = ModifyRoleOfUserRequest.newBuilder()
                 .setRole(UserRole.TEACHER)
@@ -573,7 +726,6 @@ class UserAccountsServerServiceTest {
 
         StreamObserver<UserRoleChangeResponse> responseObserver = Mockito.mock(StreamObserver.class);
         ArgumentCaptor<UserRoleChangeResponse> responseCaptor = ArgumentCaptor.forClass(UserRoleChangeResponse.class);
-        ArgumentCaptor<Group> groupArgumentCaptor = ArgumentCaptor.forClass(Group.class);
 
         Mockito.doNothing().when(responseObserver).onNext(Mockito.any());
         Mockito.doNothing().when(responseObserver).onCompleted();
@@ -583,12 +735,9 @@ class UserAccountsServerServiceTest {
         Mockito.verify(responseObserver).onNext(responseCaptor.capture());
         UserRoleChangeResponse response = responseCaptor.getValue();
 
-        Mockito.verify(groupRepository).save(groupArgumentCaptor.capture());
-        Group group = groupArgumentCaptor.getValue();
-        List<User> usersInTeachersGroup = group.getUserList();
-
         assertTrue(response.getIsSuccess());
-        assertFalse(usersInTeachersGroup.contains(newUser));
+        Mockito.verify(groupRepository).removeGroupMembers(TEACHERS_GROUP_ID, List.of(newUser.getId()));
+        Mockito.verify(groupRepository).addUngroupedUsers(MWAG_GROUP_ID, List.of(newUser.getId()));
     }
 
 
@@ -611,7 +760,6 @@ class UserAccountsServerServiceTest {
         StreamObserver<UserRegisterResponse> responseObserver = Mockito.mock(StreamObserver.class);
         ArgumentCaptor<UserRegisterResponse> responseCaptor = ArgumentCaptor.forClass(UserRegisterResponse.class);
         ArgumentCaptor<User> userCaptor = ArgumentCaptor.forClass(User.class);
-        ArgumentCaptor<Group> groupCaptor = ArgumentCaptor.forClass(Group.class);
 
         Mockito.doNothing().when(responseObserver).onNext(Mockito.any());
         Mockito.doNothing().when(responseObserver).onCompleted();
@@ -624,14 +772,8 @@ class UserAccountsServerServiceTest {
         Mockito.verify(userRepository).save(userCaptor.capture());
         postOperationUser = userCaptor.getValue();
 
-        Mockito.verify(groupRepository).save(groupCaptor.capture());
-        Group group = groupCaptor.getValue();
-
-        List<User> usersInMwag = group.getUserList();
-
         assertTrue(response.getIsSuccess());
-        assertEquals(1, usersInMwag.size());
-        assertTrue(usersInMwag.contains(initialUser));
+        Mockito.verify(groupRepository).addGroupMembers(MWAG_GROUP_ID, List.of(postOperationUser.getId()));
     }
 
 
@@ -979,6 +1121,129 @@ class UserAccountsServerServiceTest {
     }
 
 
+    @Test
+    void getPaginatedUsersContinuesFromCursor() throws PasswordEncryptionException {
+        PaginatedUsersResponse firstPage = runGetPaginatedUsersTest("firstname", 0, 2, true);
+        String cursor = firstPage.getPaginationResponseOptions().getNextCursor();
+        Assertions.assertFalse(cursor.isEmpty());
+
+        PaginationRequestOptions options = PaginationRequestOptions.newBuilder()
+                .setOffset(0)
+                .setLimit(2)
+                .setOrderBy("firstname")
+                .setIsAscendingOrder(true)
+                .setCursor(cursor)
+                .build();
+        GetPaginatedUsersRequest request = GetPaginatedUsersRequest.newBuilder()
+                .setPaginationRequestOptions(options)
+                .build();
+        StreamObserver<PaginatedUsersResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<PaginatedUsersResponse> responseCaptor = ArgumentCaptor.forClass(PaginatedUsersResponse.class);
+
+        userAccountsServerService.getPaginatedUsers(request, responseObserver);
+
+        Mockito.verify(responseObserver).onNext(responseCaptor.capture());
+        PaginatedUsersResponse secondPage = responseCaptor.getValue();
+        Assertions.assertEquals(6, secondPage.getPaginationResponseOptions().getResultSetSize());
+        Assertions.assertEquals(2, secondPage.getUsersList().size());
+        Assertions.assertEquals("SteveC", secondPage.getUsers(0).getUsername());
+        Assertions.assertEquals("SteveD", secondPage.getUsers(1).getUsername());
+    }
+
+
+    @Test
+    void getPaginatedUsersIgnoresCursorForDifferentOrder() throws PasswordEncryptionException {
+        PaginatedUsersResponse firstPage = runGetPaginatedUsersTest("lastname", 0, 2, true);
+        String cursor = firstPage.getPaginationResponseOptions().getNextCursor();
+
+        PaginationRequestOptions options = PaginationRequestOptions.newBuilder()
+                .setOffset(2)
+                .setLimit(2)
+                .setOrderBy("firstname")
+                .setIsAscendingOrder(true)
+                .setCursor(cursor)
+                .build();
+        GetPaginatedUsersRequest request = GetPaginatedUsersRequest.newBuilder()
+                .setPaginationRequestOptions(options)
+                .build();
+        StreamObserver<PaginatedUsersResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<PaginatedUsersResponse> responseCaptor = ArgumentCaptor.forClass(PaginatedUsersResponse.class);
+
+        userAccountsServerService.getPaginatedUsers(request, responseObserver);
+
+        Mockito.verify(responseObserver).onNext(responseCaptor.capture());
+        PaginatedUsersResponse response = responseCaptor.getValue();
+        Assertions.assertEquals("SteveC", response.getUsers(0).getUsername());
+        Assertions.assertEquals("SteveD", response.getUsers(1).getUsername());
+    }
+
+
+    @Test
+    void getPaginatedUsersReusesUserCountBetweenPages() throws PasswordEncryptionException {
+        runGetPaginatedUsersTest("firstname", 0, 2, true);
+
+        PaginationRequestOptions options = PaginationRequestOptions.newBuilder()
+                .setOffset(2)
+                .setLimit(2)
+                .setOrderBy("firstname")
+                .setIsAscendingOrder(true)
+                .build();
+        GetPaginatedUsersRequest request = GetPaginatedUsersRequest.newBuilder()
+                .setPaginationRequestOptions(options)
+                .build();
+        StreamObserver<PaginatedUsersResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<PaginatedUsersResponse> responseCaptor = ArgumentCaptor.forClass(PaginatedUsersResponse.class);
+        userAccountsServerService.getPaginatedUsers(request, responseObserver);
+
+        Mockito.verify(responseObserver).onNext(responseCaptor.capture());
+        Assertions.assertEquals(6, responseCaptor.getValue().getPaginationResponseOptions().getResultSetSize());
+        Mockito.verify(userRepository, Mockito.times(1)).count();
+    }
+
+
+    @Test
+    void streamUsersSendsBatchesUntilAllUsersAreSent() throws PasswordEncryptionException {
+        createUsers();
+        ServerCallStreamObserver<UserBatch> responseObserver = Mockito.mock(ServerCallStreamObserver.class);
+        Mockito.when(responseObserver.isReady()).thenReturn(true);
+        ArgumentCaptor<Runnable> onReadyCaptor = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<UserBatch> batchCaptor = ArgumentCaptor.forClass(UserBatch.class);
+        StreamUsersRequest request = StreamUsersRequest.newBuilder()
+                .setOrderBy("firstname")
+                .setIsAscendingOrder(true)
+                .setBatchSize(4)
+                .build();
+
+        userAccountsServerService.streamUsers(request, responseObserver);
+        Mockito.verify(responseObserver).setOnReadyHandler(onReadyCaptor.capture());
+        onReadyCaptor.getValue().run();
+
+        Mockito.verify(responseObserver, Mockito.times(2)).onNext(batchCaptor.capture());
+        Mockito.verify(responseObserver).onCompleted();
+        List<UserBatch> batches = batchCaptor.getAllValues();
+        Assertions.assertEquals(4, batches.get(0).getUsersCount());
+        Assertions.assertEquals("SteveA", batches.get(0).getUsers(0).getUsername());
+        Assertions.assertEquals(2, batches.get(1).getUsersCount());
+        Assertions.assertEquals("SteveE", batches.get(1).getUsers(0).getUsername());
+    }
+
+
+    @Test
+    void streamUsersWaitsWhileClientIsNotReady() throws PasswordEncryptionException {
+        createUsers();
+        ServerCallStreamObserver<UserBatch> responseObserver = Mockito.mock(ServerCallStreamObserver.class);
+        Mockito.when(responseObserver.isReady()).thenReturn(true, false);
+        ArgumentCaptor<Runnable> onReadyCaptor = ArgumentCaptor.forClass(Runnable.class);
+
+        userAccountsServerService.streamUsers(StreamUsersRequest.newBuilder().setBatchSize(2).build(), responseObserver);
+        Mockito.verify(responseObserver).setOnReadyHandler(onReadyCaptor.capture());
+        onReadyCaptor.getValue().run();
+
+        Mockito.verify(responseObserver, Mockito.times(1)).onNext(Mockito.any());
+        Mockito.verify(responseObserver, Mockito.never()).onCompleted();
+    }
+
+
     @Test
     void getPaginatedFilteredUsers() throws PasswordEncryptionException {
         User user1 = new User("John", "password", "John", "", "Wayne", "", "", "", "Steve@steve.com");
@@ -995,7 +1260,7 @@ class UserAccountsServerServiceTest {
         userList.add(user5);
         userList.add(user6);
         List<User> listOfUsers = userToSpy(userList);
-        Mockito.when(userRepository.findAll()).thenReturn(listOfUsers);
+        mockUserPages(listOfUsers);
         mockUserResponses(listOfUsers);
 
         PaginationRequestOptions options = PaginationRequestOptions.newBuilder()
@@ -1023,13 +1288,47 @@ class UserAccountsServerServiceTest {
         Mockito.verify(responseObserver).onNext(responseCaptor.capture());
 
         PaginatedUsersResponse response = responseCaptor.getValue();
-        Assertions.assertEquals(6, response.getPaginationResponseOptions().getResultSetSize());
+        Assertions.assertEquals(3, response.getPaginationResponseOptions().getResultSetSize());
         Assertions.assertEquals(3, response.getUsersList().size());
         Assertions.assertEquals("Johnny", response.getUsers(0).getUsername());
         Assertions.assertEquals("John", response.getUsers(1).getUsername());
         Assertions.assertEquals("Amy", response.getUsers(2).getUsername());
     }
 
+    @Test
+    void getPaginatedFilteredUsersFiltersBeforePaging() throws PasswordEncryptionException {
+        List<User> userList = new ArrayList<>();
+        userList.add(new User("Amy", "password", "Amy", "", "Adams", "", "", "", "Steve@steve.com"));
+        userList.add(new User("Ben", "password", "Ben", "", "Brown", "", "", "", "Steve@steve.com"));
+        userList.add(new User("Johnny", "password", "Johnny", "", "Cash", "", "", "", "Steve@steve.com"));
+        userList.add(new User("Johnno", "password", "Johnno", "", "Davies", "", "", "", "Steve@steve.com"));
+        userList.add(new User("John", "password", "John", "", "Wayne", "", "", "", "Steve@steve.com"));
+        List<User> listOfUsers = userToSpy(userList);
+        mockUserPages(listOfUsers);
+        mockUserResponses(listOfUsers);
+
+        PaginationRequestOptions options = PaginationRequestOptions.newBuilder()
+                .setOffset(1)
+                .setLimit(1)
+                .setOrderBy("firstname")
+                .setIsAscendingOrder(true)
+                .build();
+        GetPaginatedUsersFilteredRequest request = GetPaginatedUsersFilteredRequest.newBuilder()
+                .setPaginationRequestOptions(options)
+                .setFilteringOptions(BasicStringFilteringOptions.newBuilder().setFilterText("John"))
+                .build();
+        StreamObserver<PaginatedUsersResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<PaginatedUsersResponse> responseCaptor = ArgumentCaptor.forClass(PaginatedUsersResponse.class);
+
+        userAccountsServerService.getPaginatedUsersFilteredByName(request, responseObserver);
+
+        Mockito.verify(responseObserver).onNext(responseCaptor.capture());
+        PaginatedUsersResponse response = responseCaptor.getValue();
+        Assertions.assertEquals(3, response.getPaginationResponseOptions().getResultSetSize());
+        Assertions.assertEquals(1, response.getUsersList().size());
+        Assertions.assertEquals("Johnno", response.getUsers(0).getUsername());
+    }
+
     // ----------------------------------------- Test runner helpers -------------------------------------------------
 
 
@@ -1098,7 +1397,7 @@ class UserAccountsServerServiceTest {
         userList.add(user5);
         userList.add(user6);
         List<User> listOfUsers = userToSpy(userList);
-        Mockito.when(userRepository.findAll()).thenReturn(listOfUsers);
+        mockUserPages(listOfUsers);
         mockUserResponses(listOfUsers);
     }
 
@@ -1106,12 +1405,55 @@ class UserAccountsServerServiceTest {
     private List<User> userToSpy(List<User> users) {
         List<User> spies = new ArrayList<>();
         for (User user : users) {
+            user.setId(users.indexOf(user) + 1);
             User spyOfUser = Mockito.spy(user);
             spies.add(spyOfUser);
         }
         return spies;
     }
 
+    /**
+     * Stubs the repository's paging queries to page through the given users the way the database would, ordering by
+     * each user's sort key and then their id.
+     *
+     * @param users The users in the mocked repository
+     */
+    private void mockUserPages(List<User> users) {
+        Mockito.when(userRepository.count()).thenReturn((long) users.size());
+        Mockito.when(userRepository.findUserPage(Mockito.any(), Mockito.anyBoolean(), Mockito.anyInt(), Mockito.anyInt()))
+                .thenAnswer(invocation -> {
+                    List<User> sortedUsers = sortUsers(users, invocation.getArgument(0), invocation.getArgument(1));
+                    int offset = Math.min(invocation.getArgument(2), sortedUsers.size());
+                    int end = Math.min(offset + (int) invocation.getArgument(3), sortedUsers.size());
+                    return sortedUsers.subList(offset, end);
+                });
+        Mockito.when(userRepository.findUserPageAfter(Mockito.any(), Mockito.anyBoolean(), Mockito.any(), Mockito.anyInt(), Mockito.anyInt()))
+                .thenAnswer(invocation -> {
+                    List<User> sortedUsers = sortUsers(users, invocation.getArgument(0), invocation.getArgument(1));
+                    int lastId = invocation.getArgument(3);
+                    int start = 0;
+                    for (int i = 0; i < sortedUsers.size(); i++) {
+                        if (sortedUsers.get(i).getId() == lastId) {
+                            start = i + 1;
+                        }
+                    }
+                    int end = Math.min(start + (int) invocation.getArgument(4), sortedUsers.size());
+                    return sortedUsers.subList(start, end);
+                });
+    }
+
+
+    private List<User> sortUsers(List<User> users, UserSortKey sortKey, boolean isAscending) {
+        Comparator<User> byKey = (userOne, userTwo) ->
+                ((Comparable<Object>) sortKey.getKey(userOne)).compareTo(sortKey.getKey(userTwo));
+        Comparator<User> byId = Comparator.comparingInt(User::getId);
+        List<User> sortedUsers = new ArrayList<>(users);
+        sortedUsers.sort((sortKey.isKeyAscending(isAscending) ? byKey : byKey.reversed())
+                .thenComparing(isAscending ? byId : byId.reversed()));
+        return sortedUsers;
+    }
+
+
     private void mockUserResponses(List<User> users) {
         for (User user : users) {
             UserResponse userResponse = UserResponse.newBuilder()
@@ -1126,6 +1468,8 @@ class UserAccountsServerServiceTest {
                     .setCreated(user.getAccountCreatedTime())
                     .setId(user.getId())
                     .setProfileImagePath(urlService.getProfileURL(user).toString())
+                    .setLargeProfileImagePath(urlService.getProfileURL(user, ProfileImageVariants.LARGE_SIZE)
+                            .toString())
                     .addAllRoles(user.getRoles())
                     .build();
 
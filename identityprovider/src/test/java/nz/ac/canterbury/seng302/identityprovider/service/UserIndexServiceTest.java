@@ -0,0 +1,177 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import nz.ac.canterbury.seng302.identityprovider.model.User;
+import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
+import nz.ac.canterbury.seng302.identityprovider.model.UserSortKey;
+import nz.ac.canterbury.seng302.shared.identityprovider.UserResponse;
+import nz.ac.canterbury.seng302.shared.identityprovider.UserRole;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserIndexServiceTest {
+
+    private final UserRepository userRepository = Mockito.mock(UserRepository.class);
+
+    private UserIndexService userIndexService;
+
+    private List<User> users;
+
+
+    @BeforeEach
+    void setUp() throws PasswordEncryptionException {
+        users = new ArrayList<>();
+        users.add(createUser(1, "SteveA", "Stevea", "McSteveF", UserRole.STUDENT));
+        users.add(createUser(2, "SteveB", "SteveB", "McSteveE", UserRole.TEACHER));
+        users.add(createUser(3, "SteveC", "Stevec", "McSteveD", UserRole.COURSE_ADMINISTRATOR));
+        users.add(createUser(4, "SteveD", "SteveD", "McStevec", UserRole.STUDENT));
+        Mockito.when(userRepository.findAll()).thenReturn(users);
+
+        userIndexService = new UserIndexService(userRepository);
+    }
+
+
+    private User createUser(int id, String username, String firstName, String lastName, UserRole role) throws PasswordEncryptionException {
+        User user = new User(username, "password", firstName, "", lastName, "", "", "", "Steve@steve.com");
+        user.setId(id);
+        user.addRole(role);
+        if (role != UserRole.STUDENT) {
+            user.deleteRole(UserRole.STUDENT);
+        }
+        user = Mockito.spy(user);
+        mockUserResponse(user);
+        return user;
+    }
+
+
+    private void mockUserResponse(User user) {
+        UserResponse response = UserResponse.newBuilder()
+                .setId(user.getId())
+                .setUsername(user.getUsername())
+                .setFirstName(user.getFirstName())
+                .setLastName(user.getLastName())
+                .build();
+        Mockito.doReturn(response).when(user).userResponse();
+    }
+
+
+    private List<String> usernames(UserIndexService.UserPage page) {
+        return page.users().stream().map(UserResponse::getUsername).toList();
+    }
+
+
+    @Test
+    void indexIsNotReadyUntilRebuilt() {
+        assertFalse(userIndexService.isReady());
+        userIndexService.rebuild();
+        assertTrue(userIndexService.isReady());
+        assertEquals(4, userIndexService.size());
+    }
+
+
+    @Test
+    void getPageByFirstNameAscending() {
+        userIndexService.rebuild();
+        UserIndexService.UserPage page = userIndexService.getPage(UserSortKey.FIRST_NAME, true, 0, 10);
+        assertEquals(List.of("SteveA", "SteveB", "SteveC", "SteveD"), usernames(page));
+    }
+
+
+    @Test
+    void getPageByLastNameDescendingWithOffset() {
+        userIndexService.rebuild();
+        UserIndexService.UserPage page = userIndexService.getPage(UserSortKey.LAST_NAME, false, 1, 2);
+        assertEquals(List.of("SteveB", "SteveC"), usernames(page));
+        assertEquals(3, page.lastId());
+        assertEquals(users.get(2).getLastNameSortKey(), page.lastKey());
+    }
+
+
+    @Test
+    void getPageByRolesListsMostPrivilegedFirst() {
+        userIndexService.rebuild();
+        UserIndexService.UserPage page = userIndexService.getPage(UserSortKey.ROLES, true, 0, 10);
+        assertEquals(List.of("SteveC", "SteveB", "SteveA", "SteveD"), usernames(page));
+    }
+
+
+    @Test
+    void getPageAfterContinuesFromLastUser() {
+        userIndexService.rebuild();
+        UserIndexService.UserPage firstPage = userIndexService.getPage(UserSortKey.FIRST_NAME, true, 0, 2);
+        UserIndexService.UserPage secondPage = userIndexService.getPageAfter(UserSortKey.FIRST_NAME, true,
+                firstPage.lastKey(), firstPage.lastId(), 2);
+        assertEquals(List.of("SteveC", "SteveD"), usernames(secondPage));
+    }
+
+
+    @Test
+    void updateMovesEditedUser() {
+        userIndexService.rebuild();
+        User user = users.get(0);
+        user.setFirstName("Zed");
+        mockUserResponse(user);
+
+        userIndexService.update(user);
+
+        UserIndexService.UserPage page = userIndexService.getPage(UserSortKey.FIRST_NAME, true, 0, 10);
+        assertEquals(List.of("SteveB", "SteveC", "SteveD", "SteveA"), usernames(page));
+        assertEquals("Zed", page.users().get(3).getFirstName());
+        assertEquals(4, userIndexService.size());
+    }
+
+
+    @Test
+    void searchByNameRanksFirstNameMatchesFirst() throws PasswordEncryptionException {
+        users.add(createUser(5, "Amy", "Amy", "Stevenson", UserRole.STUDENT));
+        users.add(createUser(6, "Tom", "Tom", "Biggs", UserRole.STUDENT));
+        userIndexService.rebuild();
+
+        UserIndexService.SearchResult result = userIndexService.searchByName("steve", UserSortKey.FIRST_NAME, true,
+                0, 10);
+
+        assertEquals(List.of("SteveA", "SteveB", "SteveC", "SteveD", "Amy"),
+                result.users().stream().map(UserResponse::getUsername).toList());
+        assertEquals(5, result.matchCount());
+    }
+
+
+    @Test
+    void searchByNameMatchesFullName() {
+        userIndexService.rebuild();
+        List<UserResponse> matches = userIndexService.searchByName("stevec mcs", UserSortKey.FIRST_NAME, true, 0, 10)
+                .users();
+        assertEquals(List.of("SteveC"), matches.stream().map(UserResponse::getUsername).toList());
+    }
+
+
+    @Test
+    void searchByNameKeepsOnlyTheBestMatches() {
+        userIndexService.rebuild();
+        UserIndexService.SearchResult result = userIndexService.searchByName("st", UserSortKey.FIRST_NAME, false, 1, 2);
+        assertEquals(List.of("SteveC", "SteveB"), result.users().stream().map(UserResponse::getUsername).toList());
+        assertEquals(4, result.matchCount());
+    }
+
+
+    @Test
+    void searchByNameFindsEditedName() {
+        userIndexService.rebuild();
+        User user = users.get(1);
+        user.setFirstName("Bartholomew");
+        mockUserResponse(user);
+        userIndexService.update(user);
+
+        assertEquals(List.of("SteveB"), userIndexService.searchByName("thol", UserSortKey.FIRST_NAME, true, 0, 10)
+                .users().stream().map(UserResponse::getUsername).toList());
+        // Now only matches on their last name, so ranks after the first name matches
+        assertEquals(List.of("SteveA", "SteveC", "SteveD", "SteveB"),
+                userIndexService.searchByName("stevE", UserSortKey.FIRST_NAME, true, 0, 10).users()
+                        .stream().map(UserResponse::getUsername).toList());
+    }
+}
@@ -0,0 +1,90 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import nz.ac.canterbury.seng302.identityprovider.model.User;
+import nz.ac.canterbury.seng302.shared.identityprovider.UserResponse;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserResponseCacheTest {
+
+    private final UserResponseCache userResponseCache = new UserResponseCache(2);
+
+
+    private User createUser(int id, String username) throws PasswordEncryptionException {
+        User user = new User(username, "password", "Steve", "", "McSteve", "", "", "", "Steve@steve.com");
+        user.setId(id);
+        user = Mockito.spy(user);
+        mockUserResponse(user);
+        return user;
+    }
+
+
+    private void mockUserResponse(User user) {
+        UserResponse response = UserResponse.newBuilder()
+                .setId(user.getId())
+                .setUsername(user.getUsername())
+                .setFirstName(user.getFirstName())
+                .build();
+        Mockito.doReturn(response).when(user).userResponse();
+    }
+
+
+    @Test
+    void getBuildsResponseOnlyOnce() throws PasswordEncryptionException {
+        User user = createUser(1, "Steve");
+
+        UserResponse first = userResponseCache.get(user);
+        UserResponse second = userResponseCache.get(user);
+
+        assertSame(first, second);
+        Mockito.verify(user, Mockito.times(1)).userResponse();
+        assertEquals(new UserResponseCache.Stats(1, 1, 0, 1), userResponseCache.getStats());
+    }
+
+
+    @Test
+    void invalidateRebuildsResponse() throws PasswordEncryptionException {
+        User user = createUser(1, "Steve");
+        userResponseCache.get(user);
+
+        user.setFirstName("Johnny");
+        mockUserResponse(user);
+        userResponseCache.invalidate(user.getId());
+
+        assertEquals("Johnny", userResponseCache.get(user).getFirstName());
+        assertEquals(2, userResponseCache.getStats().misses());
+    }
+
+
+    @Test
+    void getEvictsLeastRecentlyUsedUser() throws PasswordEncryptionException {
+        User userOne = createUser(1, "SteveOne");
+        User userTwo = createUser(2, "SteveTwo");
+        User userThree = createUser(3, "SteveThree");
+
+        userResponseCache.get(userOne);
+        userResponseCache.get(userTwo);
+        userResponseCache.get(userOne);
+        userResponseCache.get(userThree);
+        userResponseCache.get(userOne);
+        userResponseCache.get(userTwo);
+
+        Mockito.verify(userOne, Mockito.times(1)).userResponse();
+        Mockito.verify(userTwo, Mockito.times(2)).userResponse();
+        assertEquals(new UserResponseCache.Stats(2, 4, 2, 2), userResponseCache.getStats());
+    }
+
+
+    @Test
+    void getDoesNotCacheUnsavedUsers() throws PasswordEncryptionException {
+        User user = createUser(0, "Steve");
+
+        userResponseCache.get(user);
+        userResponseCache.get(user);
+
+        Mockito.verify(user, Mockito.times(2)).userResponse();
+        assertEquals(0, userResponseCache.getStats().size());
+    }
+}
@@ -0,0 +1,50 @@
+package nz.ac.canterbury.seng302.identityprovider.service;
+
+import nz.ac.canterbury.seng302.identityprovider.model.User;
+import nz.ac.canterbury.seng302.identityprovider.model.UserRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+class UserSortKeyBackfillTest {
+
+    private final UserRepository userRepository = Mockito.mock(UserRepository.class);
+
+    private final UserSortKeyBackfill backfill = new UserSortKeyBackfill(userRepository);
+
+
+    @Test
+    void backfillCalculatesMissingSortKeys() throws PasswordEncryptionException {
+        User user = new User("Username", "password", "First", "Middle", "Last", "Nick", "bio", "they/them",
+                "test@example.com");
+        ReflectionTestUtils.setField(user, "firstNameSortKey", null);
+        ReflectionTestUtils.setField(user, "rolePrecedence", 0);
+        Mockito.when(userRepository.findIdsWithoutSortKeys()).thenReturn(List.of(1));
+        Mockito.when(userRepository.findAllById(List.of(1))).thenReturn(List.of(user));
+
+        backfill.backfill();
+
+        @SuppressWarnings("unchecked") // ArgumentCaptor can only be created for the raw Iterable class
+        ArgumentCaptor<Iterable<User>> savedCaptor = ArgumentCaptor.forClass(Iterable.class);
+        Mockito.verify(userRepository).clearNullRolePrecedences();
+        Mockito.verify(userRepository).saveAll(savedCaptor.capture());
+        User saved = savedCaptor.getValue().iterator().next();
+        Assertions.assertEquals("first middle last", saved.getFirstNameSortKey());
+        Assertions.assertEquals(1, saved.getRolePrecedence());
+    }
+
+
+    @Test
+    void backfillDoesNothingWhenEveryUserHasSortKeys() {
+        Mockito.when(userRepository.findIdsWithoutSortKeys()).thenReturn(List.of());
+
+        backfill.backfill();
+
+        Mockito.verify(userRepository, Mockito.never()).clearNullRolePrecedences();
+        Mockito.verify(userRepository, Mockito.never()).saveAll(Mockito.any());
+    }
+}
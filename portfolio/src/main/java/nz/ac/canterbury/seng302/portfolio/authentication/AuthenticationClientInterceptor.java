@@ -5,8 +5,6 @@ import net.devh.boot.grpc.client.interceptor.GrpcGlobalClientInterceptor;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
-import javax.servlet.http.HttpServletRequest;
-
 /**
  * This class is a global interceptor for all gRPC clients used by this application. What this means, is that
  * any time a gRPC client sends a request (e.g to the IdentityProvider), the message is 'intercepted' before it
@@ -27,22 +25,37 @@ public class AuthenticationClientInterceptor implements ClientInterceptor {
      * 1.  Attempt to retrieve some information about the HTTP session between this application and the user's browser
      * 2.  Look for a cookie with the name 'lens-session-token' and find its value. If the cookie is not found, the
      * value will be null
-     * 3.  Add a new HTTP header to the gRPC request, of the following format
+     * 3.  If a token was found, add a new HTTP header to the gRPC request, of the following format
      * Header name: "X-Authorization"
-     * Header value: "Bearer {value of cookie, or blank if null}"
+     * Header value: "Bearer {value of cookie}"
      */
     @Override
     public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
-        HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder.getRequestAttributes()).getRequest();
-        String sessionToken = CookieUtil.getValue(request, "lens-session-token");
+        final String sessionToken = getSessionToken();
 
         // Every time we send a gRPC request, include a copy of our authentication token in the headers
         return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
             @Override
             public void start(Listener<RespT> responseListener, Metadata headers) {
-                headers.put(sessionTokenHeaderKey, String.format("Bearer %s", sessionToken));
+                if (sessionToken != null) {
+                    headers.put(sessionTokenHeaderKey, String.format("Bearer %s", sessionToken));
+                }
                 super.start(responseListener, headers);
             }
         };
     }
+
+
+    /**
+     * Gets the session token of the request being handled on this thread. Calls made outside a request, such as the
+     * role epoch subscription, are sent without a session token.
+     *
+     * @return The value of the lens-session-token cookie, or null if there is no current request or no cookie
+     */
+    private static String getSessionToken() {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            return CookieUtil.getValue(attributes.getRequest(), "lens-session-token");
+        }
+        return null;
+    }
 }
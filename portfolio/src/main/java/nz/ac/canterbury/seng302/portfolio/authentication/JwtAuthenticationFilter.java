@@ -32,6 +32,17 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         return authenticateClientService;
     }
 
+    private TokenVerifier tokenVerifier;
+
+    private TokenVerifier getTokenVerifier(HttpServletRequest request) {
+        if (tokenVerifier == null) {
+            ServletContext servletContext = request.getServletContext();
+            WebApplicationContext webApplicationContext = WebApplicationContextUtils.getWebApplicationContext(servletContext);
+            tokenVerifier = webApplicationContext.getBean(TokenVerifier.class);
+        }
+        return tokenVerifier;
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest req, HttpServletResponse res, FilterChain chain) throws IOException, ServletException {
         PreAuthenticatedAuthenticationToken authentication = getAuthentication(req);
@@ -45,9 +56,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     }
 
     /**
-     * Check with the IdP whether the user making this request is authenticated, and set the authState returned
-     * as our authentication principal. This allows us to access the authState (including name, roles, id, etc.)
-     * in any of our controllers just by adding an @AuthenticationPrincipal parameter.
+     * Check whether the user making this request is authenticated, and set the authState as our authentication
+     * principal. This allows us to access the authState (including name, roles, id, etc.) in any of our controllers
+     * just by adding an @AuthenticationPrincipal parameter.
+     *
+     * The token is verified locally with the IdP's public key. Only if the token was signed with a key the IdP
+     * no longer has do we ask the IdP about it. The auth state is stored in the request's PrincipalContext.
      *
      * @param request HTTP request sent by client
      * @return PreAuth token with the authState of user, and whether they are authenticated
@@ -63,17 +77,21 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             return authToken;
         }
 
-        AuthState authState;
-        try {
-            authState = getAuthenticateClientService(request).checkAuthState();
-        } catch (StatusRuntimeException e) {
-            // This exception is thrown if the IdP encounters some error, or if the IdP can not be reached
-            // Also may be thrown if some error connecting to IdP, either way, return unauthenticated token
-            return authToken;
+        AuthState authState = getTokenVerifier(request).verify(lensSessionCookieJwtString);
+        if (authState == null) {
+            try {
+                authState = getAuthenticateClientService(request).checkAuthState();
+            } catch (StatusRuntimeException e) {
+                // This exception is thrown if the IdP encounters some error, or if the IdP can not be reached
+                // Also may be thrown if some error connecting to IdP, either way, return unauthenticated token
+                return authToken;
+            }
         }
 
-        // If we get here, then the IdP has returned 'some' auth state, so we configure our auth token with whatever
-        // the IdP has said about the authentication status of the user that provided this token
+        // If we get here, then we have 'some' auth state, so we configure our auth token with whatever
+        // it says about the authentication status of the user that provided this token, and share it with the
+        // interceptors and controllers handling the request
+        PrincipalContext.create(request, authState);
         authToken = new PreAuthenticatedAuthenticationToken(new Authentication(authState), lensSessionCookieJwtString);
         authToken.setAuthenticated(authState.getIsAuthenticated());
         return authToken;
@@ -0,0 +1,219 @@
+package nz.ac.canterbury.seng302.portfolio.authentication;
+
+import nz.ac.canterbury.seng302.portfolio.service.grpc.UserAccountsClientService;
+import nz.ac.canterbury.seng302.shared.identityprovider.AuthState;
+import nz.ac.canterbury.seng302.shared.identityprovider.ClaimDTO;
+import nz.ac.canterbury.seng302.shared.identityprovider.GetUserByIdRequest;
+import nz.ac.canterbury.seng302.shared.identityprovider.UserResponse;
+import nz.ac.canterbury.seng302.shared.identityprovider.UserRole;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Holds what is known about the principal of the current request, so that the filter, interceptors and controllers
+ * handling a request share it rather than each asking the IdP again.
+ *
+ * The AuthState's claims are read into a map once, and the principal's UserResponse is only fetched from the IdP the
+ * first time it is needed in the request. The context is stored as an attribute of the request, so it is discarded
+ * when the request completes.
+ */
+public class PrincipalContext {
+
+    /** The name of the request attribute the context is stored in. */
+    static final String REQUEST_ATTRIBUTE = PrincipalContext.class.getName();
+
+    /** The AuthState of the request's principal. */
+    private final AuthState authState;
+
+    /** The values of the AuthState's claims, by claim type. */
+    private final Map<String, String> claims = new HashMap<>();
+
+    /** The principal's user, or null if it hasn't been fetched in this request. Set on a gRPC thread by getUserAsync. */
+    private volatile UserResponse user;
+
+
+    /**
+     * Creates a context for the given principal, reading its claims.
+     *
+     * @param authState The AuthState of the principal
+     */
+    private PrincipalContext(AuthState authState) {
+        this.authState = authState;
+        for (ClaimDTO claim : authState.getClaimsList()) {
+            claims.putIfAbsent(claim.getType(), claim.getValue());
+        }
+    }
+
+
+    /**
+     * Creates the context for a request's principal and stores it on the request. Called by the
+     * JwtAuthenticationFilter once the request has been authenticated.
+     *
+     * @param request The request being handled
+     * @param authState The AuthState of the request's principal
+     * @return The context for the request
+     */
+    public static PrincipalContext create(HttpServletRequest request, AuthState authState) {
+        PrincipalContext context = new PrincipalContext(authState);
+        request.setAttribute(REQUEST_ATTRIBUTE, context);
+        return context;
+    }
+
+
+    /**
+     * Gets the context of the given principal. If the current request's context is for the same AuthState it is
+     * returned, otherwise a new context is created and, if there is a current request, stored on it.
+     *
+     * @param authState The AuthState of the principal
+     * @return The context for the principal
+     */
+    public static PrincipalContext of(AuthState authState) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            // Not handling a request, e.g. a websocket message, so there is nothing to share the context with
+            return new PrincipalContext(authState);
+        }
+        Object existing = attributes.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (existing instanceof PrincipalContext context && context.authState.equals(authState)) {
+            return context;
+        }
+        PrincipalContext context = new PrincipalContext(authState);
+        attributes.setAttribute(REQUEST_ATTRIBUTE, context, RequestAttributes.SCOPE_REQUEST);
+        return context;
+    }
+
+
+    /**
+     * Gets the context of the current request, using the principal the request was authenticated with.
+     *
+     * @return The context for the current request, or null if the request has no authenticated principal
+     */
+    public static PrincipalContext current() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null
+                && attributes.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof PrincipalContext context) {
+            return context;
+        }
+        org.springframework.security.core.Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof Authentication principal) {
+            return of(principal.getAuthState());
+        }
+        return null;
+    }
+
+
+    public AuthState getAuthState() {
+        return authState;
+    }
+
+
+    /**
+     * Gets the value of one of the principal's claims.
+     *
+     * @param claimType The type of the claim, e.g. "nameid"
+     * @return The value of the claim, or "NOT FOUND" if the principal doesn't have it
+     */
+    public String getClaim(String claimType) {
+        return claims.getOrDefault(claimType, "NOT FOUND");
+    }
+
+
+    /**
+     * Gets the id of the principal's user.
+     *
+     * @return The user's id
+     */
+    public int getUserId() {
+        return Integer.parseInt(getClaim("nameid"));
+    }
+
+
+    /**
+     * Gets the roles in the principal's session token. These are the user's roles when they logged in, so may be out
+     * of date; use getCurrentRoles to authorise a request.
+     *
+     * @return The roles in the token's role claim
+     */
+    public List<UserRole> getRoles() {
+        List<UserRole> roles = new ArrayList<>();
+        // The IdP encodes the roles as a comma separated list, e.g. "student,course_administrator"
+        for (String role : getClaim("role").split(",")) {
+            try {
+                roles.add(UserRole.valueOf(role.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                // Not a role, e.g. the claim is missing
+            }
+        }
+        return roles;
+    }
+
+
+    /**
+     * Gets the principal's current roles. If the roles in the session token are known to be current they are used,
+     * otherwise the user is fetched from the IdP for their roles.
+     *
+     * @param roleEpochRegistry Knows whether the roles in the token are current
+     * @param userAccountsClientService Used to fetch the user if the token's roles may be out of date
+     * @return The principal's roles
+     */
+    public List<UserRole> getCurrentRoles(RoleEpochRegistry roleEpochRegistry,
+                                          UserAccountsClientService userAccountsClientService) {
+        if (roleEpochRegistry.hasCurrentRoles(this)) {
+            return getRoles();
+        }
+        return getUser(userAccountsClientService).getRolesList();
+    }
+
+
+    /**
+     * Gets the principal's user, fetching it from the IdP the first time it is needed in the request.
+     *
+     * @param userAccountsClientService Used to fetch the user
+     * @return The principal's user
+     */
+    public UserResponse getUser(UserAccountsClientService userAccountsClientService) {
+        if (user == null) {
+            GetUserByIdRequest userRequest = GetUserByIdRequest.newBuilder().setId(getUserId()).build();
+            user = userAccountsClientService.getUserAccountById(userRequest);
+        }
+        return user;
+    }
+
+
+    /**
+     * Gets the principal's user without waiting for the IdP, fetching it the first time it is needed in the request.
+     * Must be called on the request's thread, so the session token is sent with the request.
+     *
+     * @param userAccountsClientService Used to fetch the user
+     * @return A future of the principal's user, already complete if it has been fetched in this request
+     */
+    public CompletableFuture<UserResponse> getUserAsync(UserAccountsClientService userAccountsClientService) {
+        UserResponse fetched = user;
+        if (fetched != null) {
+            return CompletableFuture.completedFuture(fetched);
+        }
+        GetUserByIdRequest userRequest = GetUserByIdRequest.newBuilder().setId(getUserId()).build();
+        CompletableFuture<UserResponse> fetching = userAccountsClientService.getUserAccountByIdAsync(userRequest);
+        // The call's own future is returned, so cancelling it cancels the call
+        fetching.thenAccept(response -> user = response);
+        return fetching;
+    }
+
+
+    /**
+     * Discards the fetched user, so the next call to getUser fetches it again. Used after a request changes the
+     * principal's user.
+     */
+    public void invalidateUser() {
+        user = null;
+    }
+}
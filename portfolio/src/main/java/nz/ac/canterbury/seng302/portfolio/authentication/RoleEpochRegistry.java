@@ -0,0 +1,174 @@
+package nz.ac.canterbury.seng302.portfolio.authentication;
+
+import io.grpc.stub.StreamObserver;
+import nz.ac.canterbury.seng302.portfolio.service.grpc.UserAccountsClientService;
+import nz.ac.canterbury.seng302.shared.identityprovider.RoleEpochsResponse;
+import nz.ac.canterbury.seng302.shared.identityprovider.UserRoleEpoch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the latest role epoch of each user, as pushed by the IdP, so that the roles in a session token can be trusted
+ * without fetching the user. Each user's epoch is incremented whenever their roles change, and their session tokens
+ * carry the epoch they were issued at, so a token with an older epoch than its user's has out of date roles.
+ *
+ * While the subscription to the IdP is down, changes may be missed, so no token's roles are treated as current.
+ */
+@Component
+public class RoleEpochRegistry {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** The claim holding the role epoch a session token was issued at. */
+    static final String ROLE_EPOCH_CLAIM_TYPE = "role_epoch";
+
+    /** How long to wait before resubscribing after the subscription first fails. Doubles with each failure. */
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 1000;
+
+    /** The longest wait before resubscribing. */
+    private static final long MAX_RETRY_DELAY_MILLIS = 60_000;
+
+    /** Used to subscribe to the IdP's role epochs. */
+    private final UserAccountsClientService userAccountsClientService;
+
+    /** Runs the resubscriptions after the subscription fails. */
+    private final ScheduledExecutorService retryExecutor;
+
+    /** The latest role epoch of each user whose roles have changed, by user id. */
+    private final Map<Integer, Integer> roleEpochs = new ConcurrentHashMap<>();
+
+    /** True while the subscription is up and has received the current epochs. */
+    private volatile boolean subscribed = false;
+
+    /** How long to wait before the next resubscription. */
+    private volatile long retryDelayMillis = INITIAL_RETRY_DELAY_MILLIS;
+
+
+    @Autowired
+    public RoleEpochRegistry(UserAccountsClientService userAccountsClientService) {
+        this(userAccountsClientService, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "role-epoch-subscription");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+
+    /**
+     * Creates a registry that resubscribes on the given executor.
+     *
+     * @param userAccountsClientService Used to subscribe to the IdP's role epochs
+     * @param retryExecutor Runs the resubscriptions after the subscription fails
+     */
+    RoleEpochRegistry(UserAccountsClientService userAccountsClientService, ScheduledExecutorService retryExecutor) {
+        this.userAccountsClientService = userAccountsClientService;
+        this.retryExecutor = retryExecutor;
+    }
+
+
+    /**
+     * Subscribes to the IdP's role epochs. Called once the application has started, and again whenever the
+     * subscription fails.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        userAccountsClientService.subscribeToRoleEpochs(new StreamObserver<>() {
+            @Override
+            public void onNext(RoleEpochsResponse response) {
+                update(response);
+                subscribed = true;
+                retryDelayMillis = INITIAL_RETRY_DELAY_MILLIS;
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                logger.warn("Role epoch subscription failed: {}", t.getMessage());
+                resubscribeLater();
+            }
+
+            @Override
+            public void onCompleted() {
+                logger.warn("Role epoch subscription ended by the IdP");
+                resubscribeLater();
+            }
+        });
+    }
+
+
+    /**
+     * Marks the subscription as down and schedules a new one, waiting longer after each consecutive failure so an
+     * unavailable IdP isn't flooded.
+     */
+    private void resubscribeLater() {
+        subscribed = false;
+        long delay = retryDelayMillis;
+        retryDelayMillis = Math.min(delay * 2, MAX_RETRY_DELAY_MILLIS);
+        if (!retryExecutor.isShutdown()) {
+            retryExecutor.schedule(this::subscribe, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    /**
+     * Records the role epochs sent by the IdP. An epoch older than one already recorded is ignored, as epochs only
+     * ever increase.
+     *
+     * @param response A response from the role epoch subscription
+     */
+    void update(RoleEpochsResponse response) {
+        for (UserRoleEpoch roleEpoch : response.getRoleEpochsList()) {
+            roleEpochs.merge(roleEpoch.getUserId(), roleEpoch.getRoleEpoch(), Math::max);
+        }
+    }
+
+
+    /**
+     * Checks whether the roles in a principal's session token are current, i.e. the user's roles haven't changed
+     * since the token was issued.
+     *
+     * @param principal The principal of a request
+     * @return True if the token's roles can be trusted, false if they may be out of date
+     */
+    public boolean hasCurrentRoles(PrincipalContext principal) {
+        if (!subscribed) {
+            return false;
+        }
+        int tokenRoleEpoch;
+        try {
+            tokenRoleEpoch = Integer.parseInt(principal.getClaim(ROLE_EPOCH_CLAIM_TYPE));
+        } catch (NumberFormatException e) {
+            // A token issued without a role epoch can't be checked
+            return false;
+        }
+        return tokenRoleEpoch >= roleEpochs.getOrDefault(principal.getUserId(), 0);
+    }
+
+
+    /**
+     * Gets the latest role epoch pushed by the IdP for a user, e.g. to check that a copy of the user has current
+     * roles.
+     *
+     * @param userId The id of the user
+     * @return The user's latest known role epoch, 0 if their roles have never changed
+     */
+    public int getRoleEpoch(int userId) {
+        return roleEpochs.getOrDefault(userId, 0);
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        retryExecutor.shutdownNow();
+    }
+}
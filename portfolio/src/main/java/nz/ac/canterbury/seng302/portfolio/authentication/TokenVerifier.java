@@ -0,0 +1,200 @@
+package nz.ac.canterbury.seng302.portfolio.authentication;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.grpc.StatusRuntimeException;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import nz.ac.canterbury.seng302.portfolio.service.grpc.AuthenticateClientService;
+import nz.ac.canterbury.seng302.shared.identityprovider.AuthState;
+import nz.ac.canterbury.seng302.shared.identityprovider.ClaimDTO;
+import nz.ac.canterbury.seng302.shared.identityprovider.TokenVerificationKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.*;
+
+/**
+ * Verifies lens-session-tokens locally with the IdP's public key, and builds the same AuthState the IdP's
+ * checkAuthState would, so that a request doesn't need a round trip to the IdP to be authenticated.
+ *
+ * The key is fetched from the IdP the first time it is needed, and again whenever a token has a key id that doesn't
+ * match it, e.g. because the IdP's signing key file has been replaced. If the token's key still can't be found, the caller
+ * should fall back to asking the IdP.
+ */
+@Component
+public class TokenVerifier {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** The shortest time between fetching the key, so tokens with unknown key ids can't flood the IdP. */
+    private static final long MIN_REFRESH_INTERVAL_MILLIS = 10_000;
+
+    /** The claim types and JWT value types the IdP uses when building an AuthState, see the IdP's JwtTokenUtil. */
+    private static final String ROLE_CLAIM_TYPE = "role";
+    private static final String NAME_CLAIM_TYPE = "name";
+    private static final String AUTHENTICATION_TYPE = "AuthenticationTypes.Federation";
+    private static final List<String> AUTH_STATE_CLAIMS = List.of(
+            "unique_name", "sub", "nameid", NAME_CLAIM_TYPE, ROLE_CLAIM_TYPE, RoleEpochRegistry.ROLE_EPOCH_CLAIM_TYPE,
+            "nbf", "exp", "iat");
+    private static final Map<Class<?>, String> JWT_VALUE_TYPES = Map.of(
+            String.class, "http://www.w3.org/2001/XMLSchema#string",
+            Integer.class, "http://www.w3.org/2001/XMLSchema#integer"
+    );
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    /** Used to fetch the key from the IdP. */
+    private final AuthenticateClientService authenticateClientService;
+
+    /** The IdP's current key, or null if it hasn't been fetched. */
+    private volatile VerificationKey verificationKey;
+
+    /** When the key was last fetched, in milliseconds since the epoch. Guarded by synchronizing on this. */
+    private long lastRefreshAt = 0;
+
+
+    /**
+     * A key fetched from the IdP.
+     *
+     * @param keyId The id of the key, matching the kid header of the tokens it signed
+     * @param parser Verifies tokens signed with the key
+     */
+    private record VerificationKey(String keyId, JwtParser parser) {}
+
+
+    @Autowired
+    public TokenVerifier(AuthenticateClientService authenticateClientService) {
+        this.authenticateClientService = authenticateClientService;
+    }
+
+
+    /**
+     * Verifies a session token and builds its AuthState. A token that is malformed, tampered with, or expired gets an
+     * unauthenticated AuthState.
+     *
+     * @param token The lens-session-token
+     * @return The AuthState of the token, or null if the token was signed by a key that can't be found
+     */
+    public AuthState verify(String token) {
+        String keyId = getKeyId(token);
+        if (keyId == null) {
+            return AuthState.newBuilder().setIsAuthenticated(false).build();
+        }
+        VerificationKey key = getVerificationKey(keyId);
+        if (key == null) {
+            return null;
+        }
+
+        Claims claims;
+        try {
+            claims = key.parser().parseClaimsJws(token).getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            return AuthState.newBuilder().setIsAuthenticated(false).build();
+        }
+        return buildAuthState(claims);
+    }
+
+
+    /**
+     * Reads the key id from a token's header, without verifying the token.
+     *
+     * @param token The lens-session-token
+     * @return The token's key id, "" if it doesn't have one, or null if the token is malformed
+     */
+    private String getKeyId(String token) {
+        int headerEnd = token.indexOf('.');
+        if (headerEnd == -1) {
+            return null;
+        }
+        try {
+            byte[] header = Base64.getUrlDecoder().decode(token.substring(0, headerEnd));
+            JsonNode kid = objectMapper.readTree(new String(header, StandardCharsets.UTF_8)).get("kid");
+            return kid == null ? "" : kid.asText();
+        } catch (IllegalArgumentException | IOException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * Gets the key with the given id, fetching the IdP's key if it isn't the current key.
+     *
+     * @param keyId The id of the key a token was signed with
+     * @return The key, or null if the IdP's key doesn't have that id
+     */
+    private VerificationKey getVerificationKey(String keyId) {
+        VerificationKey key = verificationKey;
+        if (key == null || !key.keyId().equals(keyId)) {
+            key = refreshVerificationKey();
+        }
+        return (key != null && key.keyId().equals(keyId)) ? key : null;
+    }
+
+
+    /**
+     * Fetches the IdP's current key, unless it was fetched very recently.
+     *
+     * @return The current key, or null if it has never been fetched
+     */
+    private synchronized VerificationKey refreshVerificationKey() {
+        long now = System.currentTimeMillis();
+        if (now - lastRefreshAt < MIN_REFRESH_INTERVAL_MILLIS) {
+            return verificationKey;
+        }
+        lastRefreshAt = now;
+
+        try {
+            TokenVerificationKey response = authenticateClientService.getTokenVerificationKey();
+            String keyFamily = SignatureAlgorithm.forName(response.getAlgorithm()).getFamilyName();
+            PublicKey publicKey = KeyFactory.getInstance(keyFamily)
+                    .generatePublic(new X509EncodedKeySpec(response.getPublicKey().toByteArray()));
+            verificationKey = new VerificationKey(response.getKeyId(),
+                    Jwts.parserBuilder().setSigningKey(publicKey).build());
+            logger.info("Fetched token verification key {}", response.getKeyId());
+        } catch (StatusRuntimeException | JwtException | GeneralSecurityException e) {
+            logger.error("Could not fetch the token verification key: {}", e.getMessage());
+        }
+        return verificationKey;
+    }
+
+
+    /**
+     * Builds an authenticated AuthState from a verified token's claims, in the same way as the IdP.
+     *
+     * @param claims The claims of a verified token
+     * @return The AuthState for the token
+     */
+    private AuthState buildAuthState(Claims claims) {
+        AuthState.Builder authState = AuthState.newBuilder()
+                .setIsAuthenticated(true)
+                .setNameClaimType(NAME_CLAIM_TYPE)
+                .setRoleClaimType(ROLE_CLAIM_TYPE)
+                .setAuthenticationType(AUTHENTICATION_TYPE)
+                .setName(String.valueOf(claims.get(NAME_CLAIM_TYPE)));
+        for (String type : AUTH_STATE_CLAIMS) {
+            Object value = claims.get(type);
+            if (value != null) {
+                authState.addClaims(ClaimDTO.newBuilder()
+                        .setIssuer(claims.getIssuer())
+                        .setOriginalIssuer(claims.getIssuer())
+                        .setType(type)
+                        .setValue(value.toString())
+                        .setValueType(JWT_VALUE_TYPES.getOrDefault(value.getClass(), ""))
+                        .build());
+            }
+        }
+        return authState.build();
+    }
+}
@@ -1,6 +1,7 @@
 package nz.ac.canterbury.seng302.portfolio.controller;
 
 import nz.ac.canterbury.seng302.portfolio.authentication.Authentication;
+import nz.ac.canterbury.seng302.portfolio.authentication.PrincipalContext;
 import nz.ac.canterbury.seng302.portfolio.model.domain.projects.Project;
 import nz.ac.canterbury.seng302.portfolio.model.domain.projects.ProjectRepository;
 import nz.ac.canterbury.seng302.portfolio.model.domain.projects.deadlines.Deadline;
@@ -35,6 +36,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 public class CalendarController {
@@ -65,33 +67,41 @@ public class CalendarController {
     /**
      * Get mapping for /calendar. Returns the calendar view.
      *
+     * The user is fetched from the IdP while the project is loaded, and the servlet thread is released while the
+     * IdP responds.
+     *
      * @param principal principal
      * @param projectId id of the project that the calendar will display
-     * @return the calendar view
+     * @return a future of the calendar view
      */
     @GetMapping("/calendar")
-    public ModelAndView getCalendar(
+    public CompletableFuture<ModelAndView> getCalendar(
             @AuthenticationPrincipal Authentication principal,
             @RequestParam(value = "projectId") Long projectId
     ) {
+        CompletableFuture<UserResponse> user = PrincipalContext.of(principal.getAuthState())
+                .getUserAsync(userAccountsClientService);
         try {
             // Gets the project that the request is referring to.
             Project project = projectRepository.findById(projectId).orElseThrow(() -> new EntityNotFoundException(
                     "Event with id " + projectId + " was not found"
             ));
 
-            ModelAndView model = new ModelAndView("monthlyCalendar");
-            model.addObject("project", project);
-            UserResponse user = PrincipalAttributes.getUserFromPrincipal(principal.getAuthState(), userAccountsClientService);
-            List<UserRole> roles = user.getRolesList();
+            return user.thenApply(userResponse -> {
+                ModelAndView model = new ModelAndView("monthlyCalendar");
+                model.addObject("project", project);
+                List<UserRole> roles = userResponse.getRolesList();
 
-            model.addObject(roles.contains(UserRole.TEACHER) || roles.contains(UserRole.COURSE_ADMINISTRATOR));
-            model.addObject("user", user);
-            return model;
+                model.addObject(roles.contains(UserRole.TEACHER) || roles.contains(UserRole.COURSE_ADMINISTRATOR));
+                model.addObject("user", userResponse);
+                return model;
+            });
 
         } catch (EntityNotFoundException err) {
             logger.error("GET REQUEST /calendar", err);
-            return new ModelAndView("errorPage").addObject("errorMessage", err.getMessage());
+            user.cancel(true);
+            return CompletableFuture.completedFuture(
+                    new ModelAndView("errorPage").addObject("errorMessage", err.getMessage()));
         }
     }
 
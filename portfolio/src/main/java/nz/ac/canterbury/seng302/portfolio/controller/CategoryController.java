@@ -1,8 +1,8 @@
 package nz.ac.canterbury.seng302.portfolio.controller;
 
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Category;
-import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Evidence;
-import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.EvidenceRepository;
+import nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceResponseDTO;
+import nz.ac.canterbury.seng302.portfolio.service.EvidenceReadService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,9 +26,9 @@ public class CategoryController {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
 
-    /** The repository containing users pieces of evidence. */
+    /** Reads the users pieces of evidence. */
     @Autowired
-    private EvidenceRepository evidenceRepository;
+    private EvidenceReadService evidenceReadService;
 
 
     /**
@@ -48,7 +48,7 @@ public class CategoryController {
                 return new ResponseEntity<>("Category does not exist", HttpStatus.NOT_FOUND);
             }
 
-            List<Evidence> evidence = evidenceRepository.findAllByUserIdAndCategoriesContainingOrderByOccurrenceDateDesc(userId, optionalCategory.get());
+            List<EvidenceResponseDTO> evidence = evidenceReadService.getEvidenceForUserWithCategory(userId, optionalCategory.get());
             logger.info("GET REQUEST /evidenceLinkedToCategory - found and returned {} evidences for category: {}", evidence.size() ,category);
             return new ResponseEntity<>(evidence, HttpStatus.OK);
 
@@ -5,6 +5,7 @@ import nz.ac.canterbury.seng302.portfolio.CheckException;
 import nz.ac.canterbury.seng302.portfolio.authentication.Authentication;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Evidence;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.EvidenceRepository;
+import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Skill;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.WebLink;
 import nz.ac.canterbury.seng302.portfolio.model.domain.projects.Project;
 import nz.ac.canterbury.seng302.portfolio.model.domain.projects.ProjectRepository;
@@ -12,6 +13,7 @@ import nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceDTO;
 import nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceResponseDTO;
 import nz.ac.canterbury.seng302.portfolio.model.dto.UserDTO;
 import nz.ac.canterbury.seng302.portfolio.service.DateTimeService;
+import nz.ac.canterbury.seng302.portfolio.service.EvidenceReadService;
 import nz.ac.canterbury.seng302.portfolio.service.EvidenceService;
 import nz.ac.canterbury.seng302.portfolio.service.RegexPattern;
 import nz.ac.canterbury.seng302.portfolio.service.SkillFrequencyService;
@@ -36,9 +38,9 @@ import org.springframework.web.servlet.ModelAndView;
 import java.net.MalformedURLException;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Controller for all the Evidence based end points
@@ -64,8 +66,14 @@ public class EvidenceController {
     /** Provides helper functions for skill frequency operations */
     private final SkillFrequencyService skillFrequencyService;
 
+    /** Reads evidence to be shown */
+    private final EvidenceReadService evidenceReadService;
+
     private static final String INTERNAL_SERVER_ERROR_MESSAGE = "An unknown error occurred. Please try again";
 
+    /** The most users suggested by the linked users autocomplete, the best matches are returned first */
+    private static final int FILTERED_USERS_MAX_RESULTS = 20;
+
 
     /**
      * Autowired constructor for injecting the required beans.
@@ -74,18 +82,21 @@ public class EvidenceController {
      * @param evidenceRepository The repository containing users pieces of evidence.
      * @param evidenceService Provides helper functions for Crud operations on evidence.
      * @param skillFrequencyService Provides helper functions for skill frequency operations
+     * @param evidenceReadService Reads evidence to be shown
      */
     @Autowired
     public EvidenceController(UserAccountsClientService userAccountsClientService,
                               ProjectRepository projectRepository,
                               EvidenceRepository evidenceRepository,
                               EvidenceService evidenceService,
-                              SkillFrequencyService skillFrequencyService) {
+                              SkillFrequencyService skillFrequencyService,
+                              EvidenceReadService evidenceReadService) {
         this.userAccountsClientService = userAccountsClientService;
         this.projectRepository = projectRepository;
         this.evidenceRepository = evidenceRepository;
         this.evidenceService = evidenceService;
         this.skillFrequencyService = skillFrequencyService;
+        this.evidenceReadService = evidenceReadService;
     }
 
 
@@ -136,25 +147,31 @@ public class EvidenceController {
      *                 BAD_REQUEST when the user doesn't interact with the endpoint correctly, i.e., no or invalid evidenceId
      *
      * @param evidenceId - The ID of the piece of evidence
-     * @return A response entity with the required response code. Response body is the evidence is the status is OK
+     * @return A future of a response entity with the required response code. Response body is the evidence is the
+     *         status is OK
      */
     @GetMapping("/evidencePiece")
-    public ResponseEntity<Object> getOneEvidence(@RequestParam("evidenceId") Integer evidenceId) {
+    public CompletableFuture<ResponseEntity<Object>> getOneEvidence(@RequestParam("evidenceId") Integer evidenceId) {
         logger.info("GET REQUEST /evidence - attempt to get evidence with Id {}", evidenceId);
         try {
-            Optional<Evidence> evidence = evidenceRepository.findById(evidenceId);
+            Optional<EvidenceResponseDTO> evidence = evidenceReadService.getEvidence(evidenceId);
 
             if (evidence.isEmpty()) {
                 logger.info("GET REQUEST /evidence - evidence {} does not exist", evidenceId);
-                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+                return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.NOT_FOUND));
             }
 
-            EvidenceResponseDTO response = new EvidenceResponseDTO(evidence.get(), getUsers(evidence.get().getAssociateIds()));
-            return new ResponseEntity<>(response, HttpStatus.OK);
+            EvidenceResponseDTO response = evidence.get();
+            skillFrequencyService.setSkillFrequencies(response.getSkills(), response.getUserId());
+            List<Integer> associateIds = response.getAssociateIds();
+            return userAccountsClientService.getUsersByIdsAsync(associateIds)
+                    .thenApply(associates -> {
+                        response.setAssociates(getUsers(associateIds, associates));
+                        return new ResponseEntity<Object>(response, HttpStatus.OK);
+                    })
+                    .exceptionally(this::handleGetEvidenceError);
         } catch (Exception exception) {
-            logger.warn(exception.getClass().getName());
-            logger.warn(exception.getMessage());
-            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            return CompletableFuture.completedFuture(handleGetEvidenceError(exception));
         }
     }
 
@@ -167,40 +184,66 @@ public class EvidenceController {
      * BAD_REQUEST when the user doesn't interact with the endpoint correctly, i.e., no or invalid userId
      *
      * @param userId - The userId of the user whose evidence is wanted
-     * @return A response entity with the required response code. Response body is the evidence is the status is OK
+     * @return A future of a response entity with the required response code. Response body is the evidence is the
+     *         status is OK
      */
     @GetMapping("/evidenceData")
-    public ResponseEntity<Object> getAllEvidence(@RequestParam("userId") Integer userId) {
+    public CompletableFuture<ResponseEntity<Object>> getAllEvidence(@RequestParam("userId") Integer userId) {
         logger.info("GET REQUEST /evidence - attempt to get evidence for user {}", userId);
         try {
-
+            // Look up the user while their evidence is loaded, then resolve every associate of every piece of
+            // evidence with one request, which runs alongside the user lookup
             GetUserByIdRequest request = GetUserByIdRequest.newBuilder().setId(userId).build();
-            UserResponse userResponse = userAccountsClientService.getUserAccountById(request);
-            if (userResponse.getId() == -1) {
-                logger.info("GET REQUEST /evidence - user {} does not exist", userId);
-                return new ResponseEntity<>("Error: User not found", HttpStatus.NOT_FOUND);
-            }
-            List<Evidence> evidences = evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(userId);
-            List<EvidenceResponseDTO> response = new ArrayList<>();
-            for (Evidence evidence : evidences) {
-                EvidenceResponseDTO dto = new EvidenceResponseDTO(evidence, getUsers(evidence.getAssociateIds()));
-                response.add(dto);
+            CompletableFuture<UserResponse> user = userAccountsClientService.getUserAccountByIdAsync(request);
+
+            List<EvidenceResponseDTO> evidences = evidenceReadService.getEvidenceForUser(userId);
+            Set<Integer> associateIds = new HashSet<>();
+            List<Skill> skills = new ArrayList<>();
+            for (EvidenceResponseDTO evidence : evidences) {
+                associateIds.addAll(evidence.getAssociateIds());
+                skills.addAll(evidence.getSkills());
             }
-
-            HttpHeaders responseHeaders = new HttpHeaders();
-            responseHeaders.set("Users-Name", userResponse.getFirstName() + ' ' + userResponse.getLastName());
-
-            return ResponseEntity.ok()
-                    .headers(responseHeaders)
-                    .body(response);
+            skillFrequencyService.setSkillFrequencies(skills, userId);
+            CompletableFuture<Map<Integer, UserResponse>> associates = userAccountsClientService.getUsersByIdsAsync(associateIds);
+
+            return user.thenCombine(associates, (userResponse, associateUsers) -> {
+                if (userResponse.getId() == -1) {
+                    logger.info("GET REQUEST /evidence - user {} does not exist", userId);
+                    return new ResponseEntity<Object>("Error: User not found", HttpStatus.NOT_FOUND);
+                }
+                for (EvidenceResponseDTO evidence : evidences) {
+                    evidence.setAssociates(getUsers(evidence.getAssociateIds(), associateUsers));
+                }
+
+                HttpHeaders responseHeaders = new HttpHeaders();
+                responseHeaders.set("Users-Name", userResponse.getFirstName() + ' ' + userResponse.getLastName());
+
+                return ResponseEntity.ok()
+                        .headers(responseHeaders)
+                        .<Object>body(evidences);
+            }).exceptionally(this::handleGetEvidenceError);
         } catch (Exception exception) {
-            logger.warn(exception.getClass().getName());
-            logger.warn(exception.getMessage());
-            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            return CompletableFuture.completedFuture(handleGetEvidenceError(exception));
         }
     }
 
 
+    /**
+     * Logs an error getting evidence, which may have been thrown by the IdP call the evidence was waiting on.
+     *
+     * @param exception The error getting the evidence
+     * @return A response entity with a bad request status
+     */
+    private ResponseEntity<Object> handleGetEvidenceError(Throwable exception) {
+        Throwable cause = exception instanceof CompletionException && exception.getCause() != null
+                ? exception.getCause()
+                : exception;
+        logger.warn(cause.getClass().getName());
+        logger.warn(cause.getMessage());
+        return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+
+
     /**
      * Entrypoint for creating an evidence object.
      *
@@ -218,6 +261,7 @@ public class EvidenceController {
 
         try {
             Evidence evidence = evidenceService.addEvidence(principal, evidenceDTO);
+            skillFrequencyService.setSkillFrequencies(evidence.getSkills(), evidence.getUserId());
             return new ResponseEntity<>(evidence, HttpStatus.OK);
         } catch (CheckException err) {
             logger.warn("POST REQUEST /evidence - attempt to create new evidence: Bad input: {}", err.getMessage());
@@ -252,7 +296,9 @@ public class EvidenceController {
         logger.info("PATCH REQUEST /evidence - attempt to edit evidence");
 
         try {
-            return new ResponseEntity<>(evidenceService.editEvidence(principal, evidenceDTO), HttpStatus.OK);
+            Evidence evidence = evidenceService.editEvidence(principal, evidenceDTO);
+            skillFrequencyService.setSkillFrequencies(evidence.getSkills(), evidence.getUserId());
+            return new ResponseEntity<>(evidence, HttpStatus.OK);
         } catch (CheckException err) {
             logger.warn("PATCH REQUEST /evidence - attempt to edit evidence with id {}: Bad input: {}",
                     evidenceDTO.getId(), err.getMessage());
@@ -302,10 +348,7 @@ public class EvidenceController {
                 logger.warn(methodLoggingTemplate, "User attempted to delete evidence they don't own.");
                 return new ResponseEntity<>("You can only delete evidence that you own.", HttpStatus.UNAUTHORIZED);
             }
-            evidenceRepository.delete(evidence);
-            evidenceService.deleteOrphanSkills(evidence);
-
-            skillFrequencyService.updateAllSkillFrequenciesForUser(userId);
+            evidenceService.deleteEvidence(evidence);
             String message = "Successfully deleted evidence " + evidenceId;
             logger.info(methodLoggingTemplate, message);
             return new ResponseEntity<>(message, HttpStatus.OK);
@@ -328,7 +371,7 @@ public class EvidenceController {
             logger.info("GET REQUEST /filteredUsers - retrieving filtered users with string {}", name);
             PaginationRequestOptions options = PaginationRequestOptions.newBuilder()
                     .setOffset(0)
-                    .setLimit(999999999) // we want to retrieve all users
+                    .setLimit(FILTERED_USERS_MAX_RESULTS)
                     .setOrderBy("name")
                     .setIsAscendingOrder(true)
                     .build();
@@ -338,6 +381,7 @@ public class EvidenceController {
             GetPaginatedUsersFilteredRequest request = GetPaginatedUsersFilteredRequest.newBuilder()
                     .setPaginationRequestOptions(options)
                     .setFilteringOptions(filter)
+                    .setMaxResults(FILTERED_USERS_MAX_RESULTS)
                     .build();
             PaginatedUsersResponse response = userAccountsClientService.getPaginatedUsersFilteredByName(request);
             ArrayList<UserDTO> users = new ArrayList<>();
@@ -357,15 +401,15 @@ public class EvidenceController {
      * Helper method that returns a list of all users in a given list.
      *
      * @param userIds The ids of the users
+     * @param users The details of the users, fetched in one request, by their id
      * @return A list of Users, populated with their details.
      * If any users in userIds list do not exist, they will not be added.
      */
-    private List<UserDTO> getUsers(List<Integer> userIds) {
+    private List<UserDTO> getUsers(List<Integer> userIds, Map<Integer, UserResponse> users) {
         List<UserDTO> associates = new ArrayList<>();
         for (Integer associate : userIds) {
-            GetUserByIdRequest request = GetUserByIdRequest.newBuilder().setId(associate).build();
-            UserResponse user = userAccountsClientService.getUserAccountById(request);
-            if (user.getId() < 0) continue; // If their id is negative the user doesn't exist
+            UserResponse user = users.get(associate);
+            if (user == null) continue; // The user doesn't exist
 
             UserDTO userDTO = new UserDTO(user);
             associates.add(userDTO);
@@ -10,6 +10,7 @@ import nz.ac.canterbury.seng302.portfolio.service.UserService;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.GroupsClientService;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.UserAccountsClientService;
 import nz.ac.canterbury.seng302.shared.identityprovider.*;
+import nz.ac.canterbury.seng302.shared.util.PaginationRequestOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,6 +25,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The controller for managing requests to edit groups and their user's memberships.
@@ -43,6 +45,9 @@ public class GroupsController {
     private int totalPages = 1;
     private int groupsPerPageLimit = 10;
     private static final Integer TEACHER_GROUP_ID = 1;
+
+    /** The most members sent in one page of a group, which is also what the "All" members per page option gets. */
+    private static final int MAX_MEMBERS_PAGE_SIZE = 1000;
     private String orderBy = SHORTNAME;
     private Boolean isAscending = true;
     private ArrayList<Integer> footerNumberSequence = new ArrayList<>();
@@ -103,7 +108,8 @@ public class GroupsController {
 
 
     /**
-     * This endpoint retrieves groups depending on the inputs. It returns them as a responseEntity.
+     * This endpoint retrieves groups depending on the inputs. It returns them as a responseEntity, holding each group's
+     * names and member count but not its members, which are fetched from /group when a group is selected.
      * @param page The page number the user is on in the groups list
      * @param groupsPerPage The number of groups to display per page
      * @param sortBy Which way to sort the groups by
@@ -156,7 +162,7 @@ public class GroupsController {
                  }
              }
              int offset = (pageNum - 1) * groupsPerPageLimit; // The number to start retrieving groups from
-             PaginatedGroupsResponse response = groupService.getPaginatedGroupsFromServer(offset, orderBy, groupsPerPageLimit, isAscending);
+             PaginatedGroupSummariesResponse response = groupService.getPaginatedGroupSummariesFromServer(offset, orderBy, groupsPerPageLimit, isAscending);
              int totalNumGroups = response.getPaginationResponseOptions().getResultSetSize();
              totalPages = totalNumGroups / groupsPerPageLimit;
              if ((totalNumGroups % groupsPerPageLimit) != 0) {
@@ -165,12 +171,12 @@ public class GroupsController {
              if (pageNum > totalPages || goToLastPage) { //to ensure that the last page will be shown if the page number is too large
                  pageNum = totalPages;
                  offset = (pageNum - 1) * groupsPerPageLimit;
-                 response = groupService.getPaginatedGroupsFromServer(offset, orderBy, groupsPerPageLimit, isAscending);
+                 response = groupService.getPaginatedGroupSummariesFromServer(offset, orderBy, groupsPerPageLimit, isAscending);
              }
              footerNumberSequence = paginationService.createFooterNumberSequence(footerNumberSequence, totalPages, pageNum);
 
              HashMap<String, Object> returnMap = new HashMap<>();
-             returnMap.put("groups", groupService.createGroupListFromResponse(response));
+             returnMap.put("groups", groupService.createGroupSummaryListFromResponse(response));
              returnMap.put("footerNumberSequence", footerNumberSequence);
              returnMap.put("groupsPerPage", this.groupsPerPageLimit);
              returnMap.put("page", pageNum);
@@ -186,25 +192,46 @@ public class GroupsController {
 
 
     /**
-     * Gets an individual group by the group Id.
+     * Gets an individual group by the group Id, with a page of its members sorted by first name. Whether the user is a
+     * member is checked separately, so neither call has to return every member of the group. The servlet thread is
+     * released while the IdP responds.
      *
+     * @param principal The authentication state of the user viewing the group
      * @param groupId - The id group whose information is being retrieved
-     * @return a Response entity containing the HTTPStatus and the groups information.
+     * @param offset The number of members to skip
+     * @param limit The number of members to get, 0 to only get the group's names and number of members. At most
+     *              MAX_MEMBERS_PAGE_SIZE members are sent, however many are asked for
+     * @return a future of a Response entity containing the HTTPStatus and the groups information.
      */
     @GetMapping("/group")
-    public ResponseEntity<Object> getGroup(@RequestParam Integer groupId) {
+    public CompletableFuture<ResponseEntity<Object>> getGroup(@AuthenticationPrincipal Authentication principal,
+                                                              @RequestParam Integer groupId,
+                                                              @RequestParam(defaultValue = "0") Integer offset,
+                                                              @RequestParam(defaultValue = "0") Long limit) {
         logger.info("GET REQUEST /group - attempt to get group {}", groupId);
-        try {
-            GetGroupDetailsRequest request = GetGroupDetailsRequest.newBuilder()
-                    .setGroupId(groupId)
-                    .build();
-            GroupDetailsResponse response = groupsClientService.getGroupDetails(request);
-            return new ResponseEntity<>(new GroupResponseDTO(response), HttpStatus.OK);
-        } catch (Exception exception) {
-            logger.error("ERROR /group - an error occurred while retrieving group {}", groupId);
-            logger.error(exception.getMessage());
-            return new ResponseEntity<>("An error occurred while retrieving the group", HttpStatus.BAD_REQUEST);
-        }
+        int userId = PrincipalAttributes.getIdFromPrincipal(principal.getAuthState());
+        GetGroupMembersRequest pageRequest = GetGroupMembersRequest.newBuilder()
+                .setGroupId(groupId)
+                .setPaginationRequestOptions(PaginationRequestOptions.newBuilder()
+                        .setOffset(Math.max(offset, 0))
+                        .setLimit((int) Math.max(Math.min(limit, MAX_MEMBERS_PAGE_SIZE), 0))
+                        .setOrderBy("firstname")
+                        .setIsAscendingOrder(true)
+                        .build())
+                .build();
+        GetGroupMembersRequest membershipRequest = GetGroupMembersRequest.newBuilder()
+                .setGroupId(groupId)
+                .addUserIds(userId)
+                .build();
+        CompletableFuture<GroupMembersResponse> page = groupsClientService.getGroupMembersAsync(pageRequest);
+        CompletableFuture<GroupMembersResponse> membership = groupsClientService.getGroupMembersAsync(membershipRequest);
+        return page.thenCombine(membership, (response, userAsMember) -> new ResponseEntity<Object>(
+                        new GroupResponseDTO(response, userAsMember.getMembersCount() > 0), HttpStatus.OK))
+                .exceptionally(exception -> {
+                    logger.error("ERROR /group - an error occurred while retrieving group {}", groupId);
+                    logger.error(exception.getMessage());
+                    return new ResponseEntity<>("An error occurred while retrieving the group", HttpStatus.BAD_REQUEST);
+                });
     }
 
 
@@ -328,7 +355,8 @@ public class GroupsController {
         GetGroupDetailsRequest request = GetGroupDetailsRequest.newBuilder()
                 .setGroupId(groupId)
                 .build();
-        GroupDetailsResponse response = groupsClientService.getGroupDetails(request);
+        // The membership is checked against the IdP itself, as the directory replica may be behind it
+        GroupDetailsResponse response = groupsClientService.getGroupDetailsFromServer(request);
 
         // Checks if the user trying to edit is a member of the group being edited
         if (!response.getMembersList().stream().map(UserResponse::getId).toList().contains(userId)){
@@ -414,7 +442,11 @@ public class GroupsController {
         try {
             if (Objects.equals(groupId, TEACHER_GROUP_ID)) {
                 logger.info("Removing users from teacher group, checking user is admin");
-                UserResponse userResponse = PrincipalAttributes.getUserFromPrincipal(principal.getAuthState(), userAccountsClientService);
+                // The roles are checked against the IdP itself, as the directory replica may be behind it
+                GetUserByIdRequest userRequest = GetUserByIdRequest.newBuilder()
+                        .setId(PrincipalAttributes.getIdFromPrincipal(principal.getAuthState()))
+                        .build();
+                UserResponse userResponse = userAccountsClientService.getUserAccountByIdFromServer(userRequest);
                 if (!userResponse.getRolesList().contains(UserRole.COURSE_ADMINISTRATOR)) {
                     return new ResponseEntity<>("You must be a course administrator to do this.", HttpStatus.UNAUTHORIZED);
                 }
@@ -1,24 +1,19 @@
 package nz.ac.canterbury.seng302.portfolio.controller;
 
+import nz.ac.canterbury.seng302.portfolio.authentication.PrincipalContext;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.UserAccountsClientService;
 import nz.ac.canterbury.seng302.shared.identityprovider.AuthState;
-import nz.ac.canterbury.seng302.shared.identityprovider.ClaimDTO;
-import nz.ac.canterbury.seng302.shared.identityprovider.GetUserByIdRequest;
 import nz.ac.canterbury.seng302.shared.identityprovider.UserResponse;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 
 /**
  * This class creates a few simple methods for extracting claims from AuthState gRPC messages.
  *
- * Primarily used to extract the userId from an AuthState object
+ * Primarily used to extract the userId from an AuthState object. The claims and user are read through the request's
+ * {@link PrincipalContext}, so they are only parsed and fetched once per request.
  */
 public class PrincipalAttributes {
 
-    private static final Logger logger = LoggerFactory.getLogger(PrincipalAttributes.class);
-
-
     /**
      * Makes the constructor invisible so only static methods are reachable
      */
@@ -35,12 +30,7 @@ public class PrincipalAttributes {
      * @return claimValue - a string value of the claim requested.
      */
     public static String getClaim(AuthState principal, String claimType) {
-        logger.info("Getting {} from principal", claimType);
-        return principal.getClaimsList().stream()
-                .filter(claim -> claim.getType().equals(claimType))
-                .findFirst()
-                .map(ClaimDTO::getValue)
-                .orElse("NOT FOUND");
+        return PrincipalContext.of(principal).getClaim(claimType);
     }
 
 
@@ -51,22 +41,20 @@ public class PrincipalAttributes {
      * @return userId (int) - a user Id of the principal.
      */
     public static int getIdFromPrincipal(AuthState principal) {
-        return Integer.parseInt(PrincipalAttributes.getClaim(principal, "nameid"));
+        return PrincipalContext.of(principal).getUserId();
     }
 
 
     /**
-     * Specific use of the getClaim method for returning a UserResponse from their AuthState.
+     * Specific use of the getClaim method for returning a UserResponse from their AuthState. The user is only fetched
+     * from the IdP the first time this is called in a request.
      *
      * @param principal                 - The AuthState gRPC message.
      * @param userAccountsClientService - requires passing as the classes calling this method have it Autowired
      * @return userId (UserResponse) - a User response object containing user details.
      */
     public static UserResponse getUserFromPrincipal(AuthState principal, UserAccountsClientService userAccountsClientService) {
-        // Get user from server
-        int userId = getIdFromPrincipal(principal);
-        GetUserByIdRequest userRequest = GetUserByIdRequest.newBuilder().setId(userId).build();
-        return userAccountsClientService.getUserAccountById(userRequest);
+        return PrincipalContext.of(principal).getUser(userAccountsClientService);
     }
 
 }
@@ -1,9 +1,11 @@
 package nz.ac.canterbury.seng302.portfolio.controller;
 
-import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Evidence;
-import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.EvidenceRepository;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Skill;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.SkillRepository;
+import nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceResponseDTO;
+import nz.ac.canterbury.seng302.portfolio.service.EvidenceReadService;
+import nz.ac.canterbury.seng302.portfolio.service.EvidenceService;
+import nz.ac.canterbury.seng302.portfolio.service.SkillFrequencyService;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.UserAccountsClientService;
 import nz.ac.canterbury.seng302.shared.identityprovider.GetUserByIdRequest;
 import nz.ac.canterbury.seng302.shared.identityprovider.UserResponse;
@@ -14,8 +16,10 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -32,27 +36,39 @@ public class SkillController {
     /** Holds persisted information about skills */
     private final SkillRepository skillRepository;
 
-    /** Holds persisted information about evidence */
-    private final EvidenceRepository evidenceRepository;
+    /** Reads evidence to be shown */
+    private final EvidenceReadService evidenceReadService;
 
     /** For checking is a user exists and getting their details. */
     private final UserAccountsClientService userAccountsClientService;
 
+    /** For setting how frequently each skill appears in the user's evidence */
+    private final SkillFrequencyService skillFrequencyService;
+
+    /** For merging skills */
+    private final EvidenceService evidenceService;
+
 
     /**
      * Autowired constructor for injecting the required beans.
      *
      * @param skillRepository Holds persisted information about skills
-     * @param evidenceRepository Holds persisted information about evidence
+     * @param evidenceReadService Reads evidence to be shown
      * @param userAccountsClientService For checking is a user exists and getting their details.
+     * @param skillFrequencyService For setting how frequently each skill appears in the user's evidence
+     * @param evidenceService For merging skills
      */
     @Autowired
     public SkillController(SkillRepository skillRepository,
-                           EvidenceRepository evidenceRepository,
-                           UserAccountsClientService userAccountsClientService) {
+                           EvidenceReadService evidenceReadService,
+                           UserAccountsClientService userAccountsClientService,
+                           SkillFrequencyService skillFrequencyService,
+                           EvidenceService evidenceService) {
         this.skillRepository = skillRepository;
-        this.evidenceRepository = evidenceRepository;
+        this.evidenceReadService = evidenceReadService;
         this.userAccountsClientService = userAccountsClientService;
+        this.skillFrequencyService = skillFrequencyService;
+        this.evidenceService = evidenceService;
     }
 
 
@@ -75,6 +91,7 @@ public class SkillController {
                     return new ResponseEntity<>("User does not exist", HttpStatus.NOT_FOUND);
                 }
             }
+            skillFrequencyService.setSkillFrequencies(skills, userId);
             logger.info("GET REQUEST /skills - found and returned {} skills for user: {}", skills.size() ,userId);
             return new ResponseEntity<>(skills, HttpStatus.OK);
 
@@ -98,7 +115,7 @@ public class SkillController {
         logger.info("GET REQUEST /evidenceLinkedToSkill - attempt to get all evidence for skill: {}", skillName);
         try {
             if (Objects.equals(skillName, "No Skill")) {
-                List<Evidence> evidence = evidenceRepository.findAllByUserIdAndSkillsIsEmptyOrderByOccurrenceDateDesc(userId);
+                List<EvidenceResponseDTO> evidence = evidenceReadService.getEvidenceForUserWithoutSkills(userId);
                 logger.info("GET REQUEST /evidenceLinkedToSkill - No skill evidence retrieved");
                 return new ResponseEntity<>(evidence, HttpStatus.OK);
             }
@@ -107,7 +124,12 @@ public class SkillController {
                 logger.info("GET REQUEST /evidenceLinkedToSkill - skill {} does not exist", skillName);
                 return new ResponseEntity<>("Skill does not exist", HttpStatus.NOT_FOUND);
             }
-            List<Evidence> evidence = evidenceRepository.findAllByUserIdAndSkillsContainingOrderByOccurrenceDateDesc(userId, skill.get());
+            List<EvidenceResponseDTO> evidence = evidenceReadService.getEvidenceForUserWithSkill(userId, skill.get());
+            List<Skill> skills = new ArrayList<>();
+            for (EvidenceResponseDTO piece : evidence) {
+                skills.addAll(piece.getSkills());
+            }
+            skillFrequencyService.setSkillFrequencies(skills, userId);
             logger.info("GET REQUEST /evidenceLinkedToSkill - found and returned {} evidences for skill: {}", evidence.size() ,skillName);
             return new ResponseEntity<>(evidence, HttpStatus.OK);
         } catch (Exception exception) {
@@ -115,4 +137,42 @@ public class SkillController {
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
+
+
+    /**
+     * Merges one skill into another, for cleaning up duplicate skills. Every piece of evidence with the merged skill
+     * is given the other skill instead, and the merged skill is deleted. Only teachers and course administrators can
+     * merge skills.
+     *
+     * Response codes: OK when the skills are merged,
+     *                 BAD_REQUEST when a skill would be merged into itself,
+     *                 NOT_FOUND when either skill doesn't exist.
+     *
+     * @param skillId - The id of the skill to keep
+     * @param mergedSkillId - The id of the skill to merge into it
+     * @return A ResponseEntity with a message describing the result
+     */
+    @PostMapping("/skills/merge")
+    public ResponseEntity<Object> mergeSkills(@RequestParam Integer skillId, @RequestParam Integer mergedSkillId) {
+        logger.info("POST REQUEST /skills/merge - attempt to merge skill {} into skill {}", mergedSkillId, skillId);
+        try {
+            if (skillId.equals(mergedSkillId)) {
+                return new ResponseEntity<>("A skill cannot be merged into itself", HttpStatus.BAD_REQUEST);
+            }
+            Optional<Skill> skill = skillRepository.findById(skillId);
+            Optional<Skill> mergedSkill = skillRepository.findById(mergedSkillId);
+            if (skill.isEmpty() || mergedSkill.isEmpty()) {
+                logger.info("POST REQUEST /skills/merge - skill {} or {} does not exist", skillId, mergedSkillId);
+                return new ResponseEntity<>("Skill does not exist", HttpStatus.NOT_FOUND);
+            }
+            evidenceService.mergeSkills(skill.get(), mergedSkill.get());
+            logger.info("POST REQUEST /skills/merge - merged skill {} into skill {}", mergedSkillId, skillId);
+            return new ResponseEntity<>("Merged " + mergedSkill.get().getName() + " into " + skill.get().getName(),
+                    HttpStatus.OK);
+        } catch (Exception exception) {
+            logger.error("POST REQUEST /skills/merge - Internal Server Error merging skill {} into skill {}",
+                    mergedSkillId, skillId);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package nz.ac.canterbury.seng302.portfolio.controller;
 
 import nz.ac.canterbury.seng302.portfolio.authentication.Authentication;
+import nz.ac.canterbury.seng302.portfolio.authentication.PrincipalContext;
 import nz.ac.canterbury.seng302.portfolio.model.dto.UserDTO;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.UserAccountsClientService;
 import nz.ac.canterbury.seng302.shared.identityprovider.AuthState;
@@ -50,6 +51,7 @@ public class UploadController {
      * Endpoint that sends the given file to the identity provider
      *
      * @param file The file sent in the body of the post request
+     * @return The user, with the URL of their new profile image
      */
     @PostMapping("/upload")
     public ResponseEntity<Object> upload(
@@ -60,8 +62,12 @@ public class UploadController {
         logger.info("Endpoint reached: POST /upload");
         ModelAndView modelAndView = new ModelAndView("upload-image");
         int id = PrincipalAttributes.getIdFromPrincipal(principal);
-        userAccountsClientService.uploadProfilePhoto(file.getInputStream(), id, "jpg");
+        String profileImagePath = userAccountsClientService.uploadProfilePhoto(file.getInputStream(), id, "jpg");
+        // The user's photo has changed, so fetch them again rather than using a user fetched earlier in this request
+        PrincipalContext.of(principal).invalidateUser();
         UserResponse user = PrincipalAttributes.getUserFromPrincipal(principal, userAccountsClientService);
+        // The new photo's URL is taken from the upload, so it is never an earlier photo's
+        user = user.toBuilder().setProfileImagePath(profileImagePath).build();
         return new ResponseEntity<>(new UserDTO(user), HttpStatus.OK);
     }
 }
@@ -1,12 +1,15 @@
 package nz.ac.canterbury.seng302.portfolio.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import nz.ac.canterbury.seng302.portfolio.authentication.Authentication;
 import nz.ac.canterbury.seng302.portfolio.model.domain.preferences.UserPrefRepository;
 import nz.ac.canterbury.seng302.portfolio.model.domain.preferences.UserPrefs;
+import nz.ac.canterbury.seng302.portfolio.model.dto.UserDTO;
 import nz.ac.canterbury.seng302.portfolio.service.PaginationService;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.UserAccountsClientService;
 import nz.ac.canterbury.seng302.shared.identityprovider.*;
 import nz.ac.canterbury.seng302.shared.util.PaginationRequestOptions;
+import nz.ac.canterbury.seng302.shared.util.PaginationResponseOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,8 +19,13 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 
@@ -37,10 +45,18 @@ public class UserListController {
     private int totalNumUsers = 0;
     private String sortOrder = "firstname";
     private boolean isAscending = true;
+    private String cursor = "";
+    private String nextCursor = "";
     private ArrayList<Integer> footerNumberSequence = new ArrayList<>();
     private List<UserResponse> userResponseList;
     private final HashMap<String, UserRole> stringToRole = setUserRolesDict();
 
+    /** The users per page limit used when all the users are shown on one page, which streams them from the IdP. */
+    private static final int ALL_USERS_PER_PAGE = 999999999;
+
+    /** Converts each exported user to a line of JSON. */
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
 
     /**
      * Autowired constructor
@@ -68,6 +84,8 @@ public class UserListController {
      * @param order the order in which users will be sorted
      * @param isAscending indicates the reversal of the sort order
      * @param usersPerPage the number of users to be displayed on each paginated page of users
+     * @param cursor an optional cursor from the previous page, so the next page continues from it instead of skipping
+     *               the users before it
      * @return a model-and-view of the user list page
      */
     @GetMapping("/user-list")
@@ -77,7 +95,8 @@ public class UserListController {
             @RequestParam(name = "page", required = false) Integer page,
             @RequestParam(name = "sortField", required = false) String order,
             @RequestParam(name = "isAscending", required = false) String isAscending,
-            @RequestParam(name = "usersPerPage", required = false) String usersPerPage)
+            @RequestParam(name = "usersPerPage", required = false) String usersPerPage,
+            @RequestParam(name = "cursor", required = false) String cursor)
     {
         logger.info("GET REQUEST /user-list - retrieve paginated users for the user list");
 
@@ -93,6 +112,7 @@ public class UserListController {
             pageNum = 1;
         }
         offset = (pageNum - 1) * usersPerPageLimit;
+        this.cursor = Objects.requireNonNullElse(cursor, "");
 
         PaginatedUsersResponse response = getPaginatedUsersFromServer();
         totalNumUsers = response.getPaginationResponseOptions().getResultSetSize();
@@ -103,8 +123,10 @@ public class UserListController {
         if (pageNum > totalPages) { //to ensure that the last page will be shown if the page number is too large
             pageNum = totalPages;
             offset = (pageNum - 1) * usersPerPageLimit;
+            this.cursor = "";
             response = getPaginatedUsersFromServer();
         }
+        nextCursor = response.getPaginationResponseOptions().getNextCursor();
 
         footerNumberSequence = paginationService.createFooterNumberSequence(footerNumberSequence, totalPages, pageNum);
         userResponseList = response.getUsersList();
@@ -115,6 +137,47 @@ public class UserListController {
     }
 
 
+    /**
+     * Exports every user as newline delimited JSON, one UserDTO per line, in the requested order. The users are
+     * streamed from the IdP in batches and written out as each batch arrives, so the export runs in constant memory
+     * however many users there are.
+     *
+     * The body is written on an async thread, so the current request is passed to it for the gRPC client to find the
+     * user's session token, as it does for calls made while handling the request.
+     *
+     * @param order the order in which users will be sorted, defaults to first name
+     * @param isAscending indicates the reversal of the sort order, defaults to ascending
+     * @return a streamed response body containing the users
+     */
+    @GetMapping(value = "/user-list/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportUsers(
+            @RequestParam(name = "sortField", required = false) String order,
+            @RequestParam(name = "isAscending", required = false) String isAscending) {
+        logger.info("GET REQUEST /user-list/export - stream all users");
+        StreamUsersRequest request = StreamUsersRequest.newBuilder()
+                .setOrderBy(Objects.requireNonNullElse(order, "firstname"))
+                .setIsAscendingOrder(isAscending == null || Boolean.parseBoolean(isAscending))
+                .build();
+
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        StreamingResponseBody body = outputStream -> {
+            RequestContextHolder.setRequestAttributes(requestAttributes);
+            try {
+                userAccountsClientService.streamUsers(request, batch -> {
+                    for (UserResponse user : batch.getUsersList()) {
+                        outputStream.write(objectMapper.writeValueAsBytes(new UserDTO(user)));
+                        outputStream.write('\n');
+                    }
+                    outputStream.flush();
+                });
+            } finally {
+                RequestContextHolder.resetRequestAttributes();
+            }
+        };
+        return ResponseEntity.ok().body(body);
+    }
+
+
     /**
      * A helper method to select the user's sort order for the user list.
      *
@@ -145,7 +208,7 @@ public class UserListController {
                 case "20" -> this.usersPerPageLimit = 20;
                 case "40" -> this.usersPerPageLimit = 40;
                 case "60" -> this.usersPerPageLimit = 60;
-                case "all" -> this.usersPerPageLimit = 999999999;
+                case "all" -> this.usersPerPageLimit = ALL_USERS_PER_PAGE;
                 default -> this.usersPerPageLimit = 10;
             }
         }
@@ -181,6 +244,7 @@ public class UserListController {
         model.addAttribute("userCanEdit", userCanEdit);
         model.addAttribute("totalPages", totalPages);
         model.addAttribute("currentPage", pageNum);
+        model.addAttribute("nextCursor", nextCursor);
         model.addAttribute("totalItems", totalNumUsers);
         model.addAttribute("userList", userResponseList);
         model.addAttribute("footerNumberSequence", footerNumberSequence);
@@ -261,16 +325,24 @@ public class UserListController {
 
     /**
      * A helper function to get the values of the offset and users per page limit and send a request to the client
-     * service, which then gets a response from the server service
+     * service, which then gets a response from the server service. When all users are shown on one page, they are
+     * streamed from the server in batches instead, as they may not fit in a single response.
+     *
+     * Moving to the next page sends the previous page's cursor, so the server continues from the previous page's last
+     * user rather than skipping offset users. The offset is only used when jumping to another page.
      *
      * @return PaginatedUsersResponse, a type that contains all users for a specific page and the total number of users
      */
     private PaginatedUsersResponse getPaginatedUsersFromServer() {
+        if (usersPerPageLimit == ALL_USERS_PER_PAGE) {
+            return getAllUsersFromServer();
+        }
         PaginationRequestOptions options = PaginationRequestOptions.newBuilder()
                                                                    .setOffset(offset)
                                                                    .setLimit(usersPerPageLimit)
                                                                    .setOrderBy(sortOrder)
                                                                    .setIsAscendingOrder(isAscending)
+                                                                   .setCursor(cursor)
                                                                    .build();
         GetPaginatedUsersRequest request = GetPaginatedUsersRequest.newBuilder()
                                                                    .setPaginationRequestOptions(options)
@@ -279,6 +351,30 @@ public class UserListController {
     }
 
 
+    /**
+     * Streams every user from the server in the current sort order, for showing all users on one page.
+     *
+     * @return PaginatedUsersResponse containing every user, with the number of users as the result set size
+     */
+    private PaginatedUsersResponse getAllUsersFromServer() {
+        StreamUsersRequest request = StreamUsersRequest.newBuilder()
+                .setOrderBy(sortOrder)
+                .setIsAscendingOrder(isAscending)
+                .build();
+        PaginatedUsersResponse.Builder response = PaginatedUsersResponse.newBuilder();
+        try {
+            userAccountsClientService.streamUsers(request, batch -> response.addAllUsers(batch.getUsersList()));
+        } catch (IOException e) {
+            // Adding the users to the response never throws, so this can't happen
+            throw new UncheckedIOException(e);
+        }
+        response.setPaginationResponseOptions(PaginationResponseOptions.newBuilder()
+                .setResultSetSize(response.getUsersCount())
+                .build());
+        return response.build();
+    }
+
+
     /**
      * To get the list of users for the specific page number
      *
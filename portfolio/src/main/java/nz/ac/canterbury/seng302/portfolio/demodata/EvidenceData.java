@@ -131,11 +131,10 @@ public class EvidenceData {
             evidenceRepository.save(evidence3);
             evidenceRepository.save(evidence4);
 
-            skillFrequencyService.updateAllSkillFrequenciesForUser(adminId);
-            skillFrequencyService.updateAllSkillFrequenciesForUser(steveId);
-
             evidenceRepository.save(steveEvidence);
             evidenceRepository.save(steveEvidence1);
+
+            skillFrequencyService.rebuildSkillCounts();
         } catch (Exception exception) {
             logger.error("Error occurred loading default evidence");
             logger.error(exception.getMessage());
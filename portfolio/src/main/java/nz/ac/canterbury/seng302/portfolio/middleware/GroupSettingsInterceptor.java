@@ -1,12 +1,11 @@
 package nz.ac.canterbury.seng302.portfolio.middleware;
 
-import nz.ac.canterbury.seng302.portfolio.controller.PrincipalAttributes;
+import nz.ac.canterbury.seng302.portfolio.authentication.PrincipalContext;
+import nz.ac.canterbury.seng302.portfolio.authentication.RoleEpochRegistry;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.AuthenticateClientService;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.GroupsClientService;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.UserAccountsClientService;
-import nz.ac.canterbury.seng302.shared.identityprovider.AuthState;
-import nz.ac.canterbury.seng302.shared.identityprovider.GetGroupDetailsRequest;
-import nz.ac.canterbury.seng302.shared.identityprovider.UserResponse;
+import nz.ac.canterbury.seng302.shared.identityprovider.GetGroupMembersRequest;
 import nz.ac.canterbury.seng302.shared.identityprovider.UserRole;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,13 +37,18 @@ public class GroupSettingsInterceptor implements HandlerInterceptor {
     @Autowired
     private GroupsClientService groupsClientService;
 
+    /** To check whether the roles in the user's token are current */
+    @Autowired
+    private RoleEpochRegistry roleEpochRegistry;
+
     /** To log when the checks are made */
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
 
     /**
      * Checks that a user has the teacher or course administrator role, or is a member of the group for which the id is
-     * given in the request.
+     * given in the request. The roles in the user's token are used unless they have changed since the token was
+     * issued, in which case the user's current roles are fetched.
      *
      * @param request  - The httpServlet request
      * @param response - The httpServlet response
@@ -60,21 +64,25 @@ public class GroupSettingsInterceptor implements HandlerInterceptor {
         logger.info("GroupSettingsIntercepter: GroupSettingsIntercepter has been called for this endpoint: {}", request.getRequestURI());
 
         try {
-            AuthState principal = authenticateClientService.checkAuthState();
-            UserResponse user = PrincipalAttributes.getUserFromPrincipal(principal, userAccountsClientService);
+            PrincipalContext principal = PrincipalContext.current();
+            if (principal == null) {
+                // The request wasn't authenticated by the JwtAuthenticationFilter, so ask the IdP who the user is
+                principal = PrincipalContext.of(authenticateClientService.checkAuthState());
+            }
+            int userId = principal.getUserId();
 
             int groupId = Integer.parseInt(request.getParameter("groupId"));
-            GetGroupDetailsRequest getGroupDetailsRequest = GetGroupDetailsRequest.newBuilder().setGroupId(groupId).build();
-            List<UserResponse> users = groupsClientService.getGroupDetails(getGroupDetailsRequest).getMembersList();
-
-            logger.info("Checking user {} is in group {}", user.getId(), groupId);
-            for (UserResponse userInGroup : users) {
-                if (userInGroup.getId() == user.getId()) {
-                    return true;
-                }
+            logger.info("Checking user {} is in group {}", userId, groupId);
+            // Only asks about this user, rather than getting every member of the group
+            GetGroupMembersRequest membershipRequest = GetGroupMembersRequest.newBuilder()
+                    .setGroupId(groupId)
+                    .addUserIds(userId)
+                    .build();
+            if (groupsClientService.getGroupMembers(membershipRequest).getMembersCount() > 0) {
+                return true;
             }
 
-            List<UserRole> usersRoles = user.getRolesList();
+            List<UserRole> usersRoles = principal.getCurrentRoles(roleEpochRegistry, userAccountsClientService);
             if (usersRoles.contains(UserRole.TEACHER) || usersRoles.contains(UserRole.COURSE_ADMINISTRATOR)) {
                 return true;
             } else {
@@ -76,6 +76,10 @@ public class MiddlewareConfig implements WebMvcConfigurer {
         pathsToInterceptForGroupSettings.add("/groups/edit/longName");
 
 
+        //Skills
+        pathsToInterceptForRoleBased.add("/skills/merge");
+
+
         //GitSettings
         pathsToInterceptForGroupSettings.add("/editGitRepo");
         pathsToInterceptForGroupSettings.add("/getRepo");
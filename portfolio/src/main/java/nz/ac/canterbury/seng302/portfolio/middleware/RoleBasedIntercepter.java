@@ -1,10 +1,9 @@
 package nz.ac.canterbury.seng302.portfolio.middleware;
 
-import nz.ac.canterbury.seng302.portfolio.controller.PrincipalAttributes;
+import nz.ac.canterbury.seng302.portfolio.authentication.PrincipalContext;
+import nz.ac.canterbury.seng302.portfolio.authentication.RoleEpochRegistry;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.AuthenticateClientService;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.UserAccountsClientService;
-import nz.ac.canterbury.seng302.shared.identityprovider.AuthState;
-import nz.ac.canterbury.seng302.shared.identityprovider.UserResponse;
 import nz.ac.canterbury.seng302.shared.identityprovider.UserRole;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,12 +30,17 @@ public class RoleBasedIntercepter implements HandlerInterceptor {
     @Autowired
     public UserAccountsClientService userAccountsClientService;
 
+    /** To check whether the roles in the user's token are current */
+    @Autowired
+    public RoleEpochRegistry roleEpochRegistry;
+
     /** To log when the checks are made */
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
 
     /**
-     * Checks that a user has the teacher or course administrator role
+     * Checks that a user has the teacher or course administrator role. The roles in the user's token are used unless
+     * they have changed since the token was issued, in which case the user's current roles are fetched.
      *
      * @param request  - The httpServlet request
      * @param response - The httpServlet response
@@ -51,10 +55,12 @@ public class RoleBasedIntercepter implements HandlerInterceptor {
             Object handler) throws Exception {
         logger.info("RoleBasedInterceptor: RoleBasedIntercepter has been called for this endpoint: {}", request.getRequestURI());
 
-        AuthState principal = authenticateClientService.checkAuthState();
-
-        UserResponse user = PrincipalAttributes.getUserFromPrincipal(principal, userAccountsClientService);
-        List<UserRole> usersRoles = user.getRolesList();
+        PrincipalContext principal = PrincipalContext.current();
+        if (principal == null) {
+            // The request wasn't authenticated by the JwtAuthenticationFilter, so ask the IdP who the user is
+            principal = PrincipalContext.of(authenticateClientService.checkAuthState());
+        }
+        List<UserRole> usersRoles = principal.getCurrentRoles(roleEpochRegistry, userAccountsClientService);
         if (usersRoles.contains(UserRole.TEACHER) || usersRoles.contains(UserRole.COURSE_ADMINISTRATOR)) {
             return true;
         } else {
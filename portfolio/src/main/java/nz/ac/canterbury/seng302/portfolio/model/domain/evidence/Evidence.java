@@ -2,8 +2,6 @@ package nz.ac.canterbury.seng302.portfolio.model.domain.evidence;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import nz.ac.canterbury.seng302.portfolio.CheckException;
-import org.hibernate.annotations.Fetch;
-import org.hibernate.annotations.FetchMode;
 
 import javax.persistence.*;
 import java.time.LocalDate;
@@ -14,6 +12,9 @@ import java.util.Set;
 
 /**
  * Represents an Evidence entity
+ *
+ * Its collections are loaded lazily, when the evidence is changed. Lists of evidence are read through the
+ * EvidenceReadRepository instead, which reads each collection for the whole list at once.
  */
 @Entity
 @Table(name = "evidence_table")
@@ -34,12 +35,11 @@ public class Evidence {
     private String description;
 
     /** A list of the web links associated with a piece of Evidence */
-    @OneToMany(mappedBy = "evidence", fetch = FetchType.EAGER, orphanRemoval = true, cascade = CascadeType.ALL)
+    @OneToMany(mappedBy = "evidence", orphanRemoval = true, cascade = CascadeType.ALL)
     private final Set<WebLink> webLinks = new HashSet<>();
 
     /** A list of the skills associated with the piece of Evidence */
     @ManyToMany
-    @Fetch(FetchMode.JOIN)
     @JoinTable(name = "evidence_skills",
             joinColumns = @JoinColumn(name = "evidenceId"),
             inverseJoinColumns = @JoinColumn(name = "skillId"))
@@ -47,14 +47,14 @@ public class Evidence {
 
     /** The set of categories, can have SERVICE, QUANTITATIVE and QUALITATIVE. Can be multiple */
     @Enumerated(EnumType.ORDINAL)
-    @ElementCollection(fetch = FetchType.EAGER)
+    @ElementCollection
     private final Set<Category> categories = new HashSet<>();
 
     /** A list of associates; people who also worked on this evidence.
      * Takes the form of their user IDs.
      * The owner is considered an associate.
      */
-    @ElementCollection(fetch = FetchType.EAGER)
+    @ElementCollection
     private final Set<Integer> associateIds = new HashSet<>();
 
     /**
@@ -62,7 +62,7 @@ public class Evidence {
      * evidence
      */
     @JsonIgnore
-    @ElementCollection(fetch = FetchType.EAGER)
+    @ElementCollection
     private final Set<Integer> archivedIds = new HashSet<>();
 
 
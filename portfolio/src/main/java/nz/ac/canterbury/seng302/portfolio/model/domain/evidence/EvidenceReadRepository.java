@@ -0,0 +1,92 @@
+package nz.ac.canterbury.seng302.portfolio.model.domain.evidence;
+
+import nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceResponseDTO;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository of the projection queries used to read lists of evidence.
+ *
+ * The details of each piece of evidence are read into an EvidenceResponseDTO, without loading the Evidence entity,
+ * then each of its collections is read for every piece of evidence in the list at once. Reading a list of evidence
+ * therefore takes the same few queries however long it is, and never joins two collections together.
+ */
+@Repository
+public interface EvidenceReadRepository extends org.springframework.data.repository.Repository<Evidence, Integer> {
+
+    /** Reads the details of a piece of evidence, without its collections. */
+    @Query("SELECT new nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceResponseDTO(" +
+           "e.id, e.userId, e.title, e.occurrenceDate, e.description) " +
+           "FROM Evidence e WHERE e.id = :evidenceId")
+    Optional<EvidenceResponseDTO> findResponseById(@Param("evidenceId") int evidenceId);
+
+    /** Reads the details of all the evidence for a user in order by date descending, without their collections. */
+    @Query("SELECT new nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceResponseDTO(" +
+           "e.id, e.userId, e.title, e.occurrenceDate, e.description) " +
+           "FROM Evidence e WHERE e.userId = :userId ORDER BY e.occurrenceDate DESC")
+    List<EvidenceResponseDTO> findResponsesByUserId(@Param("userId") int userId);
+
+    /** Reads the details of all the evidence of a user of a certain category, without their collections. */
+    @Query("SELECT new nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceResponseDTO(" +
+           "e.id, e.userId, e.title, e.occurrenceDate, e.description) " +
+           "FROM Evidence e JOIN e.categories c WHERE e.userId = :userId AND c = :category " +
+           "ORDER BY e.occurrenceDate DESC")
+    List<EvidenceResponseDTO> findResponsesByUserIdAndCategory(@Param("userId") int userId,
+                                                               @Param("category") Category category);
+
+    /** Reads the details of all the evidence of a user with a certain skill, without their collections. */
+    @Query("SELECT new nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceResponseDTO(" +
+           "e.id, e.userId, e.title, e.occurrenceDate, e.description) " +
+           "FROM Evidence e JOIN e.skills s WHERE e.userId = :userId AND s.id = :skillId " +
+           "ORDER BY e.occurrenceDate DESC")
+    List<EvidenceResponseDTO> findResponsesByUserIdAndSkillId(@Param("userId") int userId,
+                                                              @Param("skillId") int skillId);
+
+    /** Reads the details of all the evidence of a user with no skills, without their collections. */
+    @Query("SELECT new nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceResponseDTO(" +
+           "e.id, e.userId, e.title, e.occurrenceDate, e.description) " +
+           "FROM Evidence e WHERE e.userId = :userId AND e.skills IS EMPTY ORDER BY e.occurrenceDate DESC")
+    List<EvidenceResponseDTO> findResponsesByUserIdWithoutSkills(@Param("userId") int userId);
+
+
+    /**
+     * Reads the weblinks of several pieces of evidence at once.
+     *
+     * @param evidenceIds the ids of the pieces of evidence
+     * @return pairs of the id of a piece of evidence and one of its weblinks
+     */
+    @Query("SELECT w.evidence.id, w FROM WebLink w WHERE w.evidence.id IN :evidenceIds")
+    List<Object[]> findWebLinksByEvidenceIds(@Param("evidenceIds") Collection<Integer> evidenceIds);
+
+    /**
+     * Reads the skills of several pieces of evidence at once.
+     *
+     * @param evidenceIds the ids of the pieces of evidence
+     * @return pairs of the id of a piece of evidence and one of its skills
+     */
+    @Query("SELECT e.id, s FROM Evidence e JOIN e.skills s WHERE e.id IN :evidenceIds")
+    List<Object[]> findSkillsByEvidenceIds(@Param("evidenceIds") Collection<Integer> evidenceIds);
+
+    /**
+     * Reads the categories of several pieces of evidence at once.
+     *
+     * @param evidenceIds the ids of the pieces of evidence
+     * @return pairs of the id of a piece of evidence and one of its categories
+     */
+    @Query("SELECT e.id, c FROM Evidence e JOIN e.categories c WHERE e.id IN :evidenceIds")
+    List<Object[]> findCategoriesByEvidenceIds(@Param("evidenceIds") Collection<Integer> evidenceIds);
+
+    /**
+     * Reads the associate ids of several pieces of evidence at once.
+     *
+     * @param evidenceIds the ids of the pieces of evidence
+     * @return pairs of the id of a piece of evidence and the id of one of its associates
+     */
+    @Query("SELECT e.id, a FROM Evidence e JOIN e.associateIds a WHERE e.id IN :evidenceIds")
+    List<Object[]> findAssociateIdsByEvidenceIds(@Param("evidenceIds") Collection<Integer> evidenceIds);
+}
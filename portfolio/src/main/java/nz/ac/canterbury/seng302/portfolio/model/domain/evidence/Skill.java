@@ -20,11 +20,16 @@ public class Skill {
     @Column
     private String name;
 
+    /**
+     * How often the skill appears in the evidence of the user it is being shown for. This depends on the user, so
+     * isn't stored with the skill, and is set by the SkillFrequencyService before the skill is returned.
+     */
+    @Transient
     private double frequency;
 
     /** The set of evidence this skill is associated with */
     @JsonIgnore
-    @ManyToMany(mappedBy = "skills", fetch = FetchType.EAGER)
+    @ManyToMany(mappedBy = "skills")
     private final Set<Evidence> evidence = new HashSet<>();
 
 
@@ -79,10 +84,6 @@ public class Skill {
         return frequency;
     }
 
-    public void removeEvidence(Evidence evidenceToRemove) {
-        evidence.remove(evidenceToRemove);
-    }
-
     /**
      * For testing returns the expected json string of the object.
      *
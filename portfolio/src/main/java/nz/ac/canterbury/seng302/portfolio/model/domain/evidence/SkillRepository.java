@@ -1,5 +1,6 @@
 package nz.ac.canterbury.seng302.portfolio.model.domain.evidence;
 
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
@@ -65,4 +66,41 @@ public interface SkillRepository extends CrudRepository<Skill, Integer> {
      */
     @Query
     Optional<Skill> findDistinctByEvidenceUserIdAndId(int userId, Integer id);
+
+
+    /**
+     * Counts the pieces of evidence with a skill, without loading them.
+     *
+     * @param skillId The id of the skill
+     * @return The number of pieces of evidence with the skill
+     */
+    @Query("SELECT COUNT(e) FROM Evidence e JOIN e.skills s WHERE s.id = :skillId")
+    long countEvidenceWithSkill(@Param("skillId") int skillId);
+
+
+    /**
+     * Gives the evidence with one skill another skill instead, in one statement. Evidence that already has the other
+     * skill is left with both, so its extra skill can be removed with removeSkillFromAllEvidence.
+     *
+     * @param fromSkillId The id of the skill the evidence has
+     * @param toSkillId The id of the skill to give the evidence instead
+     * @return The number of pieces of evidence given the other skill
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE evidence_skills SET skill_id = :toSkillId WHERE skill_id = :fromSkillId " +
+                   "AND evidence_id NOT IN (SELECT evidence_id FROM " +
+                   "(SELECT evidence_id FROM evidence_skills WHERE skill_id = :toSkillId) AS tagged)",
+           nativeQuery = true)
+    int moveSkillToOtherSkill(@Param("fromSkillId") int fromSkillId, @Param("toSkillId") int toSkillId);
+
+
+    /**
+     * Removes a skill from every piece of evidence with it, in one statement.
+     *
+     * @param skillId The id of the skill
+     * @return The number of pieces of evidence the skill was removed from
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "DELETE FROM evidence_skills WHERE skill_id = :skillId", nativeQuery = true)
+    int removeSkillFromAllEvidence(@Param("skillId") int skillId);
 }
@@ -0,0 +1,59 @@
+package nz.ac.canterbury.seng302.portfolio.model.domain.evidence;
+
+import javax.persistence.*;
+
+/**
+ * Represents how many pieces of a user's evidence have a skill. Kept up to date as evidence is saved, so the skill's
+ * frequency for the user can be worked out without loading any evidence.
+ */
+@Entity
+@Table(name = "user_skill_counts",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"userId", "skillId"}))
+public class UserSkillCount {
+
+    /** Ids are allocated in blocks, so the counts for a batch of evidence are inserted in JDBC batches */
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_skill_count_ids")
+    @SequenceGenerator(name = "user_skill_count_ids", sequenceName = "user_skill_counts_seq", allocationSize = 50)
+    private int id;
+
+    private int userId;
+
+    private int skillId;
+
+    /** The number of the user's pieces of evidence with the skill */
+    private int evidenceCount;
+
+
+    /**
+     * Default JPA UserSkillCount constructor
+     */
+    protected UserSkillCount() {}
+
+
+    /**
+     * Constructs a count of a user's evidence with a skill.
+     *
+     * @param userId the id of the user who owns the evidence
+     * @param skillId the id of the skill
+     * @param evidenceCount the number of the user's pieces of evidence with the skill
+     */
+    public UserSkillCount(int userId, int skillId, long evidenceCount) {
+        this.userId = userId;
+        this.skillId = skillId;
+        this.evidenceCount = Math.toIntExact(evidenceCount);
+    }
+
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public int getSkillId() {
+        return skillId;
+    }
+
+    public int getEvidenceCount() {
+        return evidenceCount;
+    }
+}
@@ -0,0 +1,134 @@
+package nz.ac.canterbury.seng302.portfolio.model.domain.evidence;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository class for handling all the queries related to UserSkillCount objects.
+ */
+@Repository
+public interface UserSkillCountRepository extends CrudRepository<UserSkillCount, Integer> {
+
+    /** Returns the counts of all the skills in a user's evidence. */
+    @Query
+    List<UserSkillCount> findAllByUserId(int userId);
+
+    /** Finds the count of a skill in a user's evidence, if any of their evidence has it. */
+    @Query
+    Optional<UserSkillCount> findByUserIdAndSkillId(int userId, int skillId);
+
+    /** Returns which of the given skills the user already has a count of, without loading the counts. */
+    @Query("SELECT c.skillId FROM UserSkillCount c WHERE c.userId = :userId AND c.skillId IN :skillIds")
+    List<Integer> findCountedSkillIds(@Param("userId") int userId, @Param("skillIds") Collection<Integer> skillIds);
+
+
+    /**
+     * Changes the count of a skill in a user's evidence in place, without loading it.
+     *
+     * @param userId the id of the user
+     * @param skillId the id of the skill
+     * @param change the number of pieces of evidence to add to the count, negative when evidence loses the skill
+     * @return the number of counts changed, 0 if the user has no count for the skill yet
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE UserSkillCount c SET c.evidenceCount = c.evidenceCount + :change " +
+           "WHERE c.userId = :userId AND c.skillId = :skillId")
+    int changeCount(@Param("userId") int userId, @Param("skillId") int skillId, @Param("change") int change);
+
+
+    /**
+     * Changes the counts of several skills in a user's evidence in place with one statement, without loading them.
+     *
+     * @param userId the id of the user
+     * @param skillIds the ids of the skills
+     * @param change the number of pieces of evidence to add to each count
+     * @return the number of counts changed, which leaves out skills the user has no count for yet
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE UserSkillCount c SET c.evidenceCount = c.evidenceCount + :change " +
+           "WHERE c.userId = :userId AND c.skillId IN :skillIds")
+    int changeCounts(@Param("userId") int userId, @Param("skillIds") Collection<Integer> skillIds,
+                     @Param("change") int change);
+
+
+    /**
+     * Deletes the count of a skill in a user's evidence once none of their evidence has it.
+     *
+     * @param userId the id of the user
+     * @param skillId the id of the skill
+     * @return the number of counts deleted
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM UserSkillCount c WHERE c.userId = :userId AND c.skillId = :skillId AND c.evidenceCount <= 0")
+    int deleteIfEmpty(@Param("userId") int userId, @Param("skillId") int skillId);
+
+
+    /**
+     * Adds the evidence with one skill to each user's count of another skill, for users who have a count of both.
+     * Evidence with both skills is already counted, so only evidence without the other skill is added. Must run
+     * before the evidence is given the other skill.
+     *
+     * @param fromSkillId the id of the skill being merged
+     * @param toSkillId the id of the skill it is merged into
+     * @return the number of counts changed
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE user_skill_counts c SET evidence_count = evidence_count + (" +
+                   "SELECT COUNT(*) FROM evidence_table e JOIN evidence_skills es ON es.evidence_id = e.id " +
+                   "WHERE e.user_id = c.user_id AND es.skill_id = :fromSkillId " +
+                   "AND e.id NOT IN (SELECT evidence_id FROM evidence_skills WHERE skill_id = :toSkillId)) " +
+                   "WHERE c.skill_id = :toSkillId",
+           nativeQuery = true)
+    int addMergedCounts(@Param("fromSkillId") int fromSkillId, @Param("toSkillId") int toSkillId);
+
+
+    /**
+     * Makes the counts of one skill counts of another skill, for users who have no count of the other skill.
+     *
+     * @param fromSkillId the id of the skill being merged
+     * @param toSkillId the id of the skill it is merged into
+     * @return the number of counts moved
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE user_skill_counts SET skill_id = :toSkillId WHERE skill_id = :fromSkillId " +
+                   "AND user_id NOT IN (SELECT user_id FROM " +
+                   "(SELECT user_id FROM user_skill_counts WHERE skill_id = :toSkillId) AS counted)",
+           nativeQuery = true)
+    int moveCounts(@Param("fromSkillId") int fromSkillId, @Param("toSkillId") int toSkillId);
+
+
+    /**
+     * Deletes every user's count of a skill.
+     *
+     * @param skillId the id of the skill
+     * @return the number of counts deleted
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM UserSkillCount c WHERE c.skillId = :skillId")
+    int deleteAllBySkillId(@Param("skillId") int skillId);
+
+
+    /**
+     * Deletes every count with one statement, rather than loading and deleting them one at a time.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM UserSkillCount c")
+    void deleteAllCounts();
+
+
+    /**
+     * Counts every skill in every user's evidence from the evidence itself, for rebuilding the counts.
+     *
+     * @return a new, unsaved count for each user and skill in their evidence
+     */
+    @Query("SELECT new nz.ac.canterbury.seng302.portfolio.model.domain.evidence.UserSkillCount(e.userId, s.id, COUNT(e)) " +
+           "FROM Evidence e JOIN e.skills s GROUP BY e.userId, s.id")
+    List<UserSkillCount> countFromEvidence();
+}
@@ -25,7 +25,7 @@ public class WebLink {
     @Column(length = MAXURLLENGTH + 1)
     private String url;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JsonIgnore
     @JoinColumn(name = "evidence")
     private Evidence evidence;
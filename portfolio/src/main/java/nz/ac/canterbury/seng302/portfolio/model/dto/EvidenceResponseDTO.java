@@ -7,6 +7,7 @@ import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.WebLink;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -84,6 +85,7 @@ public class EvidenceResponseDTO {
      * @param evidence The evidence you are converting from
      */
     public EvidenceResponseDTO(Evidence evidence) {
+        this.id = evidence.getId();
         this.userId = evidence.getUserId();
         this.title = evidence.getTitle();
         this.date = evidence.getDate();
@@ -95,6 +97,29 @@ public class EvidenceResponseDTO {
         this.associates = new ArrayList<>();
     }
 
+    /**
+     * Constructor used by the projection queries of the EvidenceReadRepository, which read the details of the evidence
+     * without loading it. The collections start empty and are filled by the EvidenceReadService.
+     *
+     * @param id          The ID of the evidence
+     * @param userId      The ID of the user who owns the evidence
+     * @param title       The title of the evidence
+     * @param date        The date the evidence occurred
+     * @param description The description of the evidence
+     */
+    public EvidenceResponseDTO(int id, int userId, String title, LocalDate date, String description) {
+        this.id = id;
+        this.userId = userId;
+        this.title = title;
+        this.date = date;
+        this.description = description;
+        this.webLinks = new HashSet<>();
+        this.skills = new HashSet<>();
+        this.categories = new HashSet<>();
+        this.associateIds = new ArrayList<>();
+        this.associates = new ArrayList<>();
+    }
+
     /**
      * This method is used to help with testing. It returns the expected JSON string created for this object.
      *
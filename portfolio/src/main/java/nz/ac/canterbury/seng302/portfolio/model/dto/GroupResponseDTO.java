@@ -1,10 +1,9 @@
 package nz.ac.canterbury.seng302.portfolio.model.dto;
 
-import nz.ac.canterbury.seng302.shared.identityprovider.GroupDetailsResponse;
+import nz.ac.canterbury.seng302.shared.identityprovider.GroupMembersResponse;
 import nz.ac.canterbury.seng302.shared.identityprovider.UserResponse;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 
 public class GroupResponseDTO {
@@ -21,18 +20,38 @@ public class GroupResponseDTO {
      */
     private final String longName;
 
+    /**
+     * The page of the group's members being displayed.
+     */
     private final List<UserDTO> userList = new ArrayList<>();
 
+    /**
+     * The number of members in the whole group.
+     */
+    private final int membersNumber;
+
+    /**
+     * Whether the user viewing the group is a member of it.
+     */
+    private final boolean isMember;
+
 
-    public GroupResponseDTO(GroupDetailsResponse groupDetailsResponse) {
-        this.id = groupDetailsResponse.getGroupId();
-        this.shortName = groupDetailsResponse.getShortName();
-        this.longName = groupDetailsResponse.getLongName();
+    /**
+     * Creates the DTO from a page of the group's members.
+     *
+     * @param groupMembersResponse The group's names and the page of its members
+     * @param isMember Whether the user viewing the group is a member of it
+     */
+    public GroupResponseDTO(GroupMembersResponse groupMembersResponse, boolean isMember) {
+        this.id = groupMembersResponse.getGroupId();
+        this.shortName = groupMembersResponse.getShortName();
+        this.longName = groupMembersResponse.getLongName();
+        this.membersNumber = groupMembersResponse.getPaginationResponseOptions().getResultSetSize();
+        this.isMember = isMember;
 
-        for (UserResponse userResponse : groupDetailsResponse.getMembersList()) {
+        for (UserResponse userResponse : groupMembersResponse.getMembersList()) {
             userList.add(new UserDTO(userResponse));
         }
-        userList.sort(Comparator.comparingInt(UserDTO::getId));
     }
 
     public Integer getId() {
@@ -50,4 +69,12 @@ public class GroupResponseDTO {
     public List<UserDTO> getUserList() {
         return userList;
     }
+
+    public int getMembersNumber() {
+        return membersNumber;
+    }
+
+    public boolean getIsMember() {
+        return isMember;
+    }
 }
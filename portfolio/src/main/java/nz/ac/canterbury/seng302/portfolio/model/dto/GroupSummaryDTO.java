@@ -0,0 +1,50 @@
+package nz.ac.canterbury.seng302.portfolio.model.dto;
+
+import nz.ac.canterbury.seng302.shared.identityprovider.GroupSummaryResponse;
+
+/**
+ * A group as shown in the group list, with its member count but without its members.
+ */
+public class GroupSummaryDTO {
+
+    private final Integer id;
+
+    /**
+     * The group's short name.
+     */
+    private final String shortName;
+
+    /**
+     * The group's long name.
+     */
+    private final String longName;
+
+    /**
+     * The number of users in the group.
+     */
+    private final Integer membersNumber;
+
+
+    public GroupSummaryDTO(GroupSummaryResponse groupSummaryResponse) {
+        this.id = groupSummaryResponse.getGroupId();
+        this.shortName = groupSummaryResponse.getShortName();
+        this.longName = groupSummaryResponse.getLongName();
+        this.membersNumber = groupSummaryResponse.getMembersNumber();
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getShortName() {
+        return shortName;
+    }
+
+    public String getLongName() {
+        return longName;
+    }
+
+    public Integer getMembersNumber() {
+        return membersNumber;
+    }
+}
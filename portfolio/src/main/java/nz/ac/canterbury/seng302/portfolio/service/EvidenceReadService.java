@@ -0,0 +1,133 @@
+package nz.ac.canterbury.seng302.portfolio.service;
+
+import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Category;
+import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.EvidenceReadRepository;
+import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Skill;
+import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.WebLink;
+import nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceResponseDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+
+/**
+ * The service bean responsible for reading evidence to be shown.
+ *
+ * Evidence is read with projection queries rather than by loading the Evidence entities, so reading a list of evidence
+ * doesn't load the rest of the evidence that shares its skills. The details of the evidence are read first, then
+ * each collection is read once for the whole list.
+ */
+@Service
+public class EvidenceReadService {
+
+    /** Holds the projection queries for reading evidence */
+    private final EvidenceReadRepository evidenceReadRepository;
+
+
+    /**
+     * Autowired constructor
+     * @param evidenceReadRepository Holds the projection queries for reading evidence
+     */
+    @Autowired
+    public EvidenceReadService(EvidenceReadRepository evidenceReadRepository) {
+        this.evidenceReadRepository = evidenceReadRepository;
+    }
+
+
+    /**
+     * Reads a piece of evidence.
+     *
+     * @param evidenceId The id of the piece of evidence
+     * @return The piece of evidence with its collections, if it exists
+     */
+    @Transactional(readOnly = true)
+    public Optional<EvidenceResponseDTO> getEvidence(int evidenceId) {
+        Optional<EvidenceResponseDTO> evidence = evidenceReadRepository.findResponseById(evidenceId);
+        evidence.ifPresent(piece -> addCollections(List.of(piece)));
+        return evidence;
+    }
+
+
+    /**
+     * Reads all the evidence for a user, in order by date descending.
+     *
+     * @param userId The id of the user
+     * @return The user's evidence with its collections
+     */
+    @Transactional(readOnly = true)
+    public List<EvidenceResponseDTO> getEvidenceForUser(int userId) {
+        return addCollections(evidenceReadRepository.findResponsesByUserId(userId));
+    }
+
+
+    /**
+     * Reads all the evidence of a user of a certain category, in order by date descending.
+     *
+     * @param userId The id of the user
+     * @param category The category of the evidence
+     * @return The user's evidence of the category with its collections
+     */
+    @Transactional(readOnly = true)
+    public List<EvidenceResponseDTO> getEvidenceForUserWithCategory(int userId, Category category) {
+        return addCollections(evidenceReadRepository.findResponsesByUserIdAndCategory(userId, category));
+    }
+
+
+    /**
+     * Reads all the evidence of a user with a certain skill, in order by date descending.
+     *
+     * @param userId The id of the user
+     * @param skill The skill of the evidence
+     * @return The user's evidence with the skill with its collections
+     */
+    @Transactional(readOnly = true)
+    public List<EvidenceResponseDTO> getEvidenceForUserWithSkill(int userId, Skill skill) {
+        return addCollections(evidenceReadRepository.findResponsesByUserIdAndSkillId(userId, skill.getId()));
+    }
+
+
+    /**
+     * Reads all the evidence of a user with no skills, in order by date descending.
+     *
+     * @param userId The id of the user
+     * @return The user's evidence with no skills with its collections
+     */
+    @Transactional(readOnly = true)
+    public List<EvidenceResponseDTO> getEvidenceForUserWithoutSkills(int userId) {
+        return addCollections(evidenceReadRepository.findResponsesByUserIdWithoutSkills(userId));
+    }
+
+
+    /**
+     * Reads the weblinks, skills, categories and associate ids of a list of evidence, with one query for each.
+     *
+     * @param evidence The evidence, without its collections
+     * @return The same evidence, with its collections
+     */
+    private List<EvidenceResponseDTO> addCollections(List<EvidenceResponseDTO> evidence) {
+        if (evidence.isEmpty()) {
+            return evidence;
+        }
+        Map<Integer, EvidenceResponseDTO> evidenceById = new HashMap<>();
+        for (EvidenceResponseDTO piece : evidence) {
+            evidenceById.put(piece.getId(), piece);
+        }
+        Set<Integer> evidenceIds = evidenceById.keySet();
+
+        for (Object[] row : evidenceReadRepository.findWebLinksByEvidenceIds(evidenceIds)) {
+            evidenceById.get((Integer) row[0]).getWebLinks().add((WebLink) row[1]);
+        }
+        for (Object[] row : evidenceReadRepository.findSkillsByEvidenceIds(evidenceIds)) {
+            evidenceById.get((Integer) row[0]).getSkills().add((Skill) row[1]);
+        }
+        for (Object[] row : evidenceReadRepository.findCategoriesByEvidenceIds(evidenceIds)) {
+            evidenceById.get((Integer) row[0]).getCategories().add((Category) row[1]);
+        }
+        for (Object[] row : evidenceReadRepository.findAssociateIdsByEvidenceIds(evidenceIds)) {
+            evidenceById.get((Integer) row[0]).getAssociateIds().add((Integer) row[1]);
+        }
+        return evidence;
+    }
+}
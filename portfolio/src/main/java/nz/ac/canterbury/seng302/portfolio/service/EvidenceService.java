@@ -9,12 +9,12 @@ import nz.ac.canterbury.seng302.portfolio.model.domain.projects.ProjectRepositor
 import nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceDTO;
 import nz.ac.canterbury.seng302.portfolio.model.dto.WebLinkDTO;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.UserAccountsClientService;
-import nz.ac.canterbury.seng302.shared.identityprovider.GetUserByIdRequest;
 import nz.ac.canterbury.seng302.shared.identityprovider.UserResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.net.MalformedURLException;
 import java.time.LocalDate;
@@ -93,6 +93,7 @@ public class EvidenceService {
      * @throws MalformedURLException When one of the web links has a malformed url
      * @throws CheckException when one or more variables fail the validation
      */
+    @Transactional
     public Evidence addEvidence(Authentication principal,
                                 EvidenceDTO evidenceDTO) throws MalformedURLException, CheckException {
         logger.info("CREATING EVIDENCE - Attempting to create evidence with title: {}", evidenceDTO.getTitle());
@@ -119,6 +120,7 @@ public class EvidenceService {
      * @throws MalformedURLException when one of the web links has a malformed url
      * @throws CheckException when one or more variables fail the validation
      */
+    @Transactional
     public Evidence editEvidence(Authentication principal,
                                  EvidenceDTO evidenceDTO) throws MalformedURLException, CheckException, DateTimeParseException {
         logger.info("EDITING EVIDENCE - Attempting to edit evidence with title: {}", evidenceDTO.getTitle());
@@ -186,20 +188,32 @@ public class EvidenceService {
     /**
      * Creates a piece of evidence for each of the users in the given list.
      *
+     * The associates, weblinks and skills are checked once, and the skills are found or created once, for all the
+     * users. Each piece of evidence is then built with its weblinks and skills and saved without being written, so
+     * the pieces are written together in JDBC batches when the skill counts are changed afterwards.
+     *
      * @param evidenceDTO the evidenceDto with all the attributes of the evidence to be made.
      * @param userIds the userIds of the users that are getting the new evidence.
      * @return The last piece of evidence created.
      * @throws MalformedURLException when a weblink is invalid.
      */
     public Evidence createEvidenceForUsers(EvidenceDTO evidenceDTO, List<Integer> userIds) throws MalformedURLException, CheckException  {
-        Evidence ownerEvidence = null;
+        Set<Integer> usersToCheck = new LinkedHashSet<>(userIds);
+        usersToCheck.addAll(evidenceDTO.getAssociateIds());
+        checkAssociateIds(usersToCheck);
+        checkWeblinks(evidenceDTO.getWebLinks());
+        checkSkillNames(evidenceDTO.getSkills());
+        List<Skill> skills = findOrCreateSkills(evidenceDTO.getSkills());
+
+        List<Evidence> createdEvidence = new ArrayList<>();
         for (Integer ownersId : userIds) {
-            checkAssociateId(ownersId);
-            ownerEvidence = addEvidenceForUser(ownersId, evidenceDTO);
-            addWeblinks(ownerEvidence, evidenceDTO.getWebLinks());
-            addSkills(ownerEvidence, evidenceDTO.getSkills());
+            createdEvidence.add(addEvidenceForUser(ownersId, evidenceDTO, skills));
+        }
+        // Counting the skills writes the evidence, so it is done once every piece of evidence has been saved
+        for (Evidence evidence : createdEvidence) {
+            skillFrequencyService.addEvidenceToSkills(evidence.getUserId(), evidence.getSkills());
         }
-        return ownerEvidence;
+        return createdEvidence.isEmpty() ? null : createdEvidence.get(createdEvidence.size() - 1);
     }
 
 
@@ -222,9 +236,13 @@ public class EvidenceService {
 
         addCategoriesToEvidence(originalEvidence, evidenceDTO.getCategories());
 
+        for (Skill skill : originalEvidence.getSkills()) {
+            skillFrequencyService.removeEvidenceFromSkill(originalEvidence.getUserId(), skill);
+        }
         originalEvidence.clearSkills();
         addSkills(originalEvidence, evidenceDTO.getSkills());
 
+        checkWeblinks(evidenceDTO.getWebLinks());
         originalEvidence.clearWeblinks();
         addWeblinks(originalEvidence, evidenceDTO.getWebLinks());
 
@@ -237,23 +255,29 @@ public class EvidenceService {
 
 
     /**
-     * Helper method that adds a piece of evidence to the specified user id.
+     * Helper method that adds a piece of evidence to the specified user id. The weblinks are saved along with the
+     * evidence, so the evidence is only saved once.
      *
      * @param userId the user to have the evidence added for.
      * @param evidenceDTO an evidence dto which holds the attributes of the new evidence
+     * @param skills the saved skills to give the evidence
      * @return The created piece of evidence
      */
-    private Evidence addEvidenceForUser(int userId, EvidenceDTO evidenceDTO) {
+    private Evidence addEvidenceForUser(int userId, EvidenceDTO evidenceDTO, List<Skill> skills) {
         logger.info("CREATING EVIDENCE - attempting to create evidence for user: {}", userId);
         Evidence evidence = new Evidence(userId, evidenceDTO.getTitle(), LocalDate.parse(evidenceDTO.getDate()), evidenceDTO.getDescription());
 
         addCategoriesToEvidence(evidence, evidenceDTO.getCategories());
         logger.info("Adding associate IDs: {}", evidenceDTO.getAssociateIds());
         for (Integer associate : evidenceDTO.getAssociateIds()) {
-            checkAssociateId(associate);
             evidence.addAssociateId(associate);
         }
-        return evidenceRepository.save(evidence);
+        addWeblinks(evidence, evidenceDTO.getWebLinks());
+        for (Skill skill : skills) {
+            evidence.addSkill(skill);
+        }
+        evidenceRepository.save(evidence);
+        return evidence;
     }
 
 
@@ -278,18 +302,60 @@ public class EvidenceService {
     /**
      * Add a list of skills to a given piece of evidence. If the skills name is 'No Skills' it is ignored
      *
+     * The user's count of each skill the evidence didn't already have is increased. When a skill is renamed to the
+     * name of another skill, the other skill is merged into the renamed skill.
+     *
      * @param evidence - The  piece of evidence
      * @param skills   - The list of the skills in string form
      */
     public void addSkills(Evidence evidence, List<Skill> skills) throws CheckException {
-        for (Skill skillInfo: skills) {
-            try {
-                regexService.checkInput(RegexPattern.GENERAL_UNICODE, skillInfo.getName(), 1, 30, "Skill name");
-            } catch (CheckException e) {
-                removeWeblinks(evidence);
-                evidenceRepository.delete(evidence);
-                throw new CheckException(e.getMessage());
+        try {
+            checkSkillNames(skills);
+        } catch (CheckException e) {
+            removeWeblinks(evidence);
+            evidenceRepository.delete(evidence);
+            throw new CheckException(e.getMessage());
+        }
+        Set<Integer> countedSkillIds = getSkillIds(evidence);
+        for (Skill skill : findOrCreateSkills(skills)) {
+            evidence.addSkill(skill);
+        }
+        List<Skill> newSkills = new ArrayList<>();
+        for (Skill skill : evidence.getSkills()) {
+            if (countedSkillIds.add(skill.getId())) {
+                newSkills.add(skill);
             }
+        }
+        skillFrequencyService.addEvidenceToSkills(evidence.getUserId(), newSkills);
+        evidenceRepository.save(evidence);
+    }
+
+
+    /**
+     * Checks the names of a list of skills, before any of them are saved.
+     *
+     * @param skills the skills to check
+     * @throws CheckException if one of the names is invalid
+     */
+    private void checkSkillNames(List<Skill> skills) throws CheckException {
+        for (Skill skillInfo : skills) {
+            regexService.checkInput(RegexPattern.GENERAL_UNICODE, skillInfo.getName(), 1, 30, "Skill name");
+        }
+    }
+
+
+    /**
+     * Finds the saved skill for each skill in a list, creating the skills without an id. If the skills name is
+     * 'No Skill' it is ignored. When a skill is renamed to the name of another skill, the other skill is merged into
+     * the renamed skill.
+     *
+     * @param skills the skills, as given by the user
+     * @return the saved skills
+     * @throws CheckException if one of the skill ids doesn't exist
+     */
+    private List<Skill> findOrCreateSkills(List<Skill> skills) throws CheckException {
+        List<Skill> savedSkills = new ArrayList<>();
+        for (Skill skillInfo: skills) {
             Skill savedSkill;
             if (skillInfo.getId() == null) {
                 if (skillInfo.getName().equalsIgnoreCase("No Skill")) {
@@ -305,15 +371,10 @@ public class EvidenceService {
                         Optional<Skill> optionalSkillWithSameName = skillRepository.findByNameIgnoreCase(skillInfo.getName());
                         savedSkill.setName(skillInfo.getName());
                         skillRepository.save(savedSkill);
-                        if (optionalSkillWithSameName.isPresent()) {
-                            Skill skillWithSameName = optionalSkillWithSameName.get();
-                            Set<Evidence> evidenceList = skillWithSameName.getEvidence();
-                            for (Evidence evidenceToChange : evidenceList) {
-                                evidenceToChange.removeSkill(skillWithSameName);
-                                evidenceToChange.addSkill(savedSkill);
-                                evidenceRepository.save(evidenceToChange);
-                            }
-                            skillRepository.delete(skillWithSameName);
+                        // Only a different skill is merged, not this skill when just the case of its name changed
+                        if (optionalSkillWithSameName.isPresent()
+                                && !Objects.equals(optionalSkillWithSameName.get().getId(), savedSkill.getId())) {
+                            mergeSkills(savedSkill, optionalSkillWithSameName.get());
                         }
                     }
                 } else {
@@ -321,27 +382,73 @@ public class EvidenceService {
                 }
 
             }
-            evidence.addSkill(savedSkill);
+            savedSkills.add(savedSkill);
         }
-        skillFrequencyService.updateAllSkillFrequenciesForUser(evidence.getUserId());
-        evidenceRepository.save(evidence);
+        return savedSkills;
     }
 
+
     /**
-     * Takes a piece of evidence and deletes all the skills which aren't in any other evidence
+     * Merges one skill into another. Every piece of evidence with the merged skill is given the other skill instead,
+     * and the merged skill is deleted. The evidence is changed with a few bulk statements, rather than being loaded and
+     * saved one piece at a time, so merging a popular skill costs the same as merging a rare one.
+     *
+     * @param skill the skill to keep
+     * @param mergedSkill the skill to merge into it, which is deleted
+     */
+    @Transactional
+    public void mergeSkills(Skill skill, Skill mergedSkill) {
+        logger.info("Merging skill {} into skill {}", mergedSkill.getId(), skill.getId());
+        // The counts are merged first, as they depend on which evidence has which skill before the merge
+        skillFrequencyService.mergeSkillCounts(mergedSkill, skill);
+        skillRepository.moveSkillToOtherSkill(mergedSkill.getId(), skill.getId());
+        skillRepository.removeSkillFromAllEvidence(mergedSkill.getId());
+        skillRepository.delete(mergedSkill);
+    }
+
+
+    /**
+     * Gets the ids of the skills a piece of evidence has.
      *
      * @param evidence the piece of evidence
+     * @return the ids of its skills
+     */
+    private static Set<Integer> getSkillIds(Evidence evidence) {
+        Set<Integer> skillIds = new HashSet<>();
+        for (Skill skill : evidence.getSkills()) {
+            skillIds.add(skill.getId());
+        }
+        return skillIds;
+    }
+
+
+    /**
+     * Deletes a piece of evidence, along with any of its skills that no other evidence has, and stops counting it
+     * towards the frequency of its skills.
+     *
+     * @param evidence the piece of evidence to delete
+     */
+    @Transactional
+    public void deleteEvidence(Evidence evidence) {
+        for (Skill skill : evidence.getSkills()) {
+            skillFrequencyService.removeEvidenceFromSkill(evidence.getUserId(), skill);
+        }
+        evidenceRepository.delete(evidence);
+        deleteOrphanSkills(evidence);
+    }
+
+    /**
+     * Takes a piece of evidence that has been deleted and deletes all its skills which aren't in any other evidence.
+     * The other evidence with each skill is counted rather than loaded.
+     *
+     * @param evidence the deleted piece of evidence
      */
     public void deleteOrphanSkills(Evidence evidence) {
         for (Skill skill : evidence.getSkills()) {
-            if (skill.getEvidence().size() == 1) {
+            if (skillRepository.countEvidenceWithSkill(skill.getId()) == 0) {
                 logger.info("DELETE SKILL {}", skill.getName());
                 skillRepository.delete(skill);
                 logger.info("DELETED SKILL {}", skill.getName());
-            } else {
-                skill.removeEvidence(evidence);
-                skillRepository.save(skill);
-
             }
         }
     }
@@ -359,22 +466,29 @@ public class EvidenceService {
 
 
     /**
-     * Helper method to add a list of weblinks to a piece of evidence
+     * Helper method to check the names and urls of a list of weblinks
      *
-     * @param evidence The evidence to add the weblinks to
-     * @param webLinks The list of weblinks to add, in their raw DTO form
-     * @throws MalformedURLException if a weblink has an invalid URL
+     * @param webLinks The list of weblinks to check, in their raw DTO form
+     * @throws CheckException if a weblink has an invalid name or URL
      */
-    private void addWeblinks(Evidence evidence, List<WebLinkDTO> webLinks) throws CheckException {
+    private void checkWeblinks(List<WebLinkDTO> webLinks) throws CheckException {
         for (WebLinkDTO webLinkDTO : webLinks) {
-            // This requires the evidence object to be saved, since it needs to refer to it
             regexService.checkInput(RegexPattern.GENERAL_UNICODE, webLinkDTO.getName(), 1, WebLink.MAXNAMELENGTH, "Weblink name");
             regexService.checkInput(RegexPattern.WEBLINK, webLinkDTO.getUrl(), 1, WebLink.MAXURLLENGTH, "Weblink url");
+        }
+    }
+
 
-            WebLink webLink = new WebLink(evidence, webLinkDTO);
-            webLinkRepository.save(webLink);
-            evidence.addWebLink(webLink);
-            evidenceRepository.save(evidence);
+    /**
+     * Helper method to add a list of checked weblinks to a piece of evidence. The weblinks are saved when the evidence
+     * is, as saving the evidence cascades to its weblinks.
+     *
+     * @param evidence The evidence to add the weblinks to
+     * @param webLinks The list of weblinks to add, in their raw DTO form
+     */
+    private void addWeblinks(Evidence evidence, List<WebLinkDTO> webLinks) {
+        for (WebLinkDTO webLinkDTO : webLinks) {
+            evidence.addWebLink(new WebLink(evidence, webLinkDTO));
         }
     }
 
@@ -397,18 +511,19 @@ public class EvidenceService {
 
 
     /**
-     * Helper method that checks if a user exists.
-     * Tries to find the user with the specific ID.
-     * If it can't find it, throw an exception.
+     * Helper method that checks if users exist.
+     * Tries to find all the users with the given IDs in one request.
+     * If it can't find one of them, throw an exception.
      *
-     * @param associateId the ID of the associate/user you want to find
+     * @param associateIds the IDs of the associates/users you want to find
      */
-    private void checkAssociateId(int associateId) {
-        GetUserByIdRequest request = GetUserByIdRequest.newBuilder().setId(associateId).build();
-        UserResponse associate = userAccountsClientService.getUserAccountById(request);
-        if (associate.getId() < 1) {
-            logger.error("CREATING EVIDENCE: Bad id: {}", associateId);
-            throw new CheckException("Could not find associated user with ID: " + associateId);
+    private void checkAssociateIds(Collection<Integer> associateIds) {
+        Map<Integer, UserResponse> associates = userAccountsClientService.getUsersByIds(associateIds);
+        for (Integer associateId : associateIds) {
+            if (associateId < 1 || !associates.containsKey(associateId)) {
+                logger.error("CREATING EVIDENCE: Bad id: {}", associateId);
+                throw new CheckException("Could not find associated user with ID: " + associateId);
+            }
         }
     }
 
@@ -1,6 +1,6 @@
 package nz.ac.canterbury.seng302.portfolio.service;
 
-import nz.ac.canterbury.seng302.portfolio.model.dto.GroupResponseDTO;
+import nz.ac.canterbury.seng302.portfolio.model.dto.GroupSummaryDTO;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.GroupsClientService;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.UserAccountsClientService;
 import nz.ac.canterbury.seng302.shared.identityprovider.*;
@@ -83,14 +83,16 @@ public class GroupService {
 
 
     /**
-     * Makes a request to the server for the groups
-     * @param offset The offset for the groups
-     * @param orderBy The order to get the groups
-     * @param groupsPerPageLimit The number of groups to get
+     * Gets a page of group summaries from the server, which hold each group's names and member count but not its
+     * members.
+     *
+     * @param offset Where to start getting groups from
+     * @param orderBy What to order the groups by
+     * @param groupsPerPageLimit The number of groups to return
      * @param isAscending Ascending or descending
-     * @return A group response from the server.
+     * @return A group summaries response from the server.
      */
-    public PaginatedGroupsResponse getPaginatedGroupsFromServer(int offset, String orderBy, int groupsPerPageLimit, boolean isAscending) {
+    public PaginatedGroupSummariesResponse getPaginatedGroupSummariesFromServer(int offset, String orderBy, int groupsPerPageLimit, boolean isAscending) {
         PaginationRequestOptions options = PaginationRequestOptions.newBuilder()
                 .setOffset(offset)
                 .setOrderBy(orderBy)
@@ -100,21 +102,20 @@ public class GroupService {
         GetPaginatedGroupsRequest request = GetPaginatedGroupsRequest.newBuilder()
                 .setPaginationRequestOptions(options)
                 .build();
-        return groupsClientService.getPaginatedGroups(request);
+        return groupsClientService.getPaginatedGroupSummaries(request);
     }
 
 
     /**
-     * Creates a list of Group objects from a paginated group response.
+     * Creates a list of group summaries from a paginated group summaries response.
      *
-     * @param paginatedGroupsResponse The paginated group response to create the list from.
-     * @return A list of group objects.
+     * @param paginatedGroupSummariesResponse The paginated group summaries response to create the list from.
+     * @return A list of group summary objects.
      */
-    public List<GroupResponseDTO> createGroupListFromResponse(PaginatedGroupsResponse paginatedGroupsResponse){
-        List<GroupResponseDTO> groupDTOS = new ArrayList<>();
-        for(GroupDetailsResponse groupDetailsResponse: paginatedGroupsResponse.getGroupsList()) {
-            GroupResponseDTO groupDTO = new GroupResponseDTO(groupDetailsResponse);
-            groupDTOS.add(groupDTO);
+    public List<GroupSummaryDTO> createGroupSummaryListFromResponse(PaginatedGroupSummariesResponse paginatedGroupSummariesResponse) {
+        List<GroupSummaryDTO> groupDTOS = new ArrayList<>();
+        for (GroupSummaryResponse groupSummaryResponse : paginatedGroupSummariesResponse.getGroupsList()) {
+            groupDTOS.add(new GroupSummaryDTO(groupSummaryResponse));
         }
         return groupDTOS;
     }
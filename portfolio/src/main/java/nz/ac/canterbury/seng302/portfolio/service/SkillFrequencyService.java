@@ -1,42 +1,56 @@
 package nz.ac.canterbury.seng302.portfolio.service;
 
-import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Evidence;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.EvidenceRepository;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Skill;
-import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.SkillRepository;
+import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.UserSkillCount;
+import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.UserSkillCountRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
+import java.util.*;
 
 /**
- * The service bean responsible for skill frequency
+ * The service bean responsible for skill frequency.
+ *
+ * A skill's frequency differs between users, so it is worked out when the skill is shown, from how many pieces of
+ * the user's evidence have the skill and how many pieces of evidence they have. The counts of each skill are kept up
+ * to date as evidence is saved, in the same transaction, so saving a piece of evidence only changes the counts of its
+ * own skills.
  */
 @Service
 public class SkillFrequencyService {
 
+    /** For logging the rebuilding of the skill counts */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
     /** Holds persisted information about evidence */
     private final EvidenceRepository evidenceRepository;
 
-    /** Holds persisted information about skills */
-    private final SkillRepository skillRepository;
+    /** Holds how many pieces of each user's evidence have each skill */
+    private final UserSkillCountRepository userSkillCountRepository;
 
 
     /**
      * Autowired constructor
      * @param evidenceRepository Evidence storage
-     * @param skillRepository Holds persisted information about skills
+     * @param userSkillCountRepository Holds how many pieces of each user's evidence have each skill
      */
     @Autowired
-    public SkillFrequencyService(EvidenceRepository evidenceRepository, SkillRepository skillRepository) {
+    public SkillFrequencyService(EvidenceRepository evidenceRepository,
+                                 UserSkillCountRepository userSkillCountRepository) {
         this.evidenceRepository = evidenceRepository;
-        this.skillRepository = skillRepository;
+        this.userSkillCountRepository = userSkillCountRepository;
     }
 
 
     /**
-     * Gets a list of evidence that's associated with a skill and a user and a list of evidence for a user and
-     * divides them by each other to get the frequency, then rounds down to 2 decimal place.
+     * Divides the number of the user's pieces of evidence with the skill by the number of pieces of evidence they
+     * have to get the frequency, then rounds it to 2 decimal places.
      * Will return 0.0 if the user has no evidence.
      *
      * @param skill The skill object we want the frequency for
@@ -44,29 +58,122 @@ public class SkillFrequencyService {
      *
      * @return How frequently the skill appears in the users evidence. Ranges from 0 (none of the time) to 1 (all of the time).
      */
-    public double getSkillFrequency(Skill skill, Integer userId){
-        List<Evidence> evidenceListAssociatedWithSkill = evidenceRepository
-                .findAllByUserIdAndSkillsContainingOrderByOccurrenceDateDesc(userId, skill);
-        List<Evidence> evidenceListForUser = evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(userId);
-        if (evidenceListForUser.isEmpty()) {
-            return 0.0;
+    public double getSkillFrequency(Skill skill, Integer userId) {
+        int skillCount = userSkillCountRepository.findByUserIdAndSkillId(userId, skill.getId())
+                .map(UserSkillCount::getEvidenceCount)
+                .orElse(0);
+        return frequency(skillCount, evidenceRepository.countByUserId(userId));
+    }
+
+
+    /**
+     * Sets the frequency of each skill to how frequently it appears in the given user's evidence, ready for the
+     * skills to be returned. Loads all the user's counts at once, however many skills there are.
+     *
+     * @param skills The skills to set the frequencies of
+     * @param userId The id of the user whose evidence the skills are shown with
+     */
+    public void setSkillFrequencies(Collection<Skill> skills, Integer userId) {
+        if (skills.isEmpty()) {
+            return;
+        }
+        Map<Integer, Integer> skillCounts = new HashMap<>();
+        for (UserSkillCount count : userSkillCountRepository.findAllByUserId(userId)) {
+            skillCounts.put(count.getSkillId(), count.getEvidenceCount());
+        }
+        long evidenceCount = evidenceRepository.countByUserId(userId);
+        for (Skill skill : skills) {
+            skill.setFrequency(frequency(skillCounts.getOrDefault(skill.getId(), 0), evidenceCount));
         }
-        double value = (double) evidenceListAssociatedWithSkill.size() / evidenceListForUser.size();
-        return Double.parseDouble(String.format("%.2f", value));
     }
 
+
     /**
-     * Retrieves all skills for the given user from the database and then calls getSkillFrequency on each one
-     * @param userId The id of the user that we want to update skills for.
+     * Counts a piece of the user's evidence as having the skills. The counts the user already has are changed with one
+     * statement, and the rest are inserted together, so it costs the same however many skills the evidence was given.
+     * Must be called within the transaction that gives the evidence the skills.
+     *
+     * @param userId The id of the user who owns the evidence
+     * @param skills The skills the evidence was given
      */
-    public void updateAllSkillFrequenciesForUser(Integer userId) {
-        skillRepository.findDistinctByEvidenceUserId(userId).forEach((
-                skill -> {
-                    skill.setFrequency(getSkillFrequency(skill, userId));
-                    skillRepository.save(skill);
-                }
-        ));
+    @Transactional
+    public void addEvidenceToSkills(int userId, Collection<Skill> skills) {
+        Set<Integer> skillIds = new LinkedHashSet<>();
+        for (Skill skill : skills) {
+            skillIds.add(skill.getId());
+        }
+        if (skillIds.isEmpty()) {
+            return;
+        }
+        List<Integer> countedSkillIds = userSkillCountRepository.findCountedSkillIds(userId, skillIds);
+        if (!countedSkillIds.isEmpty()) {
+            userSkillCountRepository.changeCounts(userId, countedSkillIds, 1);
+        }
+        List<UserSkillCount> newCounts = new ArrayList<>();
+        for (Integer skillId : skillIds) {
+            if (!countedSkillIds.contains(skillId)) {
+                newCounts.add(new UserSkillCount(userId, skillId, 1));
+            }
+        }
+        userSkillCountRepository.saveAll(newCounts);
     }
 
 
+    /**
+     * Stops counting a piece of the user's evidence as having the skill, deleting the count once none of their
+     * evidence has it. Must be called within the transaction that removes the skill or deletes the evidence.
+     *
+     * @param userId The id of the user who owns the evidence
+     * @param skill The skill the evidence no longer has
+     */
+    @Transactional
+    public void removeEvidenceFromSkill(int userId, Skill skill) {
+        userSkillCountRepository.changeCount(userId, skill.getId(), -1);
+        userSkillCountRepository.deleteIfEmpty(userId, skill.getId());
+    }
+
+
+    /**
+     * Merges every user's count of one skill into their count of another, with a few statements however many users
+     * have the skills. Must be called before the evidence with the merged skill is given the other skill, within the
+     * same transaction.
+     *
+     * @param mergedSkill The skill being merged
+     * @param skill The skill it is merged into
+     */
+    @Transactional
+    public void mergeSkillCounts(Skill mergedSkill, Skill skill) {
+        userSkillCountRepository.addMergedCounts(mergedSkill.getId(), skill.getId());
+        userSkillCountRepository.moveCounts(mergedSkill.getId(), skill.getId());
+        userSkillCountRepository.deleteAllBySkillId(mergedSkill.getId());
+    }
+
+
+    /**
+     * Counts the skills in everyone's evidence again from scratch. Runs on start up, so counts are created for
+     * evidence saved before they were kept, and anything saved around the counts is corrected.
+     */
+    @Transactional
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildSkillCounts() {
+        List<UserSkillCount> counts = userSkillCountRepository.countFromEvidence();
+        userSkillCountRepository.deleteAllCounts();
+        userSkillCountRepository.saveAll(counts);
+        logger.info("Rebuilt {} skill counts from evidence", counts.size());
+    }
+
+
+    /**
+     * Rounds the share of a user's evidence that has a skill to 2 decimal places.
+     *
+     * @param skillCount The number of the user's pieces of evidence with the skill
+     * @param evidenceCount The number of pieces of evidence the user has
+     * @return The frequency of the skill, or 0 if the user has no evidence
+     */
+    private static double frequency(int skillCount, long evidenceCount) {
+        if (evidenceCount == 0) {
+            return 0.0;
+        }
+        return Math.round(skillCount * 100.0 / evidenceCount) / 100.0;
+    }
 }
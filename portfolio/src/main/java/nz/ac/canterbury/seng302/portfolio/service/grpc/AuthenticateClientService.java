@@ -7,6 +7,7 @@ import nz.ac.canterbury.seng302.shared.identityprovider.AuthState;
 import nz.ac.canterbury.seng302.shared.identityprovider.AuthenticateRequest;
 import nz.ac.canterbury.seng302.shared.identityprovider.AuthenticateResponse;
 import nz.ac.canterbury.seng302.shared.identityprovider.AuthenticationServiceGrpc;
+import nz.ac.canterbury.seng302.shared.identityprovider.TokenVerificationKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -50,4 +51,17 @@ public class AuthenticateClientService {
         return authenticationStub.checkAuthState(Empty.newBuilder().build());
     }
 
+
+    /**
+     * Gets the public key the IdP signs session tokens with, so that tokens can be verified without calling
+     * checkAuthState.
+     *
+     * @return TokenVerificationKey - the key and its id, as defined in the authentication.proto contract
+     * @throws StatusRuntimeException - if an error occurs getting the key
+     */
+    public TokenVerificationKey getTokenVerificationKey() throws StatusRuntimeException {
+        logger.info("SERVICE - get token verification key from server");
+        return authenticationStub.getTokenVerificationKey(Empty.newBuilder().build());
+    }
+
 }
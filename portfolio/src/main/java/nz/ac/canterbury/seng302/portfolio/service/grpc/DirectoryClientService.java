@@ -0,0 +1,39 @@
+package nz.ac.canterbury.seng302.portfolio.service.grpc;
+
+import io.grpc.stub.StreamObserver;
+import net.devh.boot.grpc.client.inject.GrpcClient;
+import nz.ac.canterbury.seng302.shared.identityprovider.DirectoryChangesResponse;
+import nz.ac.canterbury.seng302.shared.identityprovider.DirectoryServiceGrpc;
+import nz.ac.canterbury.seng302.shared.identityprovider.WatchDirectoryChangesRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * The DirectoryClientService class implements the functionality of the services outlined by the directory.proto gRPC
+ * contracts, which stream the IdP's changes to users and groups.
+ */
+@Service
+public class DirectoryClientService {
+
+    @GrpcClient(value = "identity-provider-grpc-server")
+    private DirectoryServiceGrpc.DirectoryServiceStub directoryStub;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+
+    /**
+     * Watches the IdP's users and groups. The first responses hold the changes after the given sequence, or a snapshot
+     * of every user and group, then each later response holds the changes as they happen. The call lasts until it
+     * fails or is cancelled.
+     *
+     * @param afterSequence The sequence of the last change already applied, or 0 for a snapshot
+     * @param responseObserver Receives the changes as they are sent
+     */
+    public void watchDirectoryChanges(long afterSequence, StreamObserver<DirectoryChangesResponse> responseObserver) {
+        logger.info("SERVICE - send WatchDirectoryChangesRequest request to server after sequence {}", afterSequence);
+        directoryStub.watchDirectoryChanges(WatchDirectoryChangesRequest.newBuilder()
+                .setAfterSequence(afterSequence)
+                .build(), responseObserver);
+    }
+}
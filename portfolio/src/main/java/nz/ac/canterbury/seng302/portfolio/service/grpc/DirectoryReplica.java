@@ -0,0 +1,282 @@
+package nz.ac.canterbury.seng302.portfolio.service.grpc;
+
+import io.grpc.stub.StreamObserver;
+import nz.ac.canterbury.seng302.portfolio.authentication.RoleEpochRegistry;
+import nz.ac.canterbury.seng302.shared.identityprovider.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A copy of the IdP's users and groups, kept up to date by watching the IdP's directory changes, so that users and
+ * groups can be looked up without a call to the IdP.
+ *
+ * The copy is only used while it is known to be current: once it has caught up with the IdP, and for at most
+ * directoryMaxStalenessMillis after last hearing from the IdP, which sends an empty response every few seconds while
+ * nothing changes. Otherwise, and for users whose roles have changed since the copy was made, lookups return null and
+ * callers ask the IdP instead. When the stream fails it is resumed from the last change applied.
+ *
+ * After the portfolio changes a user or group, the copy isn't used until it has applied that change, so the
+ * portfolio always sees its own writes. The IdP sends the sequence of a call's change back with the call's response.
+ */
+@Component
+public class DirectoryReplica {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** How long to wait before rewatching after the stream first fails. Doubles with each failure. */
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 1000;
+
+    /** The longest wait before rewatching. */
+    private static final long MAX_RETRY_DELAY_MILLIS = 60_000;
+
+    /** Used to watch the IdP's directory changes. */
+    private final DirectoryClientService directoryClientService;
+
+    /** Gets the latest role epochs pushed by the IdP. Looked up when needed, as it depends on the client services. */
+    private final Supplier<RoleEpochRegistry> roleEpochRegistry;
+
+    /** Runs the rewatches after the stream fails. */
+    private final ScheduledExecutorService retryExecutor;
+
+    /** How long after last hearing from the IdP the copy is still used. */
+    private final long maxStalenessMillis;
+
+    /** Gives the current time in milliseconds. */
+    private final LongSupplier clock;
+
+    /** The copy of each user, by id. */
+    private final Map<Integer, DirectoryUser> users = new ConcurrentHashMap<>();
+
+    /** The copy of each group, by id. */
+    private final Map<Integer, DirectoryGroup> groups = new ConcurrentHashMap<>();
+
+    /** The sequence of the last change applied, which the stream is resumed from. */
+    private volatile long sequence = 0;
+
+    /** The sequence of the last change made by the portfolio, which the copy must apply before it is used again. */
+    private final AtomicLong writtenSequence = new AtomicLong();
+
+    /** True while the stream is up and has caught up with the IdP. */
+    private volatile boolean caughtUp = false;
+
+    /** When a response was last received. */
+    private volatile long lastHeardMillis = 0;
+
+    /** How long to wait before the next rewatch. */
+    private volatile long retryDelayMillis = INITIAL_RETRY_DELAY_MILLIS;
+
+
+    /**
+     * Autowired constructor, which reads how long the copy is used without hearing from the IdP from the
+     * directoryMaxStalenessMillis property.
+     *
+     * @param directoryClientService Used to watch the IdP's directory changes
+     * @param roleEpochRegistry Gets the latest role epochs pushed by the IdP
+     * @param env Gives access to the environment variables
+     */
+    @Autowired
+    public DirectoryReplica(DirectoryClientService directoryClientService,
+                            ObjectProvider<RoleEpochRegistry> roleEpochRegistry, Environment env) {
+        this(directoryClientService, roleEpochRegistry::getObject,
+                Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "directory-watch");
+                    thread.setDaemon(true);
+                    return thread;
+                }),
+                Long.parseLong(env.getProperty("directoryMaxStalenessMillis", "10000")),
+                System::currentTimeMillis);
+    }
+
+
+    /**
+     * Creates a replica that rewatches on the given executor.
+     *
+     * @param directoryClientService Used to watch the IdP's directory changes
+     * @param roleEpochRegistry Gets the latest role epochs pushed by the IdP
+     * @param retryExecutor Runs the rewatches after the stream fails
+     * @param maxStalenessMillis How long after last hearing from the IdP the copy is still used
+     * @param clock Gives the current time in milliseconds
+     */
+    DirectoryReplica(DirectoryClientService directoryClientService, Supplier<RoleEpochRegistry> roleEpochRegistry,
+                     ScheduledExecutorService retryExecutor, long maxStalenessMillis, LongSupplier clock) {
+        this.directoryClientService = directoryClientService;
+        this.roleEpochRegistry = roleEpochRegistry;
+        this.retryExecutor = retryExecutor;
+        this.maxStalenessMillis = maxStalenessMillis;
+        this.clock = clock;
+    }
+
+
+    /**
+     * Watches the IdP's directory changes from the last change applied. Called once the application has started, and
+     * again whenever the stream fails.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void watch() {
+        directoryClientService.watchDirectoryChanges(sequence, new StreamObserver<>() {
+            @Override
+            public void onNext(DirectoryChangesResponse response) {
+                apply(response);
+                retryDelayMillis = INITIAL_RETRY_DELAY_MILLIS;
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                logger.warn("Directory watch failed: {}", t.getMessage());
+                rewatchLater();
+            }
+
+            @Override
+            public void onCompleted() {
+                logger.warn("Directory watch ended by the IdP");
+                rewatchLater();
+            }
+        });
+    }
+
+
+    /**
+     * Stops using the copy and schedules a new watch, waiting longer after each consecutive failure so an unavailable
+     * IdP isn't flooded.
+     */
+    private void rewatchLater() {
+        caughtUp = false;
+        long delay = retryDelayMillis;
+        retryDelayMillis = Math.min(delay * 2, MAX_RETRY_DELAY_MILLIS);
+        if (!retryExecutor.isShutdown()) {
+            retryExecutor.schedule(this::watch, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    /**
+     * Applies a response from the directory stream. Responses are received one at a time, in order.
+     *
+     * @param response A response from the directory stream
+     */
+    void apply(DirectoryChangesResponse response) {
+        if (response.getResetReplica()) {
+            caughtUp = false;
+            users.clear();
+            groups.clear();
+            logger.info("Directory replica reset from a snapshot");
+        }
+        for (DirectoryChange change : response.getChangesList()) {
+            switch (change.getEntityCase()) {
+                case USER -> users.put(change.getUser().getUser().getId(), change.getUser());
+                case GROUP -> groups.put(change.getGroup().getGroupId(), change.getGroup());
+                case DELETEDGROUPID -> groups.remove(change.getDeletedGroupId());
+                default -> logger.warn("Ignoring unknown directory change {}", change.getSequence());
+            }
+        }
+        sequence = response.getSequence();
+        if (response.getResetReplica() && sequence < writtenSequence.get()) {
+            // The IdP's log has been restarted, so the sequences of the portfolio's changes will never be reached
+            writtenSequence.set(sequence);
+        }
+        lastHeardMillis = clock.getAsLong();
+        if (response.getIsUpToDate() && !caughtUp) {
+            caughtUp = true;
+            logger.info("Directory replica caught up at sequence {} with {} users and {} groups",
+                    sequence, users.size(), groups.size());
+        }
+    }
+
+
+    /**
+     * Checks whether the copy can be used, i.e. it has caught up with the IdP, has heard from it recently, and has
+     * applied every change the portfolio has made.
+     *
+     * @return True if lookups can be answered from the copy
+     */
+    public boolean isCurrent() {
+        return caughtUp && sequence >= writtenSequence.get()
+                && clock.getAsLong() - lastHeardMillis <= maxStalenessMillis;
+    }
+
+
+    /**
+     * Stops using the copy until it has applied a change the portfolio has made, so later lookups see the change.
+     *
+     * @param changeSequence The sequence of the change, as sent back by the IdP with the response to the change
+     */
+    public void awaitChange(long changeSequence) {
+        writtenSequence.accumulateAndGet(changeSequence, Math::max);
+    }
+
+
+    /**
+     * Gets a user from the copy.
+     *
+     * @param userId The id of the user
+     * @return The user, or null if the IdP must be asked instead, as the copy isn't current, doesn't have the user,
+     *         or has the user with out of date roles
+     */
+    public UserResponse getUser(int userId) {
+        if (!isCurrent()) {
+            return null;
+        }
+        DirectoryUser user = users.get(userId);
+        if (user == null || user.getRoleEpoch() < roleEpochRegistry.get().getRoleEpoch(userId)) {
+            return null;
+        }
+        return user.getUser();
+    }
+
+
+    /**
+     * Gets a group and its members from the copy, in the same form as the IdP's GetGroupDetails response.
+     *
+     * @param groupId The id of the group
+     * @return The group's details, with a GroupId of -1 if there is no such group, or null if the IdP must be asked
+     *         instead, as the copy isn't current or is missing one of the group's members
+     */
+    public GroupDetailsResponse getGroupDetails(int groupId) {
+        if (!isCurrent()) {
+            return null;
+        }
+        DirectoryGroup group = groups.get(groupId);
+        if (group == null) {
+            return GroupDetailsResponse.newBuilder().setGroupId(-1).build();
+        }
+        GroupDetailsResponse.Builder response = GroupDetailsResponse.newBuilder()
+                .setGroupId(group.getGroupId())
+                .setShortName(group.getShortName())
+                .setLongName(group.getLongName());
+        for (int memberId : group.getMemberIdsList()) {
+            DirectoryUser member = users.get(memberId);
+            if (member == null) {
+                return null;
+            }
+            response.addMembers(member.getUser());
+        }
+        return response.build();
+    }
+
+
+    public long getSequence() {
+        return sequence;
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        retryExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,49 @@
+package nz.ac.canterbury.seng302.portfolio.service.grpc;
+
+import io.grpc.*;
+import net.devh.boot.grpc.client.interceptor.GrpcGlobalClientInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+
+/**
+ * A global interceptor for the gRPC clients, which tells the DirectoryReplica about every change the portfolio makes
+ * to the IdP's users and groups. The IdP sends the sequence of a call's change in the call's directory-sequence
+ * trailer, and the replica isn't used again until it has applied that change, so the portfolio sees its own writes.
+ *
+ * The replica is told before the call's response is handed to its caller, so the caller's next lookup already sees the
+ * change.
+ */
+@GrpcGlobalClientInterceptor
+public class DirectorySequenceClientInterceptor implements ClientInterceptor {
+
+    private static final Metadata.Key<String> DIRECTORY_SEQUENCE_TRAILER =
+            Metadata.Key.of("directory-sequence", Metadata.ASCII_STRING_MARSHALLER);
+
+    /** The replica to tell about changes. Looked up when needed, as it depends on the gRPC clients. */
+    private final ObjectProvider<DirectoryReplica> directoryReplica;
+
+
+    public DirectorySequenceClientInterceptor(ObjectProvider<DirectoryReplica> directoryReplica) {
+        this.directoryReplica = directoryReplica;
+    }
+
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                               CallOptions callOptions, Channel next) {
+        return new ForwardingClientCall.SimpleForwardingClientCall<>(next.newCall(method, callOptions)) {
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(responseListener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        String sequence = trailers.get(DIRECTORY_SEQUENCE_TRAILER);
+                        if (sequence != null) {
+                            directoryReplica.getObject().awaitChange(Long.parseLong(sequence));
+                        }
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            }
+        };
+    }
+}
@@ -4,8 +4,12 @@ import net.devh.boot.grpc.client.inject.GrpcClient;
 import nz.ac.canterbury.seng302.shared.identityprovider.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 @Service
 public class GroupsClientService {
 
@@ -19,6 +23,18 @@ public class GroupsClientService {
     @GrpcClient("identity-provider-grpc-server")
     private GroupsServiceGrpc.GroupsServiceBlockingStub groupsStub;
 
+    /**
+     * The gRpc stub to make calls to the server service without waiting for the response
+     */
+    @GrpcClient("identity-provider-grpc-server")
+    private GroupsServiceGrpc.GroupsServiceFutureStub groupsFutureStub;
+
+    /**
+     * The local copy of the IdP's groups, which answers group lookups while it is current
+     */
+    @Autowired
+    private DirectoryReplica directoryReplica;
+
     /**
      * The grpc service to request the deletion of a group from the IdP
      * <br>
@@ -81,12 +97,30 @@ public class GroupsClientService {
 
 
     /**
-     * Sends a request to the GroupsServerService to get a specific group by their group ID
+     * Sends a request to the GroupsServerService to get a specific group by their group ID. The group is taken from
+     * the directory replica instead if it is current.
      *
      * @param request the GetGroupDetailsRequest passed through from the controller, with the groupId
      * @return response - a GroupDetailsResponse, a response with the given groups details
      */
     public GroupDetailsResponse getGroupDetails(GetGroupDetailsRequest request) {
+        GroupDetailsResponse group = directoryReplica.getGroupDetails(request.getGroupId());
+        if (group != null) {
+            return group;
+        }
+        logger.info("SERVICE - send getGroupDetailsRequest request to server");
+        return groupsStub.getGroupDetails(request);
+    }
+
+
+    /**
+     * Sends a request to the GroupsServerService to get a specific group by their group ID. The directory replica is
+     * never used, so this is used for permission checks, which must see the latest membership.
+     *
+     * @param request the GetGroupDetailsRequest passed through from the controller, with the groupId
+     * @return response - a GroupDetailsResponse, a response with the given groups details
+     */
+    public GroupDetailsResponse getGroupDetailsFromServer(GetGroupDetailsRequest request) {
         logger.info("SERVICE - send getGroupDetailsRequest request to server");
         return groupsStub.getGroupDetails(request);
     }
@@ -104,4 +138,49 @@ public class GroupsClientService {
         logger.info("SERVICE - send getPaginatedGroupsRequest request to server");
         return groupsStub.getPaginatedGroups(request);
     }
+
+
+    /**
+     * Sends a request to the GroupsServerService to get a specific page of group summaries, which hold each group's
+     * names and member count but not its members.
+     *
+     * @param request the GetPaginatedGroupsRequest passed through from the controller, with the page, size of the list
+     *                and the sort order
+     * @return response - a PaginatedGroupSummariesResponse, a response with a list of group summaries and the total
+     *                    amount of groups
+     */
+    public PaginatedGroupSummariesResponse getPaginatedGroupSummaries(GetPaginatedGroupsRequest request) {
+        logger.info("SERVICE - send getPaginatedGroupSummariesRequest request to server");
+        return groupsStub.getPaginatedGroupSummaries(request);
+    }
+
+
+    /**
+     * Sends a request to the GroupsServerService to get a page of the members of a group, or to check which of the
+     * given users are members of it. Only the requested members are sent, however large the group is.
+     *
+     * @param request the GetGroupMembersRequest passed through from the controller, with the groupId and either the
+     *                page of members to get or the users to check
+     * @return response - a GroupMembersResponse, with the group's names, the requested members and the total amount of
+     *                    members
+     */
+    public GroupMembersResponse getGroupMembers(GetGroupMembersRequest request) {
+        logger.info("SERVICE - send getGroupMembersRequest request to server");
+        return groupsStub.getGroupMembers(request);
+    }
+
+
+    /**
+     * Sends a request to the GroupsServerService to get a page of the members of a group, without waiting for the
+     * response. Must be called on the request's thread, so the session token is sent with the request.
+     *
+     * @param request the GetGroupMembersRequest passed through from the controller
+     * @return A future of the group's members, which fails if the server doesn't respond within the call deadline
+     */
+    public CompletableFuture<GroupMembersResponse> getGroupMembersAsync(GetGroupMembersRequest request) {
+        logger.info("SERVICE - send async getGroupMembersRequest request to server");
+        return GrpcFutures.toCompletableFuture(groupsFutureStub
+                .withDeadlineAfter(GrpcFutures.CALL_DEADLINE_MILLIS, TimeUnit.MILLISECONDS)
+                .getGroupMembers(request));
+    }
 }
@@ -0,0 +1,47 @@
+package nz.ac.canterbury.seng302.portfolio.service.grpc;
+
+import net.devh.boot.grpc.client.channelfactory.GrpcChannelConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configures the channel to the IdP so that it can be given several IdP addresses, see
+ * application-replicated.properties.
+ *
+ * Calls are balanced round robin across the addresses, and each IdP is health checked with the standard gRPC health
+ * service, so calls are only sent to IdPs that are up and serving. With a single address this behaves as before.
+ */
+@Configuration
+public class GrpcClientConfig {
+
+    /** The name of the IdP channel, as used by the @GrpcClient annotations. */
+    private static final String IDENTITY_PROVIDER_CHANNEL = "identity-provider-grpc-server";
+
+    /**
+     * The service config of the IdP channel. An empty health check service name checks the health of the IdP as a
+     * whole, which the IdP reports as serving once it has started.
+     */
+    private static final Map<String, Object> IDENTITY_PROVIDER_SERVICE_CONFIG = Map.of(
+            "loadBalancingConfig", List.of(Map.of("round_robin", Map.of())),
+            "healthCheckConfig", Map.of("serviceName", "")
+    );
+
+
+    /**
+     * Registers a GrpcChannelConfigurer Bean that applies the load balancing and health checking service config to the
+     * IdP channel.
+     *
+     * @return The registered GrpcChannelConfigurer Bean
+     */
+    @Bean
+    public GrpcChannelConfigurer identityProviderChannelConfigurer() {
+        return (channelBuilder, name) -> {
+            if (IDENTITY_PROVIDER_CHANNEL.equals(name)) {
+                channelBuilder.defaultServiceConfig(IDENTITY_PROVIDER_SERVICE_CONFIG);
+            }
+        };
+    }
+}
@@ -0,0 +1,58 @@
+package nz.ac.canterbury.seng302.portfolio.service.grpc;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Helpers for the future based gRPC client calls, which let controllers wait on the IdP without holding a servlet
+ * thread.
+ *
+ * A future call must be started on the request's thread, as that is where the AuthenticationClientInterceptor reads
+ * the session token from. The returned futures complete on a gRPC thread, so anything chained onto them must not
+ * start further gRPC calls or rely on the request's context.
+ */
+public final class GrpcFutures {
+
+    /** The longest a future call to the IdP can take before it fails with DEADLINE_EXCEEDED. */
+    public static final long CALL_DEADLINE_MILLIS = 5000;
+
+
+    private GrpcFutures() {
+        // Static helpers only
+    }
+
+
+    /**
+     * Adapts the ListenableFuture returned by a gRPC future stub to a CompletableFuture. Cancelling the returned
+     * future cancels the gRPC call.
+     *
+     * @param listenableFuture The future of a gRPC call
+     * @param <T> The type of the call's response
+     * @return A CompletableFuture that completes with the call's response, or exceptionally with its failure
+     */
+    public static <T> CompletableFuture<T> toCompletableFuture(ListenableFuture<T> listenableFuture) {
+        CompletableFuture<T> completableFuture = new CompletableFuture<>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                listenableFuture.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        Futures.addCallback(listenableFuture, new FutureCallback<>() {
+            @Override
+            public void onSuccess(T result) {
+                completableFuture.complete(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                completableFuture.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return completableFuture;
+    }
+}
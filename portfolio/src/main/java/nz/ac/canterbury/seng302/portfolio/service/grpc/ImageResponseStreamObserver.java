@@ -1,106 +1,173 @@
 package nz.ac.canterbury.seng302.portfolio.service.grpc;
 
-import io.grpc.stub.StreamObserver;
+import com.google.protobuf.ByteString;
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import nz.ac.canterbury.seng302.shared.identityprovider.ProfilePhotoUploadMetadata;
 import nz.ac.canterbury.seng302.shared.identityprovider.UploadUserProfilePhotoRequest;
 import nz.ac.canterbury.seng302.shared.util.FileUploadStatus;
 import nz.ac.canterbury.seng302.shared.util.FileUploadStatusResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileNotFoundException;
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
- * Defines the StreamObserver<FileUploadStatusResponse> implementation used by the UserAccountsClientService for
- * uploading images.
+ * Defines the ClientResponseObserver<UploadUserProfilePhotoRequest, FileUploadStatusResponse> implementation used by
+ * the UserAccountsClientService for uploading images.
+ * <br>
+ * The photo is read from its stream a chunk at a time, only while gRPC's flow control says the server can take more,
+ * so the photo is never held in memory as a whole and the upload isn't slowed by waiting for the server to acknowledge
+ * each chunk.
  */
-public class ImageResponseStreamObserver implements StreamObserver<FileUploadStatusResponse> {
+public class ImageResponseStreamObserver
+        implements ClientResponseObserver<UploadUserProfilePhotoRequest, FileUploadStatusResponse> {
 
     Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    private StreamObserver<UploadUserProfilePhotoRequest> requestObserver;
-    private List<UploadUserProfilePhotoRequest> requestChunks;
-    int numChunks;
-    int currentChunk = 0;
+    /** The size of the chunks the photo is sent in. */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final InputStream photo;
+    private final ProfilePhotoUploadMetadata metadata;
+    private ClientCallStreamObserver<UploadUserProfilePhotoRequest> requestStream;
+    private boolean metadataSent = false;
+    private boolean photoSent = false;
+
+    /** The URL of the saved photo, once the server has sent it. */
+    private String photoPath;
+
+    /** Completed with the URL of the photo once the server has saved it, or exceptionally if the upload fails. */
+    private final CompletableFuture<String> result = new CompletableFuture<>();
+
 
     /**
-     * Takes the response from the previous chunks sending to the server, and takes the correct next action. That is:
-     * <br> - if the status was FAILED a message is logged and the upload is scrapped.
-     * <br> - if the status was IN_PROGRESS, the client either sends the next chunk, or if no chunks are left calls
-     * onComplete on the requestObserver.
-     * <br> - if the status was PENDING, the client checks only metadata is sent and send the next chunk.
-     * <br> - if the status was SUCCESS, onComplete is called on this to finish the cycle
-     * <br>
+     * Creates an observer that uploads a photo once the call it is given to starts.
+     *
+     * @param photo - the stream of the photo, which is closed once it has been sent
+     * @param metadata - the metadata of the photo, sent before its content
+     */
+    public ImageResponseStreamObserver(InputStream photo, ProfilePhotoUploadMetadata metadata) {
+        this.photo = photo;
+        this.metadata = metadata;
+    }
+
+
+    /**
+     * Keeps the request stream of the call, and sends the photo whenever the stream is ready for more.
      *
-     * @param status - the FileUploadStatusResponse sent by the server side after successful reception of previous chunk
+     * @param requestStream - the stream the photo is sent on
      */
     @Override
-    public void onNext(FileUploadStatusResponse status) {
-        switch (status.getStatusValue()) {
-            case FileUploadStatus.FAILED_VALUE -> logger.error("Transfer failed");
-            case FileUploadStatus.IN_PROGRESS_VALUE -> {
-                if (currentChunk < numChunks) {
-                    logger.info("Sending next chunk: {}", currentChunk);
-                    requestObserver.onNext(requestChunks.get(currentChunk++));
-                } else {
-                    logger.info("Sent all image chunks calling onComplete() for server");
-                    requestObserver.onCompleted();
+    public void beforeStart(ClientCallStreamObserver<UploadUserProfilePhotoRequest> requestStream) {
+        this.requestStream = requestStream;
+        requestStream.setOnReadyHandler(this::sendWhileReady);
+    }
+
+
+    /**
+     * Sends the metadata, then chunks of the photo, until the stream stops being ready or the photo has all been
+     * sent. Called by gRPC whenever the stream becomes ready, and never concurrently.
+     */
+    void sendWhileReady() {
+        try {
+            while (!photoSent && requestStream.isReady()) {
+                if (!metadataSent) {
+                    requestStream.onNext(UploadUserProfilePhotoRequest.newBuilder().setMetaData(metadata).build());
+                    metadataSent = true;
+                    continue;
                 }
-            }
-            case FileUploadStatus.PENDING_VALUE -> {
-                if (currentChunk == 1) {
-                    logger.info("Sending next chunk: {}", currentChunk);
-                    requestObserver.onNext(requestChunks.get(currentChunk++));
+                byte[] chunk = photo.readNBytes(CHUNK_SIZE);
+                if (chunk.length == 0) {
+                    logger.info("Sent all image chunks calling onComplete() for server");
+                    photoSent = true;
+                    photo.close();
+                    requestStream.onCompleted();
                 } else {
-                    logger.error("Got code PENDING but expected code IN_PROGRESS");
-                    requestObserver.onError(new FileNotFoundException("Client Got code PENDING but expected code IN_PROGRESS"));
+                    requestStream.onNext(UploadUserProfilePhotoRequest.newBuilder()
+                            .setFileContent(ByteString.copyFrom(chunk))
+                            .build());
                 }
             }
-            case FileUploadStatus.SUCCESS_VALUE -> this.onCompleted();
-            default -> onError(new FileNotFoundException("Invalid response received"));
+        } catch (IOException e) {
+            photoSent = true;
+            requestStream.onError(Status.CANCELLED.withDescription("Could not read the image").asRuntimeException());
+            onError(e);
         }
+    }
+
 
+    /**
+     * Takes the response from the server. The server only responds once the photo has been saved, with the URL of the
+     * saved photo, or with FAILED if it couldn't be.
+     *
+     * @param status - the FileUploadStatusResponse sent by the server side
+     */
+    @Override
+    public void onNext(FileUploadStatusResponse status) {
+        switch (status.getStatusValue()) {
+            case FileUploadStatus.SUCCESS_VALUE -> photoPath = status.getFilePath();
+            case FileUploadStatus.FAILED_VALUE -> onError(new IOException("Transfer failed: " + status.getMessage()));
+            default -> logger.debug("Upload status: {}", status.getMessage());
+        }
     }
 
+
     /**
-     * Prints an error message and cancels the image transfer.
+     * Logs the error and fails the upload.
      * <br>
      *
      * @param throwable - the error that occurred
      */
     @Override
     public void onError(Throwable throwable) {
-        logger.error("Image transfer failure for user {} :\n {}", requestChunks.get(0).getMetaData().getUserId(), throwable.getMessage());
+        logger.error("Image transfer failure for user {} :\n {}", metadata.getUserId(), throwable.getMessage());
+        try {
+            photo.close();
+        } catch (IOException e) {
+            logger.error("Could not close the image: {}", e.getMessage());
+        }
+        result.completeExceptionally(throwable);
     }
 
+
     /**
-     * Logs that the file transfer was successful
+     * Logs that the file transfer was successful, and finishes the upload. The upload is only finished once the call
+     * has ended, so the change to the user has been recorded by the DirectoryReplica.
      */
     @Override
     public void onCompleted() {
-        logger.info("Image transfer successful for user {}", requestChunks.get(0).getMetaData().getUserId());
+        logger.info("Image transfer successful for user {}", metadata.getUserId());
+        result.complete(photoPath);
     }
 
-    /**
-     * Sets the request observer for the communication.
-     * <br>
-     *
-     * @param requestObserver - used to make the calls and tell the Server what to do.
-     */
-    public void initialise(StreamObserver<UploadUserProfilePhotoRequest> requestObserver) {
-        this.requestObserver = requestObserver;
-    }
 
     /**
-     * Starts the image transfer, called once the request observer has been set.
-     * <br>
+     * Waits for the upload to finish.
      *
-     * @param requestChunks - a List of UploadUserProfilePhotoRequest chunks that collectively make up an image.
+     * @param timeout - how long to wait
+     * @param unit - the unit of the timeout
+     * @return the URL the saved photo is served from
+     * @throws IOException if the upload fails or doesn't finish in time
      */
-    public void sendImage(List<UploadUserProfilePhotoRequest> requestChunks) {
-        this.requestChunks = requestChunks;
-        this.numChunks = requestChunks.size();
-        requestObserver.onNext(requestChunks.get(currentChunk++));
+    public String await(long timeout, TimeUnit unit) throws IOException {
+        try {
+            return result.get(timeout, unit);
+        } catch (ExecutionException e) {
+            throw new IOException("Image upload failed", e.getCause());
+        } catch (TimeoutException e) {
+            requestStream.cancel("Image upload timed out", e);
+            throw new IOException("Image upload timed out", e);
+        } catch (InterruptedException e) {
+            requestStream.cancel("Image upload interrupted", e);
+            Thread.currentThread().interrupt();
+            throw new IOException("Image upload interrupted", e);
+        }
     }
-
 }
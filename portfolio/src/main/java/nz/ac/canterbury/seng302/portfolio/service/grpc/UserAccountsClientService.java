@@ -1,16 +1,19 @@
 package nz.ac.canterbury.seng302.portfolio.service.grpc;
 
-import com.google.protobuf.ByteString;
+import io.grpc.Context;
 import io.grpc.stub.StreamObserver;
 import net.devh.boot.grpc.client.inject.GrpcClient;
 import nz.ac.canterbury.seng302.shared.identityprovider.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The UserAccountsClientServices class implements the functionality of the services outlined
@@ -26,20 +29,119 @@ public class UserAccountsClientService {
     @GrpcClient(value = "identity-provider-grpc-server")
     private UserAccountServiceGrpc.UserAccountServiceStub asynchStub;
 
+    @GrpcClient(value = "identity-provider-grpc-server")
+    private UserAccountServiceGrpc.UserAccountServiceFutureStub futureStub;
+
+    /** The local copy of the IdP's users, which answers user lookups while it is current. */
+    @Autowired
+    private DirectoryReplica directoryReplica;
+
     Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    /** How long an upload may take before it is abandoned. */
+    private static final long UPLOAD_TIMEOUT_SECONDS = 30;
+
     /**
      * Sends a request to the UserAccountsServerService containing the id of a user, requesting the users account details.
+     * The user is taken from the directory replica instead if it is current.
      *
      * @param request - The request to send to the server, uses the GetUserByIDRequest message type defined by user_accounts.proto
      * @return response - The servers response to the request, which follows the UserResponse message format.
      */
     public UserResponse getUserAccountById(GetUserByIdRequest request) {
+        UserResponse user = directoryReplica.getUser(request.getId());
+        if (user != null) {
+            return user;
+        }
+        logger.info("SERVICE - send getUserAccountById request to server");
+        return userAccountStub.getUserAccountById(request);
+    }
+
+
+    /**
+     * Sends a request to the UserAccountsServerService containing the id of a user, requesting the users account details.
+     * The directory replica is never used, so this is used for permission checks, which must see the latest changes.
+     *
+     * @param request - The request to send to the server, uses the GetUserByIDRequest message type defined by user_accounts.proto
+     * @return response - The servers response to the request, which follows the UserResponse message format.
+     */
+    public UserResponse getUserAccountByIdFromServer(GetUserByIdRequest request) {
         logger.info("SERVICE - send getUserAccountById request to server");
         return userAccountStub.getUserAccountById(request);
     }
 
 
+    /**
+     * Sends a request to the UserAccountsServerService for a user's account details without waiting for the response.
+     * Must be called on the request's thread, so the session token is sent with the request. The user is taken from
+     * the directory replica instead if it is current.
+     *
+     * @param request The request to send to the server, with the id of the user
+     * @return A future of the server's response, which fails if the server doesn't respond within the call deadline
+     */
+    public CompletableFuture<UserResponse> getUserAccountByIdAsync(GetUserByIdRequest request) {
+        UserResponse user = directoryReplica.getUser(request.getId());
+        if (user != null) {
+            return CompletableFuture.completedFuture(user);
+        }
+        logger.info("SERVICE - send async getUserAccountById request to server");
+        return GrpcFutures.toCompletableFuture(futureStub
+                .withDeadlineAfter(GrpcFutures.CALL_DEADLINE_MILLIS, TimeUnit.MILLISECONDS)
+                .getUserAccountById(request));
+    }
+
+
+    /**
+     * Sends a single request to the UserAccountsServerService for the account details of many users.
+     *
+     * @param userIds - The ids of the users to get, duplicates are only sent once
+     * @return The details of each user that exists, by their id. Users that don't exist are left out.
+     */
+    public Map<Integer, UserResponse> getUsersByIds(Collection<Integer> userIds) {
+        logger.info("SERVICE - send getUsersByIds request to server for {} users", userIds.size());
+        Map<Integer, UserResponse> users = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return users;
+        }
+        GetUsersByIdsRequest request = GetUsersByIdsRequest.newBuilder()
+                .addAllIds(new HashSet<>(userIds))
+                .build();
+        for (UserResponse user : userAccountStub.getUsersByIds(request).getUsersList()) {
+            users.put(user.getId(), user);
+        }
+        return users;
+    }
+
+
+    /**
+     * Sends a single request to the UserAccountsServerService for the account details of many users, without waiting
+     * for the response. Must be called on the request's thread, so the session token is sent with the request.
+     *
+     * @param userIds - The ids of the users to get, duplicates are only sent once
+     * @return A future of the details of each user that exists, by their id, which fails if the server doesn't
+     *         respond within the call deadline
+     */
+    public CompletableFuture<Map<Integer, UserResponse>> getUsersByIdsAsync(Collection<Integer> userIds) {
+        logger.info("SERVICE - send async getUsersByIds request to server for {} users", userIds.size());
+        if (userIds.isEmpty()) {
+            return CompletableFuture.completedFuture(new HashMap<>());
+        }
+        GetUsersByIdsRequest request = GetUsersByIdsRequest.newBuilder()
+                .addAllIds(new HashSet<>(userIds))
+                .build();
+        return GrpcFutures.toCompletableFuture(futureStub
+                        .withDeadlineAfter(GrpcFutures.CALL_DEADLINE_MILLIS, TimeUnit.MILLISECONDS)
+                        .getUsersByIds(request))
+                .thenApply(response -> {
+                    Map<Integer, UserResponse> users = new HashMap<>();
+                    for (UserResponse user : response.getUsersList()) {
+                        users.put(user.getId(), user);
+                    }
+                    return users;
+                });
+    }
+
+
     /**
      * Sends a request to the UserAccountServerService to register a new user, with a UserRegisterRequest message
      *
@@ -115,44 +217,26 @@ public class UserAccountsClientService {
 
 
     /**
-     * This function is the server side of a bidirectional stream for sending the photos over gRPC. It calls a function
-     * in UserAccountServerService which returns a StreamObserver, that is then used to send the file data.
+     * This function is the client side of a bidirectional stream for sending the photos over gRPC. The photo is read
+     * from its stream and sent in chunks as gRPC's flow control allows, and this returns once the server has saved it.
      *
-     * @param photo    - A File object containing a photo
+     * @param photo    - A stream of the photo, which is closed once it has been sent
      * @param userId   - The id of the user
      * @param fileType - The file extension of the photo
-     * @throws IOException if reading the photo fails
+     * @return The URL the user's new photo is served from
+     * @throws IOException if reading the photo fails, or the server doesn't save it
      */
-    public void uploadProfilePhoto(InputStream photo, int userId, String fileType) throws IOException {
+    public String uploadProfilePhoto(InputStream photo, int userId, String fileType) throws IOException {
         logger.info("Uploading profile photo");
-        ArrayList<UploadUserProfilePhotoRequest> requestChunks = new ArrayList<>();
-
         ProfilePhotoUploadMetadata metadata = ProfilePhotoUploadMetadata.newBuilder()
                 .setUserId(userId)
                 .setFileType(fileType)
                 .build();
 
-        requestChunks.add(UploadUserProfilePhotoRequest.newBuilder()
-                .setMetaData(metadata)
-                .build()
-        );
-        // Send file, split into 4KiB chunks
-
-        byte[] bytes = new byte[4096];
-        int size;
-        while ((size = photo.read(bytes)) > 0) {
-            UploadUserProfilePhotoRequest uploadRequest = UploadUserProfilePhotoRequest.newBuilder()
-                    .setFileContent(ByteString.copyFrom(bytes, 0, size))
-                    .build();
-            requestChunks.add(uploadRequest);
-        }
-        photo.close();
-
-        ImageResponseStreamObserver responseObserver = new ImageResponseStreamObserver();
-        StreamObserver<UploadUserProfilePhotoRequest> requestObserver = asynchStub.uploadUserProfilePhoto(responseObserver);
-        responseObserver.initialise(requestObserver);
-        responseObserver.sendImage(requestChunks);
-
+        ImageResponseStreamObserver responseObserver = new ImageResponseStreamObserver(photo, metadata);
+        asynchStub.withDeadlineAfter(UPLOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .uploadUserProfilePhoto(responseObserver);
+        return responseObserver.await(UPLOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
     }
 
 
@@ -179,4 +263,56 @@ public class UserAccountsClientService {
         logger.info("SERVICE - send GetPaginatedUsersFilteredRequest request to server");
         return userAccountStub.getPaginatedUsersFilteredByName(request);
     }
-}
\ No newline at end of file
+
+
+    /**
+     * Handles each batch of users received from a StreamUsers request.
+     */
+    @FunctionalInterface
+    public interface UserBatchHandler {
+
+        /**
+         * @param batch The next batch of users in the stream
+         * @throws IOException If the batch can't be passed on, which cancels the rest of the stream
+         */
+        void handle(UserBatch batch) throws IOException;
+    }
+
+
+    /**
+     * Streams every user from the server in sorted batches, passing each batch to the handler as it arrives. Only one
+     * batch is requested from the server at a time, so the users never all have to be held in memory. If the handler
+     * fails, the stream is cancelled so the server stops sending.
+     *
+     * @param request The StreamUsersRequest with the order to stream the users in
+     * @param handler Receives each batch of users
+     * @throws IOException If the handler fails to handle a batch
+     */
+    public void streamUsers(StreamUsersRequest request, UserBatchHandler handler) throws IOException {
+        logger.info("SERVICE - send StreamUsersRequest request to server");
+        Context.CancellableContext context = Context.current().withCancellation();
+        Context previous = context.attach();
+        try {
+            Iterator<UserBatch> batches = userAccountStub.streamUsers(request);
+            while (batches.hasNext()) {
+                handler.handle(batches.next());
+            }
+        } finally {
+            context.detach(previous);
+            context.cancel(null);
+        }
+    }
+
+
+    /**
+     * Subscribes to users' role epochs, so that roles in session tokens can be checked for being out of date. The
+     * first response holds the epoch of every user whose roles have changed, and each later response holds the new
+     * epoch of a user whose roles just changed. The subscription lasts until the call fails or is cancelled.
+     *
+     * @param responseObserver Receives the role epochs as they are sent
+     */
+    public void subscribeToRoleEpochs(StreamObserver<RoleEpochsResponse> responseObserver) {
+        logger.info("SERVICE - send SubscribeToRoleEpochsRequest request to server");
+        asynchStub.subscribeToRoleEpochs(SubscribeToRoleEpochsRequest.newBuilder().build(), responseObserver);
+    }
+}
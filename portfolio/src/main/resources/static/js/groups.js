@@ -380,9 +380,12 @@ function updateUserProfilePhoto(notification){
     const userRow = $("#userid" + usersId)
     let imageSource;
     if (userRow.length) {
-        let imagePath = userRow.find("#userImage").attr("src")
-        imagePath = imagePath.split("?")[0]
-        imageSource = imagePath + "?" + Date.now()
+        // Each photo has its own url, so the notification carries the new photo's url, or nothing if it was deleted
+        if (notification.data.length === 0) {
+            imageSource = "defaultProfile.png"
+        } else {
+            imageSource = notification.data
+        }
         userRow.find("#userImage").attr("src",imageSource)
     }
 }
@@ -532,7 +535,7 @@ function checkEditRights(group) {
     // i.e., the user is an admin, teacher or member of the group.
     if (groupId !== MWAG_GROUP_ID &&
         groupId !== TEACHER_GROUP_ID &&
-        (checkPrivilege() || group.userList.some(member => member.id === userIdent))) {
+        (checkPrivilege() || group.isMember)) {
         groupSettingsTab.show()
         groupEditButton.show()
         //show edit button
@@ -543,58 +546,19 @@ function checkEditRights(group) {
 
 
 /**
- * Makes an ajax get call to the server and gets all the information for a particular group.
- * Loops through the groups members and adds them to the table.
+ * Makes an ajax get call to the server and gets the information for a particular group, along with the first page of
+ * its members, and adds the members to the table.
  */
 function displayGroupUsersList() {
     groupMembersPage = 1
-
-    $.ajax({
-        url: `group?groupId=${selectedGroupId}`,
-        type: "GET",
-        success: (response) => {
-            $("#groupTableBody").empty();
-            $("#groupInformationShortName").text(response.shortName);
-            $("#groupInformationLongName").text(response.longName);
-            updateGroupName(response.shortName, response.longName)
-            $("#groupBeingDisplayId").text(response.id);
-            group = response;
-            displayGroupMembers()
-            $("#groupInformationContainer").slideDown()
-            checkToSeeIfHideOrShowOptions()
-            checkEditRights(response)
-        },
-        error: function (error) {
-            createAlert(error.responseText, AlertTypes.Failure)
-        }
-    })
-}
-
-
-/**
- * Takes the details of a group and appends each user in the group to the group details user list div.
- */
-function populateGroupMembers() {
-    let members = group.userList
-
-    // cut the userList by number of members per page
-    let perPage = $("#membersPerPageSelect").val();
-
-    perPage = parseInt(perPage)
-
-    let memberPages = [[]];
-    let numMembers = members.length
-
-    for (let i = 0; i < numMembers; i += perPage) {
-        memberPages.push(members.slice(i, i + perPage))
-    }
-
-    if (groupMembersPage === -1) {
-        groupMembersPage = memberPages.length - 1
-    }
-
-    $.each(memberPages[groupMembersPage], function (i, member) {
-        appendMemberToGroup(member)
+    displayGroupMembers((response) => {
+        $("#groupInformationShortName").text(response.shortName);
+        $("#groupInformationLongName").text(response.longName);
+        updateGroupName(response.shortName, response.longName)
+        $("#groupBeingDisplayId").text(response.id);
+        $("#groupInformationContainer").slideDown()
+        checkToSeeIfHideOrShowOptions()
+        checkEditRights(response)
     })
 }
 
@@ -633,13 +597,34 @@ function appendMemberToGroup(member) {
 
 
 /**
- * Removes existing displayed members from the group members container, and then repopulates it.
+ * Gets the current page of the selected group's members from the server, then replaces the displayed members with
+ * them. Only the members on the page are sent, so large groups such as Members Without A Group load quickly.
+ *
+ * @param onSuccess Called with the group once its members are displayed.
  */
-function displayGroupMembers() {
-    let membersContainer = $("#groupTableBody")
-    membersContainer.empty()
-    populateGroupMembers()
-    populateGroupMembersPageSelector()
+function displayGroupMembers(onSuccess = () => {}) {
+    let perPage = parseInt($("#membersPerPageSelect").val())
+    if (groupMembersPage === -1) {
+        groupMembersPage = Math.max(Math.ceil(group.membersNumber / perPage), 1)
+    }
+
+    $.ajax({
+        url: `group?groupId=${selectedGroupId}&offset=${(groupMembersPage - 1) * perPage}&limit=${perPage}`,
+        type: "GET",
+        success: (response) => {
+            group = response
+            let membersContainer = $("#groupTableBody")
+            membersContainer.empty()
+            $.each(group.userList, function (i, member) {
+                appendMemberToGroup(member)
+            })
+            populateGroupMembersPageSelector()
+            onSuccess(response)
+        },
+        error: function (error) {
+            createAlert(error.responseText, AlertTypes.Failure)
+        }
+    })
 }
 
 
@@ -652,15 +637,6 @@ $(document).on("click", "#membersPerPageSelect", () => {
 })
 
 
-/**
- * Calls the method to redisplay the selected group's members when the selected group members page selectors div is
- * clicked.
- */
-$(document).on("click", ".groupMembersAmountOptions", () => {
-    displayGroupMembers()
-})
-
-
 /**
  * Populates the group members page selector.
  * Appends the number elements after the "previous" selector
@@ -699,7 +675,7 @@ function createFooterNumberSequence() {
         el.remove()
     })
 
-    let totalPages = Math.ceil(group.userList.length / $("#membersPerPageSelect").val())
+    let totalPages = Math.ceil(group.membersNumber / $("#membersPerPageSelect").val())
     if (totalPages === 0) {
         totalPages = 1
     }
@@ -1038,7 +1014,7 @@ $(document).on("click", "#groupRemoveUser", function () {
  * currently selected group.
  */
 $(document).on("click", ".deleteButton", function () {
-    if (window.confirm(`Are you sure you want to delete this group? ${sanitise(group.userList.length)} members will be removed. This action cannot be undone.`)) {
+    if (window.confirm(`Are you sure you want to delete this group? ${sanitise(group.membersNumber)} members will be removed. This action cannot be undone.`)) {
         $.ajax({
             url: `groups/edit?groupId=${group.id}`,
             type: "delete",
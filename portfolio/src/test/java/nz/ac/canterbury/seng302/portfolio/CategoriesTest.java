@@ -3,6 +3,8 @@ package nz.ac.canterbury.seng302.portfolio;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Category;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Evidence;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.EvidenceRepository;
+import nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceResponseDTO;
+import nz.ac.canterbury.seng302.portfolio.service.EvidenceReadService;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,13 +21,16 @@ class CategoriesTest {
     @Autowired
     EvidenceRepository evidenceRepository;
 
+    @Autowired
+    EvidenceReadService evidenceReadService;
+
     @Test
     void CategoryCanBeAdded() {
         Evidence evidence = new Evidence(1, "test", LocalDate.now(), "test");
         evidence.addCategory(Category.QUANTITATIVE);
         evidenceRepository.save(evidence);
 
-        Evidence evidenceOptional = evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(1).get(0);
+        EvidenceResponseDTO evidenceOptional = evidenceReadService.getEvidenceForUser(1).get(0);
 
         Assertions.assertEquals(1, evidenceOptional.getCategories().size());
         Assertions.assertTrue(evidenceOptional.getCategories().contains(Category.QUANTITATIVE));
@@ -39,7 +44,7 @@ class CategoriesTest {
         evidence.addCategory(Category.SERVICE);
         evidenceRepository.save(evidence);
 
-        Evidence evidenceOptional = evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(1).get(0);
+        EvidenceResponseDTO evidenceOptional = evidenceReadService.getEvidenceForUser(1).get(0);
 
         Assertions.assertEquals(2, evidenceOptional.getCategories().size());
         Assertions.assertTrue(evidenceOptional.getCategories().contains(Category.QUANTITATIVE));
@@ -53,10 +58,10 @@ class CategoriesTest {
         evidence.addCategory(Category.QUANTITATIVE);
         evidenceRepository.save(evidence);
 
-        List<Evidence> evidenceExists = evidenceRepository.findAllByUserIdAndCategoriesContainingOrderByOccurrenceDateDesc(1, Category.QUANTITATIVE);
-        List<Evidence> evidenceDoesntExist1 = evidenceRepository.findAllByUserIdAndCategoriesContainingOrderByOccurrenceDateDesc(1, Category.SERVICE);
-        List<Evidence> evidenceDoesntExist2 = evidenceRepository.findAllByUserIdAndCategoriesContainingOrderByOccurrenceDateDesc(2, Category.QUANTITATIVE);
-        List<Evidence> evidenceDoesntExist3 = evidenceRepository.findAllByUserIdAndCategoriesContainingOrderByOccurrenceDateDesc(2, Category.SERVICE);
+        List<EvidenceResponseDTO> evidenceExists = evidenceReadService.getEvidenceForUserWithCategory(1, Category.QUANTITATIVE);
+        List<EvidenceResponseDTO> evidenceDoesntExist1 = evidenceReadService.getEvidenceForUserWithCategory(1, Category.SERVICE);
+        List<EvidenceResponseDTO> evidenceDoesntExist2 = evidenceReadService.getEvidenceForUserWithCategory(2, Category.QUANTITATIVE);
+        List<EvidenceResponseDTO> evidenceDoesntExist3 = evidenceReadService.getEvidenceForUserWithCategory(2, Category.SERVICE);
 
         Assertions.assertEquals(1, evidenceExists.size());
         Assertions.assertTrue(evidenceExists.get(0).getCategories().contains(Category.QUANTITATIVE));
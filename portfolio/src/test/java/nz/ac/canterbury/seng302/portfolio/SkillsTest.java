@@ -4,6 +4,8 @@ import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Evidence;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.EvidenceRepository;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Skill;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.SkillRepository;
+import nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceResponseDTO;
+import nz.ac.canterbury.seng302.portfolio.service.EvidenceReadService;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,6 +27,9 @@ class SkillsTest {
     @Autowired
     SkillRepository skillRepository;
 
+    @Autowired
+    EvidenceReadService evidenceReadService;
+
 
     @Test
     void createTestEvidenceSkill() {
@@ -34,7 +39,7 @@ class SkillsTest {
         evidence.addSkill(skill);
         evidenceRepository.save(evidence);
 
-        Evidence evidence1 = evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(1).get(0);
+        EvidenceResponseDTO evidence1 = evidenceReadService.getEvidenceForUser(1).get(0);
         Assertions.assertEquals(evidence1.getTitle(), evidence.getTitle());
         Assertions.assertEquals(evidence1.getSkills().size(), evidence.getSkills().size());
         Assertions.assertEquals(1, evidence.getSkills().size());
@@ -55,7 +60,7 @@ class SkillsTest {
         skillRepository.save(skill3);
         evidenceRepository.save(evidence);
 
-        Evidence evidence1 = evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(1).get(0);
+        EvidenceResponseDTO evidence1 = evidenceReadService.getEvidenceForUser(1).get(0);
         Assertions.assertEquals(evidence1.getTitle(), evidence.getTitle());
         Assertions.assertEquals(evidence1.getSkills().size(), evidence.getSkills().size());
         Assertions.assertEquals(3, evidence.getSkills().size());
@@ -4,7 +4,9 @@ import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Evidence;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.EvidenceRepository;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.WebLink;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.WebLinkRepository;
+import nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceResponseDTO;
 import nz.ac.canterbury.seng302.portfolio.model.dto.WebLinkDTO;
+import nz.ac.canterbury.seng302.portfolio.service.EvidenceReadService;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,6 +27,9 @@ class WebLinkTest {
     @Autowired
     WebLinkRepository webLinkRepository;
 
+    @Autowired
+    EvidenceReadService evidenceReadService;
+
     private String WEBLINK_ADDRESS = "https://www.canterbury.ac.nz/";
 
 
@@ -37,7 +42,7 @@ class WebLinkTest {
         evidenceRepository.save(evidence);
         webLinkRepository.save(webLink);
 
-        Evidence evidence1 = evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(1).get(0);
+        EvidenceResponseDTO evidence1 = evidenceReadService.getEvidenceForUser(1).get(0);
         Assertions.assertEquals(evidence1.getTitle(), evidence.getTitle());
         Assertions.assertEquals(evidence1.getWebLinks().iterator().next().getUrl(), evidence.getWebLinks().iterator().next().getUrl());
 
@@ -62,7 +67,7 @@ class WebLinkTest {
         webLinkRepository.save(webLink2);
         webLinkRepository.save(webLink3);
 
-        Evidence evidence1 = evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(1).get(0);
+        EvidenceResponseDTO evidence1 = evidenceReadService.getEvidenceForUser(1).get(0);
         Assertions.assertEquals(evidence1.getTitle(), evidence.getTitle());
         Assertions.assertEquals(evidence1.getWebLinks().iterator().next().getUrl(), evidence.getWebLinks().iterator().next().getUrl());
         Assertions.assertEquals(evidence1.getWebLinks().size(), evidence.getWebLinks().size());
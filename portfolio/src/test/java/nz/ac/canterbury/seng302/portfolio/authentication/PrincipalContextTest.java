@@ -0,0 +1,141 @@
+package nz.ac.canterbury.seng302.portfolio.authentication;
+
+import nz.ac.canterbury.seng302.portfolio.service.grpc.UserAccountsClientService;
+import nz.ac.canterbury.seng302.shared.identityprovider.AuthState;
+import nz.ac.canterbury.seng302.shared.identityprovider.ClaimDTO;
+import nz.ac.canterbury.seng302.shared.identityprovider.UserResponse;
+import nz.ac.canterbury.seng302.shared.identityprovider.UserRole;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+
+class PrincipalContextTest {
+
+    private final UserAccountsClientService userAccountsClientService = Mockito.mock(UserAccountsClientService.class);
+
+    private final AuthState authState = AuthState.newBuilder()
+            .setIsAuthenticated(true)
+            .addClaims(ClaimDTO.newBuilder().setType("nameid").setValue("1").build())
+            .addClaims(ClaimDTO.newBuilder().setType("role").setValue("teacher").build())
+            .build();
+
+    private final MockHttpServletRequest request = new MockHttpServletRequest();
+
+
+    @BeforeEach
+    void setUp() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        Mockito.when(userAccountsClientService.getUserAccountById(any()))
+                .thenReturn(UserResponse.newBuilder().setId(1).build());
+    }
+
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        SecurityContextHolder.clearContext();
+    }
+
+
+    @Test
+    void getClaimReadsClaims() {
+        PrincipalContext context = PrincipalContext.of(authState);
+
+        assertEquals("teacher", context.getClaim("role"));
+        assertEquals("NOT FOUND", context.getClaim("email"));
+        assertEquals(1, context.getUserId());
+    }
+
+
+    @Test
+    void getRolesReadsRoleClaim() {
+        AuthState multipleRoles = authState.toBuilder()
+                .setClaims(1, ClaimDTO.newBuilder().setType("role").setValue("student,course_administrator"))
+                .build();
+
+        assertEquals(List.of(UserRole.STUDENT, UserRole.COURSE_ADMINISTRATOR), PrincipalContext.of(multipleRoles).getRoles());
+    }
+
+
+    @Test
+    void getUserFetchesUserOncePerRequest() {
+        PrincipalContext.of(authState).getUser(userAccountsClientService);
+        PrincipalContext.of(authState).getUser(userAccountsClientService);
+
+        Mockito.verify(userAccountsClientService, Mockito.times(1)).getUserAccountById(any());
+    }
+
+
+    @Test
+    void getUserFetchesUserInEachRequest() {
+        PrincipalContext.of(authState).getUser(userAccountsClientService);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        PrincipalContext.of(authState).getUser(userAccountsClientService);
+
+        Mockito.verify(userAccountsClientService, Mockito.times(2)).getUserAccountById(any());
+    }
+
+
+    @Test
+    void getUserAsyncSharesFetchedUser() {
+        Mockito.when(userAccountsClientService.getUserAccountByIdAsync(any()))
+                .thenReturn(CompletableFuture.completedFuture(UserResponse.newBuilder().setId(1).build()));
+
+        PrincipalContext.of(authState).getUserAsync(userAccountsClientService).join();
+        PrincipalContext.of(authState).getUser(userAccountsClientService);
+        PrincipalContext.of(authState).getUserAsync(userAccountsClientService).join();
+
+        Mockito.verify(userAccountsClientService, Mockito.times(1)).getUserAccountByIdAsync(any());
+        Mockito.verify(userAccountsClientService, Mockito.never()).getUserAccountById(any());
+    }
+
+
+    @Test
+    void getUserFetchesUserAgainAfterInvalidate() {
+        PrincipalContext context = PrincipalContext.of(authState);
+        context.getUser(userAccountsClientService);
+        context.invalidateUser();
+        context.getUser(userAccountsClientService);
+
+        Mockito.verify(userAccountsClientService, Mockito.times(2)).getUserAccountById(any());
+    }
+
+
+    @Test
+    void currentReturnsContextCreatedByFilter() {
+        PrincipalContext context = PrincipalContext.create(request, authState);
+
+        assertSame(context, PrincipalContext.current());
+        assertSame(context, PrincipalContext.of(authState));
+    }
+
+
+    @Test
+    void currentUsesSecurityContextPrincipal() {
+        SecurityContextHolder.getContext().setAuthentication(
+                new PreAuthenticatedAuthenticationToken(new Authentication(authState), ""));
+
+        PrincipalContext context = PrincipalContext.current();
+
+        assertNotNull(context);
+        assertSame(authState, context.getAuthState());
+    }
+
+
+    @Test
+    void currentWithoutPrincipalReturnsNull() {
+        assertNull(PrincipalContext.current());
+    }
+}
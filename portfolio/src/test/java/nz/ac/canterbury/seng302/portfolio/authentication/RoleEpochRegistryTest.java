@@ -0,0 +1,122 @@
+package nz.ac.canterbury.seng302.portfolio.authentication;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import nz.ac.canterbury.seng302.portfolio.service.grpc.UserAccountsClientService;
+import nz.ac.canterbury.seng302.shared.identityprovider.AuthState;
+import nz.ac.canterbury.seng302.shared.identityprovider.ClaimDTO;
+import nz.ac.canterbury.seng302.shared.identityprovider.RoleEpochsResponse;
+import nz.ac.canterbury.seng302.shared.identityprovider.UserRoleEpoch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+
+@SuppressWarnings("unchecked") // Suppresses intelliJ's warning for testing with mock StreamObservers
+class RoleEpochRegistryTest {
+
+    private final UserAccountsClientService userAccountsClientService = Mockito.mock(UserAccountsClientService.class);
+
+    private final ScheduledExecutorService retryExecutor = Mockito.mock(ScheduledExecutorService.class);
+
+    private final RoleEpochRegistry roleEpochRegistry = new RoleEpochRegistry(userAccountsClientService, retryExecutor);
+
+    private StreamObserver<RoleEpochsResponse> subscription;
+
+
+    @BeforeEach
+    void setUp() {
+        roleEpochRegistry.subscribe();
+        ArgumentCaptor<StreamObserver<RoleEpochsResponse>> observerCaptor = ArgumentCaptor.forClass(StreamObserver.class);
+        Mockito.verify(userAccountsClientService).subscribeToRoleEpochs(observerCaptor.capture());
+        subscription = observerCaptor.getValue();
+    }
+
+
+    private PrincipalContext principalWithRoleEpoch(String roleEpoch) {
+        AuthState.Builder authState = AuthState.newBuilder()
+                .setIsAuthenticated(true)
+                .addClaims(ClaimDTO.newBuilder().setType("nameid").setValue("1").build());
+        if (roleEpoch != null) {
+            authState.addClaims(ClaimDTO.newBuilder().setType("role_epoch").setValue(roleEpoch).build());
+        }
+        return PrincipalContext.of(authState.build());
+    }
+
+
+    private RoleEpochsResponse roleEpochs(int userId, int roleEpoch) {
+        return RoleEpochsResponse.newBuilder()
+                .addRoleEpochs(UserRoleEpoch.newBuilder().setUserId(userId).setRoleEpoch(roleEpoch))
+                .build();
+    }
+
+
+    @Test
+    void rolesNotCurrentBeforeSubscribed() {
+        assertFalse(roleEpochRegistry.hasCurrentRoles(principalWithRoleEpoch("0")));
+    }
+
+
+    @Test
+    void rolesCurrentWhenUserRolesUnchanged() {
+        subscription.onNext(RoleEpochsResponse.newBuilder().build());
+
+        assertTrue(roleEpochRegistry.hasCurrentRoles(principalWithRoleEpoch("0")));
+    }
+
+
+    @Test
+    void rolesNotCurrentAfterUserRolesChange() {
+        subscription.onNext(roleEpochs(1, 1));
+        assertTrue(roleEpochRegistry.hasCurrentRoles(principalWithRoleEpoch("1")));
+
+        subscription.onNext(roleEpochs(1, 2));
+
+        assertFalse(roleEpochRegistry.hasCurrentRoles(principalWithRoleEpoch("1")));
+        assertTrue(roleEpochRegistry.hasCurrentRoles(principalWithRoleEpoch("2")));
+    }
+
+
+    @Test
+    void olderRoleEpochIgnored() {
+        subscription.onNext(roleEpochs(1, 2));
+        subscription.onNext(roleEpochs(1, 1));
+
+        assertFalse(roleEpochRegistry.hasCurrentRoles(principalWithRoleEpoch("1")));
+    }
+
+
+    @Test
+    void otherUsersRoleChangesIgnored() {
+        subscription.onNext(roleEpochs(2, 5));
+
+        assertTrue(roleEpochRegistry.hasCurrentRoles(principalWithRoleEpoch("0")));
+    }
+
+
+    @Test
+    void rolesNotCurrentWithoutRoleEpochClaim() {
+        subscription.onNext(RoleEpochsResponse.newBuilder().build());
+
+        assertFalse(roleEpochRegistry.hasCurrentRoles(principalWithRoleEpoch(null)));
+    }
+
+
+    @Test
+    void rolesNotCurrentAfterSubscriptionFails() {
+        subscription.onNext(RoleEpochsResponse.newBuilder().build());
+
+        subscription.onError(Status.UNAVAILABLE.asRuntimeException());
+
+        assertFalse(roleEpochRegistry.hasCurrentRoles(principalWithRoleEpoch("0")));
+        Mockito.verify(retryExecutor).schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS));
+    }
+}
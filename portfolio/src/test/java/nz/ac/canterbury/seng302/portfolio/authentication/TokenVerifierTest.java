@@ -0,0 +1,120 @@
+package nz.ac.canterbury.seng302.portfolio.authentication;
+
+import com.google.protobuf.ByteString;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import nz.ac.canterbury.seng302.portfolio.service.grpc.AuthenticateClientService;
+import nz.ac.canterbury.seng302.shared.identityprovider.AuthState;
+import nz.ac.canterbury.seng302.shared.identityprovider.ClaimDTO;
+import nz.ac.canterbury.seng302.shared.identityprovider.TokenVerificationKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.security.KeyPair;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenVerifierTest {
+
+    private final AuthenticateClientService authenticateClientService = Mockito.mock(AuthenticateClientService.class);
+
+    private final KeyPair keyPair = Keys.keyPairFor(SignatureAlgorithm.RS256);
+
+    private TokenVerifier tokenVerifier;
+
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(authenticateClientService.getTokenVerificationKey()).thenReturn(TokenVerificationKey.newBuilder()
+                .setKeyId("key-1")
+                .setAlgorithm("RS256")
+                .setPublicKey(ByteString.copyFrom(keyPair.getPublic().getEncoded()))
+                .build());
+        tokenVerifier = new TokenVerifier(authenticateClientService);
+    }
+
+
+    private String createToken(String keyId, KeyPair signingKeys, long validForMillis) {
+        return Jwts.builder()
+                .setHeaderParam("kid", keyId)
+                .claim("unique_name", "steve")
+                .claim("nameid", 1)
+                .claim("name", "Steve McSteve")
+                .claim("role", "student,teacher")
+                .setSubject("steve")
+                .setIssuer("LOCAL AUTHORITY")
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + validForMillis))
+                .signWith(signingKeys.getPrivate(), SignatureAlgorithm.RS256)
+                .compact();
+    }
+
+
+    private String getClaimValue(AuthState authState, String type) {
+        return authState.getClaimsList().stream()
+                .filter(claim -> claim.getType().equals(type))
+                .map(ClaimDTO::getValue)
+                .findFirst()
+                .orElse(null);
+    }
+
+
+    @Test
+    void verifyValidToken() {
+        AuthState authState = tokenVerifier.verify(createToken("key-1", keyPair, 60_000));
+
+        assertTrue(authState.getIsAuthenticated());
+        assertEquals("Steve McSteve", authState.getName());
+        assertEquals("1", getClaimValue(authState, "nameid"));
+        assertEquals("student,teacher", getClaimValue(authState, "role"));
+        assertEquals("role", authState.getRoleClaimType());
+    }
+
+
+    @Test
+    void verifyFetchesKeyOnce() {
+        tokenVerifier.verify(createToken("key-1", keyPair, 60_000));
+        tokenVerifier.verify(createToken("key-1", keyPair, 60_000));
+
+        Mockito.verify(authenticateClientService, Mockito.times(1)).getTokenVerificationKey();
+        Mockito.verify(authenticateClientService, Mockito.never()).checkAuthState();
+    }
+
+
+    @Test
+    void verifyExpiredToken() {
+        AuthState authState = tokenVerifier.verify(createToken("key-1", keyPair, -60_000));
+
+        assertNotNull(authState);
+        assertFalse(authState.getIsAuthenticated());
+    }
+
+
+    @Test
+    void verifyTokenSignedWithAnotherKey() {
+        KeyPair otherKeyPair = Keys.keyPairFor(SignatureAlgorithm.RS256);
+
+        AuthState authState = tokenVerifier.verify(createToken("key-1", otherKeyPair, 60_000));
+
+        assertNotNull(authState);
+        assertFalse(authState.getIsAuthenticated());
+    }
+
+
+    @Test
+    void verifyMalformedToken() {
+        AuthState authState = tokenVerifier.verify("null");
+
+        assertNotNull(authState);
+        assertFalse(authState.getIsAuthenticated());
+    }
+
+
+    @Test
+    void verifyUnknownKeyIdReturnsNull() {
+        assertNull(tokenVerifier.verify(createToken("key-2", keyPair, 60_000)));
+    }
+}
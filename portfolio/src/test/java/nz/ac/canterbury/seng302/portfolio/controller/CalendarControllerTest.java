@@ -34,6 +34,7 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -94,6 +95,7 @@ class CalendarControllerTest {
         when(PrincipalAttributes.getUserFromPrincipal(principal, mockClientService)).thenReturn(user);
         GetUserByIdRequest userByIdRequest = GetUserByIdRequest.newBuilder().setId(1).build();
         when(mockClientService.getUserAccountById(userByIdRequest)).thenReturn(user);
+        when(mockClientService.getUserAccountByIdAsync(userByIdRequest)).thenReturn(CompletableFuture.completedFuture(user));
         calendarController.setUserAccountsClientService(mockClientService);
         Project project = new Project("test");
         when(projectRepository.findById(1L)).thenReturn(Optional.of(project));
@@ -102,14 +104,14 @@ class CalendarControllerTest {
 
     @Test
     void testGetCalendar() {
-        ModelAndView model = calendarController.getCalendar(new Authentication(principal), 1L);
+        ModelAndView model = calendarController.getCalendar(new Authentication(principal), 1L).join();
         Assertions.assertEquals("monthlyCalendar", model.getViewName());
 
     }
 
     @Test
     void testGetCalendarWrongProjectId() {
-        ModelAndView model = calendarController.getCalendar(new Authentication(principal), 2L);
+        ModelAndView model = calendarController.getCalendar(new Authentication(principal), 2L).join();
         Assertions.assertEquals("errorPage", model.getViewName());
     }
 
@@ -2,10 +2,12 @@ package nz.ac.canterbury.seng302.portfolio.controller;
 
 
 import nz.ac.canterbury.seng302.portfolio.authentication.Authentication;
+import nz.ac.canterbury.seng302.portfolio.authentication.RoleEpochRegistry;
 import nz.ac.canterbury.seng302.portfolio.demodata.DataInitialisationManagerPortfolio;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Category;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Evidence;
-import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.EvidenceRepository;
+import nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceResponseDTO;
+import nz.ac.canterbury.seng302.portfolio.service.EvidenceReadService;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.AuthenticateClientService;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.GroupsClientService;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.UserAccountsClientService;
@@ -45,11 +47,14 @@ class CategoryControllerTest {
     @MockBean
     private AuthenticateClientService authenticateClientService;
 
+    @MockBean
+    private RoleEpochRegistry roleEpochRegistry;
+
     @MockBean
     private UserAccountsClientService userAccountsClientService;
 
     @MockBean
-    private EvidenceRepository evidenceRepository;
+    private EvidenceReadService evidenceReadService;
 
     @MockBean
     private GroupsClientService groupsClientService;
@@ -66,7 +71,7 @@ class CategoryControllerTest {
         Category category = Category.SERVICE;
         String expectedContent = "[]";
 
-        Mockito.when(evidenceRepository.findAllByUserIdAndCategoriesContainingOrderByOccurrenceDateDesc(existingUserId,category)).thenReturn(new ArrayList<>());
+        Mockito.when(evidenceReadService.getEvidenceForUserWithCategory(existingUserId,category)).thenReturn(new ArrayList<>());
 
         MvcResult result = mockMvc.perform(get("/evidenceLinkedToCategory")
                         .param("userId", String.valueOf(existingUserId))
@@ -85,12 +90,12 @@ class CategoryControllerTest {
         initialiseGetRequestMocks();
         int existingUserId = 1;
         Category category = Category.QUANTITATIVE;
-        ArrayList<Evidence> evidences = new ArrayList<>();
-        Evidence evidence1 = new Evidence(1, 1, "Title", LocalDate.now(), "description");
+        ArrayList<EvidenceResponseDTO> evidences = new ArrayList<>();
+        EvidenceResponseDTO evidence1 = new EvidenceResponseDTO(new Evidence(1, 1, "Title", LocalDate.now(), "description"));
         evidences.add(evidence1);
         String expectedContent = "["+evidence1.toJsonString()+"]";
 
-        Mockito.when(evidenceRepository.findAllByUserIdAndCategoriesContainingOrderByOccurrenceDateDesc(existingUserId,category)).thenReturn(evidences);
+        Mockito.when(evidenceReadService.getEvidenceForUserWithCategory(existingUserId,category)).thenReturn(evidences);
 
         MvcResult result = mockMvc.perform(get("/evidenceLinkedToCategory")
                         .param("userId", String.valueOf(existingUserId))
@@ -109,14 +114,14 @@ class CategoryControllerTest {
         initialiseGetRequestMocks();
         int existingUserId = 1;
         Category category = Category.SERVICE;
-        ArrayList<Evidence> evidences = new ArrayList<>();
-        Evidence evidence1 = new Evidence(1, 1, "Title", LocalDate.now(), "description");
-        Evidence evidence2 = new Evidence(1, 1, "Title", LocalDate.now(), "description");
+        ArrayList<EvidenceResponseDTO> evidences = new ArrayList<>();
+        EvidenceResponseDTO evidence1 = new EvidenceResponseDTO(new Evidence(1, 1, "Title", LocalDate.now(), "description"));
+        EvidenceResponseDTO evidence2 = new EvidenceResponseDTO(new Evidence(1, 1, "Title", LocalDate.now(), "description"));
         evidences.add(evidence1);
         evidences.add(evidence2);
         String expectedContent = "["+evidence1.toJsonString()+"," + evidence1.toJsonString() +"]";
 
-        Mockito.when(evidenceRepository.findAllByUserIdAndCategoriesContainingOrderByOccurrenceDateDesc(existingUserId,category)).thenReturn(evidences);
+        Mockito.when(evidenceReadService.getEvidenceForUserWithCategory(existingUserId,category)).thenReturn(evidences);
 
         MvcResult result = mockMvc.perform(get("/evidenceLinkedToCategory")
                         .param("userId", String.valueOf(existingUserId))
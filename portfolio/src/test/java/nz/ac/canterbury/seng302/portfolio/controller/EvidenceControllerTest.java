@@ -9,6 +9,7 @@ import nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceDTO;
 import nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceResponseDTO;
 import nz.ac.canterbury.seng302.portfolio.model.dto.UserDTO;
 import nz.ac.canterbury.seng302.portfolio.model.dto.WebLinkDTO;
+import nz.ac.canterbury.seng302.portfolio.service.EvidenceReadService;
 import nz.ac.canterbury.seng302.portfolio.service.EvidenceService;
 import nz.ac.canterbury.seng302.portfolio.service.RegexService;
 import nz.ac.canterbury.seng302.portfolio.service.SkillFrequencyService;
@@ -33,14 +34,14 @@ import org.springframework.security.web.authentication.preauth.PreAuthenticatedA
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
 import java.net.MalformedURLException;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -80,6 +81,9 @@ class EvidenceControllerTest {
     @MockBean
     SkillFrequencyService skillFrequencyService;
 
+    @MockBean
+    EvidenceReadService evidenceReadService;
+
     @Autowired
     private RegexService regexService;
 
@@ -99,7 +103,8 @@ class EvidenceControllerTest {
                 projectRepository,
                 evidenceRepository,
                 evidenceService,
-                skillFrequencyService);
+                skillFrequencyService,
+                evidenceReadService);
     }
 
 
@@ -114,7 +119,7 @@ class EvidenceControllerTest {
         Project project = new Project("Testing");
         Evidence evidence = new Evidence(1, title, date, description);
 
-        EvidenceController evidenceController = new EvidenceController(userAccountsClientService, projectRepository, evidenceRepository, evidenceService, skillFrequencyService);
+        EvidenceController evidenceController = new EvidenceController(userAccountsClientService, projectRepository, evidenceRepository, evidenceService, skillFrequencyService, evidenceReadService);
 
         Mockito.when(projectRepository.findById(projectId)).thenReturn(Optional.of(project));
         Mockito.when(evidenceService.addEvidence(any(), any())).thenReturn(evidence);
@@ -189,7 +194,7 @@ class EvidenceControllerTest {
         Project project = new Project("Testing");
         Evidence evidence = new Evidence(1, title, date, description);
 
-        EvidenceController evidenceController = new EvidenceController(userAccountsClientService, projectRepository, evidenceRepository, evidenceService, skillFrequencyService);
+        EvidenceController evidenceController = new EvidenceController(userAccountsClientService, projectRepository, evidenceRepository, evidenceService, skillFrequencyService, evidenceReadService);
 
         evidenceDTO.setTitle(title);
 
@@ -267,7 +272,7 @@ class EvidenceControllerTest {
         Project project = new Project("Testing");
         Evidence evidence = new Evidence(1, title, date, description);
 
-        EvidenceController evidenceController = new EvidenceController(userAccountsClientService, projectRepository, evidenceRepository, evidenceService, skillFrequencyService);
+        EvidenceController evidenceController = new EvidenceController(userAccountsClientService, projectRepository, evidenceRepository, evidenceService, skillFrequencyService, evidenceReadService);
 
         evidenceDTO.setDescription(description);
 
@@ -329,7 +334,7 @@ class EvidenceControllerTest {
         Project project = new Project("Testing");
         Evidence evidence = new Evidence(1, title, date, description);
 
-        EvidenceController evidenceController = new EvidenceController(userAccountsClientService, projectRepository, evidenceRepository, evidenceService, skillFrequencyService);
+        EvidenceController evidenceController = new EvidenceController(userAccountsClientService, projectRepository, evidenceRepository, evidenceService, skillFrequencyService, evidenceReadService);
 
         Mockito.when(projectRepository.findById(projectId)).thenReturn(Optional.of(project));
         Mockito.when(evidenceService.addEvidence(any(), any())).thenReturn(evidence);
@@ -401,7 +406,7 @@ class EvidenceControllerTest {
         long projectId = 1;
         Project project = new Project("Testing");
 
-        EvidenceController evidenceController = new EvidenceController(userAccountsClientService, projectRepository, evidenceRepository, evidenceService, skillFrequencyService);
+        EvidenceController evidenceController = new EvidenceController(userAccountsClientService, projectRepository, evidenceRepository, evidenceService, skillFrequencyService, evidenceReadService);
 
         Mockito.when(projectRepository.findById(projectId)).thenReturn(Optional.of(project));
         Mockito.when(evidenceService.addEvidence(principal, evidenceDTO)).thenThrow(new RuntimeException());
@@ -442,11 +447,15 @@ class EvidenceControllerTest {
         setUserToStudent();
         setUpContext();
         EvidenceDTO testEvidence = createDefaultEvidenceDTO();
+        Evidence evidence = new Evidence(1, "Title", LocalDate.now(), "description");
+        Mockito.when(evidenceService.editEvidence(any(), any())).thenReturn(evidence);
+
         mockMvc.perform(patch("/evidence")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(buildEvidenceJSON(testEvidence))
                         .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk());
+        Mockito.verify(skillFrequencyService).setSkillFrequencies(evidence.getSkills(), 1);
     }
 
 
@@ -529,10 +538,9 @@ class EvidenceControllerTest {
         String existingUserId = "1";
         String expectedContent = "[]";
 
-        Mockito.when(evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(1)).thenReturn(new ArrayList<>());
+        mockEvidenceForUser(new ArrayList<>());
 
-        MvcResult result = mockMvc.perform(get("/evidenceData")
-                        .queryParam("userId", existingUserId))
+        MvcResult result = performGetEvidence(existingUserId)
                 .andExpect(status().isOk())
                 .andReturn();
 
@@ -553,10 +561,9 @@ class EvidenceControllerTest {
                 , "description");
         usersEvidence.add(evidence);
 
-        Mockito.when(evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(1)).thenReturn(usersEvidence);
+        mockEvidenceForUser(usersEvidence);
 
-        MvcResult result = mockMvc.perform(get("/evidenceData")
-                        .queryParam("userId", existingUserId))
+        MvcResult result = performGetEvidence(existingUserId)
                 .andExpect(status().isOk())
                 .andReturn();
 
@@ -580,10 +587,9 @@ class EvidenceControllerTest {
         usersEvidence.add(evidence1);
         usersEvidence.add(evidence2);
 
-        Mockito.when(evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(1)).thenReturn(usersEvidence);
+        mockEvidenceForUser(usersEvidence);
 
-        MvcResult result = mockMvc.perform(get("/evidenceData")
-                        .queryParam("userId", existingUserId))
+        MvcResult result = performGetEvidence(existingUserId)
                 .andReturn();
         EvidenceResponseDTO expectedResponse1 = new EvidenceResponseDTO(evidence1);
         EvidenceResponseDTO expectedResponse2 = new EvidenceResponseDTO(evidence2);
@@ -601,8 +607,7 @@ class EvidenceControllerTest {
         initialiseGetRequestMocks();
         String notExistingUserId = "2";
 
-        mockMvc.perform(get("/evidenceData")
-                        .queryParam("userId", notExistingUserId))
+        performGetEvidence(notExistingUserId)
                 .andExpect(status().isNotFound());
     }
 
@@ -614,8 +619,7 @@ class EvidenceControllerTest {
         initialiseGetRequestMocks();
         String illegalUserId = "IllegalId";
 
-        mockMvc.perform(get("/evidenceData")
-                        .queryParam("userId", illegalUserId))
+        performGetEvidence(illegalUserId)
                 .andExpect(status().isBadRequest());
     }
 
@@ -626,7 +630,7 @@ class EvidenceControllerTest {
         setUpContext();
         initialiseGetRequestMocks();
 
-        mockMvc.perform(get("/evidenceData"))
+        performGetEvidence(null)
                 .andExpect(status().isBadRequest());
     }
 
@@ -642,10 +646,9 @@ class EvidenceControllerTest {
                 , "description");
         usersEvidence.add(evidence);
 
-        Mockito.when(evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(1)).thenReturn(usersEvidence);
+        mockEvidenceForUser(usersEvidence);
 
-        MvcResult result = mockMvc.perform(get("/evidenceData")
-                        .queryParam("userId", existingUserId))
+        MvcResult result = performGetEvidence(existingUserId)
                 .andExpect(status().isOk())
                 .andReturn();
 
@@ -682,12 +685,12 @@ class EvidenceControllerTest {
                 .setProfileImagePath("a");
         userBuilder.addRoles(UserRole.STUDENT);
         UserResponse userResponse = userBuilder.build();
-        when(userAccountsClientService.getUserAccountById(request)).thenReturn(userResponse);
-        Mockito.when(evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(1)).thenReturn(usersEvidence);
+        when(userAccountsClientService.getUserAccountByIdAsync(request)).thenReturn(CompletableFuture.completedFuture(userResponse));
+        when(userAccountsClientService.getUsersByIdsAsync(Set.of(1))).thenReturn(CompletableFuture.completedFuture(Map.of(1, userResponse)));
+        mockEvidenceForUser(usersEvidence);
 
 
-        MvcResult result = mockMvc.perform(get("/evidenceData")
-                        .queryParam("userId", existingUserId))
+        MvcResult result = performGetEvidence(existingUserId)
                 .andExpect(status().isOk())
                 .andReturn();
 
@@ -714,21 +717,24 @@ class EvidenceControllerTest {
         evidence.addAssociateId(3);
 
         List<UserDTO> expectedUsers = new ArrayList<>();
+        Map<Integer, UserResponse> associates = new HashMap<>();
         for (int i = 1; i <= 3; i++) {
             UserResponse.Builder userBuilder = UserResponse.newBuilder().setId(i);
             userBuilder.addRoles(UserRole.STUDENT);
             UserResponse userResponse = userBuilder.build();
 
             GetUserByIdRequest request = GetUserByIdRequest.newBuilder().setId(i).build();
-            when(userAccountsClientService.getUserAccountById(request)).thenReturn(userResponse);
+            when(userAccountsClientService.getUserAccountByIdAsync(request)).thenReturn(CompletableFuture.completedFuture(userResponse));
+            associates.put(i, userResponse);
 
             UserDTO expectedUser = new UserDTO(userResponse);
             expectedUsers.add(expectedUser);
         }
-        Mockito.when(evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(1)).thenReturn(usersEvidence);
+        // All the associates should be fetched in one request
+        when(userAccountsClientService.getUsersByIdsAsync(Set.of(1, 2, 3))).thenReturn(CompletableFuture.completedFuture(associates));
+        mockEvidenceForUser(usersEvidence);
 
-        MvcResult result = mockMvc.perform(get("/evidenceData")
-                        .queryParam("userId", existingUserId))
+        MvcResult result = performGetEvidence(existingUserId)
                 .andExpect(status().isOk())
                 .andReturn();
 
@@ -753,7 +759,7 @@ class EvidenceControllerTest {
                         .param("evidenceId", String.valueOf(evidenceId)))
                 .andExpect(status().isOk());
 
-        Mockito.verify(evidenceRepository, Mockito.times(1)).delete(existingEvidence);
+        Mockito.verify(evidenceService, Mockito.times(1)).deleteEvidence(existingEvidence);
     }
 
 
@@ -766,7 +772,7 @@ class EvidenceControllerTest {
                         .param("evidenceId", "banana"))
                 .andExpect(status().isBadRequest());
 
-        Mockito.verify(evidenceRepository, Mockito.never()).delete(Mockito.any());
+        Mockito.verify(evidenceService, Mockito.never()).deleteEvidence(Mockito.any());
     }
 
 
@@ -782,7 +788,7 @@ class EvidenceControllerTest {
                         .param("evidenceId", String.valueOf(evidenceId)))
                 .andExpect(status().isNotFound());
 
-        Mockito.verify(evidenceRepository, Mockito.never()).delete(Mockito.any());
+        Mockito.verify(evidenceService, Mockito.never()).deleteEvidence(Mockito.any());
     }
 
 
@@ -800,7 +806,7 @@ class EvidenceControllerTest {
                         .param("evidenceId", String.valueOf(evidenceId)))
                 .andExpect(status().isUnauthorized());
 
-        Mockito.verify(evidenceRepository, Mockito.never()).delete(Mockito.any());
+        Mockito.verify(evidenceService, Mockito.never()).deleteEvidence(Mockito.any());
     }
 
 
@@ -883,14 +889,54 @@ class EvidenceControllerTest {
     }
 
 
+    /**
+     * Mocks the evidence read for user 1.
+     *
+     * @param usersEvidence The user's evidence
+     */
+    private void mockEvidenceForUser(List<Evidence> usersEvidence) {
+        List<EvidenceResponseDTO> evidence = new ArrayList<>();
+        for (Evidence piece : usersEvidence) {
+            evidence.add(new EvidenceResponseDTO(piece));
+        }
+        Mockito.when(evidenceReadService.getEvidenceForUser(1)).thenReturn(evidence);
+    }
+
+
     private void initialiseGetRequestMocks() {
         GetUserByIdRequest existingUserRequest = GetUserByIdRequest.newBuilder().setId(1).build();
         UserResponse userResponse = UserResponse.newBuilder().setId(1).build();
-        Mockito.when(userAccountsClientService.getUserAccountById(existingUserRequest)).thenReturn(userResponse);
+        Mockito.when(userAccountsClientService.getUserAccountByIdAsync(existingUserRequest))
+                .thenReturn(CompletableFuture.completedFuture(userResponse));
 
         GetUserByIdRequest nonExistentUserRequest = GetUserByIdRequest.newBuilder().setId(2).build();
         UserResponse notFoundResponse = UserResponse.newBuilder().setId(-1).build();
-        Mockito.when(userAccountsClientService.getUserAccountById(nonExistentUserRequest)).thenReturn(notFoundResponse);
+        Mockito.when(userAccountsClientService.getUserAccountByIdAsync(nonExistentUserRequest))
+                .thenReturn(CompletableFuture.completedFuture(notFoundResponse));
+
+        Mockito.when(userAccountsClientService.getUsersByIdsAsync(Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture(new HashMap<>()));
+    }
+
+
+    /**
+     * Sends a GET request for a user's evidence, and if the controller starts waiting on the IdP, dispatches the
+     * request again for its result.
+     *
+     * @param userId The userId query parameter, or null to leave it out
+     * @return The actions to check the response with
+     */
+    private ResultActions performGetEvidence(String userId) throws Exception {
+        MockHttpServletRequestBuilder request = get("/evidenceData");
+        if (userId != null) {
+            request.queryParam("userId", userId);
+        }
+        ResultActions actions = mockMvc.perform(request);
+        MvcResult result = actions.andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            return mockMvc.perform(asyncDispatch(result));
+        }
+        return actions;
     }
 
 
@@ -2,6 +2,7 @@ package nz.ac.canterbury.seng302.portfolio.controller;
 
 import nz.ac.canterbury.seng302.portfolio.PortfolioApplication;
 import nz.ac.canterbury.seng302.portfolio.authentication.Authentication;
+import nz.ac.canterbury.seng302.portfolio.authentication.RoleEpochRegistry;
 import nz.ac.canterbury.seng302.portfolio.demodata.DataInitialisationManagerPortfolio;
 import nz.ac.canterbury.seng302.portfolio.model.domain.repositories.GitRepoRepository;
 import nz.ac.canterbury.seng302.portfolio.model.domain.repositories.GitRepository;
@@ -47,6 +48,9 @@ class GitRepoControllerTest {
     @MockBean
     AuthenticateClientService authenticateClientService;
 
+    @MockBean
+    RoleEpochRegistry roleEpochRegistry;
+
     @MockBean
     UserAccountsClientService userAccountsClientService;
 
@@ -324,6 +328,7 @@ class GitRepoControllerTest {
                 .setGroupId(1).build())).thenReturn(groupExistsResponse);
         when(groupsClientService.getGroupDetails(GetGroupDetailsRequest.newBuilder()
                 .setGroupId(2).build())).thenReturn(groupDoesntExistResponse);
+        mockGroupMembership(GroupMembersResponse.newBuilder().setGroupId(1).addMembers(userResponse).build());
     }
 
 
@@ -339,6 +344,20 @@ class GitRepoControllerTest {
                 .setGroupId(1).build())).thenReturn(response);
         when(groupsClientService.getGroupDetails(GetGroupDetailsRequest.newBuilder()
                 .setGroupId(2).build())).thenReturn(groupDoesntExistResponse);
+        mockGroupMembership(GroupMembersResponse.newBuilder().setGroupId(1).build());
+    }
+
+
+    /**
+     * Mocks the IdP's answer to whether user 1 is a member of group 1. Group 2 doesn't exist.
+     *
+     * @param groupOneResponse The response for group 1
+     */
+    private void mockGroupMembership(GroupMembersResponse groupOneResponse) {
+        when(groupsClientService.getGroupMembers(GetGroupMembersRequest.newBuilder()
+                .setGroupId(1).addUserIds(1).build())).thenReturn(groupOneResponse);
+        when(groupsClientService.getGroupMembers(GetGroupMembersRequest.newBuilder()
+                .setGroupId(2).addUserIds(1).build())).thenReturn(GroupMembersResponse.newBuilder().setGroupId(-1).build());
     }
 
 
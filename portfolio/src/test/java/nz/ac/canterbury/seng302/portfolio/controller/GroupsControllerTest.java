@@ -4,8 +4,9 @@ import io.cucumber.gherkin.internal.com.eclipsesource.json.Json;
 import io.cucumber.gherkin.internal.com.eclipsesource.json.JsonArray;
 import nz.ac.canterbury.seng302.portfolio.PortfolioApplication;
 import nz.ac.canterbury.seng302.portfolio.authentication.Authentication;
+import nz.ac.canterbury.seng302.portfolio.authentication.RoleEpochRegistry;
 import nz.ac.canterbury.seng302.portfolio.demodata.DataInitialisationManagerPortfolio;
-import nz.ac.canterbury.seng302.portfolio.model.dto.GroupResponseDTO;
+import nz.ac.canterbury.seng302.portfolio.model.dto.GroupSummaryDTO;
 import nz.ac.canterbury.seng302.portfolio.service.PaginationService;
 import nz.ac.canterbury.seng302.portfolio.service.UserService;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.AuthenticateClientService;
@@ -45,6 +46,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
@@ -71,6 +73,9 @@ class GroupsControllerTest {
     @MockBean
     AuthenticateClientService authenticateClientService;
 
+    @MockBean
+    RoleEpochRegistry roleEpochRegistry;
+
     @MockBean
     UserAccountsClientService userAccountsClientService;
 
@@ -161,6 +166,35 @@ class GroupsControllerTest {
     }
 
 
+    @Test
+    void testCurrentTokenRolesAuthoriseWithoutFetchingUser() throws Exception {
+        setUserToTeacher();
+        Mockito.when(roleEpochRegistry.hasCurrentRoles(any())).thenReturn(true);
+        CreateGroupRequest request = buildCreateRequest("short", "long");
+        Mockito.when(groupsClientService.createGroup(request))
+                .thenReturn(CreateGroupResponse.newBuilder().setIsSuccess(true).setNewGroupId(3).build());
+
+        mockMvc.perform(post("/groups/edit")
+                        .param("shortName", "short")
+                        .param("longName", "long"))
+                .andExpect(status().isCreated());
+        Mockito.verify(userAccountsClientService, Mockito.never()).getUserAccountById(any());
+    }
+
+
+    @Test
+    void testCurrentTokenRolesRejectStudentWithoutFetchingUser() throws Exception {
+        setUserToStudent();
+        Mockito.when(roleEpochRegistry.hasCurrentRoles(any())).thenReturn(true);
+
+        mockMvc.perform(post("/groups/edit")
+                        .param("shortName", "short")
+                        .param("longName", "long"))
+                .andExpect(status().isUnauthorized());
+        Mockito.verify(userAccountsClientService, Mockito.never()).getUserAccountById(any());
+    }
+
+
     @Test
     void testCreateValidShortAndLongName() throws Exception {
         setUserToTeacher();
@@ -246,7 +280,8 @@ class GroupsControllerTest {
                 .addMembers(UserResponse.newBuilder().setId(1).build())
                 .setShortName("a short name")
                 .build();
-        Mockito.when(groupsClientService.getGroupDetails(groupRequest)).thenReturn(groupResponse);
+        Mockito.when(groupsClientService.getGroupDetailsFromServer(groupRequest)).thenReturn(groupResponse);
+        mockGroupMember(Integer.parseInt(groupId));
 
         mockMvc.perform(patch("/groups/edit/longName")
                         .param("groupId", groupId)
@@ -277,7 +312,8 @@ class GroupsControllerTest {
                 .addMembers(UserResponse.newBuilder().setId(1).build())
                 .setShortName("a short name")
                 .build();
-        Mockito.when(groupsClientService.getGroupDetails(groupRequest)).thenReturn(groupResponse);
+        Mockito.when(groupsClientService.getGroupDetailsFromServer(groupRequest)).thenReturn(groupResponse);
+        mockGroupMember(Integer.parseInt(groupId));
 
         mockMvc.perform(patch("/groups/edit/longName")
                         .param("groupId", groupId)
@@ -308,7 +344,8 @@ class GroupsControllerTest {
                 .addMembers(UserResponse.newBuilder().setId(1).build())
                 .setShortName("a short name")
                 .build();
-        Mockito.when(groupsClientService.getGroupDetails(groupRequest)).thenReturn(groupResponse);
+        Mockito.when(groupsClientService.getGroupDetailsFromServer(groupRequest)).thenReturn(groupResponse);
+        mockGroupMember(Integer.parseInt(groupId));
 
         mockMvc.perform(patch("/groups/edit/longName")
                         .param("groupId", groupId)
@@ -317,6 +354,96 @@ class GroupsControllerTest {
     }
 
 
+    @Test
+    void testEditLongNameChecksMembershipWithTheIdp() throws Exception {
+        setUserToStudent();
+        GetGroupDetailsRequest groupRequest = GetGroupDetailsRequest.newBuilder()
+                .setGroupId(2)
+                .build();
+        GroupDetailsResponse staleGroup = GroupDetailsResponse.newBuilder()
+                .addMembers(UserResponse.newBuilder().setId(1).build())
+                .setShortName("a short name")
+                .build();
+        GroupDetailsResponse currentGroup = GroupDetailsResponse.newBuilder()
+                .setShortName("a short name")
+                .build();
+        Mockito.when(groupsClientService.getGroupDetails(groupRequest)).thenReturn(staleGroup);
+        Mockito.when(groupsClientService.getGroupDetailsFromServer(groupRequest)).thenReturn(currentGroup);
+        mockGroupMember(2);
+
+        mockMvc.perform(patch("/groups/edit/longName")
+                        .param("groupId", "2")
+                        .param("longName", "Test Name But Longer"))
+                .andExpect(status().isUnauthorized());
+        Mockito.verify(groupsClientService, Mockito.never()).modifyGroupDetails(any());
+    }
+
+
+    @Test
+    void testGetGroupReturnsPageOfMembers() throws Exception {
+        setUserToStudent();
+        GetGroupMembersRequest pageRequest = GetGroupMembersRequest.newBuilder()
+                .setGroupId(3)
+                .setPaginationRequestOptions(PaginationRequestOptions.newBuilder()
+                        .setOffset(10)
+                        .setLimit(10)
+                        .setOrderBy("firstname")
+                        .setIsAscendingOrder(true))
+                .build();
+        GroupMembersResponse page = GroupMembersResponse.newBuilder()
+                .setGroupId(3)
+                .setShortName("Group 3")
+                .setLongName("Test Group 3")
+                .addMembers(UserResponse.newBuilder().setId(5).setUsername("member5"))
+                .setPaginationResponseOptions(PaginationResponseOptions.newBuilder().setResultSetSize(11))
+                .build();
+        Mockito.when(groupsClientService.getGroupMembersAsync(pageRequest))
+                .thenReturn(CompletableFuture.completedFuture(page));
+        Mockito.when(groupsClientService.getGroupMembersAsync(membershipRequest(3)))
+                .thenReturn(CompletableFuture.completedFuture(GroupMembersResponse.newBuilder().setGroupId(3).build()));
+
+        MvcResult result = mockMvc.perform(get("/group")
+                        .param("groupId", "3")
+                        .param("offset", "10")
+                        .param("limit", "10"))
+                .andReturn();
+        String group = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        Assertions.assertTrue(group.contains("\"shortName\":\"Group 3\""));
+        Assertions.assertTrue(group.contains("\"username\":\"member5\""));
+        Assertions.assertTrue(group.contains("\"membersNumber\":11"));
+        Assertions.assertTrue(group.contains("\"isMember\":false"));
+        Mockito.verify(groupsClientService, Mockito.never()).getGroupDetails(any());
+    }
+
+
+    @Test
+    void testGetGroupLimitsPageOfMembers() throws Exception {
+        setUserToStudent();
+        GetGroupMembersRequest pageRequest = GetGroupMembersRequest.newBuilder()
+                .setGroupId(3)
+                .setPaginationRequestOptions(PaginationRequestOptions.newBuilder()
+                        .setOffset(0)
+                        .setLimit(1000)
+                        .setOrderBy("firstname")
+                        .setIsAscendingOrder(true))
+                .build();
+        Mockito.when(groupsClientService.getGroupMembersAsync(any()))
+                .thenReturn(CompletableFuture.completedFuture(GroupMembersResponse.newBuilder().setGroupId(3).build()));
+
+        MvcResult result = mockMvc.perform(get("/group")
+                        .param("groupId", "3")
+                        .param("limit", "999999999999"))
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk());
+
+        Mockito.verify(groupsClientService).getGroupMembersAsync(pageRequest);
+    }
+
+
     @Test
     void testDeleteGroupValid() throws Exception {
         setUserToTeacher();
@@ -540,21 +667,15 @@ class GroupsControllerTest {
             }
         }
 
-        PaginationRequestOptions options = PaginationRequestOptions.newBuilder()
-                .setOrderBy("shortName")
-                .setOffset(offset)
-                .setLimit(this.groupsPerPage)
-                .setIsAscendingOrder(true)
-                .build();
-
-        GetPaginatedGroupsRequest request = GetPaginatedGroupsRequest.newBuilder()
-                .setPaginationRequestOptions(options)
-                .build();
-
-        PaginatedGroupsResponse.Builder response = PaginatedGroupsResponse.newBuilder();
+        PaginatedGroupSummariesResponse.Builder response = PaginatedGroupSummariesResponse.newBuilder();
 
         for (int i = offset; ((i - offset) < this.groupsPerPage) && (i < expectedGroupsList.size()); i++) {
-            response.addGroups(expectedGroupsList.get(i));
+            GroupDetailsResponse group = expectedGroupsList.get(i);
+            response.addGroups(GroupSummaryResponse.newBuilder()
+                    .setGroupId(group.getGroupId())
+                    .setShortName(group.getShortName())
+                    .setLongName(group.getLongName())
+                    .setMembersNumber(group.getMembersCount()));
         }
 
         PaginationResponseOptions responseOptions = PaginationResponseOptions.newBuilder()
@@ -563,13 +684,12 @@ class GroupsControllerTest {
 
         response.setPaginationResponseOptions(responseOptions);
 
-        when(groupService.getPaginatedGroupsFromServer(0, "shortName", this.groupsPerPage, true)).thenReturn(response.build());
-        when(groupService.getPaginatedGroupsFromServer(60, "shortName", this.groupsPerPage, true)).thenReturn(response.build());
-        when(groupService.getPaginatedGroupsFromServer(30, "shortName", this.groupsPerPage, true)).thenReturn(response.build());
-        when(groupService.getPaginatedGroupsFromServer(40, "shortName", this.groupsPerPage, true)).thenReturn(response.build());
-        when(groupService.getPaginatedGroupsFromServer(90, "shortName", this.groupsPerPage, true)).thenReturn(response.build());
-        when(groupService.createGroupListFromResponse(response.build())).thenReturn(createGroupListFromResponse(response.build()));
-        when(groupsClientService.getPaginatedGroups(request)).thenReturn(response.build());
+        when(groupService.getPaginatedGroupSummariesFromServer(0, "shortName", this.groupsPerPage, true)).thenReturn(response.build());
+        when(groupService.getPaginatedGroupSummariesFromServer(60, "shortName", this.groupsPerPage, true)).thenReturn(response.build());
+        when(groupService.getPaginatedGroupSummariesFromServer(30, "shortName", this.groupsPerPage, true)).thenReturn(response.build());
+        when(groupService.getPaginatedGroupSummariesFromServer(40, "shortName", this.groupsPerPage, true)).thenReturn(response.build());
+        when(groupService.getPaginatedGroupSummariesFromServer(90, "shortName", this.groupsPerPage, true)).thenReturn(response.build());
+        when(groupService.createGroupSummaryListFromResponse(response.build())).thenReturn(createGroupSummaryListFromResponse(response.build()));
     }
 
     private void addExpectedGroupsToList(int min, int max) {
@@ -580,11 +700,10 @@ class GroupsControllerTest {
         }
     }
 
-    public List<GroupResponseDTO> createGroupListFromResponse(PaginatedGroupsResponse paginatedGroupsResponse){
-        List<GroupResponseDTO> groupDTOS = new ArrayList<>();
-        for(GroupDetailsResponse groupDetailsResponse: paginatedGroupsResponse.getGroupsList()) {
-            GroupResponseDTO groupDTO = new GroupResponseDTO(groupDetailsResponse);
-            groupDTOS.add(groupDTO);
+    public List<GroupSummaryDTO> createGroupSummaryListFromResponse(PaginatedGroupSummariesResponse paginatedGroupSummariesResponse){
+        List<GroupSummaryDTO> groupDTOS = new ArrayList<>();
+        for(GroupSummaryResponse groupSummaryResponse: paginatedGroupSummariesResponse.getGroupsList()) {
+            groupDTOS.add(new GroupSummaryDTO(groupSummaryResponse));
         }
         return groupDTOS;
     }
@@ -661,6 +780,23 @@ class GroupsControllerTest {
     }
 
 
+    private GetGroupMembersRequest membershipRequest(int groupId) {
+        return GetGroupMembersRequest.newBuilder()
+                .setGroupId(groupId)
+                .addUserIds(1)
+                .build();
+    }
+
+
+    private void mockGroupMember(int groupId) {
+        GroupMembersResponse response = GroupMembersResponse.newBuilder()
+                .setGroupId(groupId)
+                .addMembers(UserResponse.newBuilder().setId(1))
+                .build();
+        Mockito.when(groupsClientService.getGroupMembers(membershipRequest(groupId))).thenReturn(response);
+    }
+
+
     private void setUserToStudent() {
         principal = new Authentication(AuthState.newBuilder()
                 .setIsAuthenticated(true)
@@ -672,6 +808,7 @@ class GroupsControllerTest {
         idpUser = UserResponse.newBuilder().setId(1).addRoles(UserRole.STUDENT).build();
 
         Mockito.when(userAccountsClientService.getUserAccountById(any())).thenReturn(idpUser);
+        Mockito.when(userAccountsClientService.getUserAccountByIdFromServer(any())).thenReturn(idpUser);
         setUpContext();
     }
 
@@ -687,12 +824,14 @@ class GroupsControllerTest {
         idpUser = UserResponse.newBuilder().setId(1).addRoles(UserRole.COURSE_ADMINISTRATOR).build();
 
         Mockito.when(userAccountsClientService.getUserAccountById(any())).thenReturn(idpUser);
+        Mockito.when(userAccountsClientService.getUserAccountByIdFromServer(any())).thenReturn(idpUser);
         setUpContext();
     }
 
     private void demoteWithoutUpdatingPrincipal() {
         idpUser = UserResponse.newBuilder().setId(1).addRoles(UserRole.STUDENT).build();
         Mockito.when(userAccountsClientService.getUserAccountById(any())).thenReturn(idpUser);
+        Mockito.when(userAccountsClientService.getUserAccountByIdFromServer(any())).thenReturn(idpUser);
     }
 
 
@@ -99,7 +99,6 @@ class PortfolioControllerTest {
                         " create software as a team.");
         userBuilder.addRoles(UserRole.TEACHER);
         UserResponse user = userBuilder.build();
-        when(PrincipalAttributes.getUserFromPrincipal(principal.getAuthState(), userAccountsClientService)).thenReturn(user);
         GetUserByIdRequest userByIdRequest = GetUserByIdRequest.newBuilder().setId(1).build();
         when(userAccountsClientService.getUserAccountById(userByIdRequest)).thenReturn(user);
         UserRegisterResponse userRegisterResponse = UserRegisterResponse.newBuilder().setIsSuccess(true).build();
@@ -431,7 +430,10 @@ class PortfolioControllerTest {
                 .setProfileImagePath("a");
         userBuilder.addRoles(UserRole.STUDENT);
 
-        when(PrincipalAttributes.getUserFromPrincipal(principal.getAuthState(), userAccountsClientService)).thenReturn(userBuilder.build());
+        // Stubbed on the client rather than through PrincipalAttributes, which would fetch and keep the teacher from
+        // setup as the user of the request
+        GetUserByIdRequest userByIdRequest = GetUserByIdRequest.newBuilder().setId(1).build();
+        when(userAccountsClientService.getUserAccountById(userByIdRequest)).thenReturn(userBuilder.build());
         Mockito.when(authenticateClientService.checkAuthState()).thenReturn(principal.getAuthState());
     }
 
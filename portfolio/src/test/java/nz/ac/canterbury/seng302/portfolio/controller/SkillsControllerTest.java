@@ -1,11 +1,17 @@
 package nz.ac.canterbury.seng302.portfolio.controller;
 
 import nz.ac.canterbury.seng302.portfolio.authentication.Authentication;
+import nz.ac.canterbury.seng302.portfolio.authentication.RoleEpochRegistry;
 import nz.ac.canterbury.seng302.portfolio.demodata.DataInitialisationManagerPortfolio;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Evidence;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.EvidenceRepository;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Skill;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.SkillRepository;
+import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.UserSkillCount;
+import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.UserSkillCountRepository;
+import nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceResponseDTO;
+import nz.ac.canterbury.seng302.portfolio.service.EvidenceReadService;
+import nz.ac.canterbury.seng302.portfolio.service.EvidenceService;
 import nz.ac.canterbury.seng302.portfolio.service.SkillFrequencyService;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.AuthenticateClientService;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.GroupsClientService;
@@ -41,6 +47,7 @@ import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 
@@ -57,6 +64,9 @@ class SkillsControllerTest {
     @MockBean
     private AuthenticateClientService authenticateClientService;
 
+    @MockBean
+    private RoleEpochRegistry roleEpochRegistry;
+
     @MockBean
     private UserAccountsClientService userAccountsClientService;
 
@@ -69,9 +79,18 @@ class SkillsControllerTest {
     @MockBean
     private EvidenceRepository evidenceRepository;
 
+    @MockBean
+    private UserSkillCountRepository userSkillCountRepository;
+
     @SpyBean
     private SkillFrequencyService skillFrequencyService;
 
+    @MockBean
+    private EvidenceService evidenceService;
+
+    @MockBean
+    private EvidenceReadService evidenceReadService;
+
     @MockBean
     private DataInitialisationManagerPortfolio dataInitialisationManagerPortfolio;
 
@@ -182,18 +201,15 @@ class SkillsControllerTest {
     void testGetSkillsFrequencyForUserPointFive() throws Exception {
         List<Skill> skillList = getDefaultSkillsList();
 
-        ArrayList<Evidence> evidencesWithSkills = new ArrayList<>();
         ArrayList<Evidence> evidences = new ArrayList<>();
         Evidence evidence = new Evidence(validUserId, "test", LocalDate.now(), "test");
         Evidence evidence1 = new Evidence(validUserId, "test", LocalDate.now(), "test");
         evidence.addSkill(skillList.get(0));
-        evidencesWithSkills.add(evidence);
         evidences.add(evidence);
         evidences.add(evidence1);
         skillList.get(0).setFrequency(0.5);
 
         setUpMocks(skillList, evidences);
-        Mockito.when(evidenceRepository.findAllByUserIdAndSkillsContainingOrderByOccurrenceDateDesc(validUserId, skillList.get(0))).thenReturn(evidencesWithSkills);
 
         MvcResult result = mockMvc.perform(get("/skills")
                         .param("userId", String.valueOf(validUserId)))
@@ -265,13 +281,12 @@ class SkillsControllerTest {
     @Test
     void testGetEvidenceForSkillWhenSkillHasOneEvidence() throws Exception {
         Skill testSkill = new Skill(1, "writing_tests");
-        Evidence evidence1 = new Evidence(1, 2, "Title", LocalDate.now(), "description");
-        testSkill.getEvidence().add(evidence1);
-        List<Evidence> evidenceList = new ArrayList<>();
+        EvidenceResponseDTO evidence1 = new EvidenceResponseDTO(new Evidence(1, 2, "Title", LocalDate.now(), "description"));
+        List<EvidenceResponseDTO> evidenceList = new ArrayList<>();
         evidenceList.add(evidence1);
 
         Mockito.when(skillRepository.findDistinctByEvidenceUserIdAndNameIgnoreCase(anyInt(), eq(testSkill.getName()))).thenReturn(Optional.of(testSkill));
-        Mockito.when(evidenceRepository.findAllByUserIdAndSkillsContainingOrderByOccurrenceDateDesc(anyInt(), Mockito.any())).thenReturn(evidenceList);
+        Mockito.when(evidenceReadService.getEvidenceForUserWithSkill(anyInt(), Mockito.any())).thenReturn(evidenceList);
 
         MvcResult result = mockMvc.perform(get("/evidenceLinkedToSkill")
                         .param("skillName", "writing_tests")
@@ -288,20 +303,17 @@ class SkillsControllerTest {
     @Test
     void testGetEvidenceForSkillWhenSkillHasMultipleEvidence() throws Exception {
         Skill testSkill = new Skill(1, "writing_tests");
-        Evidence evidence1 = new Evidence(1, 2, "Title", LocalDate.now(), "description");
-        Evidence evidence2 = new Evidence(2, 2, "Title", LocalDate.now(), "description");
-        Evidence evidence3 = new Evidence(3, 2, "Title", LocalDate.now(), "description");
-        testSkill.getEvidence().add(evidence1);
-        testSkill.getEvidence().add(evidence2);
-        testSkill.getEvidence().add(evidence3);
-        List<Evidence> evidenceList = new ArrayList<>();
+        EvidenceResponseDTO evidence1 = new EvidenceResponseDTO(new Evidence(1, 2, "Title", LocalDate.now(), "description"));
+        EvidenceResponseDTO evidence2 = new EvidenceResponseDTO(new Evidence(2, 2, "Title", LocalDate.now(), "description"));
+        EvidenceResponseDTO evidence3 = new EvidenceResponseDTO(new Evidence(3, 2, "Title", LocalDate.now(), "description"));
+        List<EvidenceResponseDTO> evidenceList = new ArrayList<>();
         evidenceList.add(evidence1);
         evidenceList.add(evidence2);
         evidenceList.add(evidence3);
 
 
         Mockito.when(skillRepository.findDistinctByEvidenceUserIdAndNameIgnoreCase(1, testSkill.getName())).thenReturn(Optional.of(testSkill));
-        Mockito.when(evidenceRepository.findAllByUserIdAndSkillsContainingOrderByOccurrenceDateDesc(anyInt(), any())).thenReturn(evidenceList);
+        Mockito.when(evidenceReadService.getEvidenceForUserWithSkill(anyInt(), any())).thenReturn(evidenceList);
 
         MvcResult result = mockMvc.perform(get("/evidenceLinkedToSkill")
                         .param("skillName", "writing_tests")
@@ -339,9 +351,71 @@ class SkillsControllerTest {
     }
 
 
+    @Test
+    void testMergeSkillsAsTeacher() throws Exception {
+        setUserToTeacher();
+        Skill skill = new Skill(1, "Teamwork");
+        Skill mergedSkill = new Skill(2, "Team work");
+        Mockito.when(skillRepository.findById(Integer.valueOf(1))).thenReturn(Optional.of(skill));
+        Mockito.when(skillRepository.findById(Integer.valueOf(2))).thenReturn(Optional.of(mergedSkill));
+
+        mockMvc.perform(post("/skills/merge")
+                        .param("skillId", "1")
+                        .param("mergedSkillId", "2"))
+                .andExpect(status().isOk());
+
+        Mockito.verify(evidenceService).mergeSkills(skill, mergedSkill);
+    }
+
+
+    @Test
+    void testMergeSkillsAsStudentIsUnauthorised() throws Exception {
+        mockMvc.perform(post("/skills/merge")
+                        .param("skillId", "1")
+                        .param("mergedSkillId", "2"))
+                .andExpect(status().isUnauthorized());
+
+        Mockito.verify(evidenceService, Mockito.never()).mergeSkills(any(), any());
+    }
+
+
+    @Test
+    void testMergeSkillIntoItself() throws Exception {
+        setUserToTeacher();
+
+        mockMvc.perform(post("/skills/merge")
+                        .param("skillId", "1")
+                        .param("mergedSkillId", "1"))
+                .andExpect(status().isBadRequest());
+
+        Mockito.verify(evidenceService, Mockito.never()).mergeSkills(any(), any());
+    }
+
+
+    @Test
+    void testMergeSkillThatDoesNotExist() throws Exception {
+        setUserToTeacher();
+        Mockito.when(skillRepository.findById(Integer.valueOf(1))).thenReturn(Optional.of(new Skill(1, "Teamwork")));
+        Mockito.when(skillRepository.findById(Integer.valueOf(2))).thenReturn(Optional.empty());
+
+        mockMvc.perform(post("/skills/merge")
+                        .param("skillId", "1")
+                        .param("mergedSkillId", "2"))
+                .andExpect(status().isNotFound());
+
+        Mockito.verify(evidenceService, Mockito.never()).mergeSkills(any(), any());
+    }
+
+
     // -------------- Helper context functions ----------------------------------------------------
 
 
+    private void setUserToTeacher() {
+        UserResponse teacher = UserResponse.newBuilder().setId(validUserId).addRoles(UserRole.TEACHER).build();
+        Mockito.when(userAccountsClientService.getUserAccountById(any())).thenReturn(teacher);
+    }
+
+
     private void setUpContext() {
         Mockito.when(authenticateClientService.checkAuthState()).thenReturn(principal.getAuthState());
         SecurityContext mockedSecurityContext = Mockito.mock(SecurityContext.class);
@@ -390,8 +464,13 @@ class SkillsControllerTest {
     private void setUpMocks(List<Skill> skillList, List<Evidence> evidences) {
         expectedResponseString = "[" + skillList.get(0).toJsonString() + "]";
 
-        Mockito.when(evidenceRepository.findAllByUserIdAndSkillsContainingOrderByOccurrenceDateDesc(validUserId, skillList.get(0))).thenReturn(evidences);
-        Mockito.when(evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(validUserId)).thenReturn(evidences);
+        Skill skill = skillList.get(0);
+        long evidenceWithSkill = evidences.stream().filter(evidence -> evidence.getSkills().contains(skill)).count();
+        List<UserSkillCount> counts = evidenceWithSkill == 0
+                ? List.of()
+                : List.of(new UserSkillCount(validUserId, skill.getId(), evidenceWithSkill));
+        Mockito.when(userSkillCountRepository.findAllByUserId(validUserId)).thenReturn(counts);
+        Mockito.when(evidenceRepository.countByUserId(validUserId)).thenReturn((long) evidences.size());
         Mockito.when(skillRepository.findDistinctByEvidenceUserId(validUserId)).thenReturn(skillList);
     }
 
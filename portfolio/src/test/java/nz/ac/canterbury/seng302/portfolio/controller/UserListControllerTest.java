@@ -15,8 +15,17 @@ import org.mockito.Spy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.ui.Model;
-
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 import static org.mockito.Mockito.*;
@@ -182,6 +191,21 @@ class UserListControllerTest {
 
         response.setPaginationResponseOptions(responseOptions);
         when(mockClientService.getPaginatedUsers(request)).thenReturn(response.build());
+
+        StreamUsersRequest streamRequest = StreamUsersRequest.newBuilder()
+                .setOrderBy(sortOrder)
+                .setIsAscendingOrder(boolAscending)
+                .build();
+        List<UserResponse> sortedUsers = List.copyOf(expectedUsersList);
+        try {
+            doAnswer(invocation -> {
+                UserAccountsClientService.UserBatchHandler handler = invocation.getArgument(1);
+                handler.handle(UserBatch.newBuilder().addAllUsers(sortedUsers).build());
+                return null;
+            }).when(mockClientService).streamUsers(eq(streamRequest), any());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
 
@@ -194,7 +218,7 @@ class UserListControllerTest {
     @Test
     void loadFirstPage() {
         createMockResponse(0, "firstname", "true", null);
-        userListController.getUserList(principal, model, 1, "firstname", "true", usersPerPage.toString());
+        userListController.getUserList(principal, model, 1, "firstname", "true", usersPerPage.toString(), null);
         Object totalPages = model.getAttribute("totalPages");
         Object currentPage = model.getAttribute("currentPage");
         Object totalItems = model.getAttribute("totalItems");
@@ -224,7 +248,7 @@ class UserListControllerTest {
     @Test
     void loadLastPage() {
         createMockResponse(usersPerPage * 4, "firstname", "true", null);
-        userListController.getUserList(principal, model, 5, "firstname", "true", usersPerPage.toString());
+        userListController.getUserList(principal, model, 5, "firstname", "true", usersPerPage.toString(), null);
         Object totalPages = model.getAttribute("totalPages");
         Object currentPage = model.getAttribute("currentPage");
         Object totalItems = model.getAttribute("totalItems");
@@ -254,7 +278,7 @@ class UserListControllerTest {
     @Test
     void loadThirdPage() {
         createMockResponse(usersPerPage * 2, "firstname", "true", null);
-        userListController.getUserList(principal, model, 3, "firstname", "true", usersPerPage.toString());
+        userListController.getUserList(principal, model, 3, "firstname", "true", usersPerPage.toString(), null);
         Object totalPages = model.getAttribute("totalPages");
         Object currentPage = model.getAttribute("currentPage");
         Object totalItems = model.getAttribute("totalItems");
@@ -285,7 +309,7 @@ class UserListControllerTest {
     void loadLastPagePlusOne() {
         createMockResponse(usersPerPage * 5, "firstname", "true", null); //needed so controller can see the total pages amount
         createMockResponse(usersPerPage * 4, "firstname", "true", null);
-        userListController.getUserList(principal, model, 6, "firstname", "true", usersPerPage.toString());
+        userListController.getUserList(principal, model, 6, "firstname", "true", usersPerPage.toString(), null);
         Object totalPages = model.getAttribute("totalPages");
         Object currentPage = model.getAttribute("currentPage");
         Object totalItems = model.getAttribute("totalItems");
@@ -315,7 +339,7 @@ class UserListControllerTest {
     @Test
     void loadZeroPageNumber() {
         createMockResponse(0, "firstname", "true", null);
-        userListController.getUserList(principal, model, 0, "firstname", "true", usersPerPage.toString());
+        userListController.getUserList(principal, model, 0, "firstname", "true", usersPerPage.toString(), null);
         Object totalPages = model.getAttribute("totalPages");
         Object currentPage = model.getAttribute("currentPage");
         Object totalItems = model.getAttribute("totalItems");
@@ -345,7 +369,7 @@ class UserListControllerTest {
     @Test
     void loadNegativePageNumber() {
         createMockResponse(0, "firstname", "true", null);
-        userListController.getUserList(principal, model, -1, "firstname", "true", usersPerPage.toString());
+        userListController.getUserList(principal, model, -1, "firstname", "true", usersPerPage.toString(), null);
         Object totalPages = model.getAttribute("totalPages");
         Object currentPage = model.getAttribute("currentPage");
         Object totalItems = model.getAttribute("totalItems");
@@ -374,7 +398,7 @@ class UserListControllerTest {
     @Test
     void footerNumberSequenceLessThanElevenPages() {
         createMockResponse(0, "firstname", "true", null);
-        userListController.getUserList(principal, model, 1, null, null, usersPerPage.toString());
+        userListController.getUserList(principal, model, 1, null, null, usersPerPage.toString(), null);
         List<Integer> footerSequence = userListController.getFooterSequence();
         List<Integer> expectedFooterSequence = Arrays.asList(1, 2, 3, 4, 5);
 
@@ -386,7 +410,7 @@ class UserListControllerTest {
     void footerNumberSequencePage10GreaterThan16Pages() {
         addUsersToExpectedList(usersPerPage  * 4 + 2, usersPerPage * 18);
         createMockResponse(usersPerPage * 9, "firstname", "true", null);
-        userListController.getUserList(principal, model, 10, "firstname", "true", usersPerPage.toString());
+        userListController.getUserList(principal, model, 10, "firstname", "true", usersPerPage.toString(), null);
         List<Integer> footerSequence = userListController.getFooterSequence();
         ArrayList<Integer> expectedFooterSequence = new ArrayList<>();
         for (int i = 5; i <= 15; i++) {
@@ -401,7 +425,7 @@ class UserListControllerTest {
     void footerNumberSequencePage10LessThan16Pages() {
         addUsersToExpectedList(usersPerPage  * 4 + 2, usersPerPage * 13);
         createMockResponse(usersPerPage * 9, "firstname", "true", null);
-        userListController.getUserList(principal, model, 10, "firstname", "true", usersPerPage.toString());
+        userListController.getUserList(principal, model, 10, "firstname", "true", usersPerPage.toString(), null);
         List<Integer> footerSequence = userListController.getFooterSequence();
         ArrayList<Integer> expectedFooterSequence = new ArrayList<>();
         for (int i = 3; i <= 13; i++) {
@@ -415,7 +439,7 @@ class UserListControllerTest {
     @Test
     void sortByFirstNameIncreasing() {
         createMockResponse(0, "firstname", "true", null);
-        userListController.getUserList(principal, model, 1, "firstname", "true", usersPerPage.toString());
+        userListController.getUserList(principal, model, 1, "firstname", "true", usersPerPage.toString(), null);
         List<UserResponse> userList = userListController.getUserResponseList();
         expectedUsersList.sort(compareByFirstName);
         List<UserResponse> expectedSubsetOfUsers = expectedUsersList.subList(0, usersPerPage);
@@ -427,7 +451,7 @@ class UserListControllerTest {
     @Test
     void sortByFirstNameDecreasing() {
         createMockResponse(0, "firstname", "false", null);
-        userListController.getUserList(principal, model, 1, "firstname", "false", usersPerPage.toString());
+        userListController.getUserList(principal, model, 1, "firstname", "false", usersPerPage.toString(), null);
         List<UserResponse> userList = userListController.getUserResponseList();
         expectedUsersList.sort(compareByFirstName);
         Collections.reverse(expectedUsersList);
@@ -440,7 +464,7 @@ class UserListControllerTest {
     @Test
     void sortByMiddleNameIncreasing() {
         createMockResponse(0, "middlename", "true", null);
-        userListController.getUserList(principal, model, 1, "middlename", "true", usersPerPage.toString());
+        userListController.getUserList(principal, model, 1, "middlename", "true", usersPerPage.toString(), null);
         List<UserResponse> userList = userListController.getUserResponseList();
         expectedUsersList.sort(compareByMiddleName);
         List<UserResponse> expectedSubsetOfUsers = expectedUsersList.subList(0, usersPerPage);
@@ -452,7 +476,7 @@ class UserListControllerTest {
     @Test
     void sortByMiddleNameDecreasing() {
         createMockResponse(0, "middlename", "false", null);
-        userListController.getUserList(principal, model, 1, "middlename", "false", usersPerPage.toString());
+        userListController.getUserList(principal, model, 1, "middlename", "false", usersPerPage.toString(), null);
         List<UserResponse> userList = userListController.getUserResponseList();
         expectedUsersList.sort(compareByMiddleName);
         Collections.reverse(expectedUsersList);
@@ -465,7 +489,7 @@ class UserListControllerTest {
     @Test
     void sortByLastNameIncreasing() {
         createMockResponse(0, "lastname", "true", null);
-        userListController.getUserList(principal, model, 1, "lastname", "true", usersPerPage.toString());
+        userListController.getUserList(principal, model, 1, "lastname", "true", usersPerPage.toString(), null);
         List<UserResponse> userList = userListController.getUserResponseList();
         expectedUsersList.sort(compareByLastName);
         List<UserResponse> expectedSubsetOfUsers = expectedUsersList.subList(0, usersPerPage);
@@ -477,7 +501,7 @@ class UserListControllerTest {
     @Test
     void sortByLastNameDecreasing() {
         createMockResponse(0, "lastname", "false", null);
-        userListController.getUserList(principal, model, 1, "lastname", "false", usersPerPage.toString());
+        userListController.getUserList(principal, model, 1, "lastname", "false", usersPerPage.toString(), null);
         List<UserResponse> userList = userListController.getUserResponseList();
         expectedUsersList.sort(compareByLastName);
         Collections.reverse(expectedUsersList);
@@ -490,7 +514,7 @@ class UserListControllerTest {
     @Test
     void sortByUsernameIncreasing() {
         createMockResponse(0, "username", "true", null);
-        userListController.getUserList(principal, model, 1, "username", "true", usersPerPage.toString());
+        userListController.getUserList(principal, model, 1, "username", "true", usersPerPage.toString(), null);
         List<UserResponse> userList = userListController.getUserResponseList();
         expectedUsersList.sort(compareByUsername);
         List<UserResponse> expectedSubsetOfUsers = expectedUsersList.subList(0, usersPerPage);
@@ -502,7 +526,7 @@ class UserListControllerTest {
     @Test
     void sortByUsernameDecreasing() {
         createMockResponse(0, "username", "false", null);
-        userListController.getUserList(principal, model, 1, "username", "false", usersPerPage.toString());
+        userListController.getUserList(principal, model, 1, "username", "false", usersPerPage.toString(), null);
         List<UserResponse> userList = userListController.getUserResponseList();
         expectedUsersList.sort(compareByUsername);
         Collections.reverse(expectedUsersList);
@@ -515,7 +539,7 @@ class UserListControllerTest {
     @Test
     void sortByAliasIncreasing() {
         createMockResponse(0, "aliases", "true", null);
-        userListController.getUserList(principal, model, 1, "aliases", "true", usersPerPage.toString());
+        userListController.getUserList(principal, model, 1, "aliases", "true", usersPerPage.toString(), null);
         List<UserResponse> userList = userListController.getUserResponseList();
         expectedUsersList.sort(compareByAlias);
         List<UserResponse> expectedSubsetOfUsers = expectedUsersList.subList(0, usersPerPage);
@@ -527,7 +551,7 @@ class UserListControllerTest {
     @Test
     void sortByAliasDecreasing() {
         createMockResponse(0, "aliases", "false", null);
-        userListController.getUserList(principal, model, 1, "aliases", "false", usersPerPage.toString());
+        userListController.getUserList(principal, model, 1, "aliases", "false", usersPerPage.toString(), null);
         List<UserResponse> userList = userListController.getUserResponseList();
         expectedUsersList.sort(compareByAlias);
         Collections.reverse(expectedUsersList);
@@ -540,7 +564,7 @@ class UserListControllerTest {
     @Test
     void sortByRolesIncreasing() {
         createMockResponse(0, "roles", "true", null);
-        userListController.getUserList(principal, model, 1, "roles", "true", usersPerPage.toString());
+        userListController.getUserList(principal, model, 1, "roles", "true", usersPerPage.toString(), null);
         List<UserResponse> userList = userListController.getUserResponseList();
         expectedUsersList.sort(compareByRole);
         List<UserResponse> expectedSubsetOfUsers = expectedUsersList.subList(0, usersPerPage);
@@ -552,7 +576,7 @@ class UserListControllerTest {
     @Test
     void sortByRolesDecreasing() {
         createMockResponse(0, "roles", "false", null);
-        userListController.getUserList(principal, model, 1, "roles", "false", usersPerPage.toString());
+        userListController.getUserList(principal, model, 1, "roles", "false", usersPerPage.toString(), null);
         List<UserResponse> userList = userListController.getUserResponseList();
         expectedUsersList.sort(compareByRole);
         List<UserResponse> expectedSubsetOfUsers = expectedUsersList.subList(0, usersPerPage);
@@ -565,7 +589,7 @@ class UserListControllerTest {
     void sortOrderDefaultToNameIncreasing() {
         createMockResponse(0, "firstname", "true", null);
         String expectedDefaultSortOrder = "firstname";
-        userListController.getUserList(principal, model, 1, null, null, usersPerPage.toString());
+        userListController.getUserList(principal, model, 1, null, null, usersPerPage.toString(), null);
         String sortOrder = userListController.getSortOrder();
         boolean isAscending = userListController.getIsAscending();
 
@@ -577,7 +601,7 @@ class UserListControllerTest {
     @Test
     void getTenUsersPerPage(){
         createMockResponse(0, "firstname", "true", "10");
-        userListController.getUserList(principal, model, 1, null, "true", "10");
+        userListController.getUserList(principal, model, 1, null, "true", "10", null);
         int usersPerPageLimit = userListController.getUsersPerPageLimit();
 
         Assertions.assertEquals(10, usersPerPageLimit);
@@ -587,7 +611,7 @@ class UserListControllerTest {
     @Test
     void getTwentyUsersPerPage(){
         createMockResponse(0, "firstname", "true", "20");
-        userListController.getUserList(principal, model, 1, null, "true", "20");
+        userListController.getUserList(principal, model, 1, null, "true", "20", null);
         int usersPerPageLimit = userListController.getUsersPerPageLimit();
 
         Assertions.assertEquals(20, usersPerPageLimit);
@@ -597,7 +621,7 @@ class UserListControllerTest {
     @Test
     void getFortyUsersPerPage(){
         createMockResponse(0, "firstname", "true", "40");
-        userListController.getUserList(principal, model, 1, null, "true", "40");
+        userListController.getUserList(principal, model, 1, null, "true", "40", null);
         int usersPerPageLimit = userListController.getUsersPerPageLimit();
 
         Assertions.assertEquals(40, usersPerPageLimit);
@@ -607,7 +631,7 @@ class UserListControllerTest {
     @Test
     void getSixtyUsersPerPage(){
         createMockResponse(0, "firstname", "true", "60");
-        userListController.getUserList(principal, model, 1, null, "true", "60");
+        userListController.getUserList(principal, model, 1, null, "true", "60", null);
         int usersPerPageLimit = userListController.getUsersPerPageLimit();
 
         Assertions.assertEquals(60, usersPerPageLimit);
@@ -617,17 +641,112 @@ class UserListControllerTest {
     @Test
     void getAllUsersPerPage(){
         createMockResponse(0, "firstname", "true", "all");
-        userListController.getUserList(principal, model, 1, null, "true", "all");
+        userListController.getUserList(principal, model, 1, null, "true", "all", null);
         int usersPerPageLimit = userListController.getUsersPerPageLimit();
 
         Assertions.assertEquals(999999999, usersPerPageLimit);
     }
 
 
+    @Test
+    void getAllUsersPerPageStreamsTheUsers() throws IOException {
+        createMockResponse(0, "firstname", "true", "all");
+        userListController.getUserList(principal, model, 1, "firstname", "true", "all", null);
+
+        verify(mockClientService, atLeastOnce()).streamUsers(any(), any());
+        Assertions.assertEquals(expectedUsersList, userListController.getUserResponseList());
+    }
+
+
+    @Test
+    void exportUsersStreamsWithTheRequestOfTheExport() throws IOException {
+        ServletRequestAttributes requestAttributes = new ServletRequestAttributes(new MockHttpServletRequest());
+        RequestContextHolder.setRequestAttributes(requestAttributes);
+        StreamingResponseBody body;
+        try {
+            body = userListController.exportUsers(null, null).getBody();
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+        List<RequestAttributes> attributesWhileStreaming = new ArrayList<>();
+        doAnswer(invocation -> {
+            attributesWhileStreaming.add(RequestContextHolder.getRequestAttributes());
+            return null;
+        }).when(mockClientService).streamUsers(any(), any());
+
+        body.writeTo(new ByteArrayOutputStream());
+
+        Assertions.assertEquals(List.of(requestAttributes), attributesWhileStreaming);
+        Assertions.assertNull(RequestContextHolder.getRequestAttributes());
+    }
+
+
+    @Test
+    void exportUsersWritesOneJsonLinePerUser() throws IOException {
+        StreamUsersRequest request = StreamUsersRequest.newBuilder()
+                .setOrderBy("lastname")
+                .setIsAscendingOrder(false)
+                .build();
+        doAnswer(invocation -> {
+            UserAccountsClientService.UserBatchHandler handler = invocation.getArgument(1);
+            handler.handle(UserBatch.newBuilder().addAllUsers(expectedUsersList.subList(0, 2)).build());
+            handler.handle(UserBatch.newBuilder().addUsers(expectedUsersList.get(2)).build());
+            return null;
+        }).when(mockClientService).streamUsers(eq(request), any());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        userListController.exportUsers("lastname", "false").getBody().writeTo(outputStream);
+
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+        Assertions.assertEquals(3, lines.length);
+        Assertions.assertTrue(lines[0].contains("\"username\":\"steve0\""));
+        Assertions.assertTrue(lines[2].contains("\"username\":\"steve2\""));
+    }
+
+
+    @Test
+    void nextPageContinuesFromCursor() {
+        PaginationRequestOptions firstPage = PaginationRequestOptions.newBuilder()
+                .setOrderBy("firstname")
+                .setLimit(usersPerPage)
+                .setIsAscendingOrder(true)
+                .build();
+        when(mockClientService.getPaginatedUsers(GetPaginatedUsersRequest.newBuilder()
+                .setPaginationRequestOptions(firstPage).build()))
+                .thenReturn(PaginatedUsersResponse.newBuilder()
+                        .addAllUsers(expectedUsersList.subList(0, usersPerPage))
+                        .setPaginationResponseOptions(PaginationResponseOptions.newBuilder()
+                                .setResultSetSize(expectedUsersList.size())
+                                .setNextCursor("after-page-1"))
+                        .build());
+        List<UserResponse> secondPageUsers = expectedUsersList.subList(usersPerPage, usersPerPage * 2);
+        PaginationRequestOptions secondPage = firstPage.toBuilder()
+                .setOffset(usersPerPage)
+                .setCursor("after-page-1")
+                .build();
+        when(mockClientService.getPaginatedUsers(GetPaginatedUsersRequest.newBuilder()
+                .setPaginationRequestOptions(secondPage).build()))
+                .thenReturn(PaginatedUsersResponse.newBuilder()
+                        .addAllUsers(secondPageUsers)
+                        .setPaginationResponseOptions(PaginationResponseOptions.newBuilder()
+                                .setResultSetSize(expectedUsersList.size()))
+                        .build());
+
+        userListController.getUserList(principal, model, 1, "firstname", "true", usersPerPage.toString(), null);
+        Object nextCursor = model.getAttribute("nextCursor");
+        userListController.getUserList(principal, model, 2, "firstname", "true", usersPerPage.toString(),
+                (String) nextCursor);
+
+        Assertions.assertEquals("after-page-1", nextCursor);
+        Assertions.assertEquals(secondPageUsers.toString(), userListController.getUserResponseList().toString());
+        Assertions.assertEquals(2, model.getAttribute("currentPage"));
+    }
+
+
     @Test
     void getInvalidNumberUsersPerPage(){
         createMockResponse(0, "firstname", "true", "50");
-        userListController.getUserList(principal, model, 1, null, null, "50");
+        userListController.getUserList(principal, model, 1, null, null, "50", null);
         int usersPerPageLimit = userListController.getUsersPerPageLimit();
 
         Assertions.assertEquals(usersPerPage, usersPerPageLimit);
@@ -638,10 +757,10 @@ class UserListControllerTest {
     void sortOrderPersistence() {
         String expectedPersistedSortOrder = "role";
         createMockResponse(0, expectedPersistedSortOrder, "false", null);
-        userListController.getUserList(principal, model, 1, expectedPersistedSortOrder, "false", usersPerPage.toString());
+        userListController.getUserList(principal, model, 1, expectedPersistedSortOrder, "false", usersPerPage.toString(), null);
         String sortOrder = userListController.getSortOrder();
         boolean isAscending = userListController.getIsAscending();
-        userListController.getUserList(principal, model, 1, null, null, usersPerPage.toString());
+        userListController.getUserList(principal, model, 1, null, null, usersPerPage.toString(), null);
 
         Assertions.assertEquals(expectedPersistedSortOrder, sortOrder);
         Assertions.assertFalse(isAscending);
@@ -658,6 +777,7 @@ class UserListControllerTest {
             Object userList;
             Object possibleRoles;
             Object isAscending;
+            Object nextCursor;
 
             @Override
             public Model addAttribute(String attributeName, Object attributeValue) {
@@ -668,6 +788,7 @@ class UserListControllerTest {
                     case "userList" -> userList = attributeValue;
                     case "possibleRoles" -> possibleRoles = attributeValue;
                     case "isAscending" -> isAscending = attributeValue;
+                    case "nextCursor" -> nextCursor = attributeValue;
                 }
                 return null;
             }
@@ -707,6 +828,7 @@ class UserListControllerTest {
                     case "userList" -> toReturn = userList;
                     case "possibleRoles" -> toReturn = possibleRoles;
                     case "isAscending" -> toReturn = isAscending;
+                    case "nextCursor" -> toReturn = nextCursor;
                 }
                 return toReturn;
             }
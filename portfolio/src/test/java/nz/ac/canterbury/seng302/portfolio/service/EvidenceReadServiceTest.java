@@ -0,0 +1,136 @@
+package nz.ac.canterbury.seng302.portfolio.service;
+
+import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Category;
+import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.EvidenceReadRepository;
+import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Skill;
+import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.WebLink;
+import nz.ac.canterbury.seng302.portfolio.model.dto.EvidenceResponseDTO;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+
+class EvidenceReadServiceTest {
+
+    private final EvidenceReadRepository evidenceReadRepository = Mockito.mock(EvidenceReadRepository.class);
+
+    private final EvidenceReadService evidenceReadService = new EvidenceReadService(evidenceReadRepository);
+
+
+    @Test
+    void testGetEvidenceForUserAddsCollectionsToTheirEvidence() {
+        EvidenceResponseDTO evidence1 = new EvidenceResponseDTO(1, 1, "Title 1", LocalDate.now(), "description");
+        EvidenceResponseDTO evidence2 = new EvidenceResponseDTO(2, 1, "Title 2", LocalDate.now(), "description");
+        Mockito.when(evidenceReadRepository.findResponsesByUserId(1)).thenReturn(List.of(evidence1, evidence2));
+
+        WebLink webLink = new WebLink();
+        Skill skill1 = new Skill(1, "Skill_1");
+        Skill skill2 = new Skill(2, "Skill_2");
+        Mockito.when(evidenceReadRepository.findWebLinksByEvidenceIds(anyCollection()))
+                .thenReturn(rows(new Object[]{2, webLink}));
+        Mockito.when(evidenceReadRepository.findSkillsByEvidenceIds(anyCollection()))
+                .thenReturn(rows(new Object[]{1, skill1}, new Object[]{2, skill1}, new Object[]{2, skill2}));
+        Mockito.when(evidenceReadRepository.findCategoriesByEvidenceIds(anyCollection()))
+                .thenReturn(rows(new Object[]{1, Category.SERVICE}));
+        Mockito.when(evidenceReadRepository.findAssociateIdsByEvidenceIds(anyCollection()))
+                .thenReturn(rows(new Object[]{1, 1}, new Object[]{1, 5}));
+
+        List<EvidenceResponseDTO> evidence = evidenceReadService.getEvidenceForUser(1);
+
+        Assertions.assertEquals(List.of(evidence1, evidence2), evidence);
+        Assertions.assertTrue(evidence1.getWebLinks().isEmpty());
+        Assertions.assertEquals(1, evidence1.getSkills().size());
+        Assertions.assertTrue(evidence1.getCategories().contains(Category.SERVICE));
+        Assertions.assertEquals(List.of(1, 5), evidence1.getAssociateIds());
+
+        Assertions.assertTrue(evidence2.getWebLinks().contains(webLink));
+        Assertions.assertEquals(2, evidence2.getSkills().size());
+        Assertions.assertTrue(evidence2.getCategories().isEmpty());
+        Assertions.assertTrue(evidence2.getAssociateIds().isEmpty());
+    }
+
+
+    @Test
+    void testGetEvidenceForUserReadsEachCollectionOnce() {
+        List<EvidenceResponseDTO> evidence = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            evidence.add(new EvidenceResponseDTO(i, 1, "Title", LocalDate.now(), "description"));
+        }
+        Mockito.when(evidenceReadRepository.findResponsesByUserId(1)).thenReturn(evidence);
+
+        evidenceReadService.getEvidenceForUser(1);
+
+        Mockito.verify(evidenceReadRepository, Mockito.times(1)).findWebLinksByEvidenceIds(anyCollection());
+        Mockito.verify(evidenceReadRepository, Mockito.times(1)).findSkillsByEvidenceIds(anyCollection());
+        Mockito.verify(evidenceReadRepository, Mockito.times(1)).findCategoriesByEvidenceIds(anyCollection());
+        Mockito.verify(evidenceReadRepository, Mockito.times(1)).findAssociateIdsByEvidenceIds(anyCollection());
+    }
+
+
+    @Test
+    void testGetEvidenceForUserWithNoEvidenceReadsNoCollections() {
+        Mockito.when(evidenceReadRepository.findResponsesByUserIdAndCategory(1, Category.QUALITATIVE))
+                .thenReturn(new ArrayList<>());
+
+        List<EvidenceResponseDTO> evidence = evidenceReadService.getEvidenceForUserWithCategory(1, Category.QUALITATIVE);
+
+        Assertions.assertTrue(evidence.isEmpty());
+        Mockito.verify(evidenceReadRepository, Mockito.never()).findWebLinksByEvidenceIds(any());
+        Mockito.verify(evidenceReadRepository, Mockito.never()).findSkillsByEvidenceIds(any());
+        Mockito.verify(evidenceReadRepository, Mockito.never()).findCategoriesByEvidenceIds(any());
+        Mockito.verify(evidenceReadRepository, Mockito.never()).findAssociateIdsByEvidenceIds(any());
+    }
+
+
+    @Test
+    void testGetEvidenceForUserWithSkillUsesSkillId() {
+        Skill skill = new Skill(3, "Skill");
+
+        evidenceReadService.getEvidenceForUserWithSkill(1, skill);
+
+        Mockito.verify(evidenceReadRepository).findResponsesByUserIdAndSkillId(1, 3);
+    }
+
+
+    @Test
+    void testGetEvidenceWhenItExists() {
+        EvidenceResponseDTO piece = new EvidenceResponseDTO(1, 1, "Title", LocalDate.now(), "description");
+        Mockito.when(evidenceReadRepository.findResponseById(1)).thenReturn(Optional.of(piece));
+        Mockito.when(evidenceReadRepository.findSkillsByEvidenceIds(anyCollection()))
+                .thenReturn(rows(new Object[]{1, new Skill(1, "Skill")}));
+
+        Optional<EvidenceResponseDTO> evidence = evidenceReadService.getEvidence(1);
+
+        Assertions.assertTrue(evidence.isPresent());
+        Assertions.assertEquals(1, evidence.get().getSkills().size());
+    }
+
+
+    @Test
+    void testGetEvidenceWhenItDoesNotExist() {
+        Mockito.when(evidenceReadRepository.findResponseById(1)).thenReturn(Optional.empty());
+
+        Optional<EvidenceResponseDTO> evidence = evidenceReadService.getEvidence(1);
+
+        Assertions.assertTrue(evidence.isEmpty());
+        Mockito.verify(evidenceReadRepository, Mockito.never()).findSkillsByEvidenceIds(any());
+    }
+
+
+    /**
+     * Builds the pairs returned by the collection queries.
+     *
+     * @param rows pairs of the id of a piece of evidence and one of its collection's elements
+     * @return the pairs as a list
+     */
+    private static List<Object[]> rows(Object[]... rows) {
+        return new ArrayList<>(List.of(rows));
+    }
+}
@@ -10,12 +10,12 @@ import nz.ac.canterbury.seng302.portfolio.model.dto.WebLinkDTO;
 import nz.ac.canterbury.seng302.portfolio.service.grpc.UserAccountsClientService;
 import nz.ac.canterbury.seng302.shared.identityprovider.AuthState;
 import nz.ac.canterbury.seng302.shared.identityprovider.ClaimDTO;
-import nz.ac.canterbury.seng302.shared.identityprovider.GetUserByIdRequest;
 import nz.ac.canterbury.seng302.shared.identityprovider.UserResponse;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 
 import java.net.MalformedURLException;
@@ -36,7 +36,7 @@ class EvidenceServiceTest {
     private final WebLinkRepository webLinkRepository = Mockito.mock(WebLinkRepository.class);
     private final SkillRepository skillRepository = Mockito.mock(SkillRepository.class);
     private final RegexService regexService = Mockito.spy(RegexService.class);
-    private final SkillFrequencyService skillFrequencyService = new SkillFrequencyService(evidenceRepository, skillRepository);
+    private final SkillFrequencyService skillFrequencyService = Mockito.mock(SkillFrequencyService.class);
     private Authentication principal;
     private Evidence evidence;
     private EvidenceService evidenceService;
@@ -54,6 +54,7 @@ class EvidenceServiceTest {
         // TODO maybe change 2 in second param to 1
         evidence = new Evidence(1, 2, "Title", LocalDate.now(), "description");
         when(userAccountsClientService.getUserAccountById(any())).thenReturn(UserResponse.newBuilder().setId(1).build());
+        mockUsersByIds(List.of());
         when(evidenceRepository.save(any())).thenAnswer(i -> i.getArguments()[0]);
         when(skillRepository.save(any())).thenAnswer(i -> i.getArguments()[0]);
         evidenceService = Mockito.spy(evidenceService);
@@ -354,8 +355,8 @@ class EvidenceServiceTest {
 
         evidenceService.addEvidence(principal, evidenceDTO);
         ArgumentCaptor<Evidence> captor = ArgumentCaptor.forClass(Evidence.class);
-        // Verify that it saved more than usual - currently evidenceRepository.save is called two times per user id
-        Mockito.verify(evidenceRepository, atLeast(associates.size())).save(captor.capture());
+        // Each user's evidence is saved once, along with its weblinks
+        Mockito.verify(evidenceRepository, times(associates.size())).save(captor.capture());
 
         Evidence evidence = captor.getValue();
         Assertions.assertEquals(4, evidence.getAssociateIds().size());
@@ -370,8 +371,7 @@ class EvidenceServiceTest {
         evidenceDTO.setAssociateIds(new ArrayList<>());
         evidenceService.addEvidence(principal, evidenceDTO);
         ArgumentCaptor<Evidence> captor = ArgumentCaptor.forClass(Evidence.class);
-        // Verify that it saved more than usual - currently evidenceRepository.save is called three times per user id
-        Mockito.verify(evidenceRepository, atLeast(2)).save(captor.capture());
+        Mockito.verify(evidenceRepository, times(1)).save(captor.capture());
 
         Evidence evidence = captor.getValue();
         Assertions.assertEquals(1, evidence.getAssociateIds().size());
@@ -389,8 +389,7 @@ class EvidenceServiceTest {
 
         evidenceService.addEvidence(principal, evidenceDTO);
         ArgumentCaptor<Evidence> captor = ArgumentCaptor.forClass(Evidence.class);
-        // Verify that it saved more than usual - currently evidenceRepository.save is called three times per user id
-        Mockito.verify(evidenceRepository, atLeast(associates.size())).save(captor.capture());
+        Mockito.verify(evidenceRepository, times(expectedAssociates.size())).save(captor.capture());
 
         Evidence evidence = captor.getValue();
         Assertions.assertEquals(4, evidence.getAssociateIds().size()); // The creator is considered an associate, so expected size is 1
@@ -399,14 +398,52 @@ class EvidenceServiceTest {
     }
 
 
+    @Test
+    void addEvidenceWithAssociatedUsersChecksUsersInOneRequest() throws MalformedURLException {
+        setUserToStudent();
+        evidenceDTO.setAssociateIds(new ArrayList<>(List.of(12, 13, 14)));
+
+        evidenceService.addEvidence(principal, evidenceDTO);
+
+        Mockito.verify(userAccountsClientService, times(1)).getUsersByIds(Set.of(1, 12, 13, 14));
+    }
+
+
+    @Test
+    void addEvidenceWithAssociatedUsersChecksAndFindsSkillsOnce() throws MalformedURLException {
+        setUserToStudent();
+        evidenceDTO.setAssociateIds(new ArrayList<>(List.of(12, 13, 14)));
+
+        evidenceService.addEvidence(principal, evidenceDTO);
+
+        Mockito.verify(skillRepository, times(1)).findById(Integer.valueOf(1));
+        Mockito.verify(skillRepository, times(1)).findById(Integer.valueOf(2));
+        Mockito.verify(regexService, times(2)).checkInput(eq(RegexPattern.WEBLINK), any(), anyInt(), anyInt(), any());
+        Mockito.verify(webLinkRepository, never()).save(any());
+        for (Integer userId : List.of(1, 12, 13, 14)) {
+            Mockito.verify(skillFrequencyService).addEvidenceToSkills(eq(userId), argThat(skills -> skills.size() == 2));
+        }
+    }
+
+
+    @Test
+    void addEvidenceWithAssociatedUsersMissingAssociate() {
+        setUserToStudent();
+        evidenceDTO.setAssociateIds(new ArrayList<>(List.of(12, 13, 14)));
+        mockUsersByIds(List.of(13));
+
+        Assertions.assertThrows(CheckException.class, () -> evidenceService.addEvidence(principal, evidenceDTO));
+        Mockito.verify(evidenceRepository, never()).save(any());
+    }
+
+
     @Test
     void addEvidenceWithAssociatedUsersInvalidAssociateId() {
         setUserToStudent();
 
         List<Integer> associates = new ArrayList<>(List.of(12, 13, -14));
         evidenceDTO.setAssociateIds(associates);
-        GetUserByIdRequest request = GetUserByIdRequest.newBuilder().setId(-14).build();
-        when(userAccountsClientService.getUserAccountById(request)).thenReturn(UserResponse.newBuilder().setId(-1).build());
+        mockUsersByIds(List.of(-14));
 
 
         Assertions.assertThrows(CheckException.class, () -> evidenceService.addEvidence(principal, evidenceDTO));
@@ -542,6 +579,71 @@ class EvidenceServiceTest {
     }
 
 
+    @Test
+    void testAddSkillsCountsOnlyNewSkills() {
+        Skill usersSkill3 = new Skill(3, "Skill 3");
+        Mockito.when(skillRepository.findById(Integer.valueOf(3))).thenReturn(Optional.of(usersSkill3));
+        List<Skill> listSkills = new ArrayList<>();
+        listSkills.add(new Skill(1, "Testing"));
+        listSkills.add(new Skill(3, "Skill 3"));
+
+        evidenceService.addSkills(evidence, listSkills);
+
+        Mockito.verify(skillFrequencyService).addEvidenceToSkills(evidence.getUserId(), List.of(usersSkill3));
+    }
+
+
+    @Test
+    void testMergeSkillsUsesBulkStatements() {
+        Skill skill = new Skill(1, "Teamwork");
+        Skill mergedSkill = new Skill(2, "teamwork");
+
+        evidenceService.mergeSkills(skill, mergedSkill);
+
+        InOrder inOrder = Mockito.inOrder(skillFrequencyService, skillRepository);
+        inOrder.verify(skillFrequencyService).mergeSkillCounts(mergedSkill, skill);
+        inOrder.verify(skillRepository).moveSkillToOtherSkill(2, 1);
+        inOrder.verify(skillRepository).removeSkillFromAllEvidence(2);
+        inOrder.verify(skillRepository).delete(mergedSkill);
+        Mockito.verify(evidenceRepository, never()).save(any());
+    }
+
+
+    @Test
+    void testRenameSkillToExistingNameMergesSkills() {
+        Skill existingSkill = new Skill(3, "Backend Development");
+        Mockito.when(skillRepository.findByNameIgnoreCase("Backend Development")).thenReturn(Optional.of(existingSkill));
+        List<Skill> listSkills = new ArrayList<>(List.of(new Skill(1, "Backend Development")));
+
+        evidenceService.addSkills(evidence, listSkills);
+
+        Mockito.verify(evidenceService).mergeSkills(any(), eq(existingSkill));
+        Mockito.verify(skillRepository).moveSkillToOtherSkill(3, 1);
+    }
+
+
+    @Test
+    void testRenameSkillCaseDoesNotMergeSkill() {
+        Skill usersSkill = new Skill(1, "Testing");
+        Mockito.when(skillRepository.findByNameIgnoreCase("TESTING")).thenReturn(Optional.of(usersSkill));
+        List<Skill> listSkills = new ArrayList<>(List.of(new Skill(1, "TESTING")));
+
+        evidenceService.addSkills(evidence, listSkills);
+
+        Mockito.verify(evidenceService, never()).mergeSkills(any(), any());
+        Mockito.verify(skillRepository, never()).delete(any());
+    }
+
+
+    @Test
+    void testDeleteEvidenceUncountsItsSkills() {
+        evidenceService.deleteEvidence(evidence);
+
+        Mockito.verify(skillFrequencyService, times(2)).removeEvidenceFromSkill(eq(evidence.getUserId()), any());
+        Mockito.verify(evidenceRepository).delete(evidence);
+    }
+
+
     @Test
     void testSkillSavesUniquelyToUser() {
         Mockito.when(skillRepository.findDistinctByEvidenceUserIdAndNameIgnoreCase(anyInt(), eq("SKILL"))).thenReturn(Optional.empty());
@@ -687,6 +789,8 @@ class EvidenceServiceTest {
         Evidence changedEvidence = evidenceService.editEvidence(principal, evidenceDTO);
 
         Assertions.assertEquals(0, changedEvidence.getSkills().size());
+        Mockito.verify(skillFrequencyService).removeEvidenceFromSkill(eq(1), any());
+        Mockito.verify(skillFrequencyService).addEvidenceToSkills(1, List.of());
     }
 
 
@@ -771,4 +875,24 @@ class EvidenceServiceTest {
                 .addClaims(ClaimDTO.newBuilder().setType("role").setValue("student").build())
                 .build());
     }
-}
\ No newline at end of file
+
+
+    /**
+     * Mocks the IdP so that every requested user exists, except for the given missing users.
+     *
+     * @param missingUserIds The ids of the users that don't exist
+     */
+    @SuppressWarnings("unchecked")
+    private void mockUsersByIds(List<Integer> missingUserIds) {
+        // Stubbed with doAnswer, as calling getUsersByIds to re-stub it would run the answer from setUp with no ids
+        doAnswer(invocation -> {
+            Map<Integer, UserResponse> users = new HashMap<>();
+            for (Integer userId : (Collection<Integer>) invocation.getArgument(0)) {
+                if (!missingUserIds.contains(userId)) {
+                    users.put(userId, UserResponse.newBuilder().setId(userId).build());
+                }
+            }
+            return users;
+        }).when(userAccountsClientService).getUsersByIds(any());
+    }
+}
@@ -1,37 +1,31 @@
 package nz.ac.canterbury.seng302.portfolio.service;
 
-import nz.ac.canterbury.seng302.portfolio.CheckException;
-import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Evidence;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.EvidenceRepository;
 import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.Skill;
-import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.SkillRepository;
+import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.UserSkillCount;
+import nz.ac.canterbury.seng302.portfolio.model.domain.evidence.UserSkillCountRepository;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
-import java.time.LocalDate;
-import java.util.ArrayList;
-
-import static org.mockito.Mockito.spy;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 class SkillFrequencyServiceTest {
 
-    private final EvidenceRepository evidenceRepository = spy(EvidenceRepository.class);
-    private final SkillRepository skillRepository = spy(SkillRepository.class);
-    private Skill skill;
-
+    private final EvidenceRepository evidenceRepository = Mockito.mock(EvidenceRepository.class);
+    private final UserSkillCountRepository userSkillCountRepository = Mockito.mock(UserSkillCountRepository.class);
+    private final Skill skill = new Skill(3, "test");
 
-    @InjectMocks
-    private SkillFrequencyService skillFrequencyService = new SkillFrequencyService(evidenceRepository, skillRepository);
+    private final SkillFrequencyService skillFrequencyService =
+            new SkillFrequencyService(evidenceRepository, userSkillCountRepository);
 
 
     @Test
     void testFrequency(){
-        ArrayList<Evidence> evidenceListWithSkill = createEvidenceList(5, 10, true);
-        ArrayList<Evidence> evidenceListTotal = createEvidenceList(5, 10, false);
-        Mockito.when(evidenceRepository.findAllByUserIdAndSkillsContainingOrderByOccurrenceDateDesc(1, skill)).thenReturn(evidenceListWithSkill);
-        Mockito.when(evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(1)).thenReturn(evidenceListTotal);
+        setUpCounts(5, 10);
         double frequency = skillFrequencyService.getSkillFrequency(skill, 1);
         Assertions.assertEquals(0.50, frequency);
     }
@@ -39,20 +33,14 @@ class SkillFrequencyServiceTest {
 
     @Test
     void testFrequencyPointTwo(){
-        ArrayList<Evidence> evidenceListWithSkill = createEvidenceList(20, 100, true);
-        ArrayList<Evidence> evidenceListTotal = createEvidenceList(20, 100, false);
-        Mockito.when(evidenceRepository.findAllByUserIdAndSkillsContainingOrderByOccurrenceDateDesc(1, skill)).thenReturn(evidenceListWithSkill);
-        Mockito.when(evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(1)).thenReturn(evidenceListTotal);
+        setUpCounts(20, 100);
         double frequency = skillFrequencyService.getSkillFrequency(skill, 1);
         Assertions.assertEquals(0.20, frequency);
     }
 
     @Test
     void testFrequencyZero(){
-        ArrayList<Evidence> evidenceListWithSkill = createEvidenceList(0, 100, true);
-        ArrayList<Evidence> evidenceListTotal = createEvidenceList(0, 100, false);
-        Mockito.when(evidenceRepository.findAllByUserIdAndSkillsContainingOrderByOccurrenceDateDesc(1, skill)).thenReturn(evidenceListWithSkill);
-        Mockito.when(evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(1)).thenReturn(evidenceListTotal);
+        setUpCounts(0, 100);
         double frequency = skillFrequencyService.getSkillFrequency(skill, 1);
         Assertions.assertEquals(0.00, frequency);
     }
@@ -60,51 +48,122 @@ class SkillFrequencyServiceTest {
 
     @Test
     void testFrequencyPointTwoFive(){
-        ArrayList<Evidence> evidenceListWithSkill = createEvidenceList(1, 4, true);
-        ArrayList<Evidence> evidenceListTotal = createEvidenceList(1, 4, false);
-        Mockito.when(evidenceRepository.findAllByUserIdAndSkillsContainingOrderByOccurrenceDateDesc(1, skill)).thenReturn(evidenceListWithSkill);
-        Mockito.when(evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(1)).thenReturn(evidenceListTotal);
+        setUpCounts(1, 4);
         double frequency = skillFrequencyService.getSkillFrequency(skill, 1);
         Assertions.assertEquals(0.25, frequency);
     }
 
 
     @Test
-    void testFrequencyNoEvidence() throws CheckException {
-        ArrayList<Evidence> evidenceListWithSkill = new ArrayList<>();
-        ArrayList<Evidence> evidenceListTotal = new ArrayList<>();
-        Mockito.when(evidenceRepository.findAllByUserIdAndSkillsContainingOrderByOccurrenceDateDesc(1, skill)).thenReturn(evidenceListWithSkill);
-        Mockito.when(evidenceRepository.findAllByUserIdOrderByOccurrenceDateDesc(1)).thenReturn(evidenceListTotal);
+    void testFrequencyNoEvidence() {
+        setUpCounts(0, 0);
         double frequency = skillFrequencyService.getSkillFrequency(skill, 1);
         Assertions.assertEquals(0.0, frequency);
     }
 
 
+    @Test
+    void testFrequencyRoundedToTwoPlaces() {
+        setUpCounts(1, 3);
+        double frequency = skillFrequencyService.getSkillFrequency(skill, 1);
+        Assertions.assertEquals(0.33, frequency);
+    }
+
+
+    @Test
+    void testSetFrequenciesOfSkills() {
+        Skill otherSkill = new Skill(4, "other");
+        Mockito.when(userSkillCountRepository.findAllByUserId(1)).thenReturn(List.of(new UserSkillCount(1, 3, 3)));
+        Mockito.when(evidenceRepository.countByUserId(1)).thenReturn(4L);
+
+        skillFrequencyService.setSkillFrequencies(List.of(skill, otherSkill), 1);
+
+        Assertions.assertEquals(0.75, skill.getFrequency());
+        Assertions.assertEquals(0.0, otherSkill.getFrequency());
+        Mockito.verify(userSkillCountRepository, Mockito.times(1)).findAllByUserId(1);
+    }
+
+
+    @Test
+    void testAddEvidenceToCountedSkill() {
+        Mockito.when(userSkillCountRepository.findCountedSkillIds(1, Set.of(3))).thenReturn(List.of(3));
+
+        skillFrequencyService.addEvidenceToSkills(1, List.of(skill));
+
+        Mockito.verify(userSkillCountRepository).changeCounts(1, List.of(3), 1);
+        Mockito.verify(userSkillCountRepository).saveAll(List.of());
+    }
+
+
+    @Test
+    void testAddEvidenceToUncountedSkill() {
+        Mockito.when(userSkillCountRepository.findCountedSkillIds(1, Set.of(3))).thenReturn(List.of());
+
+        skillFrequencyService.addEvidenceToSkills(1, List.of(skill));
+
+        Mockito.verify(userSkillCountRepository, Mockito.never()).changeCounts(Mockito.anyInt(), Mockito.any(), Mockito.anyInt());
+        List<UserSkillCount> newCounts = captureSavedCounts();
+        Assertions.assertEquals(1, newCounts.size());
+        Assertions.assertEquals(3, newCounts.get(0).getSkillId());
+        Assertions.assertEquals(1, newCounts.get(0).getEvidenceCount());
+    }
+
+
+    @Test
+    void testAddEvidenceToSomeCountedSkills() {
+        Skill otherSkill = new Skill(4, "other");
+        Mockito.when(userSkillCountRepository.findCountedSkillIds(1, Set.of(3, 4))).thenReturn(List.of(3));
+
+        skillFrequencyService.addEvidenceToSkills(1, List.of(skill, otherSkill));
+
+        Mockito.verify(userSkillCountRepository, Mockito.times(1)).changeCounts(1, List.of(3), 1);
+        List<UserSkillCount> newCounts = captureSavedCounts();
+        Assertions.assertEquals(1, newCounts.size());
+        Assertions.assertEquals(4, newCounts.get(0).getSkillId());
+    }
+
+
+    @Test
+    void testAddEvidenceToNoSkills() {
+        skillFrequencyService.addEvidenceToSkills(1, List.of());
+
+        Mockito.verifyNoInteractions(userSkillCountRepository);
+    }
+
+
+    @Test
+    void testRemoveEvidenceFromSkill() {
+        skillFrequencyService.removeEvidenceFromSkill(1, skill);
+
+        Mockito.verify(userSkillCountRepository).changeCount(1, 3, -1);
+        Mockito.verify(userSkillCountRepository).deleteIfEmpty(1, 3);
+    }
+
+
     /**
-     * Returns a list of evidence and takes 3 parameters
-     * @param amountOfEvidenceWithSkill The amount of evidence with the skill contained
-     * @param amountOfEvidenceWithoutSkill The amount of evidence in total
-     * @param returnJustSkills Boolean to return just the evidence with the skills, or the total amount.
-     * @return An array list of evidence.
+     * Captures the new counts saved by the service.
+     *
+     * @return the counts saved
      */
-    ArrayList<Evidence> createEvidenceList(int amountOfEvidenceWithSkill, int amountOfEvidenceWithoutSkill, boolean returnJustSkills) {
-        skill = new Skill("test");
-        ArrayList<Evidence> evidenceList = new ArrayList<>();
-        for(int i = 0; i < amountOfEvidenceWithSkill; i++) {
-            Evidence evidence = new Evidence(1, "evidence" + i, LocalDate.now(), "test evidence");
-            evidence.addSkill(skill);
-            evidenceList.add(evidence);
-        }
-        if (returnJustSkills){
-            return evidenceList;
-        }
-
-        for(int i = amountOfEvidenceWithSkill; i < amountOfEvidenceWithoutSkill; i++) {
-            Evidence evidence = new Evidence(1, "evidence non skill" + i, LocalDate.now(), "test evidence");
-            evidenceList.add(evidence);
-        }
-        return evidenceList;
+    @SuppressWarnings("unchecked")
+    private List<UserSkillCount> captureSavedCounts() {
+        ArgumentCaptor<List<UserSkillCount>> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(userSkillCountRepository).saveAll(captor.capture());
+        return captor.getValue();
     }
 
 
+    /**
+     * Sets up the counts of the user's evidence.
+     *
+     * @param amountOfEvidenceWithSkill The amount of evidence with the skill
+     * @param amountOfEvidence The amount of evidence in total
+     */
+    private void setUpCounts(int amountOfEvidenceWithSkill, int amountOfEvidence) {
+        Optional<UserSkillCount> count = amountOfEvidenceWithSkill == 0
+                ? Optional.empty()
+                : Optional.of(new UserSkillCount(1, skill.getId(), amountOfEvidenceWithSkill));
+        Mockito.when(userSkillCountRepository.findByUserIdAndSkillId(1, skill.getId())).thenReturn(count);
+        Mockito.when(evidenceRepository.countByUserId(1)).thenReturn((long) amountOfEvidence);
+    }
 }
@@ -0,0 +1,199 @@
+package nz.ac.canterbury.seng302.portfolio.service.grpc;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import nz.ac.canterbury.seng302.portfolio.authentication.RoleEpochRegistry;
+import nz.ac.canterbury.seng302.shared.identityprovider.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+
+@SuppressWarnings("unchecked") // Suppresses intelliJ's warning for testing with mock StreamObservers
+class DirectoryReplicaTest {
+
+    private static final long MAX_STALENESS_MILLIS = 10_000;
+
+    private final DirectoryClientService directoryClientService = Mockito.mock(DirectoryClientService.class);
+
+    private final RoleEpochRegistry roleEpochRegistry = Mockito.mock(RoleEpochRegistry.class);
+
+    private final ScheduledExecutorService retryExecutor = Mockito.mock(ScheduledExecutorService.class);
+
+    private long now = 1000;
+
+    private final DirectoryReplica directoryReplica = new DirectoryReplica(directoryClientService,
+            () -> roleEpochRegistry, retryExecutor, MAX_STALENESS_MILLIS, () -> now);
+
+    private StreamObserver<DirectoryChangesResponse> stream;
+
+
+    @BeforeEach
+    void setUp() {
+        directoryReplica.watch();
+        ArgumentCaptor<StreamObserver<DirectoryChangesResponse>> observerCaptor =
+                ArgumentCaptor.forClass(StreamObserver.class);
+        Mockito.verify(directoryClientService).watchDirectoryChanges(eq(0L), observerCaptor.capture());
+        stream = observerCaptor.getValue();
+    }
+
+
+    private DirectoryChange userChange(long sequence, int userId, int roleEpoch) {
+        return DirectoryChange.newBuilder()
+                .setSequence(sequence)
+                .setUser(DirectoryUser.newBuilder()
+                        .setUser(UserResponse.newBuilder().setId(userId).setUsername("user" + userId))
+                        .setRoleEpoch(roleEpoch))
+                .build();
+    }
+
+
+    private DirectoryChange groupChange(long sequence, int groupId, List<Integer> memberIds) {
+        return DirectoryChange.newBuilder()
+                .setSequence(sequence)
+                .setGroup(DirectoryGroup.newBuilder()
+                        .setGroupId(groupId)
+                        .setShortName("Short")
+                        .setLongName("Long")
+                        .addAllMemberIds(memberIds))
+                .build();
+    }
+
+
+    private void sendSnapshot() {
+        stream.onNext(DirectoryChangesResponse.newBuilder()
+                .setResetReplica(true)
+                .setSequence(4)
+                .addChanges(userChange(4, 1, 0))
+                .addChanges(userChange(4, 2, 0))
+                .addChanges(groupChange(4, 5, List.of(1, 2)))
+                .build());
+        stream.onNext(DirectoryChangesResponse.newBuilder().setIsUpToDate(true).setSequence(4).build());
+    }
+
+
+    @Test
+    void notCurrentBeforeCaughtUp() {
+        stream.onNext(DirectoryChangesResponse.newBuilder()
+                .setResetReplica(true)
+                .setSequence(4)
+                .addChanges(userChange(4, 1, 0))
+                .build());
+
+        assertFalse(directoryReplica.isCurrent());
+        assertNull(directoryReplica.getUser(1));
+    }
+
+
+    @Test
+    void snapshotAnswersLookups() {
+        sendSnapshot();
+
+        assertTrue(directoryReplica.isCurrent());
+        assertEquals("user1", directoryReplica.getUser(1).getUsername());
+        GroupDetailsResponse group = directoryReplica.getGroupDetails(5);
+        assertEquals("Long", group.getLongName());
+        assertEquals(List.of(1, 2), group.getMembersList().stream().map(UserResponse::getId).toList());
+        assertEquals(4, directoryReplica.getSequence());
+    }
+
+
+    @Test
+    void unknownGroupNotFound() {
+        sendSnapshot();
+
+        assertEquals(-1, directoryReplica.getGroupDetails(9).getGroupId());
+    }
+
+
+    @Test
+    void changesReplaceEntries() {
+        sendSnapshot();
+
+        stream.onNext(DirectoryChangesResponse.newBuilder()
+                .setIsUpToDate(true)
+                .setSequence(6)
+                .addChanges(groupChange(5, 5, List.of(2)))
+                .addChanges(DirectoryChange.newBuilder().setSequence(6).setDeletedGroupId(7))
+                .build());
+
+        assertEquals(1, directoryReplica.getGroupDetails(5).getMembersCount());
+        assertEquals(6, directoryReplica.getSequence());
+    }
+
+
+    @Test
+    void userWithOutOfDateRolesNotAnswered() {
+        sendSnapshot();
+
+        Mockito.when(roleEpochRegistry.getRoleEpoch(1)).thenReturn(1);
+
+        assertNull(directoryReplica.getUser(1));
+        assertNotNull(directoryReplica.getUser(2));
+    }
+
+
+    @Test
+    void notCurrentWhenIdpNotHeardFrom() {
+        sendSnapshot();
+
+        now += MAX_STALENESS_MILLIS + 1;
+
+        assertFalse(directoryReplica.isCurrent());
+        assertNull(directoryReplica.getGroupDetails(5));
+    }
+
+
+    @Test
+    void notCurrentUntilPortfoliosChangeApplied() {
+        sendSnapshot();
+
+        directoryReplica.awaitChange(5);
+
+        assertFalse(directoryReplica.isCurrent());
+        assertNull(directoryReplica.getUser(1));
+
+        stream.onNext(DirectoryChangesResponse.newBuilder()
+                .setIsUpToDate(true)
+                .setSequence(5)
+                .addChanges(userChange(5, 1, 0))
+                .build());
+
+        assertTrue(directoryReplica.isCurrent());
+        assertNotNull(directoryReplica.getUser(1));
+    }
+
+
+    @Test
+    void snapshotFromRestartedLogForgetsPortfoliosChanges() {
+        sendSnapshot();
+        directoryReplica.awaitChange(50);
+
+        sendSnapshot();
+
+        assertTrue(directoryReplica.isCurrent());
+    }
+
+
+    @Test
+    void streamFailureResumesFromLastSequence() {
+        sendSnapshot();
+
+        stream.onError(Status.UNAVAILABLE.asRuntimeException());
+
+        assertFalse(directoryReplica.isCurrent());
+        ArgumentCaptor<Runnable> rewatchCaptor = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(retryExecutor).schedule(rewatchCaptor.capture(), anyLong(), eq(TimeUnit.MILLISECONDS));
+        rewatchCaptor.getValue().run();
+        Mockito.verify(directoryClientService).watchDirectoryChanges(eq(4L), any());
+    }
+}
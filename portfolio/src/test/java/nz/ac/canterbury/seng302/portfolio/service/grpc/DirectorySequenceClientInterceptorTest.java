@@ -0,0 +1,67 @@
+package nz.ac.canterbury.seng302.portfolio.service.grpc;
+
+import io.grpc.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+
+@SuppressWarnings("unchecked") // Suppresses intelliJ's warning for testing with mock ClientCalls
+class DirectorySequenceClientInterceptorTest {
+
+    private static final Metadata.Key<String> DIRECTORY_SEQUENCE_TRAILER =
+            Metadata.Key.of("directory-sequence", Metadata.ASCII_STRING_MARSHALLER);
+
+    private final DirectoryReplica directoryReplica = Mockito.mock(DirectoryReplica.class);
+
+    private final ObjectProvider<DirectoryReplica> directoryReplicaProvider = Mockito.mock(ObjectProvider.class);
+
+    private final ClientCall<Object, Object> call = Mockito.mock(ClientCall.class);
+
+    private final ClientCall.Listener<Object> responseListener = Mockito.mock(ClientCall.Listener.class);
+
+    private ClientCall.Listener<Object> interceptedListener;
+
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(directoryReplicaProvider.getObject()).thenReturn(directoryReplica);
+        Channel channel = Mockito.mock(Channel.class);
+        Mockito.when(channel.newCall(any(), any())).thenReturn((ClientCall) call);
+        DirectorySequenceClientInterceptor interceptor = new DirectorySequenceClientInterceptor(directoryReplicaProvider);
+
+        interceptor.interceptCall((MethodDescriptor<Object, Object>) null, CallOptions.DEFAULT, channel)
+                .start(responseListener, new Metadata());
+
+        ArgumentCaptor<ClientCall.Listener<Object>> listenerCaptor = ArgumentCaptor.forClass(ClientCall.Listener.class);
+        Mockito.verify(call).start(listenerCaptor.capture(), any());
+        interceptedListener = listenerCaptor.getValue();
+    }
+
+
+    @Test
+    void replicaAwaitsTheCallsChangeBeforeTheCallerHearsOfIt() {
+        Metadata trailers = new Metadata();
+        trailers.put(DIRECTORY_SEQUENCE_TRAILER, "9");
+
+        interceptedListener.onClose(Status.OK, trailers);
+
+        InOrder inOrder = Mockito.inOrder(directoryReplica, responseListener);
+        inOrder.verify(directoryReplica).awaitChange(9);
+        inOrder.verify(responseListener).onClose(Status.OK, trailers);
+    }
+
+
+    @Test
+    void callWithoutAChangeLeavesTheReplica() {
+        interceptedListener.onClose(Status.OK, new Metadata());
+
+        Mockito.verify(directoryReplica, Mockito.never()).awaitChange(anyLong());
+        Mockito.verify(responseListener).onClose(any(), any());
+    }
+}
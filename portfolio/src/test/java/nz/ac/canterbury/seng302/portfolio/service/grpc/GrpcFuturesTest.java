@@ -0,0 +1,45 @@
+package nz.ac.canterbury.seng302.portfolio.service.grpc;
+
+import com.google.common.util.concurrent.SettableFuture;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GrpcFuturesTest {
+
+    private final SettableFuture<String> call = SettableFuture.create();
+
+    private final CompletableFuture<String> future = GrpcFutures.toCompletableFuture(call);
+
+
+    @Test
+    void completesWithResponse() {
+        assertFalse(future.isDone());
+
+        call.set("response");
+
+        assertEquals("response", future.join());
+    }
+
+
+    @Test
+    void completesExceptionallyWithFailure() {
+        call.setException(Status.DEADLINE_EXCEEDED.asRuntimeException());
+
+        CompletionException exception = assertThrows(CompletionException.class, future::join);
+        assertInstanceOf(StatusRuntimeException.class, exception.getCause());
+    }
+
+
+    @Test
+    void cancellingCancelsCall() {
+        future.cancel(true);
+
+        assertTrue(call.isCancelled());
+    }
+}
@@ -0,0 +1,100 @@
+package nz.ac.canterbury.seng302.portfolio.service.grpc;
+
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import nz.ac.canterbury.seng302.shared.identityprovider.ProfilePhotoUploadMetadata;
+import nz.ac.canterbury.seng302.shared.identityprovider.UploadUserProfilePhotoRequest;
+import nz.ac.canterbury.seng302.shared.util.FileUploadStatus;
+import nz.ac.canterbury.seng302.shared.util.FileUploadStatusResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SuppressWarnings("unchecked") // Suppresses intelliJ's warning for testing with mock StreamObservers
+class ImageResponseStreamObserverTest {
+
+    private static final int PHOTO_SIZE = ImageResponseStreamObserver.CHUNK_SIZE * 2 + 10;
+
+    private final ClientCallStreamObserver<UploadUserProfilePhotoRequest> requestStream =
+            Mockito.mock(ClientCallStreamObserver.class);
+
+    private ImageResponseStreamObserver responseObserver;
+
+
+    @BeforeEach
+    void setUp() {
+        ProfilePhotoUploadMetadata metadata = ProfilePhotoUploadMetadata.newBuilder()
+                .setUserId(1)
+                .setFileType("jpg")
+                .build();
+        responseObserver = new ImageResponseStreamObserver(new ByteArrayInputStream(new byte[PHOTO_SIZE]), metadata);
+        responseObserver.beforeStart(requestStream);
+    }
+
+
+    private List<UploadUserProfilePhotoRequest> sentRequests(int count) {
+        ArgumentCaptor<UploadUserProfilePhotoRequest> requestCaptor =
+                ArgumentCaptor.forClass(UploadUserProfilePhotoRequest.class);
+        Mockito.verify(requestStream, Mockito.times(count)).onNext(requestCaptor.capture());
+        return requestCaptor.getAllValues();
+    }
+
+
+    @Test
+    void photoSentInChunksWhileReady() {
+        Mockito.when(requestStream.isReady()).thenReturn(true);
+
+        responseObserver.sendWhileReady();
+
+        List<UploadUserProfilePhotoRequest> requests = sentRequests(4);
+        assertTrue(requests.get(0).hasMetaData());
+        assertEquals(ImageResponseStreamObserver.CHUNK_SIZE, requests.get(1).getFileContent().size());
+        assertEquals(10, requests.get(3).getFileContent().size());
+        Mockito.verify(requestStream).onCompleted();
+    }
+
+
+    @Test
+    void sendingPausedUntilReady() {
+        Mockito.when(requestStream.isReady()).thenReturn(true, true, false);
+
+        responseObserver.sendWhileReady();
+
+        sentRequests(2);
+        Mockito.verify(requestStream, Mockito.never()).onCompleted();
+
+        Mockito.when(requestStream.isReady()).thenReturn(true);
+        responseObserver.sendWhileReady();
+
+        sentRequests(4);
+        Mockito.verify(requestStream).onCompleted();
+    }
+
+
+    @Test
+    void awaitReturnsPathOnceSavedAndCallEnded() throws IOException {
+        responseObserver.onNext(FileUploadStatusResponse.newBuilder()
+                .setStatus(FileUploadStatus.SUCCESS)
+                .setFilePath("http://localhost:9001/profile/abc.jpg?size=128")
+                .build());
+        responseObserver.onCompleted();
+
+        assertEquals("http://localhost:9001/profile/abc.jpg?size=128", responseObserver.await(1, TimeUnit.SECONDS));
+    }
+
+
+    @Test
+    void awaitThrowsWhenServerFails() {
+        responseObserver.onError(Status.INVALID_ARGUMENT.asRuntimeException());
+
+        assertThrows(IOException.class, () -> responseObserver.await(1, TimeUnit.SECONDS));
+    }
+}